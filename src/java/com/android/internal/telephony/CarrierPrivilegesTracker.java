@@ -69,6 +69,7 @@ import android.util.Pair;
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.telephony.flags.FeatureFlags;
 import com.android.internal.telephony.uicc.IccUtils;
+import com.android.internal.telephony.uicc.UiccAccessRuleIndex;
 import com.android.internal.telephony.uicc.UiccPort;
 import com.android.internal.telephony.uicc.UiccProfile;
 import com.android.telephony.Rlog;
@@ -197,10 +198,18 @@ public class CarrierPrivilegesTracker extends Handler {
     // - Non-empty list indicates test override with specific rules (CC and UICC rules are ignored)
     @Nullable private List<UiccAccessRule> mTestOverrideRules = null;
     @Nullable private String mTestOverrideCarrierServicePackage = null;
+    // Indexes of the rules above by certificate hash, rebuilt whenever the rules change.
+    @NonNull private UiccAccessRuleIndex mCarrierConfigRuleIndex = UiccAccessRuleIndex.EMPTY;
+    @NonNull private UiccAccessRuleIndex mUiccRuleIndex = UiccAccessRuleIndex.EMPTY;
+    @Nullable private UiccAccessRuleIndex mTestOverrideRuleIndex = null;
     // Map of PackageName -> Certificate hashes for that Package
     @NonNull private final Map<String, Set<String>> mInstalledPackageCerts = new ArrayMap<>();
     // Map of PackageName -> UIDs for that Package
     @NonNull private final Map<String, Set<Integer>> mCachedUids = new ArrayMap<>();
+    // Map of PackageName -> privileged status of that Package. Entries are dropped when the
+    // certificates of the package change, and the whole map is cleared when the rules change, so
+    // a package change only requires matching that package against the rules.
+    @NonNull private final Map<String, Integer> mCachedPackagePrivilegedStatus = new ArrayMap<>();
 
     // This should be used to guard critical section either with
     // mPrivilegedPackageInfoLock.readLock() or mPrivilegedPackageInfoLock.writeLock(), but never
@@ -600,11 +609,13 @@ public class CarrierPrivilegesTracker extends Handler {
         }
 
         mInstalledPackageCerts.put(pkg.packageName, certs);
+        mCachedPackagePrivilegedStatus.remove(pkg.packageName);
     }
 
     private void handlePackageRemovedOrDisabledByUser(@Nullable String pkgName) {
         if (pkgName == null) return;
 
+        mCachedPackagePrivilegedStatus.remove(pkgName);
         if (mInstalledPackageCerts.remove(pkgName) == null || mCachedUids.remove(pkgName) == null) {
             Rlog.e(TAG, "Unknown package was uninstalled or disabled by user: " + pkgName);
             return;
@@ -623,6 +634,7 @@ public class CarrierPrivilegesTracker extends Handler {
 
         // Cache SIM rules
         mUiccRules.addAll(getSimRules());
+        updateRuleIndexes();
 
         // Cache all installed packages and their certs
         refreshInstalledPackageCache();
@@ -674,10 +686,19 @@ public class CarrierPrivilegesTracker extends Handler {
 
         currentRules.clear();
         currentRules.addAll(updatedRules);
+        updateRuleIndexes();
 
         maybeUpdatePrivilegedPackagesAndNotifyRegistrants();
     }
 
+    private void updateRuleIndexes() {
+        mCarrierConfigRuleIndex = new UiccAccessRuleIndex(mCarrierConfigRules);
+        mUiccRuleIndex = new UiccAccessRuleIndex(mUiccRules);
+        mTestOverrideRuleIndex =
+                mTestOverrideRules == null ? null : new UiccAccessRuleIndex(mTestOverrideRules);
+        mCachedPackagePrivilegedStatus.clear();
+    }
+
     private void maybeUpdatePrivilegedPackagesAndNotifyRegistrants() {
         PrivilegedPackageInfo currentPrivilegedPackageInfo =
                 getCurrentPrivilegedPackagesForAllUsers();
@@ -741,7 +762,7 @@ public class CarrierPrivilegesTracker extends Handler {
         Set<String> privilegedPackageNames = new ArraySet<>();
         Set<Integer> privilegedUids = new ArraySet<>();
         for (Map.Entry<String, Set<String>> e : mInstalledPackageCerts.entrySet()) {
-            final int priv = getPackagePrivilegedStatus(e.getKey(), e.getValue());
+            final int priv = getCachedPackagePrivilegedStatus(e.getKey(), e.getValue());
             switch (priv) {
                 case PACKAGE_PRIVILEGED_FROM_SIM:
                 case PACKAGE_PRIVILEGED_FROM_CARRIER_SERVICE_TEST_OVERRIDE: // fallthrough
@@ -767,35 +788,38 @@ public class CarrierPrivilegesTracker extends Handler {
      * carrier config, from test overrides or from certificates stored on the SIM.
      */
     private int getPackagePrivilegedStatus(@NonNull String pkgName, @NonNull Set<String> certs) {
-        // Double-nested for loops, but each collection should contain at most 2 elements in nearly
-        // every case.
-        // TODO(b/184382310) find a way to speed this up
+        // Each package should have at most 2 certificate hashes in nearly every case, and each
+        // of them is a single lookup in the rule indexes.
         for (String cert : certs) {
             // Non-null (whether empty or not) test override rule will ignore the UICC and CC rules
-            if (mTestOverrideRules != null) {
-                for (UiccAccessRule rule : mTestOverrideRules) {
-                    if (rule.matches(cert, pkgName)) {
-                        return PACKAGE_PRIVILEGED_FROM_SIM;
-                    }
+            if (mTestOverrideRuleIndex != null) {
+                if (mTestOverrideRuleIndex.matches(cert, pkgName)) {
+                    return PACKAGE_PRIVILEGED_FROM_SIM;
                 }
             } else {
-                for (UiccAccessRule rule : mUiccRules) {
-                    if (rule.matches(cert, pkgName)) {
-                        return PACKAGE_PRIVILEGED_FROM_SIM;
-                    }
+                if (mUiccRuleIndex.matches(cert, pkgName)) {
+                    return PACKAGE_PRIVILEGED_FROM_SIM;
                 }
-                for (UiccAccessRule rule : mCarrierConfigRules) {
-                    if (rule.matches(cert, pkgName)) {
-                        return pkgName.equals(mTestOverrideCarrierServicePackage)
-                                ? PACKAGE_PRIVILEGED_FROM_CARRIER_SERVICE_TEST_OVERRIDE
-                                : PACKAGE_PRIVILEGED_FROM_CARRIER_CONFIG;
-                    }
+                if (mCarrierConfigRuleIndex.matches(cert, pkgName)) {
+                    return pkgName.equals(mTestOverrideCarrierServicePackage)
+                            ? PACKAGE_PRIVILEGED_FROM_CARRIER_SERVICE_TEST_OVERRIDE
+                            : PACKAGE_PRIVILEGED_FROM_CARRIER_CONFIG;
                 }
             }
         }
         return PACKAGE_NOT_PRIVILEGED;
     }
 
+    private int getCachedPackagePrivilegedStatus(@NonNull String pkgName,
+            @NonNull Set<String> certs) {
+        Integer status = mCachedPackagePrivilegedStatus.get(pkgName);
+        if (status == null) {
+            status = getPackagePrivilegedStatus(pkgName, certs);
+            mCachedPackagePrivilegedStatus.put(pkgName, status);
+        }
+        return status;
+    }
+
     @NonNull
     private Set<Integer> getUidsForPackage(@NonNull String pkgName, boolean invalidateCache) {
         if (invalidateCache) {
@@ -895,6 +919,7 @@ public class CarrierPrivilegesTracker extends Handler {
     private void handleSetTestOverrideCarrierServicePackage(
             @Nullable String carrierServicePackage) {
         mTestOverrideCarrierServicePackage = carrierServicePackage;
+        mCachedPackagePrivilegedStatus.clear();
         refreshInstalledPackageCache();
         maybeUpdatePrivilegedPackagesAndNotifyRegistrants();
     }
@@ -913,6 +938,7 @@ public class CarrierPrivilegesTracker extends Handler {
             // best effort.
             refreshInstalledPackageCache();
         }
+        updateRuleIndexes();
         maybeUpdatePrivilegedPackagesAndNotifyRegistrants();
     }
 
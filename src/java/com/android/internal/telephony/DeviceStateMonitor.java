@@ -41,12 +41,15 @@ import android.os.Message;
 import android.os.PowerManager;
 import android.os.Registrant;
 import android.os.RegistrantList;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.telephony.AccessNetworkConstants.AccessNetworkType;
 import android.telephony.NetworkRegistrationInfo;
 import android.util.LocalLog;
+import android.util.SparseLongArray;
 import android.view.Display;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.flags.FeatureFlags;
 import com.android.internal.util.IndentingPrintWriter;
@@ -212,6 +215,18 @@ public class DeviceStateMonitor extends Handler {
      */
     private int mUnsolicitedResponseFilter = IndicationFilter.ALL;
 
+    /**
+     * Time spent with each unsolicited response filter, for power accounting in dump. Updated on
+     * the handler thread and read by dump() on a binder thread, so it is also the lock of the
+     * accounting.
+     */
+    @GuardedBy("mUnsolicitedResponseFilterDurationMs")
+    private final SparseLongArray mUnsolicitedResponseFilterDurationMs = new SparseLongArray();
+    @GuardedBy("mUnsolicitedResponseFilterDurationMs")
+    private long mUnsolicitedResponseFilterSinceMs;
+    private int mUnsolicitedResponseFilterUpdateCount;
+    private int mUnchangedUnsolicitedResponseFilterCount;
+
     private final DisplayManager.DisplayListener mDisplayListener =
             new DisplayManager.DisplayListener() {
                 @Override
@@ -285,6 +300,9 @@ public class DeviceStateMonitor extends Handler {
     public DeviceStateMonitor(Phone phone, @NonNull FeatureFlags featureFlags) {
         mPhone = phone;
         mFeatureFlags = featureFlags;
+        synchronized (mUnsolicitedResponseFilterDurationMs) {
+            mUnsolicitedResponseFilterSinceMs = getElapsedRealtime();
+        }
         DisplayManager dm = (DisplayManager) phone.getContext().getSystemService(
                 Context.DISPLAY_SERVICE);
         dm.registerDisplayListener(mDisplayListener, null);
@@ -574,33 +592,9 @@ public class DeviceStateMonitor extends Handler {
             sendDeviceState(LOW_DATA_EXPECTED, mIsLowDataExpected);
         }
 
-        // Registration Failure is always reported.
-        int newFilter = IndicationFilter.REGISTRATION_FAILURE;
-
-        if (shouldEnableSignalStrengthReports()) {
-            newFilter |= IndicationFilter.SIGNAL_STRENGTH;
-        }
-
-        if (shouldEnableFullNetworkStateReports()) {
-            newFilter |= IndicationFilter.FULL_NETWORK_STATE;
-        }
-
-        if (shouldEnableDataCallDormancyChangedReports()) {
-            newFilter |= IndicationFilter.DATA_CALL_DORMANCY_CHANGED;
-        }
-
-        if (shouldEnableLinkCapacityEstimateReports()) {
-            newFilter |= IndicationFilter.LINK_CAPACITY_ESTIMATE;
-        }
-
-        if (shouldEnablePhysicalChannelConfigReports()) {
-            newFilter |= IndicationFilter.PHYSICAL_CHANNEL_CONFIG;
-        }
-
-        final boolean shouldEnableBarringInfoReports = shouldEnableBarringInfoReports();
-        if (shouldEnableBarringInfoReports) {
-            newFilter |= IndicationFilter.BARRING_INFO;
-        }
+        final int newFilter = computeUnsolResponseFilter();
+        final boolean shouldEnableBarringInfoReports =
+                (newFilter & IndicationFilter.BARRING_INFO) != 0;
 
         // notify PhysicalChannelConfig registrants if state changes
         if ((newFilter & IndicationFilter.PHYSICAL_CHANNEL_CONFIG)
@@ -620,11 +614,8 @@ public class DeviceStateMonitor extends Handler {
 
         // Determine whether to notify registrants about the non-terrestrial signal strength change.
         if (mFeatureFlags.oemEnabledSatelliteFlag()) {
-            if (shouldEnableSignalStrengthReports()) {
-                mSignalStrengthReportDecisionCallbackRegistrants.notifyResult(true);
-            } else {
-                mSignalStrengthReportDecisionCallbackRegistrants.notifyResult(false);
-            }
+            mSignalStrengthReportDecisionCallbackRegistrants.notifyResult(
+                    (newFilter & IndicationFilter.SIGNAL_STRENGTH) != 0);
         }
 
         if (mFeatureFlags.carrierRoamingNbIotNtn()) {
@@ -635,6 +626,41 @@ public class DeviceStateMonitor extends Handler {
         }
     }
 
+    /**
+     * Compute the unsolicited response filter for the current device state.
+     *
+     * @return See UnsolicitedResponseFilter in types.hal for the definition of each bit.
+     */
+    private int computeUnsolResponseFilter() {
+        // Registration Failure is always reported.
+        int filter = IndicationFilter.REGISTRATION_FAILURE;
+
+        if (shouldEnableSignalStrengthReports()) {
+            filter |= IndicationFilter.SIGNAL_STRENGTH;
+        }
+
+        if (shouldEnableFullNetworkStateReports()) {
+            filter |= IndicationFilter.FULL_NETWORK_STATE;
+        }
+
+        if (shouldEnableDataCallDormancyChangedReports()) {
+            filter |= IndicationFilter.DATA_CALL_DORMANCY_CHANGED;
+        }
+
+        if (shouldEnableLinkCapacityEstimateReports()) {
+            filter |= IndicationFilter.LINK_CAPACITY_ESTIMATE;
+        }
+
+        if (shouldEnablePhysicalChannelConfigReports()) {
+            filter |= IndicationFilter.PHYSICAL_CHANNEL_CONFIG;
+        }
+
+        if (shouldEnableBarringInfoReports()) {
+            filter |= IndicationFilter.BARRING_INFO;
+        }
+        return filter;
+    }
+
     /**
      * Called when RIL is connected during boot up or radio becomes available after modem restart.
      *
@@ -688,10 +714,52 @@ public class DeviceStateMonitor extends Handler {
         if (force || newFilter != mUnsolicitedResponseFilter) {
             log("old filter: " + mUnsolicitedResponseFilter + ", new filter: " + newFilter, true);
             mPhone.mCi.setUnsolResponseFilter(newFilter, null);
-            mUnsolicitedResponseFilter = newFilter;
+            mUnsolicitedResponseFilterUpdateCount++;
+            synchronized (mUnsolicitedResponseFilterDurationMs) {
+                if (newFilter != mUnsolicitedResponseFilter) {
+                    accountUnsolResponseFilterDuration();
+                }
+                mUnsolicitedResponseFilter = newFilter;
+            }
+        } else {
+            mUnchangedUnsolicitedResponseFilterCount++;
         }
     }
 
+    /**
+     * Add the time spent with the current unsolicited response filter to its total.
+     */
+    @GuardedBy("mUnsolicitedResponseFilterDurationMs")
+    private void accountUnsolResponseFilterDuration() {
+        final long now = getElapsedRealtime();
+        mUnsolicitedResponseFilterDurationMs.put(mUnsolicitedResponseFilter,
+                mUnsolicitedResponseFilterDurationMs.get(mUnsolicitedResponseFilter)
+                        + now - mUnsolicitedResponseFilterSinceMs);
+        mUnsolicitedResponseFilterSinceMs = now;
+    }
+
+    /**
+     * @return the time spent with each unsolicited response filter, including the time spent so
+     * far with the current one
+     */
+    @VisibleForTesting
+    public SparseLongArray getUnsolResponseFilterDurationMs() {
+        synchronized (mUnsolicitedResponseFilterDurationMs) {
+            final SparseLongArray durations = mUnsolicitedResponseFilterDurationMs.clone();
+            durations.put(mUnsolicitedResponseFilter, durations.get(mUnsolicitedResponseFilter)
+                    + getElapsedRealtime() - mUnsolicitedResponseFilterSinceMs);
+            return durations;
+        }
+    }
+
+    /**
+     * @return the milliseconds since boot, including time spent in sleep
+     */
+    @VisibleForTesting
+    protected long getElapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
     private void setLinkCapacityReportingCriteria() {
         mPhone.setLinkCapacityReportingCriteria(LINK_CAPACITY_DOWNLINK_THRESHOLDS,
                 LINK_CAPACITY_UPLINK_THRESHOLDS, AccessNetworkType.GERAN);
@@ -894,6 +962,16 @@ public class DeviceStateMonitor extends Handler {
         ipw.println("mIsLowDataExpected=" + mIsLowDataExpected);
         ipw.println("mIsAutomotiveProjectionActive=" + mIsAutomotiveProjectionActive);
         ipw.println("mUnsolicitedResponseFilter=" + mUnsolicitedResponseFilter);
+        ipw.println("Unsolicited response filter updates sent="
+                + mUnsolicitedResponseFilterUpdateCount
+                + ", skipped as unchanged=" + mUnchangedUnsolicitedResponseFilterCount);
+        final SparseLongArray filterDurationMs = getUnsolResponseFilterDurationMs();
+        ipw.println("Time per unsolicited response filter (ms):");
+        ipw.increaseIndent();
+        for (int i = 0; i < filterDurationMs.size(); i++) {
+            ipw.println(filterDurationMs.keyAt(i) + ": " + filterDurationMs.valueAt(i));
+        }
+        ipw.decreaseIndent();
         ipw.println("mIsWifiConnected=" + mIsWifiConnected);
         ipw.println("mIsAlwaysSignalStrengthReportingEnabled="
                 + mIsAlwaysSignalStrengthReportingEnabled);
@@ -3494,6 +3494,7 @@ public class GsmCdmaPhone extends Phone {
                 logd("Event RegistrationFailed Received");
                 ar = (AsyncResult) msg.obj;
                 RegistrationFailedEvent rfe = (RegistrationFailedEvent) ar.result;
+                mSST.logRegistrationFailure(rfe);
                 mNotifier.notifyRegistrationFailed(this, rfe.cellIdentity, rfe.chosenPlmn,
                         rfe.domain, rfe.causeCode, rfe.additionalCauseCode);
                 break;
@@ -4741,6 +4742,9 @@ public class GsmCdmaPhone extends Phone {
         pw.println(" mSST=" + mSST);
         pw.println(" mPendingMMIs=" + mPendingMMIs);
         pw.println(" mIccPhoneBookIntManager=" + mIccPhoneBookIntManager);
+        if (mIccPhoneBookIntManager != null) {
+            mIccPhoneBookIntManager.dump(fd, pw, args);
+        }
         pw.println(" mImei=" + pii(mImei));
         pw.println(" mImeiSv=" + pii(mImeiSv));
         pw.println(" mVmNumber=" + pii(mVmNumber));
@@ -38,6 +38,8 @@ import com.android.internal.telephony.uicc.UiccController;
 import com.android.internal.telephony.uicc.UiccProfile;
 import com.android.telephony.Rlog;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -135,6 +137,13 @@ public class IccPhoneBookInterfaceManager {
         mSimPbRecordCache.dispose();
     }
 
+    /**
+     * Dump the state of the SIM phonebook record cache.
+     */
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        mSimPbRecordCache.dump(fd, pw, args);
+    }
+
     public void updateIccRecords(IccRecords iccRecords) {
         if (iccRecords != null) {
             mAdnCache = iccRecords.getAdnCache();
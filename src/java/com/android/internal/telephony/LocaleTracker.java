@@ -109,6 +109,13 @@ public class LocaleTracker extends Handler {
     /** The minimum delay to get cell info from the modem */
     private static final long CELL_INFO_MIN_DELAY_MS = 2 * SECOND_IN_MILLIS;
 
+    /**
+     * The maximum age of cached cell info accepted instead of getting it from the modem. Cell
+     * info received within the minimum delay is as recent as a new request would be.
+     */
+    @VisibleForTesting
+    public static final long CELL_INFO_MAX_AGE_MS = CELL_INFO_MIN_DELAY_MS;
+
     // Todo: Read this from Settings.
     /** The maximum delay to get cell info from the modem */
     private static final long CELL_INFO_MAX_DELAY_MS = 10 * MINUTE_IN_MILLIS;
@@ -200,7 +207,8 @@ public class LocaleTracker extends Handler {
     public void handleMessage(Message msg) {
         switch (msg.what) {
             case EVENT_REQUEST_CELL_INFO:
-                mPhone.requestCellInfoUpdate(null, obtainMessage(EVENT_RESPONSE_CELL_INFO));
+                mPhone.requestCellInfoUpdate(null, CELL_INFO_MAX_AGE_MS,
+                        obtainMessage(EVENT_RESPONSE_CELL_INFO));
                 break;
 
             case EVENT_UNSOL_CELL_INFO:
@@ -27,6 +27,7 @@ import android.text.TextUtils;
 import android.timezone.TelephonyLookup;
 import android.timezone.TelephonyNetwork;
 import android.timezone.TelephonyNetworkFinder;
+import android.util.SparseArray;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
@@ -53,6 +54,26 @@ public final class MccTable {
 
     static ArrayList<MccEntry> sTable;
 
+    /** MCCs are three decimal digits, so every valid MCC indexes into this range. */
+    private static final int MCC_INDEX_SIZE = 1000;
+
+    /** Upper bound on the number of memoized MCC+MNC country lookups. */
+    @VisibleForTesting
+    static final int MAX_CACHED_MCC_MNC_COUNT = 64;
+
+    /**
+     * {@link #sTable} indexed directly by MCC, so that {@link #entryForMcc(int)} is a single
+     * array load instead of a binary search over a freshly allocated key.
+     */
+    private static MccEntry[] sMccIndex;
+
+    /**
+     * Country codes returned by the {@link TelephonyNetworkFinder}, keyed by
+     * {@link #packMccMnc(String, String)}. Misses are cached as the empty string.
+     */
+    @GuardedBy("MccTable.class")
+    private static final SparseArray<String> sMccMncCountryCache = new SparseArray<>();
+
     /**
      * Container class for mcc and iso. This class implements compareTo so that it can be sorted
      * by mcc.
@@ -159,15 +180,10 @@ public final class MccTable {
                     + "and has been made greylist-max-q. Please file a bug if you still require "
                     + "this API.")
     public static MccEntry entryForMcc(int mcc) {
-        MccEntry m = new MccEntry(mcc, "", 0);
-
-        int index = Collections.binarySearch(sTable, m);
-
-        if (index < 0) {
+        if (mcc < 0 || mcc >= MCC_INDEX_SIZE) {
             return null;
-        } else {
-            return sTable.get(index);
         }
+        return sMccIndex[mcc];
     }
 
     /**
@@ -227,21 +243,67 @@ public final class MccTable {
 
     @Nullable
     private static String countryCodeForMccMncNoFallback(MccMnc mccMnc) {
+        final int key = packMccMnc(mccMnc.mcc, mccMnc.mnc);
+        final TelephonyNetworkFinder finder;
         synchronized (MccTable.class) {
+            if (key >= 0) {
+                String cached = sMccMncCountryCache.get(key);
+                if (cached != null) {
+                    return cached.isEmpty() ? null : cached;
+                }
+            }
             if (sTelephonyNetworkFinder == null) {
                 sTelephonyNetworkFinder = TelephonyLookup.getInstance().getTelephonyNetworkFinder();
             }
+            finder = sTelephonyNetworkFinder;
         }
-        if (sTelephonyNetworkFinder == null) {
+        if (finder == null) {
             // This should not happen under normal circumstances, only when the data is missing.
             return null;
         }
-        TelephonyNetwork network =
-                sTelephonyNetworkFinder.findNetworkByMccMnc(mccMnc.mcc, mccMnc.mnc);
-        if (network == null) {
-            return null;
+        TelephonyNetwork network = finder.findNetworkByMccMnc(mccMnc.mcc, mccMnc.mnc);
+        String countryCode = network == null ? null : network.getCountryIsoCode();
+        if (key >= 0) {
+            synchronized (MccTable.class) {
+                if (sMccMncCountryCache.size() >= MAX_CACHED_MCC_MNC_COUNT) {
+                    sMccMncCountryCache.clear();
+                }
+                sMccMncCountryCache.put(key, countryCode == null ? "" : countryCode);
+            }
         }
-        return network.getCountryIsoCode();
+        return countryCode;
+    }
+
+    /**
+     * Packs a three digit MCC and a two or three digit MNC into a single non-negative int. The
+     * MNC length is kept in the low bits so that e.g. "01" and "001" stay distinct.
+     *
+     * @return the packed key, or -1 if either value is not in the expected decimal form.
+     */
+    @VisibleForTesting
+    static int packMccMnc(@NonNull String mcc, @Nullable String mnc) {
+        if (mnc == null || mcc.length() != 3 || mnc.length() < 2 || mnc.length() > 3) {
+            return -1;
+        }
+        int mccValue = parseDecimalDigits(mcc);
+        int mncValue = parseDecimalDigits(mnc);
+        if (mccValue < 0 || mncValue < 0) {
+            return -1;
+        }
+        return ((mccValue * 1000 + mncValue) << 2) | mnc.length();
+    }
+
+    /** Parses a short string of ASCII digits without allocating, or returns -1. */
+    private static int parseDecimalDigits(@NonNull String digits) {
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
     }
 
 
@@ -581,5 +643,13 @@ public final class MccTable {
         sTable.add(new MccEntry(750, "fk", 2)); // Falkland Islands (Malvinas)
 
         Collections.sort(sTable);
+
+        sMccIndex = new MccEntry[MCC_INDEX_SIZE];
+        for (MccEntry entry : sTable) {
+            if (entry.mMcc >= 0 && entry.mMcc < MCC_INDEX_SIZE
+                    && sMccIndex[entry.mMcc] == null) {
+                sMccIndex[entry.mMcc] = entry;
+            }
+        }
     }
 }
@@ -54,16 +54,17 @@ import com.android.telephony.Rlog;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.IntStream;
 
 /**
@@ -190,7 +191,22 @@ public class NetworkTypeController extends StateMachine {
             };
 
     @NonNull private Map<String, OverrideTimerRule> mOverrideTimerRules = new HashMap<>();
+    /**
+     * mOverrideTimerRules compiled into tables indexed by the position of a state in
+     * {@link #ALL_STATES}, so that state transitions are evaluated without map lookups.
+     * mPrimaryTimerTable[from][to] and mSecondaryTimerTable[primary][secondary] are in seconds.
+     */
+    @NonNull private int[] mOverrideTypeTable = new int[ALL_STATES.length];
+    @NonNull private int[][] mPrimaryTimerTable = new int[ALL_STATES.length][ALL_STATES.length];
+    @NonNull private int[][] mSecondaryTimerTable = new int[ALL_STATES.length][ALL_STATES.length];
     @NonNull private String mLteEnhancedPattern = "";
+    // Compiled mLteEnhancedPattern, or null if the pattern is empty or invalid
+    @Nullable private Pattern mLteEnhancedCompiledPattern;
+    // Operator names of the last isLteEnhancedAvailable evaluation and its result
+    private boolean mIsLastLteEnhancedResultValid;
+    @Nullable private String mLastLteEnhancedOperatorLong;
+    @Nullable private String mLastLteEnhancedOperatorShort;
+    private boolean mLastLteEnhancedAvailable;
     @Annotation.OverrideNetworkType private int mOverrideNetworkType;
     private boolean mIsPhysicalChannelConfigOn;
     private boolean mIsPrimaryTimerActive;
@@ -344,8 +360,8 @@ public class NetworkTypeController extends StateMachine {
                 config = b;
             }
         }
-        mLteEnhancedPattern = config.getString(
-                CarrierConfigManager.KEY_SHOW_CARRIER_DATA_ICON_PATTERN_STRING);
+        updateLteEnhancedPattern(config.getString(
+                CarrierConfigManager.KEY_SHOW_CARRIER_DATA_ICON_PATTERN_STRING));
         mIsTimerResetEnabledForLegacyStateRrcIdle = config.getBoolean(
                 CarrierConfigManager.KEY_NR_TIMERS_RESET_IF_NON_ENDC_AND_RRC_IDLE_BOOL);
         mIsTimerResetEnabledOnPlmnChanges = config.getBoolean(
@@ -506,9 +522,67 @@ public class NetworkTypeController extends StateMachine {
         }
 
         mOverrideTimerRules = tempRules;
+        compileTimerRules(tempRules);
         if (DBG) log("mOverrideTimerRules: " + mOverrideTimerRules);
     }
 
+    private void compileTimerRules(@NonNull Map<String, OverrideTimerRule> rules) {
+        int[] overrideTypes = new int[ALL_STATES.length];
+        int[][] primaryTimers = new int[ALL_STATES.length][ALL_STATES.length];
+        int[][] secondaryTimers = new int[ALL_STATES.length][ALL_STATES.length];
+        for (int from = 0; from < ALL_STATES.length; from++) {
+            OverrideTimerRule rule = rules.get(ALL_STATES[from]);
+            if (rule == null) continue;
+            overrideTypes[from] = rule.mOverrideType;
+            for (int to = 0; to < ALL_STATES.length; to++) {
+                primaryTimers[from][to] = rule.getTimer(ALL_STATES[to]);
+                secondaryTimers[from][to] = rule.getSecondaryTimer(ALL_STATES[to]);
+            }
+        }
+        mOverrideTypeTable = overrideTypes;
+        mPrimaryTimerTable = primaryTimers;
+        mSecondaryTimerTable = secondaryTimers;
+    }
+
+    /**
+     * @return The index of the state in {@link #ALL_STATES}, or -1 if it's not a known state.
+     */
+    private static int getStateIndex(String state) {
+        for (int i = 0; i < ALL_STATES.length; i++) {
+            if (ALL_STATES[i].equals(state)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The override network type configured for the state.
+     */
+    private @Annotation.OverrideNetworkType int getOverrideTypeForState(String state) {
+        int index = getStateIndex(state);
+        return index < 0 ? TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE
+                : mOverrideTypeTable[index];
+    }
+
+    /**
+     * @return Primary timer duration in seconds from one state to another, or 0 if not defined.
+     */
+    private int getPrimaryTimer(String from, String to) {
+        int fromIndex = getStateIndex(from);
+        int toIndex = getStateIndex(to);
+        return fromIndex < 0 || toIndex < 0 ? 0 : mPrimaryTimerTable[fromIndex][toIndex];
+    }
+
+    /**
+     * @return Secondary timer duration in seconds for the secondary state after the primary timer
+     * of the primary state expires, or 0 if not defined.
+     */
+    private int getSecondaryTimer(String primary, String secondary) {
+        int primaryIndex = getStateIndex(primary);
+        int secondaryIndex = getStateIndex(secondary);
+        return primaryIndex < 0 || secondaryIndex < 0
+                ? 0 : mSecondaryTimerTable[primaryIndex][secondaryIndex];
+    }
+
     private void updateOverrideNetworkType() {
         if (mIsPrimaryTimerActive || mIsSecondaryTimerActive) {
             if (DBG) log("Skip updating override network type since timer is active.");
@@ -547,37 +621,29 @@ public class NetworkTypeController extends StateMachine {
             return TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE;
         }
         // Icon display keys in order of priority
-        List<String> keys = new ArrayList<>();
         if (isNrSa) {
             if (isNrAdvanced()) {
-                keys.add(STATE_CONNECTED_NR_ADVANCED);
-            }
-        } else {
-            switch (mServiceState.getNrState()) {
-                case NetworkRegistrationInfo.NR_STATE_CONNECTED:
-                    if (isNrAdvanced()) {
-                        keys.add(STATE_CONNECTED_NR_ADVANCED);
-                    }
-                    keys.add(STATE_CONNECTED);
-                    break;
-                case NetworkRegistrationInfo.NR_STATE_NOT_RESTRICTED:
-                    keys.add(isPhysicalLinkActive() ? STATE_NOT_RESTRICTED_RRC_CON
-                            : STATE_NOT_RESTRICTED_RRC_IDLE);
-                    break;
-                case NetworkRegistrationInfo.NR_STATE_RESTRICTED:
-                    keys.add(STATE_RESTRICTED);
-                    break;
+                return getOverrideTypeForState(STATE_CONNECTED_NR_ADVANCED);
             }
+            return TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE;
         }
-
-        for (String key : keys) {
-            OverrideTimerRule rule = mOverrideTimerRules.get(key);
-            if (rule != null && rule.mOverrideType
-                    != TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE) {
-                return rule.mOverrideType;
-            }
+        switch (mServiceState.getNrState()) {
+            case NetworkRegistrationInfo.NR_STATE_CONNECTED:
+                if (isNrAdvanced()) {
+                    int overrideType = getOverrideTypeForState(STATE_CONNECTED_NR_ADVANCED);
+                    if (overrideType != TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE) {
+                        return overrideType;
+                    }
+                }
+                return getOverrideTypeForState(STATE_CONNECTED);
+            case NetworkRegistrationInfo.NR_STATE_NOT_RESTRICTED:
+                return getOverrideTypeForState(isPhysicalLinkActive()
+                        ? STATE_NOT_RESTRICTED_RRC_CON : STATE_NOT_RESTRICTED_RRC_IDLE);
+            case NetworkRegistrationInfo.NR_STATE_RESTRICTED:
+                return getOverrideTypeForState(STATE_RESTRICTED);
+            default:
+                return TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE;
         }
-        return TelephonyDisplayInfo.OVERRIDE_NETWORK_TYPE_NONE;
     }
 
     private @Annotation.OverrideNetworkType int getLteDisplayType() {
@@ -594,21 +660,50 @@ public class NetworkTypeController extends StateMachine {
         return value;
     }
 
+    private void updateLteEnhancedPattern(String pattern) {
+        if (pattern == null) pattern = "";
+        if (pattern.equals(mLteEnhancedPattern) && (mLteEnhancedCompiledPattern != null
+                || TextUtils.isEmpty(pattern))) {
+            return;
+        }
+        mLteEnhancedPattern = pattern;
+        mLteEnhancedCompiledPattern = null;
+        mIsLastLteEnhancedResultValid = false;
+        if (!TextUtils.isEmpty(pattern)) {
+            try {
+                mLteEnhancedCompiledPattern = Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                loge("Invalid LTE enhanced pattern " + pattern + ": " + e);
+            }
+        }
+    }
+
     private boolean isLteEnhancedAvailable() {
-        if (TextUtils.isEmpty(mLteEnhancedPattern)) {
+        if (mLteEnhancedCompiledPattern == null) {
             return false;
         }
-        Pattern stringPattern = Pattern.compile(mLteEnhancedPattern);
-        for (String opName : new String[] {mServiceState.getOperatorAlphaLongRaw(),
-                mServiceState.getOperatorAlphaShortRaw()}) {
+        String opLong = mServiceState.getOperatorAlphaLongRaw();
+        String opShort = mServiceState.getOperatorAlphaShortRaw();
+        if (mIsLastLteEnhancedResultValid
+                && Objects.equals(opLong, mLastLteEnhancedOperatorLong)
+                && Objects.equals(opShort, mLastLteEnhancedOperatorShort)) {
+            return mLastLteEnhancedAvailable;
+        }
+        boolean available = false;
+        for (String opName : new String[] {opLong, opShort}) {
             if (!TextUtils.isEmpty(opName)) {
-                Matcher matcher = stringPattern.matcher(opName);
+                Matcher matcher = mLteEnhancedCompiledPattern.matcher(opName);
                 if (matcher.find()) {
-                    return true;
+                    available = true;
+                    break;
                 }
             }
         }
-        return false;
+        mIsLastLteEnhancedResultValid = true;
+        mLastLteEnhancedOperatorLong = opLong;
+        mLastLteEnhancedOperatorShort = opShort;
+        mLastLteEnhancedAvailable = available;
+        return available;
     }
 
     /**
@@ -1350,8 +1445,8 @@ public class NetworkTypeController extends StateMachine {
         if (!mIsSecondaryTimerActive || mNrAdvancedBandsSecondaryTimer <= 0) return;
         // Secondary timer is active, so we must have a valid secondary rule right now.
         OverrideTimerRule secondaryRule = mOverrideTimerRules.get(mPrimaryTimerState);
-        if (secondaryRule != null) {
-            int secondaryDuration = secondaryRule.getSecondaryTimer(mSecondaryTimerState);
+        int secondaryDuration = getSecondaryTimer(mPrimaryTimerState, mSecondaryTimerState);
+        if (secondaryRule != null && secondaryDuration > 0) {
             long durationMillis = secondaryDuration * 1000L;
             long now = SystemClock.uptimeMillis();
             if ((mSecondaryTimerExpireTimestamp - now) > durationMillis) {
@@ -1375,9 +1470,8 @@ public class NetworkTypeController extends StateMachine {
             if (DBG) {
                 log("Transition with primary timer from " + mPreviousState + " to " + destName);
             }
-            OverrideTimerRule rule = mOverrideTimerRules.get(mPreviousState);
-            if (!mIsDeviceIdleMode && rule != null && rule.getTimer(destName) > 0) {
-                int duration = rule.getTimer(destName);
+            int duration = getPrimaryTimer(mPreviousState, destName);
+            if (!mIsDeviceIdleMode && duration > 0) {
                 if (DBG) log(duration + "s primary timer started for state: " + mPreviousState);
                 mPrimaryTimerState = mPreviousState;
                 mPreviousState = getCurrentState().getName();
@@ -1390,13 +1484,12 @@ public class NetworkTypeController extends StateMachine {
 
     private void transitionWithSecondaryTimerTo(IState destState) {
         String currentName = getCurrentState().getName();
-        OverrideTimerRule rule = mOverrideTimerRules.get(mPrimaryTimerState);
         if (DBG) {
             log("Transition with secondary timer from " + currentName + " to "
                     + destState.getName());
         }
-        if (!mIsDeviceIdleMode && rule != null && rule.getSecondaryTimer(currentName) > 0) {
-            int duration = rule.getSecondaryTimer(currentName);
+        int duration = getSecondaryTimer(mPrimaryTimerState, currentName);
+        if (!mIsDeviceIdleMode && duration > 0) {
             if (mLastShownNrDueToAdvancedBand && mNrAdvancedBandsSecondaryTimer > 0) {
                 duration = mNrAdvancedBandsSecondaryTimer;
                 if (DBG) log("timer adjusted by nr_advanced_bands_secondary_timer_seconds_int");
@@ -132,6 +132,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -451,6 +452,10 @@ public abstract class Phone extends Handler implements PhoneInternalInterface {
     private final RegistrantList mRedialRegistrants = new RegistrantList();
 
     private final RegistrantList mPhysicalChannelConfigRegistrants = new RegistrantList();
+    // Last physical channel configs sent to the notifier, and the sub they were sent for
+    private List<PhysicalChannelConfig> mLastNotifiedPhysicalChannelConfigs;
+    private int mLastNotifiedPhysicalChannelConfigSubId =
+            SubscriptionManager.INVALID_SUBSCRIPTION_ID;
 
     private final RegistrantList mOtaspRegistrants = new RegistrantList();
 
@@ -2110,6 +2115,15 @@ public abstract class Phone extends Handler implements PhoneInternalInterface {
         getServiceStateTracker().requestAllCellInfo(workSource, rspMsg);
     }
 
+    /**
+     * @param workSource calling WorkSource
+     * @param maxAgeMs the maximum acceptable age of cached cell info, in milliseconds
+     * @param rspMsg the response message containing the cell info
+     */
+    public void requestCellInfoUpdate(WorkSource workSource, long maxAgeMs, Message rspMsg) {
+        getServiceStateTracker().requestAllCellInfo(workSource, maxAgeMs, rspMsg);
+    }
+
     /**
      * Returns the current CellIdentity if known
      */
@@ -2931,9 +2945,19 @@ public abstract class Phone extends Handler implements PhoneInternalInterface {
         mPhysicalChannelConfigRegistrants.remove(h);
     }
 
-    /** Notify {@link PhysicalChannelConfig} changes. */
+    /**
+     * Notify {@link PhysicalChannelConfig} changes. Internal registrants see every indication,
+     * while listeners are only notified when the configs differ from the last ones they got.
+     */
     public void notifyPhysicalChannelConfig(List<PhysicalChannelConfig> configs) {
         mPhysicalChannelConfigRegistrants.notifyRegistrants(new AsyncResult(null, configs, null));
+        int subId = getSubId();
+        if (subId == mLastNotifiedPhysicalChannelConfigSubId
+                && Objects.equals(configs, mLastNotifiedPhysicalChannelConfigs)) {
+            return;
+        }
+        mLastNotifiedPhysicalChannelConfigs = configs;
+        mLastNotifiedPhysicalChannelConfigSubId = subId;
         mNotifier.notifyPhysicalChannelConfig(this, configs);
     }
 
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches PLMNs (MCC or MCC+MNC strings) against a fixed list of prefixes, such as the
+ * roaming and non-roaming operator lists in carrier config.
+ *
+ * The list is compiled into a decimal digit trie once, so a lookup walks at most one node per
+ * digit of the PLMN rather than comparing against every configured prefix. Prefixes that are
+ * not purely decimal are kept aside and compared with {@link String#startsWith(String)}.
+ */
+final class PlmnPrefixTrie {
+    private static final int RADIX = 10;
+
+    /** Children of node {@code n} are at {@code [n * RADIX, (n + 1) * RADIX)}, 0 if absent. */
+    private int[] mChildren = new int[RADIX];
+    /** Whether some prefix ends at the given node. */
+    private boolean[] mTerminal = new boolean[1];
+    private int mNodeCount = 1;
+
+    private final List<String> mOtherPrefixes = new ArrayList<>();
+
+    /**
+     * @param prefixes the prefixes to match against. Null and empty entries are ignored.
+     */
+    PlmnPrefixTrie(@Nullable String[] prefixes) {
+        if (prefixes == null) return;
+        for (String prefix : prefixes) {
+            if (TextUtils.isEmpty(prefix)) continue;
+            if (!isDecimal(prefix)) {
+                mOtherPrefixes.add(prefix);
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < prefix.length(); i++) {
+                int slot = node * RADIX + (prefix.charAt(i) - '0');
+                if (mChildren[slot] == 0) {
+                    // addNode() may grow mChildren, so it must run before the store.
+                    int child = addNode();
+                    mChildren[slot] = child;
+                }
+                node = mChildren[slot];
+            }
+            mTerminal[node] = true;
+        }
+    }
+
+    /** @return {@code true} if no usable prefix was configured. */
+    boolean isEmpty() {
+        return mNodeCount == 1 && mOtherPrefixes.isEmpty();
+    }
+
+    /**
+     * @param plmn the PLMN to check
+     * @return {@code true} if {@code plmn} starts with any of the configured prefixes.
+     */
+    boolean matchesPrefixOf(@Nullable String plmn) {
+        if (plmn == null) return false;
+        int node = 0;
+        for (int i = 0; i < plmn.length(); i++) {
+            char c = plmn.charAt(i);
+            if (c < '0' || c > '9') break;
+            node = mChildren[node * RADIX + (c - '0')];
+            if (node == 0) break;
+            if (mTerminal[node]) return true;
+        }
+        for (String prefix : mOtherPrefixes) {
+            if (plmn.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private int addNode() {
+        if (mNodeCount == mTerminal.length) {
+            mTerminal = Arrays.copyOf(mTerminal, mNodeCount * 2);
+            mChildren = Arrays.copyOf(mChildren, mNodeCount * 2 * RADIX);
+        }
+        return mNodeCount++;
+    }
+
+    private static boolean isDecimal(@NonNull String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.content.Context;
+import android.telephony.CellIdentity;
+import android.telephony.CellIdentityCdma;
+import android.telephony.CellIdentityGsm;
+import android.telephony.CellIdentityLte;
+import android.telephony.CellIdentityNr;
+import android.telephony.CellIdentityTdscdma;
+import android.telephony.CellIdentityWcdma;
+import android.telephony.ServiceState;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.telephony.Rlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Fixed size, append-only ring of registration events, kept in a memory-mapped file so that it
+ * survives phone process restarts.
+ *
+ * Three kinds of records are written: service state changes at the end of a poll, registration
+ * failures reported by the modem, and serving cell changes. Every record has the same size and a
+ * wall clock timestamp, read when the record is appended so that it follows NITZ/NTP updates.
+ *
+ * PLMNs and cell ids are PII. Unless PII logging is enabled when a record is appended, they are
+ * replaced by a keyed hash, so that changes stay visible. The key is random and generated once
+ * per boot. It is kept in the file header with the kernel boot id, so hashes stay comparable
+ * across phone process restarts but not across reboots. Values that were stored in the clear are
+ * printed through {@link Rlog#pii}.
+ *
+ * The file is opened and mapped on first use rather than when the log is created. There is a
+ * single writer, the phone handler thread, so appends take no lock. Each append is a handful of
+ * stores into the mapped pages. The kernel writes those pages back, so records survive the
+ * process dying. {@link #dump(PrintWriter)} may run concurrently on a binder thread and can
+ * therefore see the record being written only partially.
+ *
+ * File layout, all values big endian:
+ * <pre>
+ * header (64 bytes): int magic, int version, int record size, int capacity,
+ *                    long number of records ever appended, 16 bytes boot id,
+ *                    16 bytes hash key, 8 bytes reserved
+ * record (32 bytes): long wall clock millis, byte type, byte flags, short s0,
+ *                    int i1, int i2, int i3, long l4
+ * </pre>
+ * The record at sequence number {@code n} lives in slot {@code n % capacity}. A file pulled from
+ * a device can be printed with {@link #decode(ByteBuffer, int, PrintWriter)}.
+ */
+public class RegistrationHistoryLog {
+    private static final String LOG_TAG = "RegHistoryLog";
+
+    private static final String FILE_NAME_PREFIX = "registration_history_";
+    private static final String FILE_NAME_SUFFIX = ".bin";
+
+    private static final int MAGIC = 0x52474831; // "RGH1"
+    private static final int VERSION = 3;
+
+    @VisibleForTesting
+    static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC_OFFSET = 0;
+    private static final int HEADER_VERSION_OFFSET = 4;
+    private static final int HEADER_RECORD_SIZE_OFFSET = 8;
+    private static final int HEADER_CAPACITY_OFFSET = 12;
+    private static final int HEADER_SEQUENCE_OFFSET = 16;
+    private static final int HEADER_BOOT_ID_OFFSET = 24;
+    private static final int HEADER_HASH_KEY_OFFSET = 40;
+
+    private static final int BOOT_ID_SIZE = 16;
+    private static final String BOOT_ID_PATH = "/proc/sys/kernel/random/boot_id";
+    private static final int HASH_KEY_SIZE = 16;
+    private static final String HASH_ALGORITHM = "HmacSHA256";
+
+    @VisibleForTesting
+    static final int RECORD_SIZE = 32;
+    @VisibleForTesting
+    static final int RECORD_TIME_OFFSET = 0;
+    private static final int RECORD_TYPE_OFFSET = 8;
+    private static final int RECORD_FLAGS_OFFSET = 9;
+    private static final int RECORD_S0_OFFSET = 10;
+    private static final int RECORD_I1_OFFSET = 12;
+    private static final int RECORD_I2_OFFSET = 16;
+    private static final int RECORD_I3_OFFSET = 20;
+    private static final int RECORD_L4_OFFSET = 24;
+
+    /** Number of records kept per phone, 64KB of records. */
+    @VisibleForTesting
+    static final int DEFAULT_CAPACITY = 2048;
+
+    /** Number of most recent records printed by {@link #dump(PrintWriter)}. */
+    private static final int DUMP_RECORD_COUNT = 100;
+
+    /**
+     * Service state at the end of a poll. s0: roaming flags, i1: voice registration state,
+     * i2: data registration state, i3: packed operator PLMN, l4: voice network type in the high
+     * and data network type in the low 32 bits.
+     */
+    @VisibleForTesting
+    static final byte TYPE_SERVICE_STATE = 1;
+    /**
+     * Registration failure. s0: domain, i1: cause code, i2: additional cause code, i3: packed
+     * chosen PLMN, l4: cell id.
+     */
+    @VisibleForTesting
+    static final byte TYPE_REGISTRATION_FAILURE = 2;
+    /**
+     * Serving cell change. s0: cell type, i1: channel number, i2: tracking or location area,
+     * i3: packed PLMN, l4: cell id.
+     */
+    @VisibleForTesting
+    static final byte TYPE_CELL_CHANGE = 3;
+
+    private static final int FLAG_VOICE_ROAMING = 1;
+    private static final int FLAG_DATA_ROAMING = 1 << 1;
+    private static final int FLAG_EMERGENCY_ONLY = 1 << 2;
+
+    /** Record flag: the PLMN and cell id of the record are hashes. */
+    private static final byte RECORD_FLAG_REDACTED = 1;
+
+    private static final int UNKNOWN = -1;
+
+    @Nullable
+    private final File mFile;
+    private final int mCapacity;
+    /** Whether PLMNs and cell ids are stored and printed in the clear. */
+    private final boolean mLogPii;
+    /** Set once {@link #mapFile()} has run, whether or not the file could be mapped. */
+    private volatile boolean mOpened;
+    @Nullable
+    private MappedByteBuffer mBuffer;
+    /** Keyed hash of the PII stored while PII logging is disabled. */
+    @Nullable
+    private Mac mMac;
+    private long mSequence;
+
+    /**
+     * Open the log of the given phone in the app's files directory.
+     *
+     * @return the log. If the file cannot be mapped, the log silently drops every record.
+     */
+    @NonNull
+    public static RegistrationHistoryLog open(@NonNull Context context, int phoneId) {
+        File file = null;
+        try {
+            file = new File(context.getFilesDir(), FILE_NAME_PREFIX + phoneId + FILE_NAME_SUFFIX);
+        } catch (RuntimeException e) {
+            Rlog.e(LOG_TAG, "open: no files dir", e);
+        }
+        return new RegistrationHistoryLog(file, DEFAULT_CAPACITY, isPiiLoggable());
+    }
+
+    @VisibleForTesting
+    RegistrationHistoryLog(@Nullable File file, int capacity, boolean logPii) {
+        mFile = file;
+        mCapacity = capacity;
+        mLogPii = logPii;
+    }
+
+    /**
+     * @return the mapped file, opening it on first use, or {@code null} if it cannot be mapped
+     */
+    @Nullable
+    private MappedByteBuffer getBuffer() {
+        if (!mOpened) {
+            synchronized (this) {
+                if (!mOpened) {
+                    mapFile();
+                    mOpened = true;
+                }
+            }
+        }
+        return mBuffer;
+    }
+
+    private void mapFile() {
+        if (mFile == null) return;
+        long size = HEADER_SIZE + (long) mCapacity * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            boolean valid = raf.length() == size && hasValidHeader(raf);
+            if (!valid) {
+                // New file, or one written with a different layout. Start over. Truncating drops
+                // the old content, so the file reads back as zeros.
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer =
+                    raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid) {
+                buffer.putInt(HEADER_MAGIC_OFFSET, MAGIC);
+                buffer.putInt(HEADER_VERSION_OFFSET, VERSION);
+                buffer.putInt(HEADER_RECORD_SIZE_OFFSET, RECORD_SIZE);
+                buffer.putInt(HEADER_CAPACITY_OFFSET, mCapacity);
+                buffer.putLong(HEADER_SEQUENCE_OFFSET, 0);
+            }
+            Mac mac = Mac.getInstance(HASH_ALGORITHM);
+            mac.init(new SecretKeySpec(getHashKey(buffer), HASH_ALGORITHM));
+            mMac = mac;
+            mSequence = buffer.getLong(HEADER_SEQUENCE_OFFSET);
+            mBuffer = buffer;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            Rlog.e(LOG_TAG, "Failed to map " + mFile, e);
+        }
+    }
+
+    private boolean hasValidHeader(@NonNull RandomAccessFile raf) throws IOException {
+        raf.seek(0);
+        return raf.readInt() == MAGIC && raf.readInt() == VERSION
+                && raf.readInt() == RECORD_SIZE && raf.readInt() == mCapacity
+                && raf.readLong() >= 0;
+    }
+
+    /**
+     * @return the hash key of the current boot stored in the header, after storing a new one if
+     *     the header has none for this boot
+     */
+    @NonNull
+    private static byte[] getHashKey(@NonNull MappedByteBuffer buffer) {
+        byte[] bootId = readBootId();
+        byte[] storedBootId = new byte[BOOT_ID_SIZE];
+        byte[] key = new byte[HASH_KEY_SIZE];
+        for (int i = 0; i < BOOT_ID_SIZE; i++) {
+            storedBootId[i] = buffer.get(HEADER_BOOT_ID_OFFSET + i);
+        }
+        if (bootId != null && Arrays.equals(bootId, storedBootId)) {
+            for (int i = 0; i < HASH_KEY_SIZE; i++) {
+                key[i] = buffer.get(HEADER_HASH_KEY_OFFSET + i);
+            }
+            return key;
+        }
+        // Without a boot id, a key is only kept for the life of the process.
+        new SecureRandom().nextBytes(key);
+        for (int i = 0; i < BOOT_ID_SIZE; i++) {
+            buffer.put(HEADER_BOOT_ID_OFFSET + i, bootId == null ? 0 : bootId[i]);
+        }
+        for (int i = 0; i < HASH_KEY_SIZE; i++) {
+            buffer.put(HEADER_HASH_KEY_OFFSET + i, key[i]);
+        }
+        return key;
+    }
+
+    /** @return the id the kernel generated for the current boot, or {@code null}. */
+    @Nullable
+    private static byte[] readBootId() {
+        try {
+            UUID uuid = UUID.fromString(new String(
+                    Files.readAllBytes(Paths.get(BOOT_ID_PATH)), StandardCharsets.US_ASCII).trim());
+            return ByteBuffer.allocate(BOOT_ID_SIZE)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .array();
+        } catch (IOException | RuntimeException e) {
+            Rlog.w(LOG_TAG, "No boot id, hashes will change on process restart");
+            return null;
+        }
+    }
+
+    /** @return the number of records appended over the lifetime of the file. */
+    @VisibleForTesting
+    long getSequence() {
+        getBuffer();
+        return mSequence;
+    }
+
+    /** Record the service state at the end of a poll. */
+    public void logServiceState(@NonNull ServiceState ss) {
+        int flags = (ss.getVoiceRoaming() ? FLAG_VOICE_ROAMING : 0)
+                | (ss.getDataRoaming() ? FLAG_DATA_ROAMING : 0)
+                | (ss.isEmergencyOnly() ? FLAG_EMERGENCY_ONLY : 0);
+        long networkTypes = ((long) ss.getVoiceNetworkType() << 32)
+                | (ss.getDataNetworkType() & 0xFFFFFFFFL);
+        append(TYPE_SERVICE_STATE, flags, ss.getState(), ss.getDataRegistrationState(),
+                packPlmn(ss.getOperatorNumeric()), networkTypes);
+    }
+
+    /** Record a registration failure reported by the modem. */
+    public void logRegistrationFailure(@NonNull RegistrationFailedEvent event) {
+        append(TYPE_REGISTRATION_FAILURE, event.domain, event.causeCode,
+                event.additionalCauseCode, packPlmn(event.chosenPlmn),
+                redact(getCellId(event.cellIdentity)));
+    }
+
+    /** Record a change of the serving cell. */
+    public void logCellChange(@Nullable CellIdentity cellIdentity) {
+        if (cellIdentity == null) {
+            append(TYPE_CELL_CHANGE, UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN);
+            return;
+        }
+        String plmn = cellIdentity.getPlmn();
+        append(TYPE_CELL_CHANGE, cellIdentity.getType(), cellIdentity.getChannelNumber(),
+                getAreaCode(cellIdentity), packPlmn(plmn), redact(getCellId(cellIdentity)));
+    }
+
+    private void append(byte type, int s0, int i1, int i2, int i3, long l4) {
+        MappedByteBuffer buffer = getBuffer();
+        if (buffer == null) return;
+        int offset = HEADER_SIZE + (int) (mSequence % mCapacity) * RECORD_SIZE;
+        // Read the wall clock for every record, it may have been set since the previous one.
+        buffer.putLong(offset + RECORD_TIME_OFFSET, System.currentTimeMillis());
+        buffer.put(offset + RECORD_TYPE_OFFSET, type);
+        buffer.put(offset + RECORD_FLAGS_OFFSET, mLogPii ? 0 : RECORD_FLAG_REDACTED);
+        buffer.putShort(offset + RECORD_S0_OFFSET, (short) s0);
+        buffer.putInt(offset + RECORD_I1_OFFSET, i1);
+        buffer.putInt(offset + RECORD_I2_OFFSET, i2);
+        buffer.putInt(offset + RECORD_I3_OFFSET, i3);
+        buffer.putLong(offset + RECORD_L4_OFFSET, l4);
+        // Publish the record only once it is complete.
+        mSequence++;
+        buffer.putLong(HEADER_SEQUENCE_OFFSET, mSequence);
+    }
+
+    /** Print the most recent records. */
+    public void dump(@NonNull PrintWriter pw) {
+        MappedByteBuffer buffer = getBuffer();
+        if (buffer == null) {
+            pw.println("Registration history: unavailable");
+            return;
+        }
+        pw.println("Registration history (" + mSequence + " records, capacity=" + mCapacity
+                + "):");
+        decode(buffer.duplicate(), DUMP_RECORD_COUNT, mLogPii, pw);
+    }
+
+    /**
+     * Print the records of a registration history file, oldest first.
+     *
+     * @param buffer the content of the file
+     * @param maxRecords the number of most recent records to print at most
+     * @param pw where to print
+     */
+    public static void decode(@NonNull ByteBuffer buffer, int maxRecords,
+            @NonNull PrintWriter pw) {
+        decode(buffer, maxRecords, isPiiLoggable(), pw);
+    }
+
+    @VisibleForTesting
+    static void decode(@NonNull ByteBuffer buffer, int maxRecords, boolean logPii,
+            @NonNull PrintWriter pw) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(HEADER_MAGIC_OFFSET) != MAGIC
+                || buffer.getInt(HEADER_VERSION_OFFSET) != VERSION
+                || buffer.getInt(HEADER_RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+            pw.println("  not a registration history file");
+            return;
+        }
+        int capacity = buffer.getInt(HEADER_CAPACITY_OFFSET);
+        long sequence = buffer.getLong(HEADER_SEQUENCE_OFFSET);
+        if (capacity <= 0 || sequence < 0
+                || buffer.capacity() < HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+            pw.println("  truncated registration history file");
+            return;
+        }
+        long first = Math.max(0, sequence - Math.min(capacity, maxRecords));
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        for (long seq = first; seq < sequence; seq++) {
+            int offset = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+            pw.println("  " + formatRecord(buffer, offset, format, logPii));
+        }
+    }
+
+    private static String formatRecord(ByteBuffer buffer, int offset, SimpleDateFormat format,
+            boolean logPii) {
+        long timeMillis = buffer.getLong(offset + RECORD_TIME_OFFSET);
+        byte type = buffer.get(offset + RECORD_TYPE_OFFSET);
+        boolean redacted = (buffer.get(offset + RECORD_FLAGS_OFFSET) & RECORD_FLAG_REDACTED) != 0;
+        int s0 = buffer.getShort(offset + RECORD_S0_OFFSET);
+        int i1 = buffer.getInt(offset + RECORD_I1_OFFSET);
+        int i2 = buffer.getInt(offset + RECORD_I2_OFFSET);
+        int i3 = buffer.getInt(offset + RECORD_I3_OFFSET);
+        long l4 = buffer.getLong(offset + RECORD_L4_OFFSET);
+
+        StringBuilder sb = new StringBuilder()
+                .append(format.format(new Date(timeMillis)))
+                .append(' ');
+        switch (type) {
+            case TYPE_SERVICE_STATE:
+                sb.append("SERVICE_STATE voice=").append(ServiceState.rilServiceStateToString(i1))
+                        .append(" data=").append(ServiceState.rilServiceStateToString(i2))
+                        .append(" plmn=").append(formatPlmn(i3, redacted, logPii))
+                        .append(" voiceRat=").append((int) (l4 >> 32))
+                        .append(" dataRat=").append((int) l4)
+                        .append(" voiceRoaming=").append((s0 & FLAG_VOICE_ROAMING) != 0)
+                        .append(" dataRoaming=").append((s0 & FLAG_DATA_ROAMING) != 0)
+                        .append(" emergencyOnly=").append((s0 & FLAG_EMERGENCY_ONLY) != 0);
+                break;
+            case TYPE_REGISTRATION_FAILURE:
+                sb.append("REGISTRATION_FAILURE domain=").append(s0)
+                        .append(" cause=").append(i1)
+                        .append(" additionalCause=").append(i2)
+                        .append(" plmn=").append(formatPlmn(i3, redacted, logPii))
+                        .append(" cellId=").append(formatCellId(l4, redacted, logPii));
+                break;
+            case TYPE_CELL_CHANGE:
+                sb.append("CELL_CHANGE type=").append(s0)
+                        .append(" channel=").append(i1)
+                        .append(" area=").append(i2)
+                        .append(" plmn=").append(formatPlmn(i3, redacted, logPii))
+                        .append(" cellId=").append(formatCellId(l4, redacted, logPii));
+                break;
+            default:
+                sb.append("UNKNOWN type=").append(type);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the PLMN packed by {@link MccTable#packMccMnc}, its hash if PII logging is
+     *     disabled, or {@link #UNKNOWN}.
+     */
+    private int packPlmn(@Nullable String plmn) {
+        if (plmn == null || plmn.length() < 5) return UNKNOWN;
+        if (!mLogPii) return hash(plmn);
+        return MccTable.packMccMnc(plmn.substring(0, 3), plmn.substring(3));
+    }
+
+    /** @return the cell id, or its hash if PII logging is disabled. */
+    private long redact(long cellId) {
+        if (mLogPii || cellId == UNKNOWN) return cellId;
+        return hash(cellId);
+    }
+
+    /** @return a keyed hash of the value, never {@link #UNKNOWN}. */
+    private int hash(@NonNull Object value) {
+        // The record is dropped if the file cannot be mapped.
+        if (getBuffer() == null) return 0;
+        byte[] digest = mMac.doFinal(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        int hash = ByteBuffer.wrap(digest).getInt();
+        return hash == UNKNOWN ? 0 : hash;
+    }
+
+    private static boolean isPiiLoggable() {
+        return Rlog.isLoggable(LOG_TAG, Log.VERBOSE);
+    }
+
+    private static String formatPlmn(int plmn, boolean redacted, boolean logPii) {
+        if (plmn == UNKNOWN) return "unknown";
+        if (redacted) return formatHash(plmn);
+        return Rlog.pii(logPii, unpackPlmn(plmn));
+    }
+
+    private static String formatCellId(long cellId, boolean redacted, boolean logPii) {
+        if (cellId == UNKNOWN) return String.valueOf(UNKNOWN);
+        if (redacted) return formatHash((int) cellId);
+        return Rlog.pii(logPii, cellId);
+    }
+
+    private static String formatHash(int hash) {
+        return String.format(Locale.US, "[#%08x]", hash);
+    }
+
+    private static String unpackPlmn(int packed) {
+        if (packed < 0) return "unknown";
+        int mncLength = packed & 3;
+        int mccMnc = packed >> 2;
+        return String.format(Locale.US, "%03d%0" + mncLength + "d", mccMnc / 1000,
+                mccMnc % 1000);
+    }
+
+    private static long getCellId(@Nullable CellIdentity ci) {
+        if (ci instanceof CellIdentityNr) return ((CellIdentityNr) ci).getNci();
+        if (ci instanceof CellIdentityLte) return ((CellIdentityLte) ci).getCi();
+        if (ci instanceof CellIdentityWcdma) return ((CellIdentityWcdma) ci).getCid();
+        if (ci instanceof CellIdentityTdscdma) return ((CellIdentityTdscdma) ci).getCid();
+        if (ci instanceof CellIdentityGsm) return ((CellIdentityGsm) ci).getCid();
+        if (ci instanceof CellIdentityCdma) return ((CellIdentityCdma) ci).getBasestationId();
+        return UNKNOWN;
+    }
+
+    private static int getAreaCode(@NonNull CellIdentity ci) {
+        if (ci instanceof CellIdentityNr) return ((CellIdentityNr) ci).getTac();
+        if (ci instanceof CellIdentityLte) return ((CellIdentityLte) ci).getTac();
+        if (ci instanceof CellIdentityWcdma) return ((CellIdentityWcdma) ci).getLac();
+        if (ci instanceof CellIdentityTdscdma) return ((CellIdentityTdscdma) ci).getLac();
+        if (ci instanceof CellIdentityGsm) return ((CellIdentityGsm) ci).getLac();
+        if (ci instanceof CellIdentityCdma) return ((CellIdentityCdma) ci).getNetworkId();
+        return UNKNOWN;
+    }
+}
@@ -77,6 +77,8 @@ import android.telephony.TelephonyManager;
 import android.telephony.VoiceSpecificRegistrationInfo;
 import android.telephony.ims.stub.ImsRegistrationImplBase;
 import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.EventLog;
 import android.util.LocalLog;
 import android.util.Pair;
@@ -84,6 +86,7 @@ import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 
 import com.android.internal.R;
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.cdma.CdmaSubscriptionSourceManager;
 import com.android.internal.telephony.cdma.EriInfo;
@@ -129,8 +132,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -183,8 +188,18 @@ public class ServiceStateTracker extends Handler {
     // this only impacts the behavior of one-shot requests (be they blocking or non-blocking).
     private static final long CELL_INFO_LIST_QUERY_TIMEOUT = 2000;
 
+    // Callers tracked in mCellInfoRequestStats; further callers are counted together.
+    private static final int MAX_CELL_INFO_REQUEST_CALLERS = 20;
+    private static final String OTHER_CELL_INFO_REQUEST_CALLERS = "other";
+
     private long mLastCellInfoReqTime;
     private List<CellInfo> mLastCellInfoList = null;
+    // Time at which mLastCellInfoList was received, either solicited or unsolicited
+    @GuardedBy("mPendingCellInfoRequests")
+    private long mLastCellInfoListTime;
+    // Per-caller cell info request counters, {requested, served from cache}.
+    @GuardedBy("mPendingCellInfoRequests")
+    private final Map<String, int[]> mCellInfoRequestStats = new ArrayMap<>();
     private List<PhysicalChannelConfig> mLastPhysicalChannelConfigList = null;
 
     private final Set<Integer> mRadioPowerOffReasons = new HashSet();
@@ -198,6 +213,25 @@ public class ServiceStateTracker extends Handler {
      */
     @VisibleForTesting
     public int[] mPollingContext;
+    /**
+     * Set when a poll is requested while a poll round is still in flight. Instead of issuing
+     * another round of RIL requests, the in-flight round is discarded once all of its responses
+     * have arrived and a new round is started.
+     */
+    private boolean mPollStatePending;
+    private boolean mPendingPollModemTriggered;
+    /**
+     * A poll round in flight for longer than this is assumed to have lost a response, e.g.
+     * because the network registration service died. The round is then abandoned, or started
+     * over if a poll is pending, and a new poll starts a new round instead of waiting for it.
+     */
+    @VisibleForTesting
+    public static final long POLL_ROUND_TIMEOUT_MS = 20 * 1000;
+    /** The time the current poll round was started, from {@link SystemClock#elapsedRealtime}. */
+    private long mPollRoundStartTimeMs;
+    private int mPollStateRequestedCount;
+    private int mPollStateIssuedCount;
+    private int mPollStateDiscardedCount;
     @UnsupportedAppUsage
     private boolean mDesiredPowerState;
 
@@ -291,6 +325,8 @@ public class ServiceStateTracker extends Handler {
     // Telecom has un/registered a PhoneAccount that provides OTT voice calling capability, e.g.
     // wi-fi calling.
     protected static final int EVENT_TELECOM_VOICE_SERVICE_STATE_OVERRIDE_CHANGED = 65;
+    // Timeout event of a poll round that did not get all of its responses.
+    protected static final int EVENT_POLL_ROUND_TIMEOUT                = 66;
 
     /**
      * The current service state.
@@ -362,10 +398,35 @@ public class ServiceStateTracker extends Handler {
     private final LocalLog mRatLog = new LocalLog(16);
     private final LocalLog mRadioPowerLog = new LocalLog(16);
     private final LocalLog mCdnrLogs = new LocalLog(64);
+    // Service state, cell and registration failure history that survives process restarts
+    private final RegistrationHistoryLog mRegistrationHistoryLog;
 
     private Pattern mOperatorNameStringPattern;
+    // Max number of operator names whose filtered result is memoized
+    private static final int OPERATOR_NAME_FILTER_CACHE_SIZE = 16;
+    // Filtered operator names by raw operator name for mOperatorNameStringPattern, least recently
+    // used first. Cleared whenever the pattern changes.
+    @GuardedBy("mFilteredOperatorNames")
+    private final Map<String, String> mFilteredOperatorNames =
+            new LinkedHashMap<>(OPERATOR_NAME_FILTER_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > OPERATOR_NAME_FILTER_CACHE_SIZE;
+                }
+            };
+    // Number of operator names served from mFilteredOperatorNames
+    @GuardedBy("mFilteredOperatorNames")
+    private int mFilteredOperatorNameHitCount;
     private PersistableBundle mCarrierConfig;
 
+    // Roaming overrides from mCarrierConfig, recompiled whenever mCarrierConfig changes.
+    private PlmnPrefixTrie mRoamingOperatorPrefixes;
+    private PlmnPrefixTrie mNonRoamingOperatorPrefixes;
+    private Set<String> mGsmRoamingNetworks;
+    private Set<String> mGsmNonRoamingNetworks;
+    private Set<String> mCdmaRoamingNetworks;
+    private Set<String> mCdmaNonRoamingNetworks;
+
     private class SstSubscriptionsChangedListener extends OnSubscriptionsChangedListener {
 
         /**
@@ -664,6 +725,7 @@ public class ServiceStateTracker extends Handler {
         mRestrictedState = new RestrictedState();
 
         mCarrierConfig = getCarrierConfig();
+        compileRoamingOverrides(mCarrierConfig);
         CarrierConfigManager ccm = mPhone.getContext().getSystemService(CarrierConfigManager.class);
         // Callback which directly handle config change should be executed in handler thread
         if (ccm != null) {
@@ -683,6 +745,8 @@ public class ServiceStateTracker extends Handler {
         mLocaleTracker = TelephonyComponentFactory.getInstance()
                 .inject(LocaleTracker.class.getName())
                 .makeLocaleTracker(mPhone, mNitzState, getLooper(), featureFlags);
+        mRegistrationHistoryLog = RegistrationHistoryLog.open(phone.getContext(),
+                phone.getPhoneId());
 
         mCi.registerForImsNetworkStateChanged(this, EVENT_IMS_STATE_CHANGED, null);
         mCi.registerForRadioStateChanged(this, EVENT_RADIO_STATE_CHANGED, null);
@@ -798,7 +862,10 @@ public class ServiceStateTracker extends Handler {
         mNewSS = new ServiceState();
         mNewSS.setOutOfService(false);
         mLastCellInfoReqTime = 0;
-        mLastCellInfoList = null;
+        synchronized (mPendingCellInfoRequests) {
+            mLastCellInfoList = null;
+            mLastCellInfoListTime = 0;
+        }
         mStartedGprsRegCheck = false;
         mReportedGprsNoReg = false;
         mMdn = null;
@@ -1263,7 +1330,10 @@ public class ServiceStateTracker extends Handler {
                     } else {
                         cellInfo = (List<CellInfo>) ar.result;
                         updateOperatorNameForCellInfo(cellInfo);
-                        mLastCellInfoList = cellInfo;
+                        synchronized (mPendingCellInfoRequests) {
+                            mLastCellInfoList = cellInfo;
+                            mLastCellInfoListTime = SystemClock.elapsedRealtime();
+                        }
                         mPhone.notifyCellInfo(cellInfo);
                         if (VDBG) {
                             log("CELL_INFO_LIST: size=" + cellInfo.size() + " list=" + cellInfo);
@@ -1743,6 +1813,19 @@ public class ServiceStateTracker extends Handler {
                 pollStateInternal(false);
                 break;
 
+            case EVENT_POLL_ROUND_TIMEOUT:
+                if (mPollingContext != null && mPollingContext[0] > 0) {
+                    loge("pollState: round timed out waiting for " + mPollingContext[0]
+                            + " responses, pending=" + mPollStatePending);
+                    if (mPollStatePending) {
+                        mPollStateDiscardedCount++;
+                        startPollStateRound(mPendingPollModemTriggered);
+                    } else {
+                        cancelPollState();
+                    }
+                }
+                break;
+
             case EVENT_POWER_OFF_RADIO_IMS_DEREG_TIMEOUT: {
                 if (DBG) log("EVENT_POWER_OFF_RADIO_IMS_DEREG_TIMEOUT triggered");
                 powerOffRadioSafely();
@@ -1786,10 +1869,11 @@ public class ServiceStateTracker extends Handler {
     }
 
     private static int[] getBandwidthsFromConfigs(List<PhysicalChannelConfig> list) {
-        return list.stream()
-                .map(PhysicalChannelConfig::getCellBandwidthDownlinkKhz)
-                .mapToInt(Integer::intValue)
-                .toArray();
+        int[] bandwidths = new int[list.size()];
+        for (int i = 0; i < bandwidths.length; i++) {
+            bandwidths[i] = list.get(i).getCellBandwidthDownlinkKhz();
+        }
+        return bandwidths;
     }
 
     protected boolean isSidsAllZeros() {
@@ -1989,6 +2073,17 @@ public class ServiceStateTracker extends Handler {
 
         mPollingContext[0]--;
 
+        if (mPollingContext[0] == 0) {
+            removeMessages(EVENT_POLL_ROUND_TIMEOUT);
+        }
+
+        if (mPollingContext[0] == 0 && mPollStatePending) {
+            // The results of this round may be stale, start over with the pending poll.
+            mPollStateDiscardedCount++;
+            startPollStateRound(mPendingPollModemTriggered);
+            return;
+        }
+
         if (mPollingContext[0] == 0) {
             mNewSS.setEmergencyOnly(mEmergencyOnly);
             combinePsRegistrationStates(mNewSS);
@@ -2689,22 +2784,25 @@ public class ServiceStateTracker extends Handler {
              */
             boolean roaming = (mGsmVoiceRoaming || mGsmDataRoaming);
 
-            if (roaming && !isOperatorConsideredRoaming(mNewSS)
-                    && (isSameNamedOperators(mNewSS) || isOperatorConsideredNonRoaming(mNewSS))) {
-                log("updateRoamingState: resource override set non roaming.isSameNamedOperators="
-                        + isSameNamedOperators(mNewSS) + ",isOperatorConsideredNonRoaming="
-                        + isOperatorConsideredNonRoaming(mNewSS));
-                roaming = false;
+            if (roaming && !isOperatorConsideredRoaming(mNewSS)) {
+                boolean sameNamedOperators = isSameNamedOperators(mNewSS);
+                boolean consideredNonRoaming = isOperatorConsideredNonRoaming(mNewSS);
+                if (sameNamedOperators || consideredNonRoaming) {
+                    log("updateRoamingState: resource override set non roaming"
+                            + ".isSameNamedOperators=" + sameNamedOperators
+                            + ",isOperatorConsideredNonRoaming=" + consideredNonRoaming);
+                    roaming = false;
+                }
             }
 
             if (alwaysOnHomeNetwork(mCarrierConfig)) {
                 log("updateRoamingState: carrier config override always on home network");
                 roaming = false;
-            } else if (isNonRoamingInGsmNetwork(mCarrierConfig, mNewSS.getOperatorNumeric())) {
+            } else if (mGsmNonRoamingNetworks.contains(mNewSS.getOperatorNumeric())) {
                 log("updateRoamingState: carrier config override set non roaming:"
                         + mNewSS.getOperatorNumeric());
                 roaming = false;
-            } else if (isRoamingInGsmNetwork(mCarrierConfig, mNewSS.getOperatorNumeric())) {
+            } else if (mGsmRoamingNetworks.contains(mNewSS.getOperatorNumeric())) {
                 log("updateRoamingState: carrier config override set roaming:"
                         + mNewSS.getOperatorNumeric());
                 roaming = true;
@@ -2717,13 +2815,13 @@ public class ServiceStateTracker extends Handler {
             if (alwaysOnHomeNetwork(mCarrierConfig)) {
                 log("updateRoamingState: carrier config override always on home network");
                 setRoamingOff();
-            } else if (isNonRoamingInGsmNetwork(mCarrierConfig, mNewSS.getOperatorNumeric())
-                    || isNonRoamingInCdmaNetwork(mCarrierConfig, systemId)) {
+            } else if (mGsmNonRoamingNetworks.contains(mNewSS.getOperatorNumeric())
+                    || mCdmaNonRoamingNetworks.contains(systemId)) {
                 log("updateRoamingState: carrier config override set non-roaming:"
                         + mNewSS.getOperatorNumeric() + ", " + systemId);
                 setRoamingOff();
-            } else if (isRoamingInGsmNetwork(mCarrierConfig, mNewSS.getOperatorNumeric())
-                    || isRoamingInCdmaNetwork(mCarrierConfig, systemId)) {
+            } else if (mGsmRoamingNetworks.contains(mNewSS.getOperatorNumeric())
+                    || mCdmaRoamingNetworks.contains(systemId)) {
                 log("updateRoamingState: carrier config override set roaming:"
                         + mNewSS.getOperatorNumeric() + ", " + systemId);
                 setRoamingOn();
@@ -3329,7 +3427,46 @@ public class ServiceStateTracker extends Handler {
     }
 
     private void pollStateInternal(boolean modemTriggered) {
+        mPollStateRequestedCount++;
+        if (mPollingContext != null && mPollingContext[0] > 0
+                && SystemClock.elapsedRealtime() - mPollRoundStartTimeMs < POLL_ROUND_TIMEOUT_MS
+                && willIssuePollStateRequests(modemTriggered)) {
+            // A round is already in flight, mark it dirty rather than issuing the same requests
+            // again. Radio off/unavailable is still handled right away below.
+            log("pollState: round in flight, mark pending. modemTriggered=" + modemTriggered);
+            mPollStatePending = true;
+            mPendingPollModemTriggered |= modemTriggered;
+            return;
+        }
+        startPollStateRound(modemTriggered);
+    }
+
+    /**
+     * @return {@code true} if a poll with the given trigger sends requests to the radio in the
+     * current radio state, {@code false} if it completes synchronously.
+     */
+    private boolean willIssuePollStateRequests(boolean modemTriggered) {
+        switch (mCi.getRadioState()) {
+            case TelephonyManager.RADIO_POWER_UNAVAILABLE:
+                return false;
+            case TelephonyManager.RADIO_POWER_OFF:
+                return !mDeviceShuttingDown && (modemTriggered
+                        || ServiceState.RIL_RADIO_TECHNOLOGY_IWLAN
+                        == mSS.getRilDataRadioTechnology());
+            default:
+                return true;
+        }
+    }
+
+    private void startPollStateRound(boolean modemTriggered) {
+        if (mPollingContext != null && mPollingContext[0] > 0) {
+            log("pollState: abandon round waiting for " + mPollingContext[0] + " responses");
+        }
         mPollingContext = new int[1];
+        mPollRoundStartTimeMs = SystemClock.elapsedRealtime();
+        mPollStatePending = false;
+        mPendingPollModemTriggered = false;
+        removeMessages(EVENT_POLL_ROUND_TIMEOUT);
 
         log("pollState: modemTriggered=" + modemTriggered + ", radioState=" + mCi.getRadioState());
 
@@ -3351,6 +3488,7 @@ public class ServiceStateTracker extends Handler {
                 }
 
             default:
+                mPollStateIssuedCount++;
                 // Issue all poll-related commands at once then count down the responses, which
                 // are allowed to arrive out-of-order
                 mPollingContext[0]++;
@@ -3380,6 +3518,7 @@ public class ServiceStateTracker extends Handler {
                     mCi.getNetworkSelectionMode(obtainMessage(
                             EVENT_POLL_STATE_NETWORK_SELECTION_MODE, mPollingContext));
                 }
+                sendEmptyMessageDelayed(EVENT_POLL_ROUND_TIMEOUT, POLL_ROUND_TIMEOUT_MS);
                 break;
         }
     }
@@ -3726,6 +3865,7 @@ public class ServiceStateTracker extends Handler {
         }
 
         if (hasChanged) {
+            mRegistrationHistoryLog.logServiceState(mSS);
             tm.setNetworkOperatorNameForPhone(mPhone.getPhoneId(), mSS.getOperatorAlpha());
             String operatorNumeric = mSS.getOperatorNumeric();
 
@@ -3892,6 +4032,7 @@ public class ServiceStateTracker extends Handler {
         }
 
         if (hasLocationChanged) {
+            mRegistrationHistoryLog.logCellChange(mCellIdentity);
             mPhone.notifyLocationChanged(getCellIdentity());
         }
 
@@ -4202,9 +4343,10 @@ public class ServiceStateTracker extends Handler {
 
         // NOTE: in case of RUIM we should completely ignore the ERI data file and
         // mOperatorAlphaLong is set from RIL_REQUEST_OPERATOR response 0 (alpha ONS)
-        String onsl = s.getOperatorAlphaLong();
-        String onss = s.getOperatorAlphaShort();
+        return isSameOperatorName(spn, s.getOperatorAlphaLong(), s.getOperatorAlphaShort());
+    }
 
+    private static boolean isSameOperatorName(String spn, String onsl, String onss) {
         boolean equalsOnsl = !TextUtils.isEmpty(spn) && spn.equalsIgnoreCase(onsl);
         boolean equalsOnss = !TextUtils.isEmpty(spn) && spn.equalsIgnoreCase(onss);
 
@@ -4219,20 +4361,23 @@ public class ServiceStateTracker extends Handler {
      * @return true if same operator
      */
     private boolean isSameNamedOperators(ServiceState s) {
-        return currentMccEqualsSimMcc(s) && isSameOperatorNameFromSimAndSS(s);
+        TelephonyManager tm = (TelephonyManager) mPhone.getContext().getSystemService(
+                Context.TELEPHONY_SERVICE);
+        String simNumeric = tm.getSimOperatorNumericForPhone(getPhoneId());
+        String spn = tm.getSimOperatorNameForPhone(getPhoneId());
+        String operatorNumeric = s.getOperatorNumeric();
+        return currentMccEqualsSimMcc(simNumeric, operatorNumeric)
+                && isSameOperatorName(spn, s.getOperatorAlphaLong(), s.getOperatorAlphaShort());
     }
 
     /**
      * Compare SIM MCC with Operator MCC
      *
-     * @param s ServiceState hold current ons
+     * @param simNumeric the SIM operator numeric
+     * @param operatorNumeric the serving operator numeric
      * @return true if both are same
      */
-    private boolean currentMccEqualsSimMcc(ServiceState s) {
-        String simNumeric = ((TelephonyManager) mPhone.getContext().
-                getSystemService(Context.TELEPHONY_SERVICE)).
-                getSimOperatorNumericForPhone(getPhoneId());
-        String operatorNumeric = s.getOperatorNumeric();
+    private static boolean currentMccEqualsSimMcc(String simNumeric, String operatorNumeric) {
         boolean equalsMcc = true;
 
         try {
@@ -4255,37 +4400,36 @@ public class ServiceStateTracker extends Handler {
      * @return false for roaming state set
      */
     private boolean isOperatorConsideredNonRoaming(ServiceState s) {
-        String operatorNumeric = s.getOperatorNumeric();
-
-        String[] numericArray = mCarrierConfig.getStringArray(
-                CarrierConfigManager.KEY_NON_ROAMING_OPERATOR_STRING_ARRAY);
-
-        if (ArrayUtils.isEmpty(numericArray) || operatorNumeric == null) {
-            return false;
-        }
-
-        for (String numeric : numericArray) {
-            if (!TextUtils.isEmpty(numeric) && operatorNumeric.startsWith(numeric)) {
-                return true;
-            }
-        }
-        return false;
+        return mNonRoamingOperatorPrefixes.matchesPrefixOf(s.getOperatorNumeric());
     }
 
     private boolean isOperatorConsideredRoaming(ServiceState s) {
-        String operatorNumeric = s.getOperatorNumeric();
-        String[] numericArray = mCarrierConfig.getStringArray(
-                CarrierConfigManager.KEY_ROAMING_OPERATOR_STRING_ARRAY);
-        if (ArrayUtils.isEmpty(numericArray) || operatorNumeric == null) {
-            return false;
-        }
+        return mRoamingOperatorPrefixes.matchesPrefixOf(s.getOperatorNumeric());
+    }
 
-        for (String numeric : numericArray) {
-            if (!TextUtils.isEmpty(numeric) && operatorNumeric.startsWith(numeric)) {
-                return true;
-            }
-        }
-        return false;
+    /**
+     * Compile the roaming and non-roaming network lists of the given carrier config into the
+     * lookup structures used by {@link #updateRoamingState()}, so that they are not re-read and
+     * scanned from the bundle on every poll.
+     */
+    private void compileRoamingOverrides(@NonNull BaseBundle config) {
+        mRoamingOperatorPrefixes = new PlmnPrefixTrie(config.getStringArray(
+                CarrierConfigManager.KEY_ROAMING_OPERATOR_STRING_ARRAY));
+        mNonRoamingOperatorPrefixes = new PlmnPrefixTrie(config.getStringArray(
+                CarrierConfigManager.KEY_NON_ROAMING_OPERATOR_STRING_ARRAY));
+        mGsmRoamingNetworks = toNetworkSet(config.getStringArray(
+                CarrierConfigManager.KEY_GSM_ROAMING_NETWORKS_STRING_ARRAY));
+        mGsmNonRoamingNetworks = toNetworkSet(config.getStringArray(
+                CarrierConfigManager.KEY_GSM_NONROAMING_NETWORKS_STRING_ARRAY));
+        mCdmaRoamingNetworks = toNetworkSet(config.getStringArray(
+                CarrierConfigManager.KEY_CDMA_ROAMING_NETWORKS_STRING_ARRAY));
+        mCdmaNonRoamingNetworks = toNetworkSet(config.getStringArray(
+                CarrierConfigManager.KEY_CDMA_NONROAMING_NETWORKS_STRING_ARRAY));
+    }
+
+    private static Set<String> toNetworkSet(@Nullable String[] networks) {
+        if (ArrayUtils.isEmpty(networks)) return Collections.emptySet();
+        return new ArraySet<>(Arrays.asList(networks));
     }
 
     /**
@@ -5046,6 +5190,7 @@ public class ServiceStateTracker extends Handler {
 
         mCarrierConfig = getCarrierConfig();
         log("CarrierConfigChange " + mCarrierConfig);
+        compileRoamingOverrides(mCarrierConfig);
 
         // Load the ERI based on carrier config. Carrier might have their specific ERI.
         if (mEriManager != null) {
@@ -5082,6 +5227,28 @@ public class ServiceStateTracker extends Handler {
     protected void cancelPollState() {
         // This will effectively cancel the rest of the poll requests.
         mPollingContext = new int[1];
+        mPollStatePending = false;
+        mPendingPollModemTriggered = false;
+        removeMessages(EVENT_POLL_ROUND_TIMEOUT);
+    }
+
+    /**
+     * @return the time the current poll round was started, from
+     * {@link SystemClock#elapsedRealtime}.
+     */
+    @VisibleForTesting
+    public long getPollRoundStartTimeMs() {
+        return mPollRoundStartTimeMs;
+    }
+
+    /**
+     * Set the time the current poll round was started.
+     *
+     * @param pollRoundStartTimeMs the time, from {@link SystemClock#elapsedRealtime}.
+     */
+    @VisibleForTesting
+    public void setPollRoundStartTimeMs(long pollRoundStartTimeMs) {
+        mPollRoundStartTimeMs = pollRoundStartTimeMs;
     }
 
     /**
@@ -5143,7 +5310,23 @@ public class ServiceStateTracker extends Handler {
      *     cached locally for future lookup.
      */
     public void requestAllCellInfo(WorkSource workSource, Message rspMsg) {
-        if (VDBG) log("SST.requestAllCellInfo(): E");
+        requestAllCellInfo(workSource, 0, rspMsg);
+    }
+
+    /**
+     * Request CellInfo that is no older than the given age.
+     *
+     * If the cached List<CellInfo> was received within {@code maxAgeMs}, it is returned without
+     * querying the modem. Otherwise this behaves like {@link #requestAllCellInfo(WorkSource,
+     * Message)}: callers arriving while a request is in flight share its response, and back to
+     * back requests within the minimum interval get the latest cached list.
+     *
+     * @param workSource of the caller for power accounting
+     * @param maxAgeMs the maximum acceptable age of the cached CellInfo, in milliseconds
+     * @param rspMsg an optional response message to get the response to the CellInfo request
+     */
+    public void requestAllCellInfo(WorkSource workSource, long maxAgeMs, Message rspMsg) {
+        if (VDBG) log("SST.requestAllCellInfo(): E maxAgeMs=" + maxAgeMs);
         if (mCi.getRilVersion() < 8) {
             AsyncResult.forMessage(rspMsg);
             rspMsg.sendToTarget();
@@ -5153,14 +5336,33 @@ public class ServiceStateTracker extends Handler {
         synchronized (mPendingCellInfoRequests) {
             // If there are pending requests, then we already have a request active, so add this
             // request to the response queue without initiating a new request.
+            String caller = getCellInfoCallerName(workSource, rspMsg);
+            if (!mCellInfoRequestStats.containsKey(caller)
+                    && mCellInfoRequestStats.size() >= MAX_CELL_INFO_REQUEST_CALLERS) {
+                caller = OTHER_CELL_INFO_REQUEST_CALLERS;
+            }
+            final int[] stats = mCellInfoRequestStats.computeIfAbsent(caller, k -> new int[2]);
+            stats[0]++;
             if (mIsPendingCellInfoRequest) {
                 if (rspMsg != null) mPendingCellInfoRequests.add(rspMsg);
                 return;
             }
+            final long curTime = SystemClock.elapsedRealtime();
+            // Serve from the cache if it is fresh enough for this caller.
+            if (mLastCellInfoList != null && maxAgeMs > 0
+                    && (curTime - mLastCellInfoListTime) <= maxAgeMs) {
+                stats[1]++;
+                if (rspMsg != null) {
+                    if (DBG) log("SST.requestAllCellInfo(): return cached, within max age");
+                    AsyncResult.forMessage(rspMsg, mLastCellInfoList, null);
+                    rspMsg.sendToTarget();
+                }
+                return;
+            }
             // Check to see whether the elapsed time is sufficient for a new request; if not, then
             // return the result of the last request (if expected).
-            final long curTime = SystemClock.elapsedRealtime();
             if ((curTime - mLastCellInfoReqTime) < mCellInfoMinIntervalMs) {
+                stats[1]++;
                 if (rspMsg != null) {
                     if (DBG) log("SST.requestAllCellInfo(): return last, back to back calls");
                     AsyncResult.forMessage(rspMsg, mLastCellInfoList, null);
@@ -5185,6 +5387,16 @@ public class ServiceStateTracker extends Handler {
         }
     }
 
+    private static String getCellInfoCallerName(WorkSource workSource, Message rspMsg) {
+        if (workSource != null && workSource.size() > 0 && workSource.getPackageName(0) != null) {
+            return workSource.getPackageName(0);
+        }
+        if (rspMsg != null && rspMsg.getTarget() != null) {
+            return rspMsg.getTarget().getClass().getSimpleName();
+        }
+        return "unknown";
+    }
+
     /**
      * Registration point for subscription info ready
      * @param h handler to notify
@@ -5264,11 +5476,27 @@ public class ServiceStateTracker extends Handler {
         pw.println(" mVoiceCapable=" + mVoiceCapable);
         pw.println(" mRestrictedState=" + mRestrictedState);
         pw.println(" mPollingContext=" + Arrays.toString(mPollingContext));
+        pw.println(" mPollStatePending=" + mPollStatePending
+                + " requested=" + mPollStateRequestedCount
+                + " issued=" + mPollStateIssuedCount
+                + " discarded=" + mPollStateDiscardedCount);
+        synchronized (mFilteredOperatorNames) {
+            pw.println(" mFilteredOperatorNames.size=" + mFilteredOperatorNames.size()
+                    + " hits=" + mFilteredOperatorNameHitCount);
+        }
         pw.println(" mDesiredPowerState=" + mDesiredPowerState);
         pw.println(" mRestrictedState=" + mRestrictedState);
         pw.println(" mPendingRadioPowerOffAfterDataOff=" + mPendingRadioPowerOffAfterDataOff);
         pw.println(" mCellIdentity=" + Rlog.pii(VDBG, mCellIdentity));
         pw.println(" mLastCellInfoReqTime=" + mLastCellInfoReqTime);
+        synchronized (mPendingCellInfoRequests) {
+            pw.println(" mLastCellInfoListTime=" + mLastCellInfoListTime);
+            pw.println(" Cell info requests (requested/served from cache):");
+            for (Map.Entry<String, int[]> entry : mCellInfoRequestStats.entrySet()) {
+                pw.println("  " + entry.getKey() + ": " + entry.getValue()[0] + "/"
+                        + entry.getValue()[1]);
+            }
+        }
         dumpCellInfoList(pw);
         pw.flush();
         pw.println(" mAllowedNetworkTypes=" + mAllowedNetworkTypes);
@@ -5355,11 +5583,24 @@ public class ServiceStateTracker extends Handler {
         mRadioPowerLog.dump(fd, ipw, args);
         ipw.decreaseIndent();
 
+        ipw.increaseIndent();
+        mRegistrationHistoryLog.dump(ipw);
+        ipw.decreaseIndent();
+
         mNitzState.dumpLogs(fd, ipw, args);
 
         ipw.flush();
     }
 
+    /**
+     * Record a registration failure reported by the modem in the registration history.
+     *
+     * @param event the registration failure
+     */
+    public void logRegistrationFailure(@NonNull RegistrationFailedEvent event) {
+        mRegistrationHistoryLog.logRegistrationFailure(event);
+    }
+
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
     public boolean isImsRegistered() {
         return mImsRegistered;
@@ -5596,42 +5837,6 @@ public class ServiceStateTracker extends Handler {
         return b.getBoolean(CarrierConfigManager.KEY_FORCE_HOME_NETWORK_BOOL);
     }
 
-    /**
-     * Check if the network identifier has membership in the set of
-     * network identifiers stored in the carrier config bundle.
-     *
-     * @param b carrier config bundle obtained from CarrierConfigManager
-     * @param network The network identifier to check network existence in bundle
-     * @param key The key to index into the bundle presenting a string array of
-     *            networks to check membership
-     * @return true if network has membership in bundle networks, false otherwise
-     * @see CarrierConfigManager
-     */
-    private boolean isInNetwork(BaseBundle b, String network, String key) {
-        String[] networks = b.getStringArray(key);
-
-        if (networks != null && Arrays.asList(networks).contains(network)) {
-            return true;
-        }
-        return false;
-    }
-
-    protected final boolean isRoamingInGsmNetwork(BaseBundle b, String network) {
-        return isInNetwork(b, network, CarrierConfigManager.KEY_GSM_ROAMING_NETWORKS_STRING_ARRAY);
-    }
-
-    protected final boolean isNonRoamingInGsmNetwork(BaseBundle b, String network) {
-        return isInNetwork(b, network, CarrierConfigManager.KEY_GSM_NONROAMING_NETWORKS_STRING_ARRAY);
-    }
-
-    protected final boolean isRoamingInCdmaNetwork(BaseBundle b, String network) {
-        return isInNetwork(b, network, CarrierConfigManager.KEY_CDMA_ROAMING_NETWORKS_STRING_ARRAY);
-    }
-
-    protected final boolean isNonRoamingInCdmaNetwork(BaseBundle b, String network) {
-        return isInNetwork(b, network, CarrierConfigManager.KEY_CDMA_NONROAMING_NETWORKS_STRING_ARRAY);
-    }
-
     /** Check if the device is shutting down. */
     public boolean isDeviceShuttingDown() {
         return mDeviceShuttingDown;
@@ -5695,7 +5900,14 @@ public class ServiceStateTracker extends Handler {
         String operatorNamePattern = config.getString(
                 CarrierConfigManager.KEY_OPERATOR_NAME_FILTER_PATTERN_STRING);
         if (!TextUtils.isEmpty(operatorNamePattern)) {
+            if (mOperatorNameStringPattern != null
+                    && operatorNamePattern.equals(mOperatorNameStringPattern.pattern())) {
+                return;
+            }
             mOperatorNameStringPattern = Pattern.compile(operatorNamePattern);
+            synchronized (mFilteredOperatorNames) {
+                mFilteredOperatorNames.clear();
+            }
             if (DBG) {
                 log("mOperatorNameStringPattern: " + mOperatorNameStringPattern.toString());
             }
@@ -5757,18 +5969,45 @@ public class ServiceStateTracker extends Handler {
      * @return An operator name.
      */
     public String filterOperatorNameByPattern(String operatorName) {
-        if (mOperatorNameStringPattern == null || TextUtils.isEmpty(operatorName)) {
+        final Pattern pattern = mOperatorNameStringPattern;
+        if (pattern == null || TextUtils.isEmpty(operatorName)) {
             return operatorName;
         }
-        Matcher matcher = mOperatorNameStringPattern.matcher(operatorName);
+        synchronized (mFilteredOperatorNames) {
+            String filtered = mFilteredOperatorNames.get(operatorName);
+            if (filtered != null) {
+                mFilteredOperatorNameHitCount++;
+                return filtered;
+            }
+        }
+        String filtered = operatorName;
+        Matcher matcher = pattern.matcher(operatorName);
         if (matcher.find()) {
             if (matcher.groupCount() > 0) {
-                operatorName = matcher.group(1);
+                filtered = matcher.group(1);
             } else {
                 log("filterOperatorNameByPattern: pattern no group");
             }
         }
-        return operatorName;
+        if (filtered != null) {
+            synchronized (mFilteredOperatorNames) {
+                if (pattern == mOperatorNameStringPattern) {
+                    mFilteredOperatorNames.put(operatorName, filtered);
+                }
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * @return the number of operator names whose filtered name was served from the memoized
+     * results.
+     */
+    @VisibleForTesting
+    public int getFilteredOperatorNameHitCount() {
+        synchronized (mFilteredOperatorNames) {
+            return mFilteredOperatorNameHitCount;
+        }
     }
 
     @RilRadioTechnology
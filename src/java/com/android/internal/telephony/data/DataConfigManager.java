@@ -40,6 +40,7 @@ import android.telephony.TelephonyDisplayInfo;
 import android.telephony.TelephonyManager;
 import android.telephony.data.ApnSetting;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.IndentingPrintWriter;
 
@@ -63,7 +64,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -275,69 +275,130 @@ public class DataConfigManager extends Handler {
     private final FeatureFlags mFeatureFlags;
     @Nullable
     private final CarrierConfigManager mCarrierConfigManager;
-    @NonNull
-    private PersistableBundle mCarrierConfig = null;
-    @NonNull
-    private Resources mResources = null;
-
-    /** The network capability priority map */
-    @NonNull
-    private final Map<Integer, Integer> mNetworkCapabilityPriorityMap = new ConcurrentHashMap<>();
-    /** The data setup retry rules */
-    @NonNull
-    private final List<DataSetupRetryRule> mDataSetupRetryRules = new ArrayList<>();
-    /** The data handover retry rules */
-    @NonNull
-    private final List<DataHandoverRetryRule> mDataHandoverRetryRules = new ArrayList<>();
-    /** The metered APN types for home network */
-    @NonNull
-    @ApnType
-    private final Set<Integer> mMeteredApnTypes = new HashSet<>();
-    /** The metered APN types for roaming network */
-    @NonNull
-    @ApnType
-    private final Set<Integer> mRoamingMeteredApnTypes = new HashSet<>();
-    /** The network types that only support single data networks */
-    @NonNull
-    @NetworkType
-    private final List<Integer> mSingleDataNetworkTypeList = new ArrayList<>();
-    @NonNull
-    @NetCapability
-    private final Set<Integer> mCapabilitiesExemptFromSingleDataList = new HashSet<>();
-    /** The network types that support temporarily not metered */
-    @NonNull
-    @DataConfigNetworkType
-    private final Set<String> mUnmeteredNetworkTypes = new HashSet<>();
-    /** The network types that support temporarily not metered when roaming */
-    @NonNull
-    @DataConfigNetworkType
-    private final Set<String> mRoamingUnmeteredNetworkTypes = new HashSet<>();
-    /** A map of network types to the downlink and uplink bandwidth values for that network type */
-    @NonNull
-    @DataConfigNetworkType
-    private final Map<String, DataNetwork.NetworkBandwidth> mBandwidthMap =
-            new ConcurrentHashMap<>();
-    /** A map of network types to the TCP buffer sizes for that network type */
-    @NonNull
-    @DataConfigNetworkType
-    private final Map<String, String> mTcpBufferSizeMap = new ConcurrentHashMap<>();
-    /** Rules for handover between IWLAN and cellular network. */
-    @NonNull
-    private final List<HandoverRule> mHandoverRuleList = new ArrayList<>();
-    /** {@code True} keep IMS network in case of moving to non VOPS area; {@code false} otherwise.*/
-    private boolean mShouldKeepNetworkUpInNonVops = false;
-    /** The set of network types that enable VOPS even in non VOPS area. */
-    @NonNull
-    @CarrierConfigManager.Ims.NetworkType
-    private final List<Integer> mEnabledVopsNetworkTypesInNonVops = new ArrayList<>();
     /**
-     * A map of network types to the estimated downlink values by signal strength 0 - 4 for that
-     * network type
+     * The values parsed from carrier config and resource overlay. A new instance is built and
+     * published on every carrier config update, so readers on any thread always observe a
+     * consistent set of values without locking.
      */
     @NonNull
-    @DataConfigNetworkType
-    private final Map<String, int[]> mAutoDataSwitchNetworkTypeSignalMap =
-            new ConcurrentHashMap<>();
+    private volatile CarrierConfigSnapshot mConfigSnapshot;
+
+    /**
+     * Immutable snapshot of the data config parsed from carrier config and resource overlay.
+     * All collections are unmodifiable and never changed after construction.
+     */
+    private final class CarrierConfigSnapshot {
+        /** The carrier config the values are parsed from */
+        @NonNull
+        final PersistableBundle carrierConfig;
+        /** The resources the values are parsed from */
+        @NonNull
+        final Resources resources;
+        /** The network capability priority map */
+        @NonNull
+        final Map<Integer, Integer> networkCapabilityPriorityMap;
+        /** The data setup retry rules */
+        @NonNull
+        final List<DataSetupRetryRule> dataSetupRetryRules;
+        /** The data handover retry rules */
+        @NonNull
+        final List<DataHandoverRetryRule> dataHandoverRetryRules;
+        /** The metered APN types for home network */
+        @NonNull
+        @ApnType
+        final Set<Integer> meteredApnTypes;
+        /** The metered APN types for roaming network */
+        @NonNull
+        @ApnType
+        final Set<Integer> roamingMeteredApnTypes;
+        /** The metered network capabilities for home network */
+        @NonNull
+        @NetCapability
+        final Set<Integer> meteredCapabilities;
+        /** The metered network capabilities for roaming network */
+        @NonNull
+        @NetCapability
+        final Set<Integer> roamingMeteredCapabilities;
+        /** The network types that only support single data networks */
+        @NonNull
+        @NetworkType
+        final List<Integer> singleDataNetworkTypeList;
+        @NonNull
+        @NetCapability
+        final Set<Integer> capabilitiesExemptFromSingleDataList;
+        /** The network types that support temporarily not metered */
+        @NonNull
+        @DataConfigNetworkType
+        final Set<String> unmeteredNetworkTypes;
+        /** The network types that support temporarily not metered when roaming */
+        @NonNull
+        @DataConfigNetworkType
+        final Set<String> roamingUnmeteredNetworkTypes;
+        /** A map of network types to the downlink and uplink bandwidth values */
+        @NonNull
+        @DataConfigNetworkType
+        final Map<String, DataNetwork.NetworkBandwidth> bandwidthMap;
+        /** A map of network types to the TCP buffer sizes for that network type */
+        @NonNull
+        @DataConfigNetworkType
+        final Map<String, String> tcpBufferSizeMap;
+        /** Rules for handover between IWLAN and cellular network. */
+        @NonNull
+        final List<HandoverRule> handoverRuleList;
+        /** {@code True} keep IMS network in case of moving to non VOPS area.*/
+        final boolean shouldKeepNetworkUpInNonVops;
+        /** The set of network types that enable VOPS even in non VOPS area. */
+        @NonNull
+        @CarrierConfigManager.Ims.NetworkType
+        final Set<Integer> enabledVopsNetworkTypesInNonVops;
+        /**
+         * A map of network types to the estimated downlink values by signal strength 0 - 4 for
+         * that network type
+         */
+        @NonNull
+        @DataConfigNetworkType
+        final Map<String, int[]> autoDataSwitchNetworkTypeSignalMap;
+
+        /**
+         * Constructor
+         *
+         * @param carrierConfig The carrier config to parse.
+         * @param resources The resources to parse.
+         */
+        CarrierConfigSnapshot(@NonNull PersistableBundle carrierConfig,
+                @NonNull Resources resources) {
+            this.carrierConfig = carrierConfig;
+            this.resources = resources;
+            networkCapabilityPriorityMap = parseNetworkCapabilityPriority(carrierConfig);
+            dataSetupRetryRules = parseDataSetupRetryRules(carrierConfig);
+            dataHandoverRetryRules = parseDataHandoverRetryRules(carrierConfig);
+            meteredApnTypes = parseApnTypes(carrierConfig.getStringArray(
+                    CarrierConfigManager.KEY_CARRIER_METERED_APN_TYPES_STRINGS));
+            roamingMeteredApnTypes = parseApnTypes(carrierConfig.getStringArray(
+                    CarrierConfigManager.KEY_CARRIER_METERED_ROAMING_APN_TYPES_STRINGS));
+            meteredCapabilities = apnTypesToMeteredCapabilities(meteredApnTypes);
+            roamingMeteredCapabilities = apnTypesToMeteredCapabilities(roamingMeteredApnTypes);
+            singleDataNetworkTypeList = Collections.unmodifiableList(toIntegerList(
+                    carrierConfig.getIntArray(
+                            CarrierConfigManager.KEY_ONLY_SINGLE_DC_ALLOWED_INT_ARRAY)));
+            capabilitiesExemptFromSingleDataList = Collections.unmodifiableSet(
+                    new HashSet<>(toIntegerList(carrierConfig.getIntArray(CarrierConfigManager
+                            .KEY_CAPABILITIES_EXEMPT_FROM_SINGLE_DC_CHECK_INT_ARRAY))));
+            shouldKeepNetworkUpInNonVops = carrierConfig.getBoolean(
+                    CarrierConfigManager.Ims.KEY_KEEP_PDN_UP_IN_NO_VOPS_BOOL);
+            enabledVopsNetworkTypesInNonVops = Collections.unmodifiableSet(
+                    new HashSet<>(toIntegerList(carrierConfig.getIntArray(CarrierConfigManager
+                            .Ims.KEY_IMS_PDN_ENABLED_IN_NO_VOPS_SUPPORT_INT_ARRAY))));
+            unmeteredNetworkTypes = parseNetworkTypes(carrierConfig.getStringArray(
+                    CarrierConfigManager.KEY_UNMETERED_NETWORK_TYPES_STRING_ARRAY));
+            roamingUnmeteredNetworkTypes = parseNetworkTypes(carrierConfig.getStringArray(
+                    CarrierConfigManager.KEY_ROAMING_UNMETERED_NETWORK_TYPES_STRING_ARRAY));
+            bandwidthMap = parseBandwidths(carrierConfig);
+            tcpBufferSizeMap = parseTcpBuffers(resources);
+            handoverRuleList = parseHandoverRules(carrierConfig);
+            autoDataSwitchNetworkTypeSignalMap = parseAutoDataSwitchConfig(carrierConfig);
+        }
+    }
 
     /**
      * Constructor
@@ -375,7 +436,7 @@ public class DataConfigManager extends Handler {
                     }
                 });
 
-        // Must be called to set mCarrierConfig and mResources to non-null values
+        // Must be called to set mConfigSnapshot to a non-null value
         updateCarrierConfig();
         // Must be called to set anomaly report threshold to non-null values
         updateDeviceConfig();
@@ -468,66 +529,65 @@ public class DataConfigManager extends Handler {
      * configuration is the default (i.e. SIM not inserted).
      */
     public boolean isConfigCarrierSpecific() {
-        return mCarrierConfig.getBoolean(CarrierConfigManager.KEY_CARRIER_CONFIG_APPLIED_BOOL);
+        return mConfigSnapshot.carrierConfig.getBoolean(
+                CarrierConfigManager.KEY_CARRIER_CONFIG_APPLIED_BOOL);
     }
 
     /**
      * Update the configuration from carrier configs and resources.
      */
     private void updateCarrierConfig() {
+        PersistableBundle carrierConfig = null;
         if (mCarrierConfigManager != null) {
-            mCarrierConfig = mCarrierConfigManager.getConfigForSubId(mPhone.getSubId());
+            carrierConfig = mCarrierConfigManager.getConfigForSubId(mPhone.getSubId());
         }
-        if (mCarrierConfig == null) {
-            mCarrierConfig = CarrierConfigManager.getDefaultConfig();
+        if (carrierConfig == null) {
+            carrierConfig = CarrierConfigManager.getDefaultConfig();
         }
-        mResources = SubscriptionManager.getResourcesForSubId(mPhone.getContext(),
+        Resources resources = SubscriptionManager.getResourcesForSubId(mPhone.getContext(),
                 mPhone.getSubId());
 
-        updateNetworkCapabilityPriority();
-        updateDataRetryRules();
-        updateMeteredApnTypes();
-        updateSingleDataNetworkTypeAndCapabilityExemption();
-        updateVopsConfig();
-        updateUnmeteredNetworkTypes();
-        updateBandwidths();
-        updateTcpBuffers();
-        updateHandoverRules();
-        updateAutoDataSwitchConfig();
+        // Fully parse the new config before publishing it, so readers never see a partially
+        // updated config.
+        mConfigSnapshot = new CarrierConfigSnapshot(carrierConfig, resources);
 
         log("Carrier config updated. Config is " + (isConfigCarrierSpecific() ? "" : "not ")
                 + "carrier specific.");
     }
 
     /**
-     * Update the network capability priority from carrier config.
+     * Parse the network capability priority from carrier config.
+     *
+     * @param carrierConfig The carrier config.
+     * @return The unmodifiable network capability priority map.
      */
-    private void updateNetworkCapabilityPriority() {
-        synchronized (this) {
-            mNetworkCapabilityPriorityMap.clear();
-            String[] capabilityPriorityStrings = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_TELEPHONY_NETWORK_CAPABILITY_PRIORITIES_STRING_ARRAY);
-            if (capabilityPriorityStrings != null) {
-                for (String capabilityPriorityString : capabilityPriorityStrings) {
-                    capabilityPriorityString =
-                            capabilityPriorityString.trim().toUpperCase(Locale.ROOT);
-                    String[] tokens = capabilityPriorityString.split(":");
-                    if (tokens.length != 2) {
-                        loge("Invalid config \"" + capabilityPriorityString + "\"");
-                        continue;
-                    }
-
-                    int netCap = DataUtils.getNetworkCapabilityFromString(tokens[0]);
-                    if (netCap < 0) {
-                        loge("Invalid config \"" + capabilityPriorityString + "\"");
-                        continue;
-                    }
+    @NonNull
+    private Map<Integer, Integer> parseNetworkCapabilityPriority(
+            @NonNull PersistableBundle carrierConfig) {
+        Map<Integer, Integer> networkCapabilityPriorityMap = new ArrayMap<>();
+        String[] capabilityPriorityStrings = carrierConfig.getStringArray(
+                CarrierConfigManager.KEY_TELEPHONY_NETWORK_CAPABILITY_PRIORITIES_STRING_ARRAY);
+        if (capabilityPriorityStrings != null) {
+            for (String capabilityPriorityString : capabilityPriorityStrings) {
+                capabilityPriorityString =
+                        capabilityPriorityString.trim().toUpperCase(Locale.ROOT);
+                String[] tokens = capabilityPriorityString.split(":");
+                if (tokens.length != 2) {
+                    loge("Invalid config \"" + capabilityPriorityString + "\"");
+                    continue;
+                }
 
-                    int priority = Integer.parseInt(tokens[1]);
-                    mNetworkCapabilityPriorityMap.put(netCap, priority);
+                int netCap = DataUtils.getNetworkCapabilityFromString(tokens[0]);
+                if (netCap < 0) {
+                    loge("Invalid config \"" + capabilityPriorityString + "\"");
+                    continue;
                 }
+
+                int priority = Integer.parseInt(tokens[1]);
+                networkCapabilityPriorityMap.put(netCap, priority);
             }
         }
+        return Collections.unmodifiableMap(networkCapabilityPriorityMap);
     }
 
     /**
@@ -537,43 +597,56 @@ public class DataConfigManager extends Handler {
      * @return The priority range from 0 ~ 100. 100 is the highest priority.
      */
     public int getNetworkCapabilityPriority(@NetCapability int capability) {
-        if (mNetworkCapabilityPriorityMap.containsKey(capability)) {
-            return mNetworkCapabilityPriorityMap.get(capability);
-        }
-        return 0;
+        Integer priority = mConfigSnapshot.networkCapabilityPriorityMap.get(capability);
+        return priority != null ? priority : 0;
     }
 
     /**
-     * Update the data retry rules from the carrier config.
+     * Parse the data setup retry rules from the carrier config.
+     *
+     * @param carrierConfig The carrier config.
+     * @return The unmodifiable list of data setup retry rules.
      */
-    private void updateDataRetryRules() {
-        synchronized (this) {
-            mDataSetupRetryRules.clear();
-            String[] dataRetryRulesStrings = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_TELEPHONY_DATA_SETUP_RETRY_RULES_STRING_ARRAY);
-            if (dataRetryRulesStrings != null) {
-                for (String ruleString : dataRetryRulesStrings) {
-                    try {
-                        mDataSetupRetryRules.add(new DataSetupRetryRule(ruleString));
-                    } catch (IllegalArgumentException e) {
-                        loge("updateDataRetryRules: " + e.getMessage());
-                    }
+    @NonNull
+    private List<DataSetupRetryRule> parseDataSetupRetryRules(
+            @NonNull PersistableBundle carrierConfig) {
+        List<DataSetupRetryRule> dataSetupRetryRules = new ArrayList<>();
+        String[] dataRetryRulesStrings = carrierConfig.getStringArray(
+                CarrierConfigManager.KEY_TELEPHONY_DATA_SETUP_RETRY_RULES_STRING_ARRAY);
+        if (dataRetryRulesStrings != null) {
+            for (String ruleString : dataRetryRulesStrings) {
+                try {
+                    dataSetupRetryRules.add(new DataSetupRetryRule(ruleString));
+                } catch (IllegalArgumentException e) {
+                    loge("parseDataSetupRetryRules: " + e.getMessage());
                 }
             }
+        }
+        return Collections.unmodifiableList(dataSetupRetryRules);
+    }
 
-            mDataHandoverRetryRules.clear();
-            dataRetryRulesStrings = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_TELEPHONY_DATA_HANDOVER_RETRY_RULES_STRING_ARRAY);
-            if (dataRetryRulesStrings != null) {
-                for (String ruleString : dataRetryRulesStrings) {
-                    try {
-                        mDataHandoverRetryRules.add(new DataHandoverRetryRule(ruleString));
-                    } catch (IllegalArgumentException e) {
-                        loge("updateDataRetryRules: " + e.getMessage());
-                    }
+    /**
+     * Parse the data handover retry rules from the carrier config.
+     *
+     * @param carrierConfig The carrier config.
+     * @return The unmodifiable list of data handover retry rules.
+     */
+    @NonNull
+    private List<DataHandoverRetryRule> parseDataHandoverRetryRules(
+            @NonNull PersistableBundle carrierConfig) {
+        List<DataHandoverRetryRule> dataHandoverRetryRules = new ArrayList<>();
+        String[] dataRetryRulesStrings = carrierConfig.getStringArray(
+                CarrierConfigManager.KEY_TELEPHONY_DATA_HANDOVER_RETRY_RULES_STRING_ARRAY);
+        if (dataRetryRulesStrings != null) {
+            for (String ruleString : dataRetryRulesStrings) {
+                try {
+                    dataHandoverRetryRules.add(new DataHandoverRetryRule(ruleString));
+                } catch (IllegalArgumentException e) {
+                    loge("parseDataHandoverRetryRules: " + e.getMessage());
                 }
             }
         }
+        return Collections.unmodifiableList(dataHandoverRetryRules);
     }
 
     /**
@@ -581,7 +654,7 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public List<DataSetupRetryRule> getDataSetupRetryRules() {
-        return Collections.unmodifiableList(mDataSetupRetryRules);
+        return mConfigSnapshot.dataSetupRetryRules;
     }
 
     /**
@@ -589,52 +662,42 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public List<DataHandoverRetryRule> getDataHandoverRetryRules() {
-        return Collections.unmodifiableList(mDataHandoverRetryRules);
+        return mConfigSnapshot.dataHandoverRetryRules;
     }
 
     /**
      * @return Whether data roaming is enabled by default in carrier config.
      */
     public boolean isDataRoamingEnabledByDefault() {
-        return mCarrierConfig.getBoolean(
+        return mConfigSnapshot.carrierConfig.getBoolean(
                 CarrierConfigManager.KEY_CARRIER_DEFAULT_DATA_ROAMING_ENABLED_BOOL);
     }
 
     /**
-     * Update the home and roaming metered APN types from the carrier config.
+     * Parse the APN types from the carrier config.
+     *
+     * @param apnTypeStrings The APN type strings from carrier config.
+     * @return The unmodifiable set of APN types.
      */
-    private void updateMeteredApnTypes() {
-        synchronized (this) {
-            mMeteredApnTypes.clear();
-            String[] meteredApnTypes = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_CARRIER_METERED_APN_TYPES_STRINGS);
-            if (meteredApnTypes != null) {
-                Arrays.stream(meteredApnTypes)
-                        .map(ApnSetting::getApnTypeInt)
-                        .forEach(mMeteredApnTypes::add);
-            }
-            mRoamingMeteredApnTypes.clear();
-            String[] roamingMeteredApns = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_CARRIER_METERED_ROAMING_APN_TYPES_STRINGS);
-            if (roamingMeteredApns != null) {
-                Arrays.stream(roamingMeteredApns)
-                        .map(ApnSetting::getApnTypeInt)
-                        .forEach(mRoamingMeteredApnTypes::add);
-            }
-        }
+    @NonNull
+    @ApnType
+    private static Set<Integer> parseApnTypes(@Nullable String[] apnTypeStrings) {
+        if (apnTypeStrings == null) return Collections.emptySet();
+        return Collections.unmodifiableSet(Arrays.stream(apnTypeStrings)
+                .map(ApnSetting::getApnTypeInt)
+                .collect(Collectors.toSet()));
     }
 
     /**
-     * Get the metered network capabilities.
-     *
-     * @param isRoaming {@code true} for roaming scenario.
+     * Convert the metered APN types into metered network capabilities.
      *
-     * @return The metered network capabilities when connected to a home network.
+     * @param meteredApnTypes The metered APN types.
+     * @return The unmodifiable set of metered network capabilities.
      */
     @NonNull
     @NetCapability
-    public Set<Integer> getMeteredNetworkCapabilities(boolean isRoaming) {
-        Set<Integer> meteredApnTypes = isRoaming ? mRoamingMeteredApnTypes : mMeteredApnTypes;
+    private static Set<Integer> apnTypesToMeteredCapabilities(
+            @NonNull @ApnType Set<Integer> meteredApnTypes) {
         Set<Integer> meteredCapabilities = meteredApnTypes.stream()
                 .map(DataUtils::apnTypeToNetworkCapability)
                 .filter(cap -> cap >= 0)
@@ -649,11 +712,25 @@ public class DataConfigManager extends Handler {
         return Collections.unmodifiableSet(meteredCapabilities);
     }
 
+    /**
+     * Get the metered network capabilities.
+     *
+     * @param isRoaming {@code true} for roaming scenario.
+     *
+     * @return The metered network capabilities when connected to a home network.
+     */
+    @NonNull
+    @NetCapability
+    public Set<Integer> getMeteredNetworkCapabilities(boolean isRoaming) {
+        CarrierConfigSnapshot snapshot = mConfigSnapshot;
+        return isRoaming ? snapshot.roamingMeteredCapabilities : snapshot.meteredCapabilities;
+    }
+
     /**
      * @return {@code true} if tethering profile should not be used when the device is roaming.
      */
     public boolean isTetheringProfileDisabledForRoaming() {
-        return mCarrierConfig.getBoolean(
+        return mConfigSnapshot.carrierConfig.getBoolean(
                 CarrierConfigManager.KEY_DISABLE_DUN_APN_WHILE_ROAMING_WITH_PRESET_APN_BOOL);
     }
 
@@ -678,51 +755,31 @@ public class DataConfigManager extends Handler {
      */
     public boolean isAnyMeteredCapability(@NonNull @NetCapability int[] networkCapabilities,
             boolean isRoaming) {
-        return Arrays.stream(networkCapabilities).boxed()
-                .anyMatch(cap -> isMeteredCapability(cap, isRoaming));
+        Set<Integer> meteredCapabilities = getMeteredNetworkCapabilities(isRoaming);
+        for (int networkCapability : networkCapabilities) {
+            if (meteredCapabilities.contains(networkCapability)) return true;
+        }
+        return false;
     }
 
     /**
      * @return Whether to use data activity for RRC detection
      */
     public boolean shouldUseDataActivityForRrcDetection() {
-        return mCarrierConfig.getBoolean(
+        return mConfigSnapshot.carrierConfig.getBoolean(
                 CarrierConfigManager.KEY_LTE_ENDC_USING_USER_DATA_FOR_RRC_DETECTION_BOOL);
     }
 
     /**
-     * Update the network types for only single data networks from the carrier config.
-     */
-    private void updateSingleDataNetworkTypeAndCapabilityExemption() {
-        synchronized (this) {
-            mSingleDataNetworkTypeList.clear();
-            mCapabilitiesExemptFromSingleDataList.clear();
-            int[] singleDataNetworkTypeList = mCarrierConfig.getIntArray(
-                    CarrierConfigManager.KEY_ONLY_SINGLE_DC_ALLOWED_INT_ARRAY);
-            if (singleDataNetworkTypeList != null) {
-                Arrays.stream(singleDataNetworkTypeList).forEach(mSingleDataNetworkTypeList::add);
-            }
-
-            int[] singleDataCapabilitiesExemptList = mCarrierConfig.getIntArray(
-                    CarrierConfigManager.KEY_CAPABILITIES_EXEMPT_FROM_SINGLE_DC_CHECK_INT_ARRAY);
-            if (singleDataCapabilitiesExemptList != null) {
-                Arrays.stream(singleDataCapabilitiesExemptList)
-                        .forEach(mCapabilitiesExemptFromSingleDataList::add);
-            }
-        }
-    }
-
-    /**
-     * Update the voice over PS related config from the carrier config.
+     * Convert an int array from the carrier config into a list.
+     *
+     * @param values The int array. Can be {@code null} if not configured.
+     * @return The list of values.
      */
-    private synchronized void updateVopsConfig() {
-            mShouldKeepNetworkUpInNonVops = mCarrierConfig.getBoolean(CarrierConfigManager
-                    .Ims.KEY_KEEP_PDN_UP_IN_NO_VOPS_BOOL);
-            int[] allowedNetworkTypes = mCarrierConfig.getIntArray(
-                    CarrierConfigManager.Ims.KEY_IMS_PDN_ENABLED_IN_NO_VOPS_SUPPORT_INT_ARRAY);
-            if (allowedNetworkTypes != null) {
-                Arrays.stream(allowedNetworkTypes).forEach(mEnabledVopsNetworkTypesInNonVops::add);
-            }
+    @NonNull
+    private static List<Integer> toIntegerList(@Nullable int[] values) {
+        if (values == null) return Collections.emptyList();
+        return Arrays.stream(values).boxed().collect(Collectors.toList());
     }
 
     /**
@@ -731,7 +788,7 @@ public class DataConfigManager extends Handler {
     @NonNull
     @NetworkType
     public List<Integer> getNetworkTypesOnlySupportSingleDataNetwork() {
-        return Collections.unmodifiableList(mSingleDataNetworkTypeList);
+        return mConfigSnapshot.singleDataNetworkTypeList;
     }
 
     /**
@@ -741,7 +798,7 @@ public class DataConfigManager extends Handler {
     @NonNull
     @NetCapability
     public Set<Integer> getCapabilitiesExemptFromSingleDataNetwork() {
-        return Collections.unmodifiableSet(mCapabilitiesExemptFromSingleDataList);
+        return mConfigSnapshot.capabilitiesExemptFromSingleDataList;
     }
 
     /**
@@ -750,7 +807,8 @@ public class DataConfigManager extends Handler {
      */
     public boolean shouldKeepNetworkUpInNonVops(@NetworkRegistrationInfo.RegistrationState
             int regState) {
-        return mShouldKeepNetworkUpInNonVops || allowBringUpNetworkInNonVops(regState);
+        return mConfigSnapshot.shouldKeepNetworkUpInNonVops
+                || allowBringUpNetworkInNonVops(regState);
     }
 
     /**
@@ -765,12 +823,12 @@ public class DataConfigManager extends Handler {
         } else if (regState == NetworkRegistrationInfo.REGISTRATION_STATE_ROAMING) {
             networkType = CarrierConfigManager.Ims.NETWORK_TYPE_ROAMING;
         }
-        return mEnabledVopsNetworkTypesInNonVops.contains(networkType);
+        return mConfigSnapshot.enabledVopsNetworkTypesInNonVops.contains(networkType);
     }
 
     /** {@code True} requires ping test to pass on the target slot before switching to it.*/
     public boolean isPingTestBeforeAutoDataSwitchRequired() {
-        return mResources.getBoolean(com.android.internal.R.bool
+        return mConfigSnapshot.resources.getBoolean(com.android.internal.R.bool
                 .auto_data_switch_ping_test_before_switch);
     }
 
@@ -779,28 +837,21 @@ public class DataConfigManager extends Handler {
      * is supported by the carrier.
      */
     public boolean isTempNotMeteredSupportedByCarrier() {
-        return mCarrierConfig.getBoolean(
+        return mConfigSnapshot.carrierConfig.getBoolean(
                 CarrierConfigManager.KEY_NETWORK_TEMP_NOT_METERED_SUPPORTED_BOOL);
     }
 
     /**
-     * Update the network types that are temporarily not metered from the carrier config.
+     * Parse the network types that are temporarily not metered from the carrier config.
+     *
+     * @param networkTypes The network type strings from carrier config.
+     * @return The unmodifiable set of network types.
      */
-    private void updateUnmeteredNetworkTypes() {
-        synchronized (this) {
-            mUnmeteredNetworkTypes.clear();
-            String[] unmeteredNetworkTypes = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_UNMETERED_NETWORK_TYPES_STRING_ARRAY);
-            if (unmeteredNetworkTypes != null) {
-                mUnmeteredNetworkTypes.addAll(Arrays.asList(unmeteredNetworkTypes));
-            }
-            mRoamingUnmeteredNetworkTypes.clear();
-            String[] roamingUnmeteredNetworkTypes = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_ROAMING_UNMETERED_NETWORK_TYPES_STRING_ARRAY);
-            if (roamingUnmeteredNetworkTypes != null) {
-                mRoamingUnmeteredNetworkTypes.addAll(Arrays.asList(roamingUnmeteredNetworkTypes));
-            }
-        }
+    @NonNull
+    @DataConfigNetworkType
+    private static Set<String> parseNetworkTypes(@Nullable String[] networkTypes) {
+        if (networkTypes == null) return Collections.emptySet();
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(networkTypes)));
     }
 
     /**
@@ -813,57 +864,63 @@ public class DataConfigManager extends Handler {
     public boolean isNetworkTypeUnmetered(@NonNull TelephonyDisplayInfo displayInfo,
             @NonNull ServiceState serviceState) {
         String dataConfigNetworkType = getDataConfigNetworkType(displayInfo);
+        CarrierConfigSnapshot snapshot = mConfigSnapshot;
         return serviceState.getDataRoaming()
-                ? mRoamingUnmeteredNetworkTypes.contains(dataConfigNetworkType)
-                : mUnmeteredNetworkTypes.contains(dataConfigNetworkType);
-    }
-
-    /**
-     * Update the downlink and uplink bandwidth values from the carrier config.
-     */
-    private void updateBandwidths() {
-        synchronized (this) {
-            mBandwidthMap.clear();
-            String[] bandwidths = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_BANDWIDTH_STRING_ARRAY);
-            boolean useLte = mCarrierConfig.getBoolean(CarrierConfigManager
-                    .KEY_BANDWIDTH_NR_NSA_USE_LTE_VALUE_FOR_UPLINK_BOOL);
-            if (bandwidths != null) {
-                for (String bandwidth : bandwidths) {
-                    // split1[0] = network type as string
-                    // split1[1] = downlink,uplink
-                    String[] split1 = bandwidth.split(":");
-                    if (split1.length != 2) {
-                        loge("Invalid bandwidth: " + bandwidth);
-                        continue;
-                    }
-                    // split2[0] = downlink bandwidth in kbps
-                    // split2[1] = uplink bandwidth in kbps
-                    String[] split2 = split1[1].split(",");
-                    if (split2.length != 2) {
-                        loge("Invalid bandwidth values: " + Arrays.toString(split2));
-                        continue;
-                    }
-                    int downlink, uplink;
-                    try {
-                        downlink = Integer.parseInt(split2[0]);
-                        uplink = Integer.parseInt(split2[1]);
-                    } catch (NumberFormatException e) {
-                        loge("Exception parsing bandwidth values for network type " + split1[0]
-                                + ": " + e);
-                        continue;
-                    }
-                    if (useLte && split1[0].startsWith("NR")) {
-                        // We can get it directly from mBandwidthMap because LTE is defined before
-                        // the NR values in CarrierConfigManager#KEY_BANDWIDTH_STRING_ARRAY.
-                        uplink = mBandwidthMap.get(DATA_CONFIG_NETWORK_TYPE_LTE)
-                                .uplinkBandwidthKbps;
-                    }
-                    mBandwidthMap.put(split1[0],
-                            new DataNetwork.NetworkBandwidth(downlink, uplink));
+                ? snapshot.roamingUnmeteredNetworkTypes.contains(dataConfigNetworkType)
+                : snapshot.unmeteredNetworkTypes.contains(dataConfigNetworkType);
+    }
+
+    /**
+     * Parse the downlink and uplink bandwidth values from the carrier config.
+     *
+     * @param carrierConfig The carrier config.
+     * @return The unmodifiable map of network types to bandwidths.
+     */
+    @NonNull
+    @DataConfigNetworkType
+    private Map<String, DataNetwork.NetworkBandwidth> parseBandwidths(
+            @NonNull PersistableBundle carrierConfig) {
+        Map<String, DataNetwork.NetworkBandwidth> bandwidthMap = new ArrayMap<>();
+        String[] bandwidths = carrierConfig.getStringArray(
+                CarrierConfigManager.KEY_BANDWIDTH_STRING_ARRAY);
+        boolean useLte = carrierConfig.getBoolean(CarrierConfigManager
+                .KEY_BANDWIDTH_NR_NSA_USE_LTE_VALUE_FOR_UPLINK_BOOL);
+        if (bandwidths != null) {
+            for (String bandwidth : bandwidths) {
+                // split1[0] = network type as string
+                // split1[1] = downlink,uplink
+                String[] split1 = bandwidth.split(":");
+                if (split1.length != 2) {
+                    loge("Invalid bandwidth: " + bandwidth);
+                    continue;
                 }
+                // split2[0] = downlink bandwidth in kbps
+                // split2[1] = uplink bandwidth in kbps
+                String[] split2 = split1[1].split(",");
+                if (split2.length != 2) {
+                    loge("Invalid bandwidth values: " + Arrays.toString(split2));
+                    continue;
+                }
+                int downlink, uplink;
+                try {
+                    downlink = Integer.parseInt(split2[0]);
+                    uplink = Integer.parseInt(split2[1]);
+                } catch (NumberFormatException e) {
+                    loge("Exception parsing bandwidth values for network type " + split1[0]
+                            + ": " + e);
+                    continue;
+                }
+                if (useLte && split1[0].startsWith("NR")) {
+                    // We can get it directly from bandwidthMap because LTE is defined before
+                    // the NR values in CarrierConfigManager#KEY_BANDWIDTH_STRING_ARRAY.
+                    uplink = bandwidthMap.get(DATA_CONFIG_NETWORK_TYPE_LTE)
+                            .uplinkBandwidthKbps;
+                }
+                bandwidthMap.put(split1[0],
+                        new DataNetwork.NetworkBandwidth(downlink, uplink));
             }
         }
+        return Collections.unmodifiableMap(bandwidthMap);
     }
 
     /**
@@ -875,7 +932,7 @@ public class DataConfigManager extends Handler {
     @NonNull
     public DataNetwork.NetworkBandwidth getBandwidthForNetworkType(
             @NonNull TelephonyDisplayInfo displayInfo) {
-        DataNetwork.NetworkBandwidth bandwidth = mBandwidthMap.get(
+        DataNetwork.NetworkBandwidth bandwidth = mConfigSnapshot.bandwidthMap.get(
                 getDataConfigNetworkType(displayInfo));
         if (bandwidth != null) {
             return bandwidth;
@@ -888,14 +945,15 @@ public class DataConfigManager extends Handler {
      */
     @CarrierConfigManager.SATELLITE_DATA_SUPPORT_MODE
     public int getSatelliteDataSupportMode() {
-        return mCarrierConfig.getInt(CarrierConfigManager.KEY_SATELLITE_DATA_SUPPORT_MODE_INT);
+        return mConfigSnapshot.carrierConfig.getInt(
+                CarrierConfigManager.KEY_SATELLITE_DATA_SUPPORT_MODE_INT);
     }
 
     /**
      * @return Whether data throttling should be reset when the TAC changes from the carrier config.
      */
     public boolean shouldResetDataThrottlingWhenTacChanges() {
-        return mCarrierConfig.getBoolean(
+        return mConfigSnapshot.carrierConfig.getBoolean(
                 CarrierConfigManager.KEY_UNTHROTTLE_DATA_RETRY_WHEN_TAC_CHANGES_BOOL);
     }
 
@@ -903,7 +961,7 @@ public class DataConfigManager extends Handler {
      * @return The data service package override string from the carrier config.
      */
     public String getDataServicePackageName() {
-        return mCarrierConfig.getString(
+        return mConfigSnapshot.carrierConfig.getString(
                 CarrierConfigManager.KEY_CARRIER_DATA_SERVICE_WWAN_PACKAGE_OVERRIDE_STRING);
     }
 
@@ -911,14 +969,14 @@ public class DataConfigManager extends Handler {
      * @return The default MTU value in bytes from the carrier config.
      */
     public int getDefaultMtu() {
-        return mCarrierConfig.getInt(CarrierConfigManager.KEY_DEFAULT_MTU_INT);
+        return mConfigSnapshot.carrierConfig.getInt(CarrierConfigManager.KEY_DEFAULT_MTU_INT);
     }
 
     /**
      * @return the data limit in bytes that can be used for esim bootstrap usage.
      */
     public long getEsimBootStrapMaxDataLimitBytes() {
-        return mResources.getInteger(
+        return mConfigSnapshot.resources.getInteger(
                 com.android.internal.R.integer.config_esim_bootstrap_data_limit_bytes);
     }
 
@@ -927,7 +985,7 @@ public class DataConfigManager extends Handler {
      * bootstrap activation
      */
     public long getReevaluateBootstrapSimDataUsageMillis() {
-        long bootStrapSimDataUsageReevaluateInterval = mResources.getInteger(
+        long bootStrapSimDataUsageReevaluateInterval = mConfigSnapshot.resources.getInteger(
                 com.android.internal.R.integer.config_reevaluate_bootstrap_sim_data_usage_millis);
 
         if (bootStrapSimDataUsageReevaluateInterval <= 0) {
@@ -938,30 +996,34 @@ public class DataConfigManager extends Handler {
     }
 
     /**
-     * Update the TCP buffer sizes from the resource overlays.
+     * Parse the TCP buffer sizes from the resource overlays.
+     *
+     * @param resources The resources.
+     * @return The unmodifiable map of network types to TCP buffer sizes.
      */
-    private void updateTcpBuffers() {
-        synchronized (this) {
-            mTcpBufferSizeMap.clear();
-            String[] configs = mResources.getStringArray(
-                    com.android.internal.R.array.config_network_type_tcp_buffers);
-            if (configs != null) {
-                for (String config : configs) {
-                    // split[0] = network type as string
-                    // split[1] = rmem_min,rmem_def,rmem_max,wmem_min,wmem_def,wmem_max
-                    String[] split = config.split(":");
-                    if (split.length != 2) {
-                        loge("Invalid TCP buffer sizes entry: " + config);
-                        continue;
-                    }
-                    if (split[1].split(",").length != 6) {
-                        loge("Invalid TCP buffer sizes for " + split[0] + ": " + split[1]);
-                        continue;
-                    }
-                    mTcpBufferSizeMap.put(split[0], split[1]);
+    @NonNull
+    @DataConfigNetworkType
+    private Map<String, String> parseTcpBuffers(@NonNull Resources resources) {
+        Map<String, String> tcpBufferSizeMap = new ArrayMap<>();
+        String[] configs = resources.getStringArray(
+                com.android.internal.R.array.config_network_type_tcp_buffers);
+        if (configs != null) {
+            for (String config : configs) {
+                // split[0] = network type as string
+                // split[1] = rmem_min,rmem_def,rmem_max,wmem_min,wmem_def,wmem_max
+                String[] split = config.split(":");
+                if (split.length != 2) {
+                    loge("Invalid TCP buffer sizes entry: " + config);
+                    continue;
                 }
+                if (split[1].split(",").length != 6) {
+                    loge("Invalid TCP buffer sizes for " + split[0] + ": " + split[1]);
+                    continue;
+                }
+                tcpBufferSizeMap.put(split[0], split[1]);
             }
         }
+        return Collections.unmodifiableMap(tcpBufferSizeMap);
     }
 
     /**
@@ -1033,60 +1095,65 @@ public class DataConfigManager extends Handler {
     }
 
     /**
-     * Update the network type and signal strength score table for auto data switch decisions.
-     */
-    private void updateAutoDataSwitchConfig() {
-        synchronized (this) {
-            mAutoDataSwitchNetworkTypeSignalMap.clear();
-            final PersistableBundle table = mCarrierConfig.getPersistableBundle(
-                    CarrierConfigManager.KEY_AUTO_DATA_SWITCH_RAT_SIGNAL_SCORE_BUNDLE);
-            String[] networkTypeKeys = {
-                    DATA_CONFIG_NETWORK_TYPE_GPRS,
-                    DATA_CONFIG_NETWORK_TYPE_EDGE,
-                    DATA_CONFIG_NETWORK_TYPE_UMTS,
-                    DATA_CONFIG_NETWORK_TYPE_CDMA,
-                    DATA_CONFIG_NETWORK_TYPE_1xRTT,
-                    DATA_CONFIG_NETWORK_TYPE_EVDO_0,
-                    DATA_CONFIG_NETWORK_TYPE_EVDO_A,
-                    DATA_CONFIG_NETWORK_TYPE_HSDPA,
-                    DATA_CONFIG_NETWORK_TYPE_HSUPA,
-                    DATA_CONFIG_NETWORK_TYPE_HSPA,
-                    DATA_CONFIG_NETWORK_TYPE_EVDO_B,
-                    DATA_CONFIG_NETWORK_TYPE_EHRPD,
-                    DATA_CONFIG_NETWORK_TYPE_IDEN,
-                    DATA_CONFIG_NETWORK_TYPE_LTE,
-                    DATA_CONFIG_NETWORK_TYPE_LTE_CA,
-                    DATA_CONFIG_NETWORK_TYPE_HSPAP,
-                    DATA_CONFIG_NETWORK_TYPE_GSM,
-                    DATA_CONFIG_NETWORK_TYPE_TD_SCDMA,
-                    DATA_CONFIG_NETWORK_TYPE_NR_NSA,
-                    DATA_CONFIG_NETWORK_TYPE_NR_NSA_MMWAVE,
-                    DATA_CONFIG_NETWORK_TYPE_NR_SA,
-                    DATA_CONFIG_NETWORK_TYPE_NR_SA_MMWAVE
-            };
-            if (table != null) {
-                for (String networkType : networkTypeKeys) {
-                    int[] scores = table.getIntArray(networkType);
-                    if (scores != null
-                            && scores.length == SignalStrength.NUM_SIGNAL_STRENGTH_BINS) {
-                        for (int i = 0; i < scores.length; i++) {
-                            if (scores[i] < 0) {
-                                loge("Auto switch score must not < 0 for network type "
-                                        + networkType);
-                                break;
-                            }
-                            if (i == scores.length - 1) {
-                                mAutoDataSwitchNetworkTypeSignalMap.put(networkType, scores);
-                            }
+     * Parse the network type and signal strength score table for auto data switch decisions.
+     *
+     * @param carrierConfig The carrier config.
+     * @return The unmodifiable map of network types to scores by signal strength.
+     */
+    @NonNull
+    @DataConfigNetworkType
+    private Map<String, int[]> parseAutoDataSwitchConfig(
+            @NonNull PersistableBundle carrierConfig) {
+        Map<String, int[]> autoDataSwitchNetworkTypeSignalMap = new ArrayMap<>();
+        final PersistableBundle table = carrierConfig.getPersistableBundle(
+                CarrierConfigManager.KEY_AUTO_DATA_SWITCH_RAT_SIGNAL_SCORE_BUNDLE);
+        String[] networkTypeKeys = {
+                DATA_CONFIG_NETWORK_TYPE_GPRS,
+                DATA_CONFIG_NETWORK_TYPE_EDGE,
+                DATA_CONFIG_NETWORK_TYPE_UMTS,
+                DATA_CONFIG_NETWORK_TYPE_CDMA,
+                DATA_CONFIG_NETWORK_TYPE_1xRTT,
+                DATA_CONFIG_NETWORK_TYPE_EVDO_0,
+                DATA_CONFIG_NETWORK_TYPE_EVDO_A,
+                DATA_CONFIG_NETWORK_TYPE_HSDPA,
+                DATA_CONFIG_NETWORK_TYPE_HSUPA,
+                DATA_CONFIG_NETWORK_TYPE_HSPA,
+                DATA_CONFIG_NETWORK_TYPE_EVDO_B,
+                DATA_CONFIG_NETWORK_TYPE_EHRPD,
+                DATA_CONFIG_NETWORK_TYPE_IDEN,
+                DATA_CONFIG_NETWORK_TYPE_LTE,
+                DATA_CONFIG_NETWORK_TYPE_LTE_CA,
+                DATA_CONFIG_NETWORK_TYPE_HSPAP,
+                DATA_CONFIG_NETWORK_TYPE_GSM,
+                DATA_CONFIG_NETWORK_TYPE_TD_SCDMA,
+                DATA_CONFIG_NETWORK_TYPE_NR_NSA,
+                DATA_CONFIG_NETWORK_TYPE_NR_NSA_MMWAVE,
+                DATA_CONFIG_NETWORK_TYPE_NR_SA,
+                DATA_CONFIG_NETWORK_TYPE_NR_SA_MMWAVE
+        };
+        if (table != null) {
+            for (String networkType : networkTypeKeys) {
+                int[] scores = table.getIntArray(networkType);
+                if (scores != null
+                        && scores.length == SignalStrength.NUM_SIGNAL_STRENGTH_BINS) {
+                    for (int i = 0; i < scores.length; i++) {
+                        if (scores[i] < 0) {
+                            loge("Auto switch score must not < 0 for network type "
+                                    + networkType);
+                            break;
+                        }
+                        if (i == scores.length - 1) {
+                            autoDataSwitchNetworkTypeSignalMap.put(networkType, scores);
                         }
-                    } else {
-                        loge("Auto switch score table should specify "
-                                + SignalStrength.NUM_SIGNAL_STRENGTH_BINS
-                                + " signal strength for network type " + networkType);
                     }
+                } else {
+                    loge("Auto switch score table should specify "
+                            + SignalStrength.NUM_SIGNAL_STRENGTH_BINS
+                            + " signal strength for network type " + networkType);
                 }
             }
         }
+        return Collections.unmodifiableMap(autoDataSwitchNetworkTypeSignalMap);
     }
 
     /**
@@ -1097,7 +1164,7 @@ public class DataConfigManager extends Handler {
      */
     public int getAutoDataSwitchScore(@NonNull TelephonyDisplayInfo displayInfo,
             @NonNull SignalStrength signalStrength) {
-        int[] scores = mAutoDataSwitchNetworkTypeSignalMap.get(
+        int[] scores = mConfigSnapshot.autoDataSwitchNetworkTypeSignalMap.get(
                 getDataConfigNetworkType(displayInfo));
         return scores != null ? scores[signalStrength.getLevel()]
                 : OUT_OF_SERVICE_AUTO_DATA_SWITCH_SCORE;
@@ -1109,7 +1176,7 @@ public class DataConfigManager extends Handler {
      * score SIM. If < 0, the network type and signal strength based auto switch is disabled.
      */
     public int getAutoDataSwitchScoreTolerance() {
-        return mResources.getInteger(com.android.internal.R.integer
+        return mConfigSnapshot.resources.getInteger(com.android.internal.R.integer
                 .auto_data_switch_score_tolerance);
     }
 
@@ -1119,14 +1186,15 @@ public class DataConfigManager extends Handler {
      * is not usable(OOS or disabled roaming)
      */
     public boolean doesAutoDataSwitchAllowRoaming() {
-        return mResources.getBoolean(com.android.internal.R.bool.auto_data_switch_allow_roaming);
+        return mConfigSnapshot.resources.getBoolean(
+                com.android.internal.R.bool.auto_data_switch_allow_roaming);
     }
 
     /**
      * @return The maximum number of retries when a validation for switching failed.
      */
     public int getAutoDataSwitchValidationMaxRetry() {
-        return mResources.getInteger(com.android.internal.R.integer
+        return mConfigSnapshot.resources.getInteger(com.android.internal.R.integer
                 .auto_data_switch_validation_max_retry);
     }
 
@@ -1136,7 +1204,7 @@ public class DataConfigManager extends Handler {
      * auto switch feature disabled.
      */
     public long getAutoDataSwitchAvailabilityStabilityTimeThreshold() {
-        return mResources.getInteger(com.android.internal.R.integer
+        return mConfigSnapshot.resources.getInteger(com.android.internal.R.integer
                 .auto_data_switch_availability_stability_time_threshold_millis);
     }
 
@@ -1146,7 +1214,7 @@ public class DataConfigManager extends Handler {
      * auto switch feature based on RAT/SS is disabled.
      */
     public long getAutoDataSwitchPerformanceStabilityTimeThreshold() {
-        return mResources.getInteger(com.android.internal.R.integer
+        return mConfigSnapshot.resources.getInteger(com.android.internal.R.integer
                 .auto_data_switch_performance_stability_time_threshold_millis);
     }
 
@@ -1161,7 +1229,8 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public String getTcpConfigString(@NonNull TelephonyDisplayInfo displayInfo) {
-        String config = mTcpBufferSizeMap.get(getDataConfigNetworkType(displayInfo));
+        String config = mConfigSnapshot.tcpBufferSizeMap.get(
+                getDataConfigNetworkType(displayInfo));
         if (TextUtils.isEmpty(config)) {
             config = getDefaultTcpConfigString();
         }
@@ -1173,7 +1242,8 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public String getDefaultTcpConfigString() {
-        return mResources.getString(com.android.internal.R.string.config_tcp_buffers);
+        return mConfigSnapshot.resources.getString(
+                com.android.internal.R.string.config_tcp_buffers);
     }
 
     /**
@@ -1181,7 +1251,7 @@ public class DataConfigManager extends Handler {
      * does not complete within the window, the data network will be torn down after timeout.
      */
     public long getImsDeregistrationDelay() {
-        return mResources.getInteger(
+        return mConfigSnapshot.resources.getInteger(
                 com.android.internal.R.integer.config_delay_for_ims_dereg_millis);
     }
 
@@ -1190,7 +1260,7 @@ public class DataConfigManager extends Handler {
      * {@code false} will cause all data networks on IWLAN torn down if IWLAN data service crashes.
      */
     public boolean shouldPersistIwlanDataNetworksWhenDataServiceRestarted() {
-        return mResources.getBoolean(com.android.internal.R.bool
+        return mConfigSnapshot.resources.getBoolean(com.android.internal.R.bool
                 .config_wlan_data_service_conn_persistence_on_restart);
     }
 
@@ -1199,7 +1269,7 @@ public class DataConfigManager extends Handler {
      * allowed by default.
      */
     public boolean isIwlanHandoverPolicyEnabled() {
-        return mResources.getBoolean(com.android.internal.R.bool
+        return mConfigSnapshot.resources.getBoolean(com.android.internal.R.bool
                 .config_enable_iwlan_handover_policy);
     }
 
@@ -1208,7 +1278,7 @@ public class DataConfigManager extends Handler {
      * ends.
      */
     public boolean isImsDelayTearDownUntilVoiceCallEndEnabled() {
-        return mCarrierConfig.getBoolean(
+        return mConfigSnapshot.carrierConfig.getBoolean(
                 CarrierConfigManager.KEY_DELAY_IMS_TEAR_DOWN_UNTIL_CALL_END_BOOL);
     }
 
@@ -1217,7 +1287,7 @@ public class DataConfigManager extends Handler {
      */
     @DataNetwork.BandwidthEstimationSource
     public int getBandwidthEstimateSource() {
-        String source = mResources.getString(
+        String source = mConfigSnapshot.resources.getString(
                 com.android.internal.R.string.config_bandwidthEstimateSource);
         return switch (source) {
             case BANDWIDTH_SOURCE_MODEM_STRING_VALUE -> DataNetwork.BANDWIDTH_SOURCE_MODEM;
@@ -1260,22 +1330,27 @@ public class DataConfigManager extends Handler {
         }
     }
 
-    /** Update handover rules from carrier config. */
-    private void updateHandoverRules() {
-        synchronized (this) {
-            mHandoverRuleList.clear();
-            String[] handoverRulesStrings = mCarrierConfig.getStringArray(
-                    CarrierConfigManager.KEY_IWLAN_HANDOVER_POLICY_STRING_ARRAY);
-            if (handoverRulesStrings != null) {
-                for (String ruleString : handoverRulesStrings) {
-                    try {
-                        mHandoverRuleList.add(new HandoverRule(ruleString));
-                    } catch (IllegalArgumentException e) {
-                        loge("updateHandoverRules: " + e.getMessage());
-                    }
+    /**
+     * Parse handover rules from carrier config.
+     *
+     * @param carrierConfig The carrier config.
+     * @return The unmodifiable list of handover rules.
+     */
+    @NonNull
+    private List<HandoverRule> parseHandoverRules(@NonNull PersistableBundle carrierConfig) {
+        List<HandoverRule> handoverRuleList = new ArrayList<>();
+        String[] handoverRulesStrings = carrierConfig.getStringArray(
+                CarrierConfigManager.KEY_IWLAN_HANDOVER_POLICY_STRING_ARRAY);
+        if (handoverRulesStrings != null) {
+            for (String ruleString : handoverRulesStrings) {
+                try {
+                    handoverRuleList.add(new HandoverRule(ruleString));
+                } catch (IllegalArgumentException e) {
+                    loge("parseHandoverRules: " + e.getMessage());
                 }
             }
         }
+        return Collections.unmodifiableList(handoverRuleList);
     }
 
     /**
@@ -1351,14 +1426,14 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public List<HandoverRule> getHandoverRules() {
-        return Collections.unmodifiableList(mHandoverRuleList);
+        return mConfigSnapshot.handoverRuleList;
     }
 
     /**
      * @return Get the delay in milliseconds for re-evaluating unsatisfied network requests.
      */
     public long getRetrySetupAfterDisconnectMillis() {
-        return mCarrierConfig.getLong(CarrierConfigManager
+        return mConfigSnapshot.carrierConfig.getLong(CarrierConfigManager
                 .KEY_CARRIER_DATA_CALL_APN_RETRY_AFTER_DISCONNECT_LONG);
     }
 
@@ -1404,7 +1479,7 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public long[] getDataStallRecoveryDelayMillis() {
-        return mCarrierConfig.getLongArray(
+        return mConfigSnapshot.carrierConfig.getLongArray(
             CarrierConfigManager.KEY_DATA_STALL_RECOVERY_TIMERS_LONG_ARRAY);
     }
 
@@ -1415,7 +1490,7 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public boolean[] getDataStallRecoveryShouldSkipArray() {
-        return mCarrierConfig.getBooleanArray(
+        return mConfigSnapshot.carrierConfig.getBooleanArray(
             CarrierConfigManager.KEY_DATA_STALL_RECOVERY_SHOULD_SKIP_BOOL_ARRAY);
     }
 
@@ -1425,7 +1500,7 @@ public class DataConfigManager extends Handler {
      */
     @NonNull
     public String getDefaultPreferredApn() {
-        return TextUtils.emptyIfNull(mCarrierConfig.getString(
+        return TextUtils.emptyIfNull(mConfigSnapshot.carrierConfig.getString(
                 CarrierConfigManager.KEY_DEFAULT_PREFERRED_APN_NAME_STRING));
     }
 
@@ -1434,7 +1509,8 @@ public class DataConfigManager extends Handler {
      * indicates this feature is disabled.
      */
     public int getNrAdvancedCapablePcoId() {
-        return mCarrierConfig.getInt(CarrierConfigManager.KEY_NR_ADVANCED_CAPABLE_PCO_ID_INT);
+        return mConfigSnapshot.carrierConfig.getInt(
+                CarrierConfigManager.KEY_NR_ADVANCED_CAPABLE_PCO_ID_INT);
     }
 
     /**
@@ -1446,7 +1522,7 @@ public class DataConfigManager extends Handler {
     @NonNull
     @ApnType
     public List<Integer> getAllowedInitialAttachApnTypes() {
-        String[] apnTypesArray = mCarrierConfig.getStringArray(
+        String[] apnTypesArray = mConfigSnapshot.carrierConfig.getStringArray(
                 CarrierConfigManager.KEY_ALLOWED_INITIAL_ATTACH_APN_TYPES_STRING_ARRAY);
         if (apnTypesArray != null) {
             return Arrays.stream(apnTypesArray)
@@ -1465,7 +1541,7 @@ public class DataConfigManager extends Handler {
      * network.
      */
     public boolean isEnhancedIwlanHandoverCheckEnabled() {
-        return mResources.getBoolean(
+        return mConfigSnapshot.resources.getBoolean(
                 com.android.internal.R.bool.config_enhanced_iwlan_handover_check);
     }
 
@@ -1474,7 +1550,7 @@ public class DataConfigManager extends Handler {
      * attach data profile.
      */
     public boolean allowClearInitialAttachDataProfile() {
-        return mResources.getBoolean(
+        return mConfigSnapshot.resources.getBoolean(
                 com.android.internal.R.bool.allow_clear_initial_attach_data_profile);
     }
 
@@ -1485,7 +1561,7 @@ public class DataConfigManager extends Handler {
      * response.
      */
     public boolean shouldHonorRetryTimerForEmergencyNetworkRequest() {
-        return mResources.getBoolean(
+        return mConfigSnapshot.resources.getBoolean(
                 com.android.internal.R.bool.config_honor_data_retry_timer_for_emergency_network);
     }
 
@@ -1494,7 +1570,7 @@ public class DataConfigManager extends Handler {
      */
     @NetCapability
     public Set<Integer> getForcedCellularTransportCapabilities() {
-        String[] forcedCellularTransportCapabilities = mResources.getStringArray(
+        String[] forcedCellularTransportCapabilities = mConfigSnapshot.resources.getStringArray(
                 com.android.internal.R.array.config_force_cellular_transport_capabilities);
 
         return Arrays.stream(forcedCellularTransportCapabilities)
@@ -1529,21 +1605,22 @@ public class DataConfigManager extends Handler {
         IndentingPrintWriter pw = new IndentingPrintWriter(printWriter, "  ");
         pw.println(DataConfigManager.class.getSimpleName() + "-" + mPhone.getPhoneId() + ":");
         pw.increaseIndent();
+        final CarrierConfigSnapshot snapshot = mConfigSnapshot;
         pw.println("isConfigCarrierSpecific=" + isConfigCarrierSpecific());
         pw.println("Network capability priority:");
         pw.increaseIndent();
-        mNetworkCapabilityPriorityMap.forEach((key, value) -> pw.print(
+        snapshot.networkCapabilityPriorityMap.forEach((key, value) -> pw.print(
                 DataUtils.networkCapabilityToString(key) + ":" + value + " "));
         pw.decreaseIndent();
         pw.println();
         pw.println("Data setup retry rules:");
         pw.increaseIndent();
-        mDataSetupRetryRules.forEach(pw::println);
+        snapshot.dataSetupRetryRules.forEach(pw::println);
         pw.decreaseIndent();
         pw.println("isIwlanHandoverPolicyEnabled=" + isIwlanHandoverPolicyEnabled());
         pw.println("Data handover retry rules:");
         pw.increaseIndent();
-        mDataHandoverRetryRules.forEach(pw::println);
+        snapshot.dataHandoverRetryRules.forEach(pw::println);
         pw.decreaseIndent();
         pw.println("shouldHonorRetryTimerForEmergencyNetworkRequest="
                 + shouldHonorRetryTimerForEmergencyNetworkRequest());
@@ -1559,7 +1636,7 @@ public class DataConfigManager extends Handler {
         pw.println("Auto data switch:");
         pw.increaseIndent();
         pw.println("getAutoDataSwitchScoreTolerance=" + getAutoDataSwitchScoreTolerance());
-        mAutoDataSwitchNetworkTypeSignalMap.forEach((key, value) -> pw.println(key + ":"
+        snapshot.autoDataSwitchNetworkTypeSignalMap.forEach((key, value) -> pw.println(key + ":"
                 + Arrays.toString(value)));
         pw.println("getAutoDataSwitchAvailabilityStabilityTimeThreshold="
                 + getAutoDataSwitchAvailabilityStabilityTimeThreshold());
@@ -1567,25 +1644,26 @@ public class DataConfigManager extends Handler {
                 + getAutoDataSwitchPerformanceStabilityTimeThreshold());
         pw.println("getAutoDataSwitchValidationMaxRetry=" + getAutoDataSwitchValidationMaxRetry());
         pw.decreaseIndent();
-        pw.println("Metered APN types=" + mMeteredApnTypes.stream()
+        pw.println("Metered APN types=" + snapshot.meteredApnTypes.stream()
                 .map(ApnSetting::getApnTypeString).collect(Collectors.joining(",")));
-        pw.println("Roaming metered APN types=" + mRoamingMeteredApnTypes.stream()
+        pw.println("Roaming metered APN types=" + snapshot.roamingMeteredApnTypes.stream()
                 .map(ApnSetting::getApnTypeString).collect(Collectors.joining(",")));
-        pw.println("Single data network types=" + mSingleDataNetworkTypeList.stream()
+        pw.println("Single data network types=" + snapshot.singleDataNetworkTypeList.stream()
                 .map(TelephonyManager::getNetworkTypeName).collect(Collectors.joining(",")));
-        pw.println("Capabilities exempt from single PDN=" + mCapabilitiesExemptFromSingleDataList
-                .stream().map(DataUtils::networkCapabilityToString)
-                .collect(Collectors.joining(",")));
-        pw.println("mShouldKeepNetworkUpInNonVops=" + mShouldKeepNetworkUpInNonVops);
-        pw.println("mEnabledVopsNetworkTypesInNonVops=" + mEnabledVopsNetworkTypesInNonVops);
+        pw.println("Capabilities exempt from single PDN="
+                + snapshot.capabilitiesExemptFromSingleDataList.stream()
+                .map(DataUtils::networkCapabilityToString).collect(Collectors.joining(",")));
+        pw.println("shouldKeepNetworkUpInNonVops=" + snapshot.shouldKeepNetworkUpInNonVops);
+        pw.println("enabledVopsNetworkTypesInNonVops="
+                + snapshot.enabledVopsNetworkTypesInNonVops);
         pw.println("isPingTestBeforeAutoDataSwitchRequired="
                 + isPingTestBeforeAutoDataSwitchRequired());
-        pw.println("Unmetered network types=" + String.join(",", mUnmeteredNetworkTypes));
+        pw.println("Unmetered network types=" + String.join(",", snapshot.unmeteredNetworkTypes));
         pw.println("Roaming unmetered network types="
-                + String.join(",", mRoamingUnmeteredNetworkTypes));
+                + String.join(",", snapshot.roamingUnmeteredNetworkTypes));
         pw.println("Bandwidths:");
         pw.increaseIndent();
-        mBandwidthMap.forEach((key, value) -> pw.println(key + ":" + value));
+        snapshot.bandwidthMap.forEach((key, value) -> pw.println(key + ":" + value));
         pw.decreaseIndent();
         pw.println("shouldUseDataActivityForRrcDetection="
                 + shouldUseDataActivityForRrcDetection());
@@ -1596,13 +1674,13 @@ public class DataConfigManager extends Handler {
         pw.println("Default MTU=" + getDefaultMtu());
         pw.println("TCP buffer sizes by RAT:");
         pw.increaseIndent();
-        mTcpBufferSizeMap.forEach((key, value) -> pw.println(key + ":" + value));
+        snapshot.tcpBufferSizeMap.forEach((key, value) -> pw.println(key + ":" + value));
         pw.decreaseIndent();
         pw.println("Default TCP buffer sizes=" + getDefaultTcpConfigString());
         pw.println("getImsDeregistrationDelay=" + getImsDeregistrationDelay());
         pw.println("shouldPersistIwlanDataNetworksWhenDataServiceRestarted="
                 + shouldPersistIwlanDataNetworksWhenDataServiceRestarted());
-        pw.println("Bandwidth estimation source=" + mResources.getString(
+        pw.println("Bandwidth estimation source=" + mConfigSnapshot.resources.getString(
                 com.android.internal.R.string.config_bandwidthEstimateSource));
         pw.println("isImsDelayTearDownUntilVoiceCallEndEnabled="
                 + isImsDelayTearDownUntilVoiceCallEndEnabled());
@@ -770,6 +770,9 @@ public class DataNetwork extends StateMachine {
     @NonNull
     private final List<QosBearerSession> mQosBearerSessions = new ArrayList<>();
 
+    /** The number of data call responses ignored because they were identical to the last one. */
+    private int mUnchangedDataCallResponseCount = 0;
+
     /** The QOS for the Default Bearer, should be non-null on LTE and NR */
     @Nullable
     private Qos mDefaultQos;
@@ -2751,6 +2754,11 @@ public class DataNetwork extends StateMachine {
      */
     private void updateDataNetwork(@Nullable DataCallResponse response) {
         if (response == null) return;
+        if (mCid.get(mTransport) != response.getId()) {
+            // Data call lists received before this network had a cid on this transport were
+            // ignored, so the next one must be processed even if it is identical.
+            mDataServiceManagers.get(mTransport).dispatchNextDataCallList();
+        }
         mCid.put(mTransport, response.getId());
         LinkProperties linkProperties = new LinkProperties();
 
@@ -2872,6 +2880,8 @@ public class DataNetwork extends StateMachine {
         mQosBearerSessions.clear();
         mQosBearerSessions.addAll(response.getQosBearerSessions());
         if (mQosCallbackTracker != null) {
+            // The tracker reuses the filter match results of unchanged sessions, but still reports
+            // every session to the QoS metrics.
             mQosCallbackTracker.updateSessions(mQosBearerSessions);
         }
 
@@ -3085,12 +3095,18 @@ public class DataNetwork extends StateMachine {
             return;
         }
 
-        DataCallResponse response = responseList.stream()
-                .filter(r -> mCid.get(mTransport) == r.getId())
-                .findFirst()
-                .orElse(null);
+        DataCallResponse response = null;
+        int cid = mCid.get(mTransport);
+        for (DataCallResponse r : responseList) {
+            if (r.getId() == cid) {
+                response = r;
+                break;
+            }
+        }
         if (response != null) {
-            if (!response.equals(mDataCallResponse)) {
+            if (response.equals(mDataCallResponse)) {
+                mUnchangedDataCallResponseCount++;
+            } else {
                 log("onDataStateChanged: " + response);
                 validateDataCallResponse(response, -1 /*setupRegState setup only*/);
                 mDataCallResponse = response;
@@ -4147,6 +4163,7 @@ public class DataNetwork extends StateMachine {
         }
         pw.decreaseIndent();
         pw.println("mQosBearerSessions=" + mQosBearerSessions);
+        pw.println("mUnchangedDataCallResponseCount=" + mUnchangedDataCallResponseCount);
 
         mNetworkAgent.dump(fd, pw, args);
         pw.println("Local logs:");
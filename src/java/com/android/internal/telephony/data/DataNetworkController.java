@@ -4375,6 +4375,10 @@ public class DataNetworkController extends Handler {
         mLocalLog.dump(fd, pw, args);
         pw.decreaseIndent();
 
+        pw.println("-------------------------------------");
+        for (int i = 0; i < mDataServiceManagers.size(); i++) {
+            mDataServiceManagers.valueAt(i).dump(fd, pw, args);
+        }
         pw.println("-------------------------------------");
         mDataProfileManager.dump(fd, pw, args);
         pw.println("-------------------------------------");
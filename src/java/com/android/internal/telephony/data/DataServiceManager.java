@@ -53,13 +53,18 @@ import android.telephony.data.IDataServiceCallback;
 import android.telephony.data.NetworkSliceInfo;
 import android.telephony.data.TrafficDescriptor;
 import android.text.TextUtils;
+import android.util.IndentingPrintWriter;
+import android.util.SparseArray;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.IIntegerConsumer;
 import com.android.internal.telephony.Phone;
 import com.android.internal.telephony.PhoneConfigurationManager;
 import com.android.internal.telephony.util.TelephonyUtils;
 import com.android.telephony.Rlog;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -69,6 +74,8 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -113,6 +120,23 @@ public class DataServiceManager extends Handler {
 
     private List<DataCallResponse> mLastDataCallResponseList = new ArrayList<>();
 
+    /** The number of data call list changed events received from the data service. */
+    private final AtomicInteger mDataCallListChangedCount = new AtomicInteger();
+
+    /**
+     * The number of data call list changed events not dispatched to the data networks because
+     * the list was identical to the previous one.
+     */
+    private final AtomicInteger mUnchangedDataCallListCount = new AtomicInteger();
+
+    /**
+     * Whether the next data call list must be dispatched even if it is identical to the previous
+     * one, because a data network did not process the previous list.
+     *
+     * @see #dispatchNextDataCallList()
+     */
+    private final AtomicBoolean mDispatchNextDataCallList = new AtomicBoolean(true);
+
     private class DataServiceManagerDeathRecipient implements IBinder.DeathRecipient {
         @Override
         public void binderDied() {
@@ -313,8 +337,18 @@ public class DataServiceManager extends Handler {
 
         @Override
         public void onDataCallListChanged(List<DataCallResponse> dataCallList) {
+            mDataCallListChangedCount.incrementAndGet();
+            List<DataCallResponse> lastDataCallResponseList = mLastDataCallResponseList;
             mLastDataCallResponseList =
                     dataCallList != null ? dataCallList : new ArrayList<>();
+            // Every data network has already processed the previous list, unless one of them
+            // asked for the next list, so if nothing changed there is no need to wake all of them
+            // up again.
+            if (!mDispatchNextDataCallList.getAndSet(false) && dataCallList != null
+                    && isSameDataCallList(lastDataCallResponseList, dataCallList)) {
+                mUnchangedDataCallListCount.incrementAndGet();
+                return;
+            }
             mDataCallListChangedRegistrants.notifyRegistrants(
                     new AsyncResult(null, dataCallList, null));
         }
@@ -868,6 +902,15 @@ public class DataServiceManager extends Handler {
         }
     }
 
+    /**
+     * Dispatch the next data call list changed event even if the list is identical to the previous
+     * one. Called by a data network that ignored the previous list, e.g. because it had no cid on
+     * this transport yet when the list was received.
+     */
+    public void dispatchNextDataCallList() {
+        mDispatchNextDataCallList.set(true);
+    }
+
     /**
      * Unregister for data network list changed event.
      *
@@ -947,6 +990,48 @@ public class DataServiceManager extends Handler {
         }
     }
 
+    /**
+     * Check if two data call response lists contain the same data calls, regardless of order.
+     *
+     * @param oldList The previous data call response list.
+     * @param newList The new data call response list.
+     * @return {@code true} if every data call in the new list is identical to the one with the
+     * same cid in the old list, and no data call was added or removed.
+     */
+    @VisibleForTesting
+    public static boolean isSameDataCallList(@NonNull List<DataCallResponse> oldList,
+            @NonNull List<DataCallResponse> newList) {
+        if (oldList.size() != newList.size()) return false;
+        SparseArray<DataCallResponse> oldResponses = new SparseArray<>(oldList.size());
+        for (DataCallResponse response : oldList) {
+            oldResponses.put(response.getId(), response);
+        }
+        for (DataCallResponse response : newList) {
+            if (!response.equals(oldResponses.get(response.getId()))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Dump the state of DataServiceManager
+     *
+     * @param fd File descriptor
+     * @param printWriter Print writer
+     * @param args Arguments
+     */
+    public void dump(FileDescriptor fd, PrintWriter printWriter, String[] args) {
+        IndentingPrintWriter pw = new IndentingPrintWriter(printWriter, "  ");
+        pw.println(DataServiceManager.class.getSimpleName() + "-"
+                + AccessNetworkConstants.transportTypeToString(mTransportType) + ":");
+        pw.increaseIndent();
+        pw.println("mBound=" + mBound);
+        pw.println("mLastBoundPackageName=" + mLastBoundPackageName);
+        pw.println("mDataCallListChangedCount=" + mDataCallListChangedCount.get());
+        pw.println("mUnchangedDataCallListCount=" + mUnchangedDataCallListCount.get());
+        pw.println("mLastDataCallResponseList=" + mLastDataCallResponseList);
+        pw.decreaseIndent();
+    }
+
     private void log(String s) {
         Rlog.d(mTag, s);
     }
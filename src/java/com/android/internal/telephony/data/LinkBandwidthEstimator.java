@@ -56,6 +56,7 @@ import android.util.LocalLog;
 import android.util.Pair;
 import android.view.Display;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.DctConstants;
 import com.android.internal.telephony.Phone;
@@ -67,6 +68,10 @@ import com.android.telephony.Rlog;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -98,11 +103,18 @@ public class LinkBandwidthEstimator extends Handler {
     @VisibleForTesting
     static final int MSG_DATA_REG_STATE_OR_RAT_CHANGED = 9;
 
+    // Default network became active, i.e. the radio is sending or receiving data
+    static final int MSG_DEFAULT_NETWORK_ACTIVE = 10;
+
     @VisibleForTesting
     static final int UNKNOWN_TAC = CellInfo.UNAVAILABLE;
 
     // TODO: move the following parameters to xml file
     private static final int TRAFFIC_STATS_POLL_INTERVAL_MS = 1_000;
+    // Traffic stats poll interval is doubled up to the following value while the link is idle
+    private static final int TRAFFIC_STATS_POLL_INTERVAL_MAX_MS = 4_000;
+    // Number of consecutive idle polls before the traffic stats poll interval backs off
+    private static final int TRAFFIC_STATS_IDLE_POLL_COUNT_BEFORE_BACKOFF = 5;
     private static final int MODEM_POLL_MIN_INTERVAL_MS = 5_000;
     private static final int TRAFFIC_MODEM_POLL_BYTE_RATIO = 8;
     private static final int TRAFFIC_POLL_BYTE_THRESHOLD_MAX = 20_000;
@@ -161,6 +173,14 @@ public class LinkBandwidthEstimator extends Handler {
     public static final int LINK_TX = 0;
     public static final int LINK_RX = 1;
     public static final int NUM_LINK_DIRECTION = 2;
+    // Max number of networks whose bandwidth stats are kept in memory
+    private static final int MAX_CACHED_NETWORK_COUNT = 32;
+    // Max number of networks whose bandwidth stats are kept in shared preferences. The least
+    // recently updated network is dropped when the limit is exceeded.
+    @VisibleForTesting
+    static final int MAX_PERSISTED_NETWORK_COUNT = 100;
+    private static final String PREF_PERSISTED_NETWORK_KEYS = "LinkBandwidthEstimatorNetworks";
+    private static final String PREF_UPDATE_SEQUENCE = "LinkBandwidthEstimatorUpdateSeq";
 
     // One common timestamp for all sim to avoid frequent modem polling
     private final Phone mPhone;
@@ -176,6 +196,10 @@ public class LinkBandwidthEstimator extends Handler {
     private long mLastMobileRxBytes;
     private long mTxBytesDeltaAcc;
     private long mRxBytesDeltaAcc;
+    private int mTrafficStatsPollIntervalMs = TRAFFIC_STATS_POLL_INTERVAL_MS;
+    private int mIdleTrafficStatsPollCount;
+    private long mTrafficStatsPollCount;
+    private long mBackedOffTrafficStatsPollCount;
 
     private ModemActivityInfo mLastModemActivityInfo = null;
     private final TelephonyCallback mTelephonyCallback = new TelephonyCallbackImpl();
@@ -297,6 +321,9 @@ public class LinkBandwidthEstimator extends Handler {
                 }
             };
 
+    private final ConnectivityManager.OnNetworkActiveListener mDefaultNetworkActiveListener =
+            () -> sendEmptyMessage(MSG_DEFAULT_NETWORK_ACTIVE);
+
     public LinkBandwidthEstimator(Phone phone, Looper looper, TelephonyFacade telephonyFacade) {
         super(looper);
         mPhone = phone;
@@ -315,9 +342,10 @@ public class LinkBandwidthEstimator extends Handler {
                 .getSystemService(ConnectivityManager.class);
         if (cm != null) {
             cm.registerDefaultNetworkCallback(mDefaultNetworkCallback, this);
+            cm.addDefaultNetworkActiveListener(mDefaultNetworkActiveListener);
         }
         mTelephonyManager.registerTelephonyCallback(new HandlerExecutor(this), mTelephonyCallback);
-        mPlaceholderNetwork = new NetworkBandwidth(UNKNOWN_PLMN);
+        mPlaceholderNetwork = new NetworkBandwidth(phone.getContext(), UNKNOWN_PLMN);
         initAvgBwPerRatTable();
         registerNrStateFrequencyChange();
         mPhone.getServiceStateTracker().registerForDataRegStateOrRatChanged(AccessNetworkConstants
@@ -355,6 +383,9 @@ public class LinkBandwidthEstimator extends Handler {
             case MSG_DATA_REG_STATE_OR_RAT_CHANGED:
                 handleDrsOrRatChanged((AsyncResult) msg.obj);
                 break;
+            case MSG_DEFAULT_NETWORK_ACTIVE:
+                handleDefaultNetworkActive();
+                break;
             default:
                 Rlog.e(TAG, "invalid message " + msg.what);
                 break;
@@ -449,6 +480,7 @@ public class LinkBandwidthEstimator extends Handler {
 
     private void handleTrafficStatsPollConditionChanged() {
         removeMessages(MSG_TRAFFIC_STATS_POLL);
+        resetTrafficStatsPollInterval();
         if (mScreenOn && mIsOnDefaultRoute && mIsOnActiveData) {
             updateDataRatCellIdentityBandwidth();
             handleTrafficStatsPoll();
@@ -462,6 +494,41 @@ public class LinkBandwidthEstimator extends Handler {
         }
     }
 
+    // Traffic resumed while the traffic stats poll is backed off. Poll right away instead of
+    // waiting for the backed off poll.
+    private void handleDefaultNetworkActive() {
+        if (mTrafficStatsPollIntervalMs == TRAFFIC_STATS_POLL_INTERVAL_MS
+                || !hasMessages(MSG_TRAFFIC_STATS_POLL)) {
+            return;
+        }
+        logv("Default network active, reset traffic stats poll interval");
+        removeMessages(MSG_TRAFFIC_STATS_POLL);
+        resetTrafficStatsPollInterval();
+        handleTrafficStatsPoll();
+    }
+
+    private void resetTrafficStatsPollInterval() {
+        mTrafficStatsPollIntervalMs = TRAFFIC_STATS_POLL_INTERVAL_MS;
+        mIdleTrafficStatsPollCount = 0;
+    }
+
+    // Back off the traffic stats poll exponentially while the link stays idle, and go back to
+    // the regular interval as soon as traffic shows up again.
+    private void updateTrafficStatsPollInterval(long txBytesDelta, long rxBytesDelta) {
+        if (txBytesDelta != 0 || rxBytesDelta != 0) {
+            if (mTrafficStatsPollIntervalMs != TRAFFIC_STATS_POLL_INTERVAL_MS) {
+                logv("Traffic detected, reset traffic stats poll interval");
+            }
+            resetTrafficStatsPollInterval();
+            return;
+        }
+        mIdleTrafficStatsPollCount++;
+        if (mIdleTrafficStatsPollCount >= TRAFFIC_STATS_IDLE_POLL_COUNT_BEFORE_BACKOFF) {
+            mTrafficStatsPollIntervalMs = Math.min(mTrafficStatsPollIntervalMs * 2,
+                    TRAFFIC_STATS_POLL_INTERVAL_MAX_MS);
+        }
+    }
+
     private void handleTrafficStatsPoll() {
         invalidateTxRxSamples();
         long mobileTxBytes = mTelephonyFacade.getMobileTxBytes();
@@ -487,7 +554,12 @@ public class LinkBandwidthEstimator extends Handler {
         }
 
         // Schedule the next traffic stats poll
-        sendEmptyMessageDelayed(MSG_TRAFFIC_STATS_POLL, TRAFFIC_STATS_POLL_INTERVAL_MS);
+        mTrafficStatsPollCount++;
+        if (mTrafficStatsPollIntervalMs > TRAFFIC_STATS_POLL_INTERVAL_MS) {
+            mBackedOffTrafficStatsPollCount++;
+        }
+        updateTrafficStatsPollInterval(txBytesDelta, rxBytesDelta);
+        sendEmptyMessageDelayed(MSG_TRAFFIC_STATS_POLL, mTrafficStatsPollIntervalMs);
 
         mLastMobileTxBytes = mobileTxBytes;
         mLastMobileRxBytes = mobileRxBytes;
@@ -1127,7 +1199,20 @@ public class LinkBandwidthEstimator extends Handler {
     // Map with NetworkKey as the key and NetworkBandwidth as the value.
     // NetworkKey is specified by the PLMN, data RAT and TAC of network.
     // NetworkBandwidth represents the bandwidth related stats of each network.
-    private final Map<NetworkKey, NetworkBandwidth> mNetworkMap = new ArrayMap<>();
+    // The map is kept in access order and only caches the recently used networks; the stats of
+    // evicted networks stay in shared preferences and are loaded again on the next lookup.
+    // The stats of a network are persisted in the default shared preferences regardless of the
+    // phone that learned them, so the map is shared by the estimators of all phones as well.
+    @GuardedBy("sNetworkLock")
+    private static final Map<NetworkKey, NetworkBandwidth> sNetworkMap =
+            new LinkedHashMap<>(MAX_CACHED_NETWORK_COUNT, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<NetworkKey, NetworkBandwidth> e) {
+                    return size() > MAX_CACHED_NETWORK_COUNT;
+                }
+            };
+
+    private static final Object sNetworkLock = new Object();
 
     private static class NetworkKey {
 
@@ -1179,64 +1264,197 @@ public class LinkBandwidthEstimator extends Handler {
             return mPlaceholderNetwork;
         }
         NetworkKey key = new NetworkKey(plmn, tac, dataRat);
-        NetworkBandwidth ans = mNetworkMap.get(key);
-        if (ans == null) {
-            ans = new NetworkBandwidth(key.toString());
-            mNetworkMap.put(key, ans);
+        synchronized (sNetworkLock) {
+            NetworkBandwidth ans = sNetworkMap.get(key);
+            if (ans == null) {
+                ans = new NetworkBandwidth(mPhone.getContext(), key.toString());
+                sNetworkMap.put(key, ans);
+            }
+            return ans;
+        }
+    }
+
+    /** Drop the networks cached in memory, e.g. after the shared preferences were cleared. */
+    @VisibleForTesting
+    public static void clearCachedNetworks() {
+        synchronized (sNetworkLock) {
+            sNetworkMap.clear();
         }
-        return ans;
+    }
+
+    /**
+     * Get the keys of the persisted networks. Networks persisted before the keys were recorded
+     * are found from their stats the first time, with no update sequence so that they are the
+     * first ones dropped.
+     */
+    @NonNull
+    private static Set<String> getPersistedNetworkKeys(@NonNull SharedPreferences sp) {
+        Set<String> networkKeys = sp.getStringSet(PREF_PERSISTED_NETWORK_KEYS, null);
+        if (networkKeys != null) {
+            return networkKeys;
+        }
+        networkKeys = new ArraySet<>();
+        for (String prefKey : sp.getAll().keySet()) {
+            String networkKey = NetworkBandwidth.getNetworkKey(prefKey);
+            if (networkKey != null) {
+                networkKeys.add(networkKey);
+            }
+        }
+        return networkKeys;
+    }
+
+    /**
+     * Drop the least recently updated networks from shared preferences so that the persisted
+     * stats stay bounded. The network being updated is never dropped.
+     */
+    @GuardedBy("sNetworkLock")
+    private static void trimPersistedNetworks(@NonNull SharedPreferences sp,
+            @NonNull SharedPreferences.Editor editor, @NonNull Set<String> networkKeys,
+            @NonNull String updatedKey) {
+        int dropCount = networkKeys.size() - MAX_PERSISTED_NETWORK_COUNT;
+        if (dropCount <= 0) {
+            return;
+        }
+        List<Pair<Long, String>> candidates = new ArrayList<>(networkKeys.size());
+        for (String key : networkKeys) {
+            if (!key.equals(updatedKey)) {
+                candidates.add(new Pair<>(sp.getLong(NetworkBandwidth.getSequenceKey(key), 0),
+                        key));
+            }
+        }
+        candidates.sort(Comparator.comparingLong(candidate -> candidate.first));
+        Set<String> droppedKeys = new ArraySet<>(dropCount);
+        for (int i = 0; i < dropCount && i < candidates.size(); i++) {
+            String droppedKey = candidates.get(i).second;
+            droppedKeys.add(droppedKey);
+            NetworkBandwidth.removePersistedStats(editor, droppedKey);
+            Rlog.d(TAG, "Drop persisted bandwidth stats of " + droppedKey);
+        }
+        networkKeys.removeAll(droppedKeys);
+        sNetworkMap.values().removeIf(network -> droppedKeys.contains(network.mKey));
     }
 
     /** A class holding link bandwidth related stats */
     @VisibleForTesting
-    public class NetworkBandwidth {
+    public static class NetworkBandwidth {
 
+        private final Context mContext;
         private final String mKey;
-
-        NetworkBandwidth(String key) {
+        // Stats are loaded from shared preferences on first access and written through on update
+        @GuardedBy("sNetworkLock")
+        private long[][] mValues;
+        @GuardedBy("sNetworkLock")
+        private int[][] mCounts;
+
+        NetworkBandwidth(Context context, String key) {
+            mContext = context;
             mKey = key;
         }
 
+        @GuardedBy("sNetworkLock")
+        private void loadIfNeeded() {
+            if (mValues != null) {
+                return;
+            }
+            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(mContext);
+            mValues = new long[NUM_LINK_DIRECTION][NUM_SIGNAL_LEVEL];
+            mCounts = new int[NUM_LINK_DIRECTION][NUM_SIGNAL_LEVEL];
+            for (int link = 0; link < NUM_LINK_DIRECTION; link++) {
+                for (int level = 0; level < NUM_SIGNAL_LEVEL; level++) {
+                    mValues[link][level] = sp.getLong(getValueKey(mKey, link, level), 0);
+                    mCounts[link][level] = sp.getInt(getCountKey(mKey, link, level), 0);
+                }
+            }
+        }
+
         /** Update link bandwidth stats */
         public void update(long value, int link, int level) {
-            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(
-                    mPhone.getContext());
-            String valueKey = getValueKey(link, level);
-            String countKey = getCountKey(link, level);
-            SharedPreferences.Editor editor = sp.edit();
-            long currValue = sp.getLong(valueKey, 0);
-            int currCount = sp.getInt(countKey, 0);
-            editor.putLong(valueKey, currValue + value);
-            editor.putInt(countKey, currCount + 1);
-            editor.apply();
+            synchronized (sNetworkLock) {
+                SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(mContext);
+                Set<String> networkKeys = getPersistedNetworkKeys(sp);
+                if (!networkKeys.contains(mKey)) {
+                    // The stats may have been dropped by a trim while a phone still held this
+                    // network. Start over from the persisted stats instead of writing the dropped
+                    // ones back.
+                    mValues = null;
+                    mCounts = null;
+                }
+                loadIfNeeded();
+                mValues[link][level] += value;
+                mCounts[link][level]++;
+
+                SharedPreferences.Editor editor = sp.edit();
+                editor.putLong(getValueKey(mKey, link, level), mValues[link][level]);
+                editor.putInt(getCountKey(mKey, link, level), mCounts[link][level]);
+
+                long seq = sp.getLong(PREF_UPDATE_SEQUENCE, 0) + 1;
+                editor.putLong(PREF_UPDATE_SEQUENCE, seq);
+                editor.putLong(getSequenceKey(mKey), seq);
+                if (!networkKeys.contains(mKey) || !sp.contains(PREF_PERSISTED_NETWORK_KEYS)) {
+                    networkKeys = new ArraySet<>(networkKeys);
+                    networkKeys.add(mKey);
+                    trimPersistedNetworks(sp, editor, networkKeys, mKey);
+                    editor.putStringSet(PREF_PERSISTED_NETWORK_KEYS, networkKeys);
+                }
+                editor.apply();
+            }
+        }
+
+        private static void removePersistedStats(@NonNull SharedPreferences.Editor editor,
+                @NonNull String key) {
+            for (int link = 0; link < NUM_LINK_DIRECTION; link++) {
+                for (int level = 0; level < NUM_SIGNAL_LEVEL; level++) {
+                    editor.remove(getValueKey(key, link, level));
+                    editor.remove(getCountKey(key, link, level));
+                }
+            }
+            editor.remove(getSequenceKey(key));
+        }
+
+        private static String getValueKey(String key, int link, int level) {
+            return getDataKey(key, link, level) + "Data";
         }
 
-        private String getValueKey(int link, int level) {
-            return getDataKey(link, level) + "Data";
+        private static String getCountKey(String key, int link, int level) {
+            return getDataKey(key, link, level) + "Count";
         }
 
-        private String getCountKey(int link, int level) {
-            return getDataKey(link, level) + "Count";
+        private static String getDataKey(String key, int link, int level) {
+            return key + "Link" + link + "Level" + level;
         }
 
-        private String getDataKey(int link, int level) {
-            return mKey + "Link" + link + "Level" + level;
+        private static String getSequenceKey(String key) {
+            return key + "UpdateSeq";
+        }
+
+        /**
+         * @return the network key of a shared preference key holding the stats of a network, or
+         *     {@code null} if the preference does not hold network stats.
+         */
+        @Nullable
+        private static String getNetworkKey(@NonNull String prefKey) {
+            if (!prefKey.startsWith("Plmn")
+                    || !(prefKey.endsWith("Data") || prefKey.endsWith("Count"))) {
+                return null;
+            }
+            int index = prefKey.lastIndexOf("Link");
+            return index > 0 ? prefKey.substring(0, index) : null;
         }
 
         /** Get the accumulated bandwidth value */
         public long getValue(int link, int level) {
-            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(
-                    mPhone.getContext());
-            String valueKey = getValueKey(link, level);
-            return sp.getLong(valueKey, 0);
+            synchronized (sNetworkLock) {
+                loadIfNeeded();
+                return mValues[link][level];
+            }
         }
 
         /** Get the accumulated bandwidth count */
         public int getCount(int link, int level) {
-            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(
-                    mPhone.getContext());
-            String countKey = getCountKey(link, level);
-            return sp.getInt(countKey, 0);
+            synchronized (sNetworkLock) {
+                loadIfNeeded();
+                return mCounts[link][level];
+            }
         }
 
         @Override
@@ -1270,9 +1488,13 @@ public class LinkBandwidthEstimator extends Handler {
         IndentingPrintWriter pw = new IndentingPrintWriter(printWriter, " ");
         pw.increaseIndent();
         pw.println("current PLMN " + mPlmn + " TAC " + mTac + " RAT " + getDataRatName(mDataRat));
+        pw.println("traffic stats poll interval " + mTrafficStatsPollIntervalMs + "ms, polls "
+                + mTrafficStatsPollCount + ", backed off polls " + mBackedOffTrafficStatsPollCount);
         pw.println("all networks visited since device boot");
-        for (NetworkBandwidth network : mNetworkMap.values()) {
-            pw.println(network.toString());
+        synchronized (sNetworkLock) {
+            for (NetworkBandwidth network : sNetworkMap.values()) {
+                pw.println(network.toString());
+            }
         }
 
         try {
@@ -39,10 +39,12 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Matches filters with qos sessions and send corresponding available and lost events.
@@ -66,6 +68,14 @@ public class QosCallbackTracker extends Handler {
     @NonNull
     private final Map<Integer, IFilter> mCallbacksToFilter;
 
+    /**
+     * The ids of the callbacks whose filter matches the qos session, keyed by qos bearer session
+     * id. Reused as long as the session does not change, so unchanged sessions do not need to be
+     * matched against every filter again on each update.
+     */
+    @NonNull
+    private final Map<Integer, Set<Integer>> mSessionMatchingCallbackIds;
+
     private final int mPhoneId;
 
     /**
@@ -101,6 +111,42 @@ public class QosCallbackTracker extends Handler {
         boolean matchesProtocol(int protocol);
     }
 
+    /**
+     * Filter that evaluates the protocol match of the wrapped filter only once, since protocol is
+     * checked for every qos bearer filter of every session.
+     */
+    private static final class ProtocolCachingFilter implements IFilter {
+        @NonNull
+        private final IFilter mFilter;
+        private final boolean mMatchesTcp;
+        private final boolean mMatchesUdp;
+
+        ProtocolCachingFilter(@NonNull IFilter filter) {
+            mFilter = filter;
+            mMatchesTcp = filter.matchesProtocol(QosBearerFilter.QOS_PROTOCOL_TCP);
+            mMatchesUdp = filter.matchesProtocol(QosBearerFilter.QOS_PROTOCOL_UDP);
+        }
+
+        @Override
+        public boolean matchesLocalAddress(InetAddress address, int startPort, int endPort) {
+            return mFilter.matchesLocalAddress(address, startPort, endPort);
+        }
+
+        @Override
+        public boolean matchesRemoteAddress(InetAddress address, int startPort, int endPort) {
+            return mFilter.matchesRemoteAddress(address, startPort, endPort);
+        }
+
+        @Override
+        public boolean matchesProtocol(int protocol) {
+            return switch (protocol) {
+                case QosBearerFilter.QOS_PROTOCOL_TCP -> mMatchesTcp;
+                case QosBearerFilter.QOS_PROTOCOL_UDP -> mMatchesUdp;
+                default -> mFilter.matchesProtocol(protocol);
+            };
+        }
+    }
+
     /**
      * Constructor
      *
@@ -110,6 +156,7 @@ public class QosCallbackTracker extends Handler {
     public QosCallbackTracker(@NonNull TelephonyNetworkAgent networkAgent, @NonNull Phone phone) {
         mQosBearerSessions = new HashMap<>();
         mCallbacksToFilter = new HashMap<>();
+        mSessionMatchingCallbackIds = new HashMap<>();
         mNetworkAgent = networkAgent;
         mPhoneId = phone.getPhoneId();
         mRcsStats = RcsStats.getInstance();
@@ -157,14 +204,20 @@ public class QosCallbackTracker extends Handler {
         post(() -> {
             log("addFilter: callbackId=" + callbackId);
             // Called from mDcNetworkAgent
-            mCallbacksToFilter.put(callbackId, filter);
+            final IFilter protocolCachingFilter = new ProtocolCachingFilter(filter);
+            mCallbacksToFilter.put(callbackId, protocolCachingFilter);
 
             //On first change. Check all sessions and send.
             for (final QosBearerSession session : mQosBearerSessions.values()) {
-                if (doFiltersMatch(session, filter)) {
-                    sendSessionAvailable(callbackId, session, filter);
+                final Set<Integer> matchingCallbackIds = getMatchingCallbackIds(
+                        session.getQosBearerSessionId());
+                if (doFiltersMatch(session, protocolCachingFilter)) {
+                    matchingCallbackIds.add(callbackId);
+                    sendSessionAvailable(callbackId, session, protocolCachingFilter);
 
                     notifyMetricDedicatedBearerListenerAdded(callbackId, session);
+                } else {
+                    matchingCallbackIds.remove(callbackId);
                 }
             }
         });
@@ -179,6 +232,9 @@ public class QosCallbackTracker extends Handler {
         post(() -> {
             log("removeFilter: callbackId=" + callbackId);
             mCallbacksToFilter.remove(callbackId);
+            for (final Set<Integer> matchingCallbackIds : mSessionMatchingCallbackIds.values()) {
+                matchingCallbackIds.remove(callbackId);
+            }
             notifyMetricDedicatedBearerListenerRemoved(callbackId);
         });
     }
@@ -196,18 +252,33 @@ public class QosCallbackTracker extends Handler {
 
             final List<QosBearerSession> sessionsToAdd = new ArrayList<>();
             final Map<Integer, QosBearerSession> incomingSessions = new HashMap<>();
+            final Map<Integer, Set<Integer>> incomingMatchingCallbackIds = new HashMap<>();
             final HashSet<Integer> sessionsReportedToMetric = new HashSet<>();
             for (final QosBearerSession incomingSession : sessions) {
                 int sessionId = incomingSession.getQosBearerSessionId();
                 incomingSessions.put(sessionId, incomingSession);
 
                 final QosBearerSession existingSession = mQosBearerSessions.get(sessionId);
+                final Set<Integer> existingMatches = existingSession != null
+                        ? getMatchingCallbackIds(sessionId) : Collections.emptySet();
+                // If the session did not change, the previous match results are still valid.
+                final boolean sessionUnchanged = incomingSession.equals(existingSession);
+                final Set<Integer> incomingMatches =
+                        sessionUnchanged ? existingMatches : new HashSet<>();
+                incomingMatchingCallbackIds.put(sessionId, incomingMatches);
                 for (final int callbackId : mCallbacksToFilter.keySet()) {
                     final IFilter filter = mCallbacksToFilter.get(callbackId);
 
-                    final boolean incomingSessionMatch = doFiltersMatch(incomingSession, filter);
-                    final boolean existingSessionMatch =
-                            existingSession != null && doFiltersMatch(existingSession, filter);
+                    final boolean existingSessionMatch = existingMatches.contains(callbackId);
+                    final boolean incomingSessionMatch;
+                    if (sessionUnchanged) {
+                        incomingSessionMatch = existingSessionMatch;
+                    } else {
+                        incomingSessionMatch = doFiltersMatch(incomingSession, filter);
+                        if (incomingSessionMatch) {
+                            incomingMatches.add(callbackId);
+                        }
+                    }
 
                     if (!existingSessionMatch && incomingSessionMatch) {
                         // The filter matches now and didn't match earlier
@@ -250,11 +321,11 @@ public class QosCallbackTracker extends Handler {
             for (final QosBearerSession existingSession : mQosBearerSessions.values()) {
                 final int sessionId = existingSession.getQosBearerSessionId();
                 if (!incomingSessions.containsKey(sessionId)) {
+                    final Set<Integer> existingMatches = getMatchingCallbackIds(sessionId);
                     for (final int callbackId : mCallbacksToFilter.keySet()) {
-                        final IFilter filter = mCallbacksToFilter.get(callbackId);
                         // The filter matches which means it was previously available, and now is
                         // lost
-                        if (doFiltersMatch(existingSession, filter)) {
+                        if (existingMatches.contains(callbackId)) {
                             sendSessionLost(callbackId, existingSession);
                             notifyMetricDedicatedBearerEvent(existingSession, bearerState, true);
                             sessionsReportedToMetric.add(sessionId);
@@ -272,14 +343,27 @@ public class QosCallbackTracker extends Handler {
             for (final QosBearerSession sessionToAdd : sessionsToAdd) {
                 mQosBearerSessions.put(sessionToAdd.getQosBearerSessionId(), sessionToAdd);
             }
+            mSessionMatchingCallbackIds.putAll(incomingMatchingCallbackIds);
 
             // Remove any old sessions
             for (final int sessionToRemove : sessionsToRemove) {
                 mQosBearerSessions.remove(sessionToRemove);
+                mSessionMatchingCallbackIds.remove(sessionToRemove);
             }
         });
     }
 
+    /**
+     * Get the ids of the callbacks whose filter matches the current qos session.
+     *
+     * @param sessionId The qos bearer session id.
+     * @return The mutable set of matching callback ids.
+     */
+    @NonNull
+    private Set<Integer> getMatchingCallbackIds(int sessionId) {
+        return mSessionMatchingCallbackIds.computeIfAbsent(sessionId, k -> new HashSet<>());
+    }
+
     private boolean doFiltersMatch(@NonNull final QosBearerSession qosBearerSession,
                                    @NonNull final IFilter filter) {
         return getMatchingQosBearerFilter(qosBearerSession, filter) != null;
@@ -372,6 +456,13 @@ public class QosCallbackTracker extends Handler {
         QosBearerFilter qosFilter = null;
 
         for (final QosBearerFilter sessionFilter : qosBearerSession.getQosBearerFilterList()) {
+            final int protocol = sessionFilter.getProtocol();
+            if ((protocol == QosBearerFilter.QOS_PROTOCOL_TCP
+                    || protocol == QosBearerFilter.QOS_PROTOCOL_UDP)
+                    && !filter.matchesProtocol(protocol)) {
+                // The protocol check is cheap, so skip the address matching if it already fails.
+                continue;
+            }
             boolean unMatched = false;
             boolean hasMatchedFilter = false;
             if (!sessionFilter.getLocalAddresses().isEmpty()
@@ -64,11 +64,20 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
 
     private boolean mRefreshCache = false;
 
+    // Records read by readRecordsAndWait, by record number. Guarded by mLock.
+    private SparseArray<byte[]> mRecordsRead = new SparseArray<byte[]>();
+    private int mPendingRecordReads;
+    // Whether readRecordsAndWait waits for the record size, and whether it got it
+    private boolean mRecordSizePending;
+    private boolean mRecordSizeLoaded;
+    // Tells responses to an earlier readRecordsAndWait apart from those to the current one
+    private int mRecordReadGeneration;
+
 
     private static final int EVENT_PBR_LOAD_DONE = 1;
     private static final int EVENT_USIM_ADN_LOAD_DONE = 2;
-    private static final int EVENT_IAP_LOAD_DONE = 3;
-    private static final int EVENT_EMAIL_LOAD_DONE = 4;
+    private static final int EVENT_RECORD_LOAD_DONE = 3;
+    private static final int EVENT_RECORD_SIZE_LOAD_DONE = 4;
 
     private static final int USIM_TYPE1_TAG   = 0xA8;
     private static final int USIM_TYPE2_TAG   = 0xA9;
@@ -209,6 +218,13 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
 
         File email = files.get(USIM_EFEMAIL_TAG);
         if (email != null) {
+            // Only the records linked to a contact are read from EF_IAP and EF_EMAIL. On most
+            // SIMs the phonebook is sparsely used, so this saves reading hundreds of records.
+            ArrayList<Integer> usedAdnIndices = getUsedAdnIndices(recId);
+            if (usedAdnIndices.isEmpty()) {
+                log("No contacts for PBR record " + recId + ", skipping EF_EMAIL");
+                return;
+            }
 
             /**
              * Check if the EF_EMAIL is a Type 1 file or a type 2 file.
@@ -223,7 +239,7 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
                 }
 
                 log("EF_IAP exists. Loading EF_IAP to retrieve the index.");
-                readIapFileAndWait(files.get(USIM_EFIAP_TAG).getEfid());
+                readIapFileAndWait(files.get(USIM_EFIAP_TAG).getEfid(), usedAdnIndices);
                 if (mIapFileRecord == null) {
                     Rlog.e(LOG_TAG, "Error: IAP file is empty");
                     return;
@@ -253,14 +269,29 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
                 }
             }
 
-            // Read the EFEmail file.
-            mFh.loadEFLinearFixedAll(emailEfid,
-                    obtainMessage(EVENT_EMAIL_LOAD_DONE));
-            try {
-                mLock.wait();
-            } catch (InterruptedException e) {
-                Rlog.e(LOG_TAG, "Interrupted Exception in readEmailFileAndWait");
+            // Read the EFEmail records of the contacts.
+            ArrayList<Integer> emailRecNums = new ArrayList<Integer>();
+            if (email.getParentTag() == USIM_TYPE2_TAG && mIapFileRecord != null) {
+                for (int adnIndex : usedAdnIndices) {
+                    byte[] iapRec = adnIndex < mIapFileRecord.size()
+                            ? mIapFileRecord.get(adnIndex) : null;
+                    if (iapRec == null || email.getIndex() >= iapRec.length) continue;
+                    int emailRecNum = iapRec[email.getIndex()] & 0xFF;
+                    if (emailRecNum != 0 && emailRecNum != 0xFF) {
+                        emailRecNums.add(emailRecNum);
+                    }
+                }
+            } else {
+                // Type 1 EF_EMAIL records are linked to EF_ADN records by record number.
+                for (int adnIndex : usedAdnIndices) {
+                    emailRecNums.add(adnIndex + 1);
+                }
             }
+            if (emailRecNums.isEmpty()) {
+                log("No EF_EMAIL records linked to contacts");
+                return;
+            }
+            mEmailFileRecord = readRecordsAndWait(emailEfid, emailRecNums);
 
             if (mEmailFileRecord == null) {
                 Rlog.e(LOG_TAG, "Error: Email file is empty");
@@ -303,9 +334,11 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
             try {
                 emailRec = mEmailFileRecord.get(i);
             } catch (IndexOutOfBoundsException e) {
-                Rlog.e(LOG_TAG, "Error: Improper ICC card: No email record for ADN, continuing");
+                // Records past the last contact with an email are not read.
                 break;
             }
+            // The record was not read since there is no contact for it.
+            if (emailRec == null) continue;
 
             /**
              *  3GPP TS 31.102 4.4.2.13 EF_EMAIL (e-mail address)
@@ -382,13 +415,16 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
         int adnEfid = adnFile.getEfid();
 
         for (int i = 0; i < numRecs; i++) {
-            byte[] record;
+            byte[] record = null;
             int emailRecId;
             try {
                 record = mIapFileRecord.get(i);
+                if (record == null) continue;
                 emailRecId =
                         record[mPbrRecords.get(recId).mFileIds.get(USIM_EFEMAIL_TAG).getIndex()];
             } catch (IndexOutOfBoundsException e) {
+                // Records past the last contact are not read.
+                if (record == null) break;
                 Rlog.e(LOG_TAG, "Error: Improper ICC card: Corrupted EF_IAP");
                 continue;
             }
@@ -410,14 +446,81 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
         return true;
     }
 
-    // Read Phonebook Index Admistration EF_IAP file
-    private void readIapFileAndWait(int efid) {
-        mFh.loadEFLinearFixedAll(efid, obtainMessage(EVENT_IAP_LOAD_DONE));
-        try {
-            mLock.wait();
-        } catch (InterruptedException e) {
-            Rlog.e(LOG_TAG, "Interrupted Exception in readIapFileAndWait");
+    // Read the records of the Phonebook Index Admistration EF_IAP file for the given 0-based
+    // ADN record indices.
+    private void readIapFileAndWait(int efid, ArrayList<Integer> adnIndices) {
+        ArrayList<Integer> recNums = new ArrayList<Integer>(adnIndices.size());
+        for (int adnIndex : adnIndices) {
+            recNums.add(adnIndex + 1);
+        }
+        mIapFileRecord = readRecordsAndWait(efid, recNums);
+    }
+
+    // Get the 0-based indices of the non-empty ADN records of a PBR record.
+    private ArrayList<Integer> getUsedAdnIndices(int recId) {
+        PbrRecord pbr = mPbrRecords.get(recId);
+        ArrayList<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0; i < pbr.mMainFileRecordNum; i++) {
+            if (!mPhoneBookRecords.get(pbr.mMainFileRecordStart + i).isEmpty()) {
+                indices.add(i);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Read some records of a linear fixed EF. Must be called with mLock held.
+     *
+     * @param efid the EF id
+     * @param recNums the 1-based record numbers to read
+     * @return the records by 0-based index, up to the highest record number read. Records that
+     *     were not requested or failed to load are null. Null if no record could be read.
+     */
+    private ArrayList<byte[]> readRecordsAndWait(int efid, ArrayList<Integer> recNums) {
+        mRecordsRead.clear();
+        mRecordReadGeneration++;
+        if (recNums.size() > 1) {
+            // Get the record size once. The file handler caches it, so each read below is a
+            // single READ RECORD instead of a GET RESPONSE and a READ RECORD.
+            mRecordSizePending = true;
+            mRecordSizeLoaded = false;
+            mFh.getEFLinearRecordSize(efid,
+                    obtainMessage(EVENT_RECORD_SIZE_LOAD_DONE, 0, mRecordReadGeneration));
+            while (mRecordSizePending) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Rlog.e(LOG_TAG, "Interrupted Exception in readRecordsAndWait");
+                    break;
+                }
+            }
+            mRecordSizePending = false;
+            // The records cannot be read either.
+            if (!mRecordSizeLoaded) return null;
+        }
+        mPendingRecordReads = recNums.size();
+        for (int recNum : recNums) {
+            mFh.loadEFLinearFixed(efid, recNum,
+                    obtainMessage(EVENT_RECORD_LOAD_DONE, recNum, mRecordReadGeneration));
+        }
+        while (mPendingRecordReads > 0) {
+            try {
+                mLock.wait();
+            } catch (InterruptedException e) {
+                Rlog.e(LOG_TAG, "Interrupted Exception in readRecordsAndWait");
+                break;
+            }
         }
+        mPendingRecordReads = 0;
+
+        if (mRecordsRead.size() == 0) return null;
+        int maxRecNum = mRecordsRead.keyAt(mRecordsRead.size() - 1);
+        ArrayList<byte[]> records = new ArrayList<byte[]>(maxRecNum);
+        for (int i = 1; i <= maxRecNum; i++) {
+            records.add(mRecordsRead.get(i));
+        }
+        mRecordsRead.clear();
+        return records;
     }
 
     private void updatePhoneAdnRecord() {
@@ -462,6 +565,7 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
         } catch (IndexOutOfBoundsException e) {
             return null;
         }
+        if (emailRec == null) return null;
 
         // The length of the record is X+2 byte, where X bytes is the email address
         return IccUtils.adnStringFieldToString(emailRec, 0, emailRec.length - 2);
@@ -495,6 +599,7 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
          * The recent added ADN record # would be the reference record size
          * for the rest of EFs associated within this PBR.
          */
+        mPbrRecords.get(recId).mMainFileRecordStart = previousSize;
         mPbrRecords.get(recId).mMainFileRecordNum = mPhoneBookRecords.size() - previousSize;
     }
 
@@ -552,25 +657,25 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
                 mLock.notify();
             }
             break;
-        case EVENT_IAP_LOAD_DONE:
-            log("Loading USIM IAP records done");
+        case EVENT_RECORD_SIZE_LOAD_DONE:
             ar = (AsyncResult) msg.obj;
-            if (ar.exception == null) {
-                mIapFileRecord = ((ArrayList<byte[]>)ar.result);
-            }
             synchronized (mLock) {
+                if (msg.arg2 != mRecordReadGeneration || !mRecordSizePending) break;
+                mRecordSizeLoaded = ar.exception == null;
+                mRecordSizePending = false;
                 mLock.notify();
             }
             break;
-        case EVENT_EMAIL_LOAD_DONE:
-            log("Loading USIM Email records done");
+        case EVENT_RECORD_LOAD_DONE:
             ar = (AsyncResult) msg.obj;
-            if (ar.exception == null) {
-                mEmailFileRecord = ((ArrayList<byte[]>)ar.result);
-            }
-
             synchronized (mLock) {
-                mLock.notify();
+                if (msg.arg2 != mRecordReadGeneration || mPendingRecordReads == 0) break;
+                if (ar.exception == null) {
+                    mRecordsRead.put(msg.arg1, (byte[]) ar.result);
+                }
+                if (--mPendingRecordReads == 0) {
+                    mLock.notify();
+                }
             }
             break;
         }
@@ -588,6 +693,8 @@ public class UsimPhoneBookManager extends Handler implements IccConstants {
          * bases (Rec1 -> Rec1). The EF_ADN/EF_ADN1 file record number is the reference.
          */
         private int mMainFileRecordNum;
+        // Index of the first record of the main file in mPhoneBookRecords
+        private int mMainFileRecordStart;
 
         PbrRecord(byte[] record) {
             mFileIds = new SparseArray<File>();
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import android.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Reads the BER-TLV data objects found in a range of a byte array one after the other, without
+ * copying the data. The value of the current data object can be read as another
+ * {@link BerTlvReader} over the same array with {@link #getValueReader()}.
+ *
+ * Tags are returned as integers made of the bytes of the tag, e.g. {@code 0xFF40}. The length
+ * follows GPC_Specification_2.2.1: 11.1.5 APDU Message and Data Length, i.e. either 1 byte if
+ * the length is less than 128, or 1 byte giving the number of bytes used for the length followed
+ * by those bytes.
+ *
+ * Malformed or truncated data is reported with {@link IllegalArgumentException}, like
+ * {@link UiccCarrierPrivilegeRules.TLV}.
+ *
+ * {@hide}
+ */
+public final class BerTlvReader {
+    private static final int SINGLE_BYTE_MAX_LENGTH = 0x80;
+    private static final int MAX_LENGTH_BYTES = 4;
+    private static final int MAX_TAG_BYTES = 3;
+
+    private final byte[] mData;
+    private final int mEnd;
+    private int mPosition;
+
+    // Current data object, i.e. the one returned by the last call to next().
+    private int mTag = -1;
+    private int mOffset;
+    private int mValueOffset;
+    private int mValueLength;
+
+    // Header of the data object at mPosition, filled by parseHeader().
+    private int mHeaderTag;
+    private int mHeaderValueOffset;
+    private int mHeaderValueLength;
+
+    public BerTlvReader(@NonNull byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    /**
+     * @param data the array holding the data objects
+     * @param offset the offset of the first data object in {@code data}
+     * @param length the number of bytes taken by the data objects
+     */
+    public BerTlvReader(@NonNull byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length
+                    + " data.length=" + data.length);
+        }
+        mData = data;
+        mPosition = offset;
+        mEnd = offset + length;
+    }
+
+    /** @return {@code true} if there are data objects left to read. */
+    public boolean hasNext() {
+        return mPosition < mEnd;
+    }
+
+    /**
+     * @param tag the tag to check
+     * @return {@code true} if the encoding of the next data object starts with {@code tag}. Only
+     *     the tag is looked at, so this returns {@code false} rather than throwing if no data is
+     *     left.
+     */
+    public boolean isNextTag(int tag) {
+        int tagLength = tag > 0xFFFF ? 3 : (tag > 0xFF ? 2 : 1);
+        if (mEnd - mPosition < tagLength) return false;
+        for (int i = 0; i < tagLength; i++) {
+            int expected = (tag >>> (8 * (tagLength - 1 - i))) & 0xFF;
+            if ((mData[mPosition + i] & 0xFF) != expected) return false;
+        }
+        return true;
+    }
+
+    /** @return the tag of the next data object, without moving to it. */
+    public int peekTag() {
+        parseHeader();
+        return mHeaderTag;
+    }
+
+    /**
+     * @return the number of bytes taken by the next data object, including its tag and length.
+     *     Unlike {@link #next()}, this does not require the value to be available, so it can be
+     *     used to tell whether a data object received in several parts is complete.
+     * @throws IllegalArgumentException If the header is malformed, or if the length cannot be
+     *     the one of a data object held in an array.
+     */
+    public int peekEncodedLength() {
+        parseHeader();
+        return mHeaderValueOffset - mPosition + mHeaderValueLength;
+    }
+
+    /**
+     * Move to the next data object.
+     *
+     * @return the tag of the data object
+     */
+    public int next() {
+        parseHeader();
+        if (mHeaderValueLength > mEnd - mHeaderValueOffset) {
+            throw new IllegalArgumentException("Not enough data.");
+        }
+        mTag = mHeaderTag;
+        mOffset = mPosition;
+        mValueOffset = mHeaderValueOffset;
+        mValueLength = mHeaderValueLength;
+        mPosition = mValueOffset + mValueLength;
+        return mTag;
+    }
+
+    /**
+     * Move to the next data object, which must have the given tag.
+     *
+     * @param tag the expected tag
+     * @param shouldConsumeAll whether the data object must be the last one
+     */
+    public void next(int tag, boolean shouldConsumeAll) {
+        if (!isNextTag(tag)) {
+            throw new IllegalArgumentException("Tags don't match.");
+        }
+        next();
+        if (shouldConsumeAll && hasNext()) {
+            throw new IllegalArgumentException("Did not consume all.");
+        }
+    }
+
+    /** @return the tag of the current data object. */
+    public int getTag() {
+        checkCurrent();
+        return mTag;
+    }
+
+    /** @return the offset of the tag of the current data object in the array. */
+    public int getOffset() {
+        checkCurrent();
+        return mOffset;
+    }
+
+    /** @return the offset of the value of the current data object in the array. */
+    public int getValueOffset() {
+        checkCurrent();
+        return mValueOffset;
+    }
+
+    /** @return the length of the value of the current data object. */
+    public int getValueLength() {
+        checkCurrent();
+        return mValueLength;
+    }
+
+    /** @return the array holding the data objects. */
+    @NonNull
+    public byte[] getData() {
+        return mData;
+    }
+
+    /** @return a reader over the data objects nested in the value of the current data object. */
+    @NonNull
+    public BerTlvReader getValueReader() {
+        checkCurrent();
+        return new BerTlvReader(mData, mValueOffset, mValueLength);
+    }
+
+    /** @return a copy of the value of the current data object. */
+    @NonNull
+    public byte[] getValue() {
+        checkCurrent();
+        return Arrays.copyOfRange(mData, mValueOffset, mValueOffset + mValueLength);
+    }
+
+    /** @return the value of the current data object as an upper case hex string. */
+    @NonNull
+    public String getValueHex() {
+        checkCurrent();
+        char[] hex = new char[mValueLength * 2];
+        for (int i = 0; i < mValueLength; i++) {
+            int b = mData[mValueOffset + i] & 0xFF;
+            hex[i * 2] = Character.toUpperCase(Character.forDigit(b >>> 4, 16));
+            hex[i * 2 + 1] = Character.toUpperCase(Character.forDigit(b & 0x0F, 16));
+        }
+        return new String(hex);
+    }
+
+    /** @return {@code true} if the value of the current data object is {@code expected}. */
+    public boolean valueEquals(@NonNull byte[] expected) {
+        checkCurrent();
+        if (mValueLength != expected.length) return false;
+        for (int i = 0; i < mValueLength; i++) {
+            if (mData[mValueOffset + i] != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private void checkCurrent() {
+        if (mTag < 0) {
+            throw new IllegalStateException("next() has not been called");
+        }
+    }
+
+    private void parseHeader() {
+        int index = mPosition;
+        if (index >= mEnd) {
+            throw new IllegalArgumentException("No tag.");
+        }
+        int tag = mData[index++] & 0xFF;
+        if ((tag & 0x1F) == 0x1F) {
+            // Multi-byte tag: subsequent bytes have bit 8 set, except the last one.
+            int b;
+            do {
+                if (index >= mEnd || index - mPosition >= MAX_TAG_BYTES) {
+                    throw new IllegalArgumentException("Invalid tag.");
+                }
+                b = mData[index++] & 0xFF;
+                tag = (tag << 8) | b;
+            } while ((b & 0x80) != 0);
+        }
+        if (index >= mEnd) {
+            throw new IllegalArgumentException("No length.");
+        }
+        int length = mData[index++] & 0xFF;
+        if (length >= SINGLE_BYTE_MAX_LENGTH) {
+            int numBytes = length - SINGLE_BYTE_MAX_LENGTH;
+            if (numBytes == 0 || numBytes > MAX_LENGTH_BYTES || numBytes > mEnd - index) {
+                throw new IllegalArgumentException("Invalid length.");
+            }
+            length = 0;
+            for (int i = 0; i < numBytes; i++) {
+                length = (length << 8) | (mData[index++] & 0xFF);
+            }
+            // The length may exceed the data received so far, see peekEncodedLength(), but the
+            // whole data object must still fit in an array.
+            if (length < 0 || length > Integer.MAX_VALUE - (index - mPosition)) {
+                throw new IllegalArgumentException("Invalid length.");
+            }
+        }
+        mHeaderTag = tag;
+        mHeaderValueOffset = index;
+        mHeaderValueLength = length;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.UiccAccessRule;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.telephony.Rlog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of the carrier privilege rules read from the UICC, keyed by ICCID. It lets
+ * {@link UiccCarrierPrivilegeRules} apply the rules of a known SIM as soon as the SIM is present,
+ * while the rules are read from ARA-D, ARA-M or ARF again in the background.
+ *
+ * The rules are stored with a checksum of their encoding, and an entry whose checksum does not
+ * match is ignored. Only the rules of the {@link #MAX_CACHED_ICCIDS} most recently used SIMs are
+ * kept.
+ */
+public class CarrierPrivilegeRuleCache {
+    private static final String LOG_TAG = "CarrierPrivilegeRuleCache";
+
+    private static final String SHARED_PREFS_NAME = "carrier_privilege_rule_cache";
+    /** Comma separated ICCIDs with cached rules, least recently used first. */
+    private static final String KEY_ICCIDS = "carrier_privilege_rule_cache_iccids";
+    private static final String KEY_RULES_PREFIX = "carrier_privilege_rule_cache_";
+
+    @VisibleForTesting
+    static final int MAX_CACHED_ICCIDS = 4;
+
+    private final SharedPreferences mPrefs;
+    private final IccidLru mIccids;
+
+    public CarrierPrivilegeRuleCache(@NonNull Context context) {
+        mPrefs = context.getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        mIccids = new IccidLru(LOG_TAG, mPrefs, KEY_ICCIDS, MAX_CACHED_ICCIDS,
+                (editor, iccid) -> editor.remove(getKey(iccid)));
+    }
+
+    /**
+     * @param iccid the ICCID of the SIM
+     * @return the cached rules of the SIM, or {@code null} if they are not cached
+     */
+    @Nullable
+    public List<UiccAccessRule> get(@NonNull String iccid) {
+        String value = mPrefs.getString(getKey(iccid), null);
+        if (value == null) return null;
+        int separator = value.indexOf(':');
+        if (separator < 0) {
+            Rlog.e(LOG_TAG, "get: invalid entry");
+            return null;
+        }
+        byte[] encodedRules = IccUtils.hexStringToBytes(value.substring(separator + 1));
+        if (encodedRules == null
+                || !value.substring(0, separator).equals(getChecksum(encodedRules))) {
+            Rlog.e(LOG_TAG, "get: checksum mismatch");
+            return null;
+        }
+        try {
+            UiccAccessRule[] rules = UiccAccessRule.decodeRules(encodedRules);
+            return rules == null ? null : new ArrayList<>(Arrays.asList(rules));
+        } catch (RuntimeException e) {
+            Rlog.e(LOG_TAG, "get: cannot decode rules", e);
+            return null;
+        }
+    }
+
+    /**
+     * Cache the rules of a SIM, replacing any rules cached before.
+     *
+     * @param iccid the ICCID of the SIM
+     * @param rules the rules read from the SIM, which may be empty
+     */
+    public void put(@NonNull String iccid, @NonNull List<UiccAccessRule> rules) {
+        byte[] encodedRules = UiccAccessRule.encodeRules(rules.toArray(new UiccAccessRule[0]));
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putString(getKey(iccid),
+                getChecksum(encodedRules) + ":" + IccUtils.bytesToHexString(encodedRules));
+        mIccids.touch(editor, iccid);
+        editor.apply();
+    }
+
+    /**
+     * Mark the rules of a SIM as the most recently used, e.g. because the cached rules were
+     * confirmed by reading the SIM.
+     *
+     * @param iccid the ICCID of the SIM
+     */
+    public void touch(@NonNull String iccid) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mIccids.touch(editor, iccid)) {
+            editor.apply();
+        }
+    }
+
+    /**
+     * Drop the cached rules of a SIM, e.g. because they could not be read from the SIM.
+     *
+     * @param iccid the ICCID of the SIM
+     */
+    public void remove(@NonNull String iccid) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.remove(getKey(iccid));
+        mIccids.remove(editor, iccid);
+        editor.apply();
+    }
+
+    private static String getChecksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String getKey(String iccid) {
+        return KEY_RULES_PREFIX + iccid;
+    }
+}
@@ -23,13 +23,22 @@ import android.os.AsyncResult;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.IndentingPrintWriter;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.CommandsInterface;
 import com.android.telephony.Rlog;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 
 /**
  * {@hide}
@@ -106,6 +115,85 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
     static protected final int EVENT_GET_RECORD_SIZE_IMG_DONE = 11;
     /** Finished retriveing record size of transparent file. */
     protected static final int EVENT_GET_EF_TRANSPARENT_SIZE_DONE = 12;
+    /** The SIM reported a refresh; drop the cached record sizes. */
+    private static final int EVENT_ICC_REFRESH = 13;
+    /** A read sent to the modem was not answered in time. */
+    private static final int EVENT_READ_STALL_TIMEOUT = 14;
+
+    //***** Read priorities
+
+    /** Reads of files that identify the subscription. */
+    @VisibleForTesting
+    static final int PRIORITY_HIGH = 0;
+    @VisibleForTesting
+    static final int PRIORITY_NORMAL = 1;
+    /** Bulk reads, such as the phonebook and stored SMS. */
+    @VisibleForTesting
+    static final int PRIORITY_LOW = 2;
+
+    /** Maximum number of reads sent to the modem and not answered yet. */
+    @VisibleForTesting
+    static final int MAX_READS_IN_FLIGHT = 2;
+    /**
+     * A read not answered for this long no longer counts as in flight, so that a lost response
+     * does not hold up all further reads.
+     */
+    @VisibleForTesting
+    static final long READ_STALL_TIMEOUT_MS = 20 * 1000;
+
+    /** A SIM I/O read, waiting to be sent to the modem or for its response. */
+    private static final class PendingRead {
+        final long mSequence;
+        final int mPriority;
+        final int mCommand;
+        final int mFileId;
+        final String mPath;
+        final int mP1;
+        final int mP2;
+        final int mP3;
+        final Message mResponse;
+        final long mQueuedMs;
+        long mSentMs;
+
+        PendingRead(long sequence, int priority, int command, int fileId, String path, int p1,
+                int p2, int p3, Message response) {
+            mSequence = sequence;
+            mPriority = priority;
+            mCommand = command;
+            mFileId = fileId;
+            mPath = path;
+            mP1 = p1;
+            mP2 = p2;
+            mP3 = p3;
+            mResponse = response;
+            mQueuedMs = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /** Latency of the reads of one EF. */
+    private static final class ReadStats {
+        int mCount;
+        long mTotalWaitMs;
+        long mTotalIoMs;
+        long mMaxIoMs;
+    }
+
+    // Reads are queued by priority, then in the order they were requested. Guarded by itself
+    // since some callers read files from binder threads.
+    private final PriorityQueue<PendingRead> mPendingReads = new PriorityQueue<>(
+            Comparator.comparingInt((PendingRead read) -> read.mPriority)
+                    .thenComparingLong(read -> read.mSequence));
+    // Reads sent to the modem, by the message their response is delivered with
+    private final ArrayMap<Message, PendingRead> mReadsInFlight = new ArrayMap<>();
+    private long mReadSequence;
+    private int mStalledReadCount;
+    private final SparseArray<ReadStats> mReadStats = new SparseArray<>();
+
+    // GET RESPONSE payloads of linear fixed EFs, by path and EF id. The record size and count
+    // do not change while the application is up, but a SIM refresh or an application update
+    // may change them, which clears the cache.
+    private final ArrayMap<String, byte[]> mRecordSizeCache = new ArrayMap<>();
+    private int mRecordSizeCacheHitCount;
 
      // member variables
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
@@ -166,6 +254,7 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
         mParentApp = app;
         mAid = aid;
         mCi = ci;
+        mCi.registerForIccRefresh(this, EVENT_ICC_REFRESH, null);
     }
 
     @VisibleForTesting
@@ -173,9 +262,21 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
         mParentApp = null;
         mAid = null;
         mCi = ci;
+        mCi.registerForIccRefresh(this, EVENT_ICC_REFRESH, null);
     }
 
     public void dispose() {
+        mCi.unregisterForIccRefresh(this);
+    }
+
+    /**
+     * Drop the cached GET RESPONSE payloads, because the files of the application may have
+     * changed.
+     */
+    public void clearRecordSizeCache() {
+        synchronized (mPendingReads) {
+            mRecordSizeCache.clear();
+        }
     }
 
     //***** Public Methods
@@ -198,8 +299,7 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
                 = obtainMessage(EVENT_GET_RECORD_SIZE_DONE,
                         new LoadLinearFixedContext(fileid, recordNum, efPath, onLoaded));
 
-        mCi.iccIOForApp(COMMAND_GET_RESPONSE, fileid, efPath,
-                        0, 0, GET_RESPONSE_EF_SIZE_BYTES, null, null, mAid, response);
+        getRecordSize(fileid, efPath, response);
     }
 
     /**
@@ -231,10 +331,9 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
                 new LoadLinearFixedContext(IccConstants.EF_IMG, recordNum,
                         onLoaded));
 
-        mCi.iccIOForApp(COMMAND_GET_RESPONSE, IccConstants.EF_IMG,
+        queueRead(COMMAND_GET_RESPONSE, IccConstants.EF_IMG,
                     getEFPath(IccConstants.EF_IMG), recordNum,
-                    READ_RECORD_MODE_ABSOLUTE, GET_RESPONSE_EF_IMG_SIZE_BYTES,
-                    null, null, mAid, response);
+                    READ_RECORD_MODE_ABSOLUTE, GET_RESPONSE_EF_IMG_SIZE_BYTES, response);
     }
 
     /**
@@ -253,8 +352,7 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
         Message response
                 = obtainMessage(EVENT_GET_EF_LINEAR_RECORD_SIZE_DONE,
                         new LoadLinearFixedContext(fileid, efPath, onLoaded));
-        mCi.iccIOForApp(COMMAND_GET_RESPONSE, fileid, efPath,
-                    0, 0, GET_RESPONSE_EF_SIZE_BYTES, null, null, mAid, response);
+        getRecordSize(fileid, efPath, response);
     }
 
     /**
@@ -280,16 +378,13 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
      */
     public void getEFTransparentRecordSize(int fileid, Message onLoaded) {
         Message response = obtainMessage(EVENT_GET_EF_TRANSPARENT_SIZE_DONE, fileid, 0, onLoaded);
-        mCi.iccIOForApp(
+        queueRead(
                 COMMAND_GET_RESPONSE,
                 fileid,
                 getEFPath(fileid),
                 0,
                 0,
                 GET_RESPONSE_EF_SIZE_BYTES,
-                null,
-                null,
-                mAid,
                 response);
     }
 
@@ -308,8 +403,7 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
         Message response = obtainMessage(EVENT_GET_RECORD_SIZE_DONE,
                         new LoadLinearFixedContext(fileid, efPath, onLoaded));
 
-        mCi.iccIOForApp(COMMAND_GET_RESPONSE, fileid, efPath,
-                        0, 0, GET_RESPONSE_EF_SIZE_BYTES, null, null, mAid, response);
+        getRecordSize(fileid, efPath, response);
     }
 
     /**
@@ -339,8 +433,8 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
         Message response = obtainMessage(EVENT_GET_BINARY_SIZE_DONE,
                         fileid, 0, onLoaded);
 
-        mCi.iccIOForApp(COMMAND_GET_RESPONSE, fileid, getEFPath(fileid),
-                        0, 0, GET_RESPONSE_EF_SIZE_BYTES, null, null, mAid, response);
+        queueRead(COMMAND_GET_RESPONSE, fileid, getEFPath(fileid),
+                        0, 0, GET_RESPONSE_EF_SIZE_BYTES, response);
     }
 
     /**
@@ -357,8 +451,8 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
         Message response = obtainMessage(EVENT_READ_BINARY_DONE,
                         fileid, 0, onLoaded);
 
-        mCi.iccIOForApp(COMMAND_READ_BINARY, fileid, getEFPath(fileid),
-                        0, 0, size, null, null, mAid, response);
+        queueRead(COMMAND_READ_BINARY, fileid, getEFPath(fileid),
+                        0, 0, size, response);
     }
 
     /**
@@ -386,8 +480,8 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
          * EF img ( 4F20, linear fixed file) are : 4F01 ... 4F05.
          * It should be MF_SIM + DF_TELECOM + DF_GRAPHICS, same path as EF IMG
          */
-        mCi.iccIOForApp(COMMAND_READ_BINARY, fileid, getEFPath(EF_IMG),
-                highOffset, lowOffset, length, null, null, mAid, response);
+        queueRead(COMMAND_READ_BINARY, fileid, getEFPath(EF_IMG),
+                highOffset, lowOffset, length, response);
     }
 
     /**
@@ -444,6 +538,150 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
 
     //***** Private Methods
 
+    /**
+     * Queue a SIM I/O read. Reads are sent to the modem by priority, with at most
+     * {@link #MAX_READS_IN_FLIGHT} of them waiting for a response at any time.
+     *
+     * @param response the message the result is delivered with, which must target this handler
+     */
+    private void queueRead(int command, int fileid, String path, int p1, int p2, int p3,
+            Message response) {
+        synchronized (mPendingReads) {
+            mPendingReads.add(new PendingRead(mReadSequence++, getReadPriority(fileid, path),
+                    command, fileid, path, p1, p2, p3, response));
+        }
+        sendPendingReads();
+    }
+
+    private void sendPendingReads() {
+        ArrayList<PendingRead> reads = null;
+        synchronized (mPendingReads) {
+            long now = SystemClock.elapsedRealtime();
+            while (mReadsInFlight.size() < MAX_READS_IN_FLIGHT && !mPendingReads.isEmpty()) {
+                PendingRead read = mPendingReads.poll();
+                read.mSentMs = now;
+                mReadsInFlight.put(read.mResponse, read);
+                if (reads == null) reads = new ArrayList<>(MAX_READS_IN_FLIGHT);
+                reads.add(read);
+            }
+        }
+        if (reads == null) return;
+        // Sent without holding the lock, the modem may answer on this thread.
+        for (PendingRead read : reads) {
+            sendMessageDelayed(obtainMessage(EVENT_READ_STALL_TIMEOUT, read),
+                    READ_STALL_TIMEOUT_MS);
+            mCi.iccIOForApp(read.mCommand, read.mFileId, read.mPath, read.mP1, read.mP2,
+                    read.mP3, null, null, mAid, read.mResponse);
+        }
+    }
+
+    /**
+     * Stop counting a read that was not answered in time as in flight, so that a lost response
+     * does not hold up the reads after it.
+     */
+    private void onReadStalled(PendingRead read) {
+        synchronized (mPendingReads) {
+            if (mReadsInFlight.get(read.mResponse) != read) return;
+            loge("No response to read of EF 0x" + Integer.toHexString(read.mFileId)
+                    + " for " + (SystemClock.elapsedRealtime() - read.mSentMs) + "ms");
+            mReadsInFlight.remove(read.mResponse);
+            mStalledReadCount++;
+        }
+    }
+
+    /** Stop counting the read answered by {@code msg} as in flight and note its latency. */
+    private void onReadDone(Message msg) {
+        synchronized (mPendingReads) {
+            PendingRead read = mReadsInFlight.remove(msg);
+            if (read == null) return;
+            removeMessages(EVENT_READ_STALL_TIMEOUT, read);
+            ReadStats stats = mReadStats.get(read.mFileId);
+            if (stats == null) {
+                stats = new ReadStats();
+                mReadStats.put(read.mFileId, stats);
+            }
+            long ioMs = SystemClock.elapsedRealtime() - read.mSentMs;
+            stats.mCount++;
+            stats.mTotalWaitMs += read.mSentMs - read.mQueuedMs;
+            stats.mTotalIoMs += ioMs;
+            stats.mMaxIoMs = Math.max(stats.mMaxIoMs, ioMs);
+        }
+    }
+
+    /**
+     * Get the response to GET RESPONSE for a linear fixed EF, from the cache if the file was
+     * selected before.
+     */
+    private void getRecordSize(int fileid, String path, Message response) {
+        byte[] cached;
+        synchronized (mPendingReads) {
+            cached = mRecordSizeCache.get(getRecordSizeCacheKey(fileid, path));
+            if (cached != null) mRecordSizeCacheHitCount++;
+        }
+        if (cached != null) {
+            sendResult(response, new IccIoResult(0x90, 0x00, cached), null);
+            return;
+        }
+        queueRead(COMMAND_GET_RESPONSE, fileid, path, 0, 0, GET_RESPONSE_EF_SIZE_BYTES,
+                response);
+    }
+
+    private void cacheRecordSize(int fileid, String path, byte[] data) {
+        synchronized (mPendingReads) {
+            mRecordSizeCache.put(getRecordSizeCacheKey(fileid, path), data);
+        }
+    }
+
+    private void onIccRefresh(IccRefreshResponse refreshResponse) {
+        if (refreshResponse == null) return;
+        if (!TextUtils.isEmpty(refreshResponse.aid) && !refreshResponse.aid.equals(mAid)) {
+            // This is for a different application.
+            return;
+        }
+        switch (refreshResponse.refreshResult) {
+            case IccRefreshResponse.REFRESH_RESULT_FILE_UPDATE:
+            case IccRefreshResponse.REFRESH_RESULT_INIT:
+            case IccRefreshResponse.REFRESH_RESULT_RESET:
+                clearRecordSizeCache();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static String getRecordSizeCacheKey(int fileid, String path) {
+        return path + "/" + Integer.toHexString(fileid);
+    }
+
+    /**
+     * @return the priority of reads of the given file. Files that identify the subscription come
+     *     first, the phonebook, icons and stored SMS last.
+     */
+    private static int getReadPriority(int efid, String path) {
+        if (path != null && path.contains(DF_PHONEBOOK)) return PRIORITY_LOW;
+        switch (efid) {
+            case EF_ICCID:
+            case EF_AD:
+            case EF_SST:
+            case EF_IMPI:
+            case EF_IST:
+            case EF_CSIM_IMSIM:
+                return PRIORITY_HIGH;
+            case EF_ADN:
+            case EF_FDN:
+            case EF_SDN:
+            case EF_EXT1:
+            case EF_EXT2:
+            case EF_EXT3:
+            case EF_PBR:
+            case EF_IMG:
+            case EF_SMS:
+                return PRIORITY_LOW;
+            default:
+                return PRIORITY_NORMAL;
+        }
+    }
+
     private void sendResult(Message response, Object result, Throwable ex) {
         if (response == null) {
             return;
@@ -487,8 +725,17 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
         int recordSize[];
         String path = null;
 
+        onReadDone(msg);
+
         try {
             switch (msg.what) {
+            case EVENT_ICC_REFRESH:
+                ar = (AsyncResult) msg.obj;
+                onIccRefresh((IccRefreshResponse) ar.result);
+                break;
+            case EVENT_READ_STALL_TIMEOUT:
+                onReadStalled((PendingRead) msg.obj);
+                break;
             case EVENT_GET_EF_LINEAR_RECORD_SIZE_DONE:
                 ar = (AsyncResult)msg.obj;
                 lc = (LoadLinearFixedContext) ar.userObj;
@@ -505,6 +752,7 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
                     EF_TYPE_LINEAR_FIXED != data[RESPONSE_DATA_STRUCTURE]) {
                     throw new IccFileTypeMismatch();
                 }
+                cacheRecordSize(lc.mEfid, lc.mPath, data);
 
                 recordSize = new int[3];
                 recordSize[0] = data[RESPONSE_DATA_RECORD_LENGTH] & 0xFF;
@@ -536,6 +784,9 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
                 if (EF_TYPE_LINEAR_FIXED != data[RESPONSE_DATA_STRUCTURE]) {
                     throw new IccFileTypeMismatch();
                 }
+                if (msg.what == EVENT_GET_RECORD_SIZE_DONE) {
+                    cacheRecordSize(lc.mEfid, path, data);
+                }
 
                 lc.mRecordSize = data[RESPONSE_DATA_RECORD_LENGTH] & 0xFF;
 
@@ -550,10 +801,10 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
                 if (path == null) {
                     path = getEFPath(lc.mEfid);
                 }
-                mCi.iccIOForApp(COMMAND_READ_RECORD, lc.mEfid, path,
+                queueRead(COMMAND_READ_RECORD, lc.mEfid, path,
                         lc.mRecordNum,
                         READ_RECORD_MODE_ABSOLUTE,
-                        lc.mRecordSize, null, null, mAid,
+                        lc.mRecordSize,
                         obtainMessage(EVENT_READ_RECORD_DONE, lc));
                 break;
             case EVENT_GET_BINARY_SIZE_DONE:
@@ -584,8 +835,8 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
 
                 size = getDataFileSize(data);
 
-                mCi.iccIOForApp(COMMAND_READ_BINARY, fileid, getEFPath(fileid),
-                                0, 0, size, null, null, mAid,
+                queueRead(COMMAND_READ_BINARY, fileid, getEFPath(fileid),
+                                0, 0, size,
                                 obtainMessage(EVENT_READ_BINARY_DONE,
                                             fileid, 0, response));
             break;
@@ -617,10 +868,10 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
                             path = getEFPath(lc.mEfid);
                         }
 
-                        mCi.iccIOForApp(COMMAND_READ_RECORD, lc.mEfid, path,
+                        queueRead(COMMAND_READ_RECORD, lc.mEfid, path,
                                     lc.mRecordNum,
                                     READ_RECORD_MODE_ABSOLUTE,
-                                    lc.mRecordSize, null, null, mAid,
+                                    lc.mRecordSize,
                                     obtainMessage(EVENT_READ_RECORD_DONE, lc));
                     }
                 }
@@ -672,6 +923,8 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
                 loge("uncaught exception" + exc);
             }
         }
+
+        sendPendingReads();
     }
 
     /**
@@ -713,6 +966,29 @@ public abstract class IccFileHandler extends Handler implements IccConstants {
     protected abstract void logd(String s);
     protected abstract void loge(String s);
 
+    public void dump(FileDescriptor fd, PrintWriter printWriter, String[] args) {
+        IndentingPrintWriter pw = new IndentingPrintWriter(printWriter, "  ");
+        pw.println("IccFileHandler: ");
+        pw.increaseIndent();
+        synchronized (mPendingReads) {
+            pw.println("pendingReads=" + mPendingReads.size()
+                    + " readsInFlight=" + mReadsInFlight.size()
+                    + " stalledReads=" + mStalledReadCount);
+            pw.println("recordSizeCache size=" + mRecordSizeCache.size()
+                    + " hits=" + mRecordSizeCacheHitCount);
+            for (int i = 0; i < mReadStats.size(); i++) {
+                ReadStats stats = mReadStats.valueAt(i);
+                pw.println("EF 0x" + Integer.toHexString(mReadStats.keyAt(i))
+                        + " reads=" + stats.mCount
+                        + " avgWaitMs=" + stats.mTotalWaitMs / stats.mCount
+                        + " avgIoMs=" + stats.mTotalIoMs / stats.mCount
+                        + " maxIoMs=" + stats.mMaxIoMs);
+            }
+        }
+        pw.decreaseIndent();
+        pw.flush();
+    }
+
     /**
      * Calculate the size of a data file
      *
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import android.annotation.NonNull;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import com.android.telephony.Rlog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The ICCIDs of the SIMs that have entries in a persistent cache keyed by ICCID, like
+ * {@link SimEfCache} and {@link CarrierPrivilegeRuleCache}, least recently used first. The ICCIDs
+ * are stored comma separated under one key of the SharedPreferences of the cache, and the entries
+ * of the least recently used SIMs are evicted so that at most a given number of SIMs is cached.
+ */
+final class IccidLru {
+    /** Removes the entries of a SIM from the cache. */
+    interface Evictor {
+        void evict(@NonNull SharedPreferences.Editor editor, @NonNull String iccid);
+    }
+
+    private final String mLogTag;
+    private final SharedPreferences mPrefs;
+    private final String mKey;
+    private final int mMaxIccids;
+    private final Evictor mEvictor;
+
+    /**
+     * @param logTag the log tag of the cache
+     * @param prefs the SharedPreferences of the cache
+     * @param key the key to store the ICCIDs under
+     * @param maxIccids the number of SIMs whose entries are kept
+     * @param evictor removes the entries of the SIMs evicted
+     */
+    IccidLru(@NonNull String logTag, @NonNull SharedPreferences prefs, @NonNull String key,
+            int maxIccids, @NonNull Evictor evictor) {
+        mLogTag = logTag;
+        mPrefs = prefs;
+        mKey = key;
+        mMaxIccids = maxIccids;
+        mEvictor = evictor;
+    }
+
+    /**
+     * Mark a SIM as the most recently used, evicting the entries of the least recently used SIMs
+     * if there are too many.
+     *
+     * @return {@code true} if anything was written to {@code editor}
+     */
+    boolean touch(@NonNull SharedPreferences.Editor editor, @NonNull String iccid) {
+        List<String> iccids = getIccids();
+        if (!iccids.isEmpty() && iccids.get(iccids.size() - 1).equals(iccid)) {
+            return false;
+        }
+        iccids.remove(iccid);
+        iccids.add(iccid);
+        while (iccids.size() > mMaxIccids) {
+            String evicted = iccids.remove(0);
+            Rlog.d(mLogTag, "touch: evicting the entries of a least recently used SIM");
+            mEvictor.evict(editor, evicted);
+        }
+        editor.putString(mKey, TextUtils.join(",", iccids));
+        return true;
+    }
+
+    /**
+     * Forget a SIM, whose entries are removed by the caller.
+     */
+    void remove(@NonNull SharedPreferences.Editor editor, @NonNull String iccid) {
+        List<String> iccids = getIccids();
+        if (iccids.remove(iccid)) {
+            editor.putString(mKey, TextUtils.join(",", iccids));
+        }
+    }
+
+    private List<String> getIccids() {
+        String iccids = mPrefs.getString(mKey, "");
+        if (iccids.isEmpty()) return new ArrayList<>();
+        return new ArrayList<>(Arrays.asList(iccids.split(",")));
+    }
+}
@@ -21,6 +21,7 @@ import static android.telephony.SmsManager.STATUS_ON_ICC_UNREAD;
 
 import static com.android.internal.telephony.util.TelephonyUtils.FORCE_VERBOSE_STATE_LOGGING;
 
+import android.annotation.Nullable;
 import android.compat.annotation.UnsupportedAppUsage;
 import android.content.Context;
 import android.content.res.Resources;
@@ -193,6 +194,16 @@ public class SIMRecords extends IccRecords {
     private static final int EVENT_SET_FPLMN_DONE = 43 + SIM_RECORD_EVENT_BASE;
     protected static final int EVENT_GET_SMSS_RECORD_DONE = 46 + SIM_RECORD_EVENT_BASE;
     protected static final int EVENT_GET_PSISMSC_DONE = 47 + SIM_RECORD_EVENT_BASE;
+    private static final int EVENT_GET_CACHED_EF_DONE = 48 + SIM_RECORD_EVENT_BASE;
+
+    // Persistent content of files that rarely change, created on first use
+    private SimEfCache mEfCache;
+    // ICCID from the card status that files are cached under for the current load, or null if
+    // files are not cached
+    private String mEfCacheIccId;
+    private int mEfCacheHitCount;
+    private int mEfCacheMissCount;
+    private int mEfCacheStaleCount;
 
     // ***** Constructor
 
@@ -1355,6 +1366,44 @@ public class SIMRecords extends IccRecords {
                     }
                     break;
 
+                case EVENT_GET_CACHED_EF_DONE: {
+                    ar = (AsyncResult) msg.obj;
+                    data = (byte[]) ar.result;
+                    int efid = msg.arg1;
+                    int loadedEvent = msg.arg2;
+                    byte[] cached = (byte[]) ar.userObj;
+                    boolean isRead = ar.exception == null && data != null;
+                    if (mEfCacheIccId != null) {
+                        if (!isRead) {
+                            getEfCache().remove(mEfCacheIccId, efid);
+                        } else if (!Arrays.equals(cached, data)) {
+                            getEfCache().put(mEfCacheIccId, efid, data);
+                        } else {
+                            getEfCache().touch(mEfCacheIccId);
+                        }
+                    }
+                    if (cached == null) {
+                        // Nothing was served from the cache, hand over the file as read.
+                        sendEfLoaded(loadedEvent, data, ar.exception);
+                    } else if (!isRead) {
+                        // The cached content was already handed over, but the SIM did not
+                        // confirm it. Drop it and hand over the failed read instead.
+                        mEfCacheStaleCount++;
+                        log("Cached EF 0x" + Integer.toHexString(efid) + " not read, dropping");
+                        clearCachedEf(efid);
+                        mRecordsToLoad++;
+                        sendEfLoaded(loadedEvent, data, ar.exception);
+                    } else if (!Arrays.equals(cached, data)) {
+                        // The cached content was already handed over. Treat the difference
+                        // like a file update from the SIM.
+                        mEfCacheStaleCount++;
+                        log("Cached EF 0x" + Integer.toHexString(efid) + " changed, updating");
+                        mRecordsToLoad++;
+                        sendEfLoaded(loadedEvent, data, null);
+                    }
+                    break;
+                }
+
                 case EVENT_GET_SMSS_RECORD_DONE:
                     isRecordLoadResponse = true;
                     ar = (AsyncResult) msg.obj;
@@ -1406,6 +1455,9 @@ public class SIMRecords extends IccRecords {
 
     @Override
     protected void handleFileUpdate(int efid) {
+        if (mEfCacheIccId != null) {
+            getEfCache().remove(mEfCacheIccId, efid);
+        }
         switch(efid) {
             case EF_MBDN:
                 mRecordsToLoad++;
@@ -1420,8 +1472,7 @@ public class SIMRecords extends IccRecords {
             case EF_CSP_CPHS:
                 mRecordsToLoad++;
                 log("[CSP] SIM Refresh for EF_CSP_CPHS");
-                mFh.loadEFTransparent(EF_CSP_CPHS,
-                        obtainMessage(EVENT_GET_CSP_CPHS_DONE));
+                loadEfTransparentCached(EF_CSP_CPHS, EVENT_GET_CSP_CPHS_DONE);
                 break;
             case EF_FDN:
                 if (DBG) log("SIM Refresh called for EF_FDN");
@@ -1450,6 +1501,86 @@ public class SIMRecords extends IccRecords {
         }
     }
 
+    /**
+     * Load a transparent EF whose content rarely changes.
+     *
+     * If the content is cached for the current SIM, it is handed over right away and the file is
+     * read again in the background. Should the file turn out to have changed, the new content is
+     * handed over as well, like for a file update from the SIM. Otherwise the file is read as
+     * usual and cached. Either way {@code event} is sent once for the initial load.
+     *
+     * @param efid the EF id
+     * @param event the event sent with the file content, as for
+     *     {@link IccFileHandler#loadEFTransparent(int, Message)}
+     */
+    private void loadEfTransparentCached(int efid, int event) {
+        byte[] cached = mEfCacheIccId == null ? null : getEfCache().get(mEfCacheIccId, efid);
+        if (cached != null) {
+            mEfCacheHitCount++;
+            sendEfLoaded(event, cached, null);
+        } else if (mEfCacheIccId != null) {
+            mEfCacheMissCount++;
+        }
+        mFh.loadEFTransparent(efid, obtainMessage(EVENT_GET_CACHED_EF_DONE, efid, event, cached));
+    }
+
+    /**
+     * Reset the record parsed from a file loaded with {@link #loadEfTransparentCached}, for the
+     * records whose load handler keeps the previous value when the read fails.
+     */
+    private void clearCachedEf(int efid) {
+        switch (efid) {
+            case EF_SPDI:
+                mSpdi = null;
+                break;
+            case EF_SST:
+                mUsimServiceTable = null;
+                break;
+            case EF_INFO_CPHS:
+                mCphsInfo = null;
+                break;
+            case EF_CSP_CPHS:
+                mCspPlmnEnabled = true;
+                break;
+            case EF_PLMN_W_ACT:
+                mPlmnActRecords = null;
+                break;
+            case EF_OPLMN_W_ACT:
+                mOplmnActRecords = null;
+                break;
+            case EF_HPLMN_W_ACT:
+                mHplmnActRecords = null;
+                break;
+            case EF_EHPLMN:
+                mEhplmns = null;
+                break;
+            default:
+                // EF_AD, EF_GID1 and EF_GID2 are reset by their load handlers.
+                break;
+        }
+    }
+
+    private void sendEfLoaded(int event, byte[] data, Throwable exception) {
+        Message msg = obtainMessage(event);
+        AsyncResult.forMessage(msg, data, exception);
+        msg.sendToTarget();
+    }
+
+    private SimEfCache getEfCache() {
+        if (mEfCache == null) {
+            mEfCache = new SimEfCache(mContext);
+        }
+        return mEfCache;
+    }
+
+    /** @return the ICCID reported in the card status, or null if unknown. */
+    @Nullable
+    private String getCardStatusIccId() {
+        UiccPort port = UiccController.getInstance().getUiccPort(mParentApp.getPhoneId());
+        String iccid = port == null ? null : port.getIccId();
+        return TextUtils.isEmpty(iccid) ? null : iccid;
+    }
+
     /**
      * Dispatch 3GPP format message to registrant ({@code GsmCdmaPhone}) to pass to the 3GPP SMS
      * dispatcher for delivery.
@@ -1674,6 +1805,8 @@ public class SIMRecords extends IccRecords {
 
         if (DBG) log("fetchSimRecords " + mRecordsToLoad);
 
+        mEfCacheIccId = getCardStatusIccId();
+
         mCi.getIMSIForApp(mParentApp.getAid(), obtainMessage(EVENT_GET_IMSI_DONE));
         mRecordsToLoad++;
 
@@ -1690,7 +1823,7 @@ public class SIMRecords extends IccRecords {
         mFh.loadEFLinearFixed(EF_MBI, 1, obtainMessage(EVENT_GET_MBI_DONE));
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_AD, obtainMessage(EVENT_GET_AD_DONE));
+        loadEfTransparentCached(EF_AD, EVENT_GET_AD_DONE);
         mRecordsToLoad++;
 
         // Record number is subscriber profile
@@ -1713,7 +1846,7 @@ public class SIMRecords extends IccRecords {
 
         getSpnFsm(true, null);
 
-        mFh.loadEFTransparent(EF_SPDI, obtainMessage(EVENT_GET_SPDI_DONE));
+        loadEfTransparentCached(EF_SPDI, EVENT_GET_SPDI_DONE);
         mRecordsToLoad++;
 
         mFh.loadEFLinearFixedAll(EF_PNN, obtainMessage(EVENT_GET_PNN_DONE));
@@ -1722,31 +1855,31 @@ public class SIMRecords extends IccRecords {
         mFh.loadEFLinearFixedAll(EF_OPL, obtainMessage(EVENT_GET_OPL_DONE));
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_SST, obtainMessage(EVENT_GET_SST_DONE));
+        loadEfTransparentCached(EF_SST, EVENT_GET_SST_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_INFO_CPHS, obtainMessage(EVENT_GET_INFO_CPHS_DONE));
+        loadEfTransparentCached(EF_INFO_CPHS, EVENT_GET_INFO_CPHS_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_CSP_CPHS,obtainMessage(EVENT_GET_CSP_CPHS_DONE));
+        loadEfTransparentCached(EF_CSP_CPHS, EVENT_GET_CSP_CPHS_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_GID1, obtainMessage(EVENT_GET_GID1_DONE));
+        loadEfTransparentCached(EF_GID1, EVENT_GET_GID1_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_GID2, obtainMessage(EVENT_GET_GID2_DONE));
+        loadEfTransparentCached(EF_GID2, EVENT_GET_GID2_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_PLMN_W_ACT, obtainMessage(EVENT_GET_PLMN_W_ACT_DONE));
+        loadEfTransparentCached(EF_PLMN_W_ACT, EVENT_GET_PLMN_W_ACT_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_OPLMN_W_ACT, obtainMessage(EVENT_GET_OPLMN_W_ACT_DONE));
+        loadEfTransparentCached(EF_OPLMN_W_ACT, EVENT_GET_OPLMN_W_ACT_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_HPLMN_W_ACT, obtainMessage(EVENT_GET_HPLMN_W_ACT_DONE));
+        loadEfTransparentCached(EF_HPLMN_W_ACT, EVENT_GET_HPLMN_W_ACT_DONE);
         mRecordsToLoad++;
 
-        mFh.loadEFTransparent(EF_EHPLMN, obtainMessage(EVENT_GET_EHPLMN_DONE));
+        loadEfTransparentCached(EF_EHPLMN, EVENT_GET_EHPLMN_DONE);
         mRecordsToLoad++;
 
         mFh.loadEFTransparent(EF_FPLMN, obtainMessage(
@@ -2207,6 +2340,8 @@ public class SIMRecords extends IccRecords {
         pw.println(" mCallForwardingStatus=" + mCallForwardingStatus);
         pw.println(" mSpnState=" + mSpnState);
         pw.println(" mCphsInfo=" + IccUtils.bytesToHexString(mCphsInfo));
+        pw.println(" mEfCache hits=" + mEfCacheHitCount + " misses=" + mEfCacheMissCount
+                + " stale=" + mEfCacheStaleCount);
         pw.println(" mCspPlmnEnabled=" + mCspPlmnEnabled);
         pw.println(" mEfMWIS[]=" + Arrays.toString(mEfMWIS));
         pw.println(" mEfCPHS_MWI[]=" + Arrays.toString(mEfCPHS_MWI));
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+/**
+ * Persistent cache of the content of elementary files that rarely change, keyed by ICCID and EF
+ * id. It lets {@link SIMRecords} hand out the content of these files as soon as the SIM is ready,
+ * while the files are read from the SIM again in the background to verify the cached content.
+ *
+ * Only the files of the {@link #MAX_CACHED_ICCIDS} most recently used SIMs are kept.
+ */
+public class SimEfCache {
+    private static final String LOG_TAG = "SimEfCache";
+
+    private static final String SHARED_PREFS_NAME = "sim_ef_cache";
+    /** Comma separated ICCIDs with cached files, least recently used first. */
+    private static final String KEY_ICCIDS = "sim_ef_cache_iccids";
+    private static final String KEY_EF_PREFIX = "sim_ef_cache_";
+
+    @VisibleForTesting
+    static final int MAX_CACHED_ICCIDS = 4;
+
+    private final SharedPreferences mPrefs;
+    private final IccidLru mIccids;
+
+    public SimEfCache(@NonNull Context context) {
+        mPrefs = context.getSharedPreferences(SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+        mIccids = new IccidLru(LOG_TAG, mPrefs, KEY_ICCIDS, MAX_CACHED_ICCIDS, this::removeAll);
+    }
+
+    /**
+     * @param iccid the ICCID of the SIM
+     * @param efid the EF id
+     * @return the cached content of the file, or {@code null} if it is not cached
+     */
+    @Nullable
+    public byte[] get(@NonNull String iccid, int efid) {
+        String hex = mPrefs.getString(getKey(iccid, efid), null);
+        return hex == null ? null : IccUtils.hexStringToBytes(hex);
+    }
+
+    /**
+     * Cache the content of a file.
+     *
+     * @param iccid the ICCID of the SIM
+     * @param efid the EF id
+     * @param data the content of the file
+     */
+    public void put(@NonNull String iccid, int efid, @NonNull byte[] data) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putString(getKey(iccid, efid), IccUtils.bytesToHexString(data));
+        mIccids.touch(editor, iccid);
+        editor.apply();
+    }
+
+    /**
+     * Mark the files of a SIM as the most recently used, e.g. because their cached content was
+     * confirmed by reading the SIM.
+     *
+     * @param iccid the ICCID of the SIM
+     */
+    public void touch(@NonNull String iccid) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mIccids.touch(editor, iccid)) {
+            editor.apply();
+        }
+    }
+
+    /**
+     * Drop the cached content of a file, e.g. because the SIM reported that it changed.
+     *
+     * @param iccid the ICCID of the SIM
+     * @param efid the EF id
+     */
+    public void remove(@NonNull String iccid, int efid) {
+        mPrefs.edit().remove(getKey(iccid, efid)).apply();
+    }
+
+    /**
+     * Drop the cached content of all files of a SIM.
+     *
+     * @param iccid the ICCID of the SIM
+     */
+    public void clear(@NonNull String iccid) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        removeAll(editor, iccid);
+        mIccids.remove(editor, iccid);
+        editor.apply();
+    }
+
+    private void removeAll(SharedPreferences.Editor editor, String iccid) {
+        String prefix = KEY_EF_PREFIX + iccid + "_";
+        for (String key : mPrefs.getAll().keySet()) {
+            if (key.startsWith(prefix)) {
+                editor.remove(key);
+            }
+        }
+    }
+
+    private static String getKey(String iccid, int efid) {
+        return KEY_EF_PREFIX + iccid + "_" + Integer.toHexString(efid);
+    }
+}
@@ -31,15 +31,20 @@ import com.android.internal.telephony.RadioInterfaceCapabilityController;
 import com.android.internal.telephony.uicc.AdnCapacity;
 import com.android.internal.telephony.uicc.IccConstants;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
@@ -87,7 +92,25 @@ public class SimPhonebookRecordCache extends Handler {
             new ConcurrentSkipListMap<Integer, AdnRecord>();
     private final List<UpdateRequest> mUpdateRequests =
             Collections.synchronizedList(new ArrayList<UpdateRequest>());
-    // If true, clear the records in the cache and re-query from modem
+    /**
+     * Bumped whenever the content of {@link #mSimPbRecords} changes, so that readers can tell
+     * whether records they hold are still current.
+     */
+    private final AtomicLong mGeneration = new AtomicLong(0);
+    // Last list handed out by getAdnRecords(), published with its generation in one reference.
+    private volatile RecordsSnapshot mRecordsSnapshot =
+            new RecordsSnapshot(-1, Collections.emptyList());
+    // Ids of the records received from the modem since the ongoing load started.
+    private final Set<Integer> mReceivedRecordIds = new HashSet<>();
+
+    // Reload statistics
+    private final AtomicInteger mReloadCount = new AtomicInteger(0);
+    private long mReloadRecordsReceived;
+    private long mReloadRecordsChanged;
+    private long mReloadRecordsCleared;
+
+    // If true, the records in the cache are stale and will be re-queried from modem. The stale
+    // records are served until the new ones are received.
     private AtomicBoolean mIsCacheInvalidated = new AtomicBoolean(false);
     private AtomicBoolean mIsRecordLoading = new AtomicBoolean(false);
     private AtomicBoolean mIsInRetry = new AtomicBoolean(false);
@@ -136,6 +159,7 @@ public class SimPhonebookRecordCache extends Handler {
     private void reset() {
         mAdnCapacity.set(null);
         mSimPbRecords.clear();
+        mGeneration.incrementAndGet();
         mIsCacheInvalidated.set(false);
         mIsRecordLoading.set(false);
         mIsInRetry.set(false);
@@ -153,10 +177,10 @@ public class SimPhonebookRecordCache extends Handler {
 
     private void notifyAndClearWaiters() {
         synchronized (mReadLock) {
+            List<AdnRecord> result = null;
             for (Message response : mAdnLoadingWaiters){
                 if (response != null) {
-                    List<AdnRecord> result =
-                            new ArrayList<AdnRecord>(mSimPbRecords.values());
+                    if (result == null) result = getAdnRecords();
                     AsyncResult.forMessage(response, result, null);
                     response.sendToTarget();
                 }
@@ -199,6 +223,10 @@ public class SimPhonebookRecordCache extends Handler {
     private void fillCacheWithoutWaiting() {
         logd("Start to queryAdnRecord");
         if (mIsRecordLoading.compareAndSet(false, true)) {
+            synchronized (mReceivedRecordIds) {
+                mReceivedRecordIds.clear();
+            }
+            mReloadCount.incrementAndGet();
             mCi.getSimPhonebookRecords(obtainMessage(EVENT_GET_PHONEBOOK_RECORDS_DONE));
         } else {
             logd("The loading is ongoing");
@@ -246,15 +274,44 @@ public class SimPhonebookRecordCache extends Handler {
         return mIsRecordLoading.get();
     }
 
+    /**
+     * @return the cached records. The list is shared between callers and cannot be modified;
+     * it is only copied again once the records changed, see {@link #getGeneration()}.
+     */
     @VisibleForTesting
     public List<AdnRecord> getAdnRecords() {
-        return mSimPbRecords.values().stream().collect(Collectors.toList());
+        RecordsSnapshot snapshot = mRecordsSnapshot;
+        if (snapshot.generation == mGeneration.get()) {
+            return snapshot.records;
+        }
+        synchronized (mSimPbRecords) {
+            // Read the generation first so that a concurrent change leaves the snapshot stale
+            // rather than labelled as current.
+            long generation = mGeneration.get();
+            snapshot = mRecordsSnapshot;
+            if (snapshot.generation != generation) {
+                snapshot = new RecordsSnapshot(generation, Collections.unmodifiableList(
+                        new ArrayList<AdnRecord>(mSimPbRecords.values())));
+                mRecordsSnapshot = snapshot;
+            }
+            return snapshot.records;
+        }
+    }
+
+    /**
+     * @return a counter that changes whenever the cached records change. A list returned by
+     * {@link #getAdnRecords()} is current as long as the generation is the same as when it was
+     * obtained.
+     */
+    public long getGeneration() {
+        return mGeneration.get();
     }
 
     @VisibleForTesting
     public void clear() {
         if (!ENABLE_INFLATE_WITH_EMPTY_RECORDS) {
             mSimPbRecords.clear();
+            mGeneration.incrementAndGet();
         }
     }
 
@@ -453,10 +510,12 @@ public class SimPhonebookRecordCache extends Handler {
         } else {
             // There is nothing from PB, so notify waiters directly if any
             if (newCapacity.isSimValid() && newCapacity.isSimEmpty()) {
+                clearSimPbRecords();
                 mIsCacheInvalidated.set(false);
                 notifyAdnLoadingWaiters();
                 tryFireUpdatePendingList();
             } else if (!newCapacity.isSimValid()) {
+                clearSimPbRecords();
                 mIsCacheInvalidated.set(false);
                 notifyAdnLoadingWaiters();
             } else if (!mIsUpdateDone && !newCapacity.isSimEmpty()) {
@@ -475,6 +534,7 @@ public class SimPhonebookRecordCache extends Handler {
                     mSimPbRecords.putIfAbsent(i,
                             new AdnRecord(IccConstants.EF_ADN, i, null, null, null, null));
                 }
+                mGeneration.incrementAndGet();
             }
         }
     }
@@ -487,6 +547,9 @@ public class SimPhonebookRecordCache extends Handler {
             } else if (records.isCompleted()) {
                 logd("The whole loading process is finished");
                 populateAdnRecords(records.getPhonebookRecords());
+                if (mIsRecordLoading.get()) {
+                    clearRecordsNotReceived();
+                }
                 mIsRecordLoading.set(false);
                 mIsInRetry.set(false);
                 mIsCacheInvalidated.set(false);
@@ -559,18 +622,58 @@ public class SimPhonebookRecordCache extends Handler {
         }
     }
 
+    /**
+     * Merge the received records into the cache. The HAL does not tell which records changed,
+     * so the records that are the same as the cached ones are left alone, and readers only see
+     * a new generation if something did change.
+     */
     private void populateAdnRecords(List<SimPhonebookRecord> records) {
-        if (records != null) {
-            Map<Integer, AdnRecord> newRecords = records.stream().map(record -> {return
-                    new AdnRecord(IccConstants.EF_ADN,
+        if (records == null) return;
+        int changed = 0;
+        for (SimPhonebookRecord record : records) {
+            AdnRecord adn = new AdnRecord(IccConstants.EF_ADN,
                     record.getRecordId(),
                     record.getAlphaTag(),
                     record.getNumber(),
                     record.getEmails(),
-                    record.getAdditionalNumbers());})
-                    .collect(Collectors.toMap(AdnRecord::getRecId, adn -> adn));
-            mSimPbRecords.putAll(newRecords);
+                    record.getAdditionalNumbers());
+            synchronized (mReceivedRecordIds) {
+                mReceivedRecordIds.add(adn.getRecId());
+            }
+            AdnRecord old = mSimPbRecords.get(adn.getRecId());
+            if (old != null && old.isEqual(adn)) continue;
+            mSimPbRecords.put(adn.getRecId(), adn);
+            changed++;
+        }
+        mReloadRecordsReceived += records.size();
+        mReloadRecordsChanged += changed;
+        if (changed > 0) {
+            mGeneration.incrementAndGet();
+        }
+    }
+
+    /**
+     * Clear the cached records that the modem did not report in the load that just completed,
+     * i.e. the records that were deleted since the previous load.
+     */
+    private void clearRecordsNotReceived() {
+        int cleared = 0;
+        synchronized (mReceivedRecordIds) {
+            for (Map.Entry<Integer, AdnRecord> entry : mSimPbRecords.entrySet()) {
+                if (mReceivedRecordIds.contains(entry.getKey())
+                        || entry.getValue().isEmpty()) {
+                    continue;
+                }
+                clearSimPbRecord(entry.getKey());
+                cleared++;
+            }
+            mReceivedRecordIds.clear();
         }
+        mReloadRecordsCleared += cleared;
+        if (cleared > 0) {
+            mGeneration.incrementAndGet();
+        }
+        logd("Reload done, " + cleared + " records cleared");
     }
 
     private void sendGettingPhonebookRecordsRetry (int times) {
@@ -590,30 +693,56 @@ public class SimPhonebookRecordCache extends Handler {
         } else {
             mSimPbRecords.put(recordId, record);
         }
+        mGeneration.incrementAndGet();
     }
 
 
     private void deleteSimPbRecord(int recordId) {
         logd("Record number for the deleted ADN is " + recordId);
+        clearSimPbRecord(recordId);
+        mGeneration.incrementAndGet();
+    }
+
+    private void clearSimPbRecord(int recordId) {
         if (ENABLE_INFLATE_WITH_EMPTY_RECORDS) {
             mSimPbRecords.replace(recordId,
                     new AdnRecord(IccConstants.EF_ADN, recordId, null, null, null, null));
         } else {
-            if (mSimPbRecords.containsKey(recordId)) {
-                mSimPbRecords.remove(recordId);
-            }
+            mSimPbRecords.remove(recordId);
         }
     }
 
-    private void invalidateSimPbCache() {
-        logd("invalidateSimPbCache");
-        mIsCacheInvalidated.set(true);
+    private void clearSimPbRecords() {
         if (ENABLE_INFLATE_WITH_EMPTY_RECORDS) {
             mSimPbRecords.replaceAll((k, v) ->
                     new AdnRecord(IccConstants.EF_ADN, k, null, null, null, null));
         } else {
             mSimPbRecords.clear();
         }
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Mark the cached records as stale. They are kept and served until the reload completes,
+     * which then only replaces the records that changed.
+     */
+    private void invalidateSimPbCache() {
+        logd("invalidateSimPbCache");
+        mIsCacheInvalidated.set(true);
+    }
+
+    /**
+     * Dump the state of the cache and the reload statistics.
+     */
+    public void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("SimPhonebookRecordCache[" + mPhoneId + "]:");
+        pw.println(" mAdnCapacity=" + mAdnCapacity.get());
+        pw.println(" records=" + mSimPbRecords.size() + " generation=" + mGeneration.get());
+        pw.println(" mIsInitialized=" + mIsInitialized.get()
+                + " mIsRecordLoading=" + mIsRecordLoading.get()
+                + " mIsCacheInvalidated=" + mIsCacheInvalidated.get());
+        pw.println(" reloads=" + mReloadCount.get() + " received=" + mReloadRecordsReceived
+                + " changed=" + mReloadRecordsChanged + " cleared=" + mReloadRecordsCleared);
     }
 
     private void logd(String msg) {
@@ -628,6 +757,17 @@ public class SimPhonebookRecordCache extends Handler {
         }
     }
 
+    /** Immutable list of the cached records, together with the generation it was taken at. */
+    private static final class RecordsSnapshot {
+        final long generation;
+        final List<AdnRecord> records;
+
+        RecordsSnapshot(long generation, List<AdnRecord> records) {
+            this.generation = generation;
+            this.records = records;
+        }
+    }
+
     private final static class UpdateRequest {
         private int myRecordId;
         private Message response;
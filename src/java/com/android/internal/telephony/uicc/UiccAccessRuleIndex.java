@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+import android.telephony.UiccAccessRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable index of {@link UiccAccessRule}s by certificate hash.
+ *
+ * Checking a certificate against the rules is a single hash lookup followed by the package name
+ * check of the few rules with that certificate hash, instead of a comparison against every rule.
+ * Since a rule holds either a SHA-1 or a SHA-256 hash, both hashes of a certificate are looked
+ * up.
+ *
+ * {@hide}
+ */
+public final class UiccAccessRuleIndex {
+    private static final String SHA_1 = "SHA-1";
+    private static final String SHA_256 = "SHA-256";
+
+    /** Empty index. */
+    public static final UiccAccessRuleIndex EMPTY = new UiccAccessRuleIndex(null);
+
+    // Upper case hex certificate hash -> rules with that hash.
+    private final Map<String, List<UiccAccessRule>> mRulesByCertHash = new HashMap<>();
+
+    /**
+     * @param rules the rules to index. Rules without certificate hash never match and are left
+     *     out.
+     */
+    public UiccAccessRuleIndex(@Nullable Collection<UiccAccessRule> rules) {
+        if (rules == null) return;
+        for (UiccAccessRule rule : rules) {
+            String certHash = rule.getCertificateHexString();
+            if (certHash == null || certHash.isEmpty()) continue;
+            mRulesByCertHash.computeIfAbsent(certHash.toUpperCase(Locale.ROOT),
+                    k -> new ArrayList<>(1)).add(rule);
+        }
+    }
+
+    /** @return {@code true} if no rule can match. */
+    public boolean isEmpty() {
+        return mRulesByCertHash.isEmpty();
+    }
+
+    /**
+     * @param certHash the SHA-1 or SHA-256 hash of a certificate, as an upper case hex string
+     * @param packageName the name of the package signed with the certificate
+     * @return {@code true} if any rule matches, see {@link UiccAccessRule#matches}.
+     */
+    public boolean matches(@Nullable String certHash, @Nullable String packageName) {
+        if (certHash == null) return false;
+        List<UiccAccessRule> rules = mRulesByCertHash.get(certHash);
+        if (rules == null) return false;
+        for (UiccAccessRule rule : rules) {
+            if (rule.matches(certHash, packageName)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param signature the certificate
+     * @param packageName the name of the package signed with the certificate
+     * @return {@code true} if any rule matches the SHA-1 or SHA-256 hash of the certificate.
+     */
+    public boolean matches(@NonNull Signature signature, @Nullable String packageName) {
+        if (isEmpty()) return false;
+        return matches(getCertHash(signature, SHA_256), packageName)
+                || matches(getCertHash(signature, SHA_1), packageName);
+    }
+
+    /**
+     * @param packageInfo the package, with its signatures
+     * @return {@code true} if any rule matches one of the certificates of the package.
+     */
+    public boolean matches(@NonNull PackageInfo packageInfo) {
+        if (isEmpty()) return false;
+        for (Signature signature : UiccAccessRule.getSignatures(packageInfo)) {
+            if (matches(signature, packageInfo.packageName)) return true;
+        }
+        return false;
+    }
+
+    @Nullable
+    private static String getCertHash(@NonNull Signature signature, @NonNull String algo) {
+        byte[] hash = UiccAccessRule.getCertHash(signature, algo);
+        return hash == null ? null : IccUtils.bytesToHexString(hash).toUpperCase(Locale.ROOT);
+    }
+}
@@ -25,6 +25,7 @@ import android.os.Handler;
 import android.os.Message;
 import android.os.Registrant;
 import android.os.RegistrantList;
+import android.text.TextUtils;
 import android.util.IndentingPrintWriter;
 
 import com.android.internal.telephony.CommandException;
@@ -154,6 +155,7 @@ public class UiccCardApplication {
             AppState oldAppState = mAppState;
             PersoSubState oldPersoSubState = mPersoSubState;
             PinState oldPin1State = mPin1State;
+            String oldAid = mAid;
             mAppType = as.app_type;
             mAuthContext = getAuthContext(mAppType);
             mAppState = as.app_state;
@@ -169,6 +171,10 @@ public class UiccCardApplication {
                 if (mIccRecords != null) { mIccRecords.dispose();}
                 mIccFh = createIccFileHandler(as.app_type);
                 mIccRecords = createIccRecords(as.app_type, c, ci);
+            } else if (mIccFh != null
+                    && (mAppState != oldAppState || !TextUtils.equals(mAid, oldAid))) {
+                // The files of the application may have changed, e.g. after a SIM reset.
+                mIccFh.clearRecordSizeCache();
             }
 
             if (mPersoSubState != oldPersoSubState &&
@@ -1012,6 +1018,9 @@ public class UiccCardApplication {
         pw.println("mDesiredPinLocked=" + mDesiredPinLocked);
         pw.println("mIccRecords=" + mIccRecords);
         pw.println("mIccFh=" + mIccFh);
+        if (mIccFh != null) {
+            mIccFh.dump(fd, pw, args);
+        }
         pw.println("mDestroyed=" + mDestroyed);
         pw.decreaseIndent();
         pw.flush();
@@ -16,6 +16,7 @@
 
 package com.android.internal.telephony.uicc;
 
+import android.annotation.Nullable;
 import android.compat.annotation.UnsupportedAppUsage;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -35,12 +36,12 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.CommandException;
 import com.android.telephony.Rlog;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -49,6 +50,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * The rules are read when the class is created, hence it should only be created
  * after the UICC can be read. And it should be deleted when a UICC is changed.
  *
+ * If the rules of the UICC were cached by {@link CarrierPrivilegeRuleCache}, the cached rules are
+ * used until the rules are read again, and replaced if the UICC returns different rules. The
+ * loaded callback is only sent once the rules are read from the UICC, whether or not they changed.
+ *
  * Document: https://source.android.com/devices/tech/config/uicc.html
  *
  * {@hide}
@@ -91,15 +96,17 @@ public class UiccCarrierPrivilegeRules extends Handler {
      *       DB
      */
     // Values from the data standard.
-    private static final String TAG_ALL_REF_AR_DO = "FF40";
-    private static final String TAG_REF_AR_DO = "E2";
-    private static final String TAG_REF_DO = "E1";
-    private static final String TAG_DEVICE_APP_ID_REF_DO = "C1";
-    private static final String TAG_PKG_REF_DO = "CA";
-    private static final String TAG_AR_DO = "E3";
-    private static final String TAG_PERM_AR_DO = "DB";
-    private static final String TAG_AID_REF_DO = "4F";
-    private static final String CARRIER_PRIVILEGE_AID = "FFFFFFFFFFFF";
+    private static final int TAG_ALL_REF_AR_DO = 0xFF40;
+    private static final int TAG_REF_AR_DO = 0xE2;
+    private static final int TAG_REF_DO = 0xE1;
+    private static final int TAG_DEVICE_APP_ID_REF_DO = 0xC1;
+    private static final int TAG_PKG_REF_DO = 0xCA;
+    private static final int TAG_AR_DO = 0xE3;
+    private static final int TAG_PERM_AR_DO = 0xDB;
+    private static final int TAG_AID_REF_DO = 0x4F;
+    private static final byte[] CARRIER_PRIVILEGE_AID =
+            new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                    (byte) 0xFF};
 
     private static final int EVENT_OPEN_LOGICAL_CHANNEL_DONE = 1;
     private static final int EVENT_TRANSMIT_LOGICAL_CHANNEL_DONE = 2;
@@ -117,7 +124,8 @@ public class UiccCarrierPrivilegeRules extends Handler {
     private static final int STATUS_CODE_CONDITION_NOT_SATISFIED = 0x6985;
     private static final int STATUS_CODE_APPLET_SELECT_FAILED = 0x6999;
 
-    // Used for parsing the data from the UICC.
+    // Used for parsing the data from the UICC. The rules themselves are parsed from bytes with
+    // BerTlvReader.
     public static class TLV {
         private static final int SINGLE_BYTE_MAX_LENGTH = 0x80;
         private String tag;
@@ -189,8 +197,18 @@ public class UiccCarrierPrivilegeRules extends Handler {
     private UiccPkcs15 mUiccPkcs15; // ARF fallback
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
     private AtomicInteger mState;
-    private List<UiccAccessRule> mAccessRules;
-    private String mRules;
+    private volatile List<UiccAccessRule> mAccessRules;
+    // Index of mAccessRules, built once the rules are loaded.
+    private volatile UiccAccessRuleIndex mAccessRuleIndex;
+    // Rules read from the UICC so far, which replace mAccessRules once loading is done.
+    private List<UiccAccessRule> mLoadingRules;
+    // Persistent cache of the rules, or null if the rules are not cached.
+    private CarrierPrivilegeRuleCache mRuleCache;
+    private String mIccId;
+    // Whether mAccessRules come from mRuleCache and are yet to be checked against the UICC.
+    private boolean mRulesFromCache;
+    // Rules received so far, as they may be split over several responses.
+    private final ByteArrayOutputStream mRules = new ByteArrayOutputStream();
     @UnsupportedAppUsage(maxTargetSdk = Build.VERSION_CODES.R, trackingBug = 170729553)
     private Message mLoadedCallback;
     // LocalLog buffer to hold important status messages for debugging.
@@ -215,13 +233,35 @@ public class UiccCarrierPrivilegeRules extends Handler {
     }
 
     public UiccCarrierPrivilegeRules(UiccProfile uiccProfile, Message loadedCallback) {
+        this(uiccProfile, loadedCallback, null, null);
+    }
+
+    /**
+     * @param ruleCache the cache to take the rules from while they are read from the UICC, and to
+     *     store them in once read, or {@code null} not to cache the rules
+     * @param iccId the ICCID of the UICC, or {@code null} if unknown
+     */
+    public UiccCarrierPrivilegeRules(UiccProfile uiccProfile, Message loadedCallback,
+            @Nullable CarrierPrivilegeRuleCache ruleCache, @Nullable String iccId) {
         log("Creating UiccCarrierPrivilegeRules");
         mUiccProfile = uiccProfile;
         mState = new AtomicInteger(STATE_LOADING);
         mStatusMessage.log("Not loaded.");
         mLoadedCallback = loadedCallback;
-        mRules = "";
         mAccessRules = new ArrayList<>();
+        mLoadingRules = new ArrayList<>();
+        if (ruleCache != null && !TextUtils.isEmpty(iccId)) {
+            mRuleCache = ruleCache;
+            mIccId = iccId;
+            List<UiccAccessRule> cachedRules = ruleCache.get(iccId);
+            if (cachedRules != null) {
+                mRulesFromCache = true;
+                mAccessRuleIndex = new UiccAccessRuleIndex(cachedRules);
+                mAccessRules = cachedRules;
+                mState.set(STATE_LOADED);
+                updateStatusMessage("Loaded from cache, verifying.");
+            }
+        }
 
         // Open logical channel with ARA_D.
         mAIDInUse = ARAD;
@@ -231,8 +271,8 @@ public class UiccCarrierPrivilegeRules extends Handler {
     @VisibleForTesting
     public UiccCarrierPrivilegeRules(List<UiccAccessRule> rules) {
         mAccessRules = rules;
+        mAccessRuleIndex = new UiccAccessRuleIndex(rules);
         mState = new AtomicInteger(STATE_LOADED);
-        mRules = "";
         mStatusMessage.log("Loaded from test rules.");
     }
 
@@ -292,14 +332,9 @@ public class UiccCarrierPrivilegeRules extends Handler {
             return TelephonyManager.CARRIER_PRIVILEGE_STATUS_ERROR_LOADING_RULES;
         }
 
-        for (UiccAccessRule ar : mAccessRules) {
-            int accessStatus = ar.getCarrierPrivilegeStatus(signature, packageName);
-            if (accessStatus != TelephonyManager.CARRIER_PRIVILEGE_STATUS_NO_ACCESS) {
-                return accessStatus;
-            }
-        }
-
-        return TelephonyManager.CARRIER_PRIVILEGE_STATUS_NO_ACCESS;
+        return getAccessRuleIndex().matches(signature, packageName)
+                ? TelephonyManager.CARRIER_PRIVILEGE_STATUS_HAS_ACCESS
+                : TelephonyManager.CARRIER_PRIVILEGE_STATUS_NO_ACCESS;
     }
 
     /**
@@ -350,13 +385,19 @@ public class UiccCarrierPrivilegeRules extends Handler {
             return TelephonyManager.CARRIER_PRIVILEGE_STATUS_ERROR_LOADING_RULES;
         }
 
-        for (UiccAccessRule ar : mAccessRules) {
-            int accessStatus = ar.getCarrierPrivilegeStatus(packageInfo);
-            if (accessStatus != TelephonyManager.CARRIER_PRIVILEGE_STATUS_NO_ACCESS) {
-                return accessStatus;
-            }
+        return getAccessRuleIndex().matches(packageInfo)
+                ? TelephonyManager.CARRIER_PRIVILEGE_STATUS_HAS_ACCESS
+                : TelephonyManager.CARRIER_PRIVILEGE_STATUS_NO_ACCESS;
+    }
+
+    private UiccAccessRuleIndex getAccessRuleIndex() {
+        UiccAccessRuleIndex index = mAccessRuleIndex;
+        if (index == null) {
+            // Should not happen as the index is built before the rules are marked loaded.
+            index = new UiccAccessRuleIndex(mAccessRules);
+            mAccessRuleIndex = index;
         }
-        return TelephonyManager.CARRIER_PRIVILEGE_STATUS_NO_ACCESS;
+        return index;
     }
 
     /**
@@ -438,7 +479,7 @@ public class UiccCarrierPrivilegeRules extends Handler {
                     } else {
                         if (mAIDInUse == ARAD) {
                             // Open logical channel with ARA_M.
-                            mRules = "";
+                            mRules.reset();
                             openChannel(ARAM);
                         }
                         if (mAIDInUse == ARAM) {
@@ -471,12 +512,12 @@ public class UiccCarrierPrivilegeRules extends Handler {
                     if (response.sw1 == 0x90 && response.sw2 == 0x00
                             && response.payload != null && response.payload.length > 0) {
                         try {
-                            mRules += IccUtils.bytesToHexString(response.payload)
-                                    .toUpperCase(Locale.US);
-                            if (isDataComplete()) {
+                            mRules.write(response.payload, 0, response.payload.length);
+                            byte[] rules = mRules.toByteArray();
+                            if (isDataComplete(rules)) {
                                 //TODO: here's where AccessRules are being updated from the psim
                                 // b/139133814
-                                mAccessRules.addAll(parseRules(mRules));
+                                mLoadingRules.addAll(parseRules(rules));
                                 if (mAIDInUse == ARAD) {
                                     mCheckedRules = true;
                                 } else {
@@ -528,7 +569,7 @@ public class UiccCarrierPrivilegeRules extends Handler {
                 log("EVENT_CLOSE_LOGICAL_CHANNEL_DONE");
                 if (mAIDInUse == ARAD) {
                     // Close logical channel with ARA_D and then open logical channel with ARA_M.
-                    mRules = "";
+                    mRules.reset();
                     openChannel(ARAM);
                 }
                 break;
@@ -541,7 +582,7 @@ public class UiccCarrierPrivilegeRules extends Handler {
                     for (String cert : mUiccPkcs15.getRules()) {
                         UiccAccessRule accessRule = new UiccAccessRule(
                                 IccUtils.hexStringToBytes(cert), "", 0x00);
-                        mAccessRules.add(accessRule);
+                        mLoadingRules.add(accessRule);
                     }
                     updateState(STATE_LOADED, "Success!");
                 }
@@ -556,44 +597,34 @@ public class UiccCarrierPrivilegeRules extends Handler {
      * Check if all rule bytes have been read from UICC.
      * For long payload, we need to fetch it repeatly before start parsing it.
      */
-    private boolean isDataComplete() {
-        log("isDataComplete mRules:" + mRules);
-        if (mRules.startsWith(TAG_ALL_REF_AR_DO)) {
-            TLV allRules = new TLV(TAG_ALL_REF_AR_DO);
-            String lengthBytes = allRules.parseLength(mRules);
-            log("isDataComplete lengthBytes: " + lengthBytes);
-            if (mRules.length() == TAG_ALL_REF_AR_DO.length() + lengthBytes.length() +
-                    allRules.length) {
-                log("isDataComplete yes");
-                return true;
-            } else {
-                log("isDataComplete no");
-                return false;
-            }
-        } else {
+    private static boolean isDataComplete(byte[] rules) {
+        BerTlvReader allRules = new BerTlvReader(rules);
+        if (!allRules.isNextTag(TAG_ALL_REF_AR_DO)) {
             throw new IllegalArgumentException("Tags don't match.");
         }
+        int encodedLength = allRules.peekEncodedLength();
+        if (DBG) log("isDataComplete received=" + rules.length + " expected=" + encodedLength);
+        return rules.length == encodedLength;
     }
 
     /*
-     * Parses the rules from the input string.
+     * Parses the rules from the received bytes.
      */
-    private static List<UiccAccessRule> parseRules(String rules) {
-        log("Got rules: " + rules);
+    private static List<UiccAccessRule> parseRules(byte[] rules) {
+        if (DBG) log("Got rules: " + IccUtils.bytesToHexString(rules));
 
-        TLV allRefArDo = new TLV(TAG_ALL_REF_AR_DO); //FF40
-        allRefArDo.parse(rules, true);
+        BerTlvReader allRefArDo = new BerTlvReader(rules);
+        allRefArDo.next(TAG_ALL_REF_AR_DO, true); //FF40
 
-        String arDos = allRefArDo.value;
+        BerTlvReader arDos = allRefArDo.getValueReader();
         List<UiccAccessRule> accessRules = new ArrayList<>();
-        while (!arDos.isEmpty()) {
-            TLV refArDo = new TLV(TAG_REF_AR_DO); //E2
-            arDos = refArDo.parse(arDos, false);
-            UiccAccessRule accessRule = parseRefArdo(refArDo.value);
+        while (arDos.hasNext()) {
+            arDos.next(TAG_REF_AR_DO, false); //E2
+            UiccAccessRule accessRule = parseRefArdo(arDos.getValueReader());
             if (accessRule != null) {
                 accessRules.add(accessRule);
             } else {
-                Rlog.e(LOG_TAG, "Skip unrecognized rule." + refArDo.value);
+                Rlog.e(LOG_TAG, "Skip unrecognized rule." + arDos.getValueHex());
             }
         }
         return accessRules;
@@ -602,72 +633,63 @@ public class UiccCarrierPrivilegeRules extends Handler {
     /*
      * Parses a single rule.
      */
-    private static UiccAccessRule parseRefArdo(String rule) {
-        log("Got rule: " + rule);
-
-        String certificateHash = null;
+    private static UiccAccessRule parseRefArdo(BerTlvReader rule) {
+        byte[] certificateHash = null;
         String packageName = null;
-        String tmp = null;
         long accessType = 0;
 
-        while (!rule.isEmpty()) {
-            if (rule.startsWith(TAG_REF_DO)) {
-                TLV refDo = new TLV(TAG_REF_DO); //E1
-                rule = refDo.parse(rule, false);
+        while (rule.hasNext()) {
+            if (rule.isNextTag(TAG_REF_DO)) {
+                rule.next(); //E1
+                BerTlvReader refDo = rule.getValueReader();
                 // Allow 4F tag with a default value "FF FF FF FF FF FF" to be compatible with
                 // devices having GP access control enforcer:
                 //  - If no 4F tag is present, it's a CP rule.
                 //  - If 4F tag has value "FF FF FF FF FF FF", it's a CP rule.
                 //  - If 4F tag has other values, it's not a CP rule and Android should ignore it.
-                TLV deviceDo = new TLV(TAG_DEVICE_APP_ID_REF_DO); //C1
-                if (refDo.value.startsWith(TAG_AID_REF_DO)) {
-                    TLV cpDo = new TLV(TAG_AID_REF_DO); //4F
-                    String remain = cpDo.parse(refDo.value, false);
-                    if (!cpDo.lengthBytes.equals("06") || !cpDo.value.equals(CARRIER_PRIVILEGE_AID)
-                            || remain.isEmpty() || !remain.startsWith(TAG_DEVICE_APP_ID_REF_DO)) {
+                if (refDo.isNextTag(TAG_AID_REF_DO)) {
+                    refDo.next(); //4F
+                    if (!refDo.valueEquals(CARRIER_PRIVILEGE_AID)
+                            || !refDo.isNextTag(TAG_DEVICE_APP_ID_REF_DO)) {
                         return null;
                     }
-                    tmp = deviceDo.parse(remain, false);
-                    certificateHash = deviceDo.value;
-                } else if (refDo.value.startsWith(TAG_DEVICE_APP_ID_REF_DO)) {
-                    tmp = deviceDo.parse(refDo.value, false);
-                    certificateHash = deviceDo.value;
+                    refDo.next(); //C1
+                    certificateHash = refDo.getValue();
+                } else if (refDo.isNextTag(TAG_DEVICE_APP_ID_REF_DO)) {
+                    refDo.next(); //C1
+                    certificateHash = refDo.getValue();
                 } else {
                     return null;
                 }
-                if (!tmp.isEmpty()) {
-                    if (!tmp.startsWith(TAG_PKG_REF_DO)) {
+                if (refDo.hasNext()) {
+                    if (!refDo.isNextTag(TAG_PKG_REF_DO)) {
                         return null;
                     }
-                    TLV pkgDo = new TLV(TAG_PKG_REF_DO); //CA
-                    pkgDo.parse(tmp, true);
-                    packageName = new String(IccUtils.hexStringToBytes(pkgDo.value));
+                    refDo.next(TAG_PKG_REF_DO, true); //CA
+                    packageName = new String(refDo.getData(), refDo.getValueOffset(),
+                            refDo.getValueLength());
                 } else {
                     packageName = null;
                 }
-            } else if (rule.startsWith(TAG_AR_DO)) {
-                TLV arDo = new TLV(TAG_AR_DO); //E3
-                rule = arDo.parse(rule, false);
-                // Skip all the irrelevant tags (All the optional tags here are two bytes
-                // according to the spec GlobalPlatform Secure Element Access Control).
-                String remain = arDo.value;
-                while (!remain.isEmpty() && !remain.startsWith(TAG_PERM_AR_DO)) {
-                    TLV tmpDo = new TLV(remain.substring(0, 2));
-                    remain = tmpDo.parse(remain, false);
+            } else if (rule.isNextTag(TAG_AR_DO)) {
+                rule.next(); //E3
+                // Skip all the irrelevant tags (the optional tags defined by the spec
+                // GlobalPlatform Secure Element Access Control).
+                BerTlvReader arDo = rule.getValueReader();
+                while (arDo.hasNext() && !arDo.isNextTag(TAG_PERM_AR_DO)) {
+                    arDo.next();
                 }
-                if (remain.isEmpty()) {
+                if (!arDo.hasNext()) {
                     return null;
                 }
-                TLV permDo = new TLV(TAG_PERM_AR_DO); //DB
-                permDo.parse(remain, true);
+                arDo.next(TAG_PERM_AR_DO, true); //DB
             } else  {
                 // Spec requires it must be either TAG_REF_DO or TAG_AR_DO.
                 throw new RuntimeException("Invalid Rule type");
             }
         }
 
-        UiccAccessRule accessRule = new UiccAccessRule(
-                IccUtils.hexStringToBytes(certificateHash), packageName, accessType);
+        UiccAccessRule accessRule = new UiccAccessRule(certificateHash, packageName, accessType);
         return accessRule;
     }
 
@@ -675,7 +697,26 @@ public class UiccCarrierPrivilegeRules extends Handler {
      * Updates the state and notifies the UiccCard that the rules have finished loading.
      */
     private void updateState(int newState, String statusMessage) {
-        mState.set(newState);
+        // Cached rules the UICC confirmed are left as they are.
+        boolean confirmed = mRulesFromCache && newState == STATE_LOADED
+                && mLoadingRules.equals(mAccessRules);
+        mRulesFromCache = false;
+        if (mRuleCache != null) {
+            if (newState != STATE_LOADED) {
+                mRuleCache.remove(mIccId);
+            } else if (confirmed) {
+                mRuleCache.touch(mIccId);
+            } else {
+                mRuleCache.put(mIccId, mLoadingRules);
+            }
+        }
+        if (confirmed) {
+            statusMessage = "Cached rules verified.";
+        } else {
+            mAccessRuleIndex = new UiccAccessRuleIndex(mLoadingRules);
+            mAccessRules = mLoadingRules;
+            mState.set(newState);
+        }
         if (mLoadedCallback != null) {
             mLoadedCallback.sendToTarget();
         }
@@ -699,6 +740,7 @@ public class UiccCarrierPrivilegeRules extends Handler {
         pw.println("UiccCarrierPrivilegeRules:");
         pw.increaseIndent();
         pw.println("mState=" + getStateString(mState.get()));
+        pw.println("mRulesFromCache=" + mRulesFromCache);
         pw.println("mStatusMessage=");
         mStatusMessage.dump(fd, pw, args);
         if (mAccessRules != null) {
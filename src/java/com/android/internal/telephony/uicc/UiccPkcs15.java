@@ -20,14 +20,12 @@ import android.os.AsyncResult;
 import android.os.Handler;
 import android.os.Message;
 
-import com.android.internal.telephony.uicc.UiccCarrierPrivilegeRules.TLV;
 import com.android.telephony.Rlog;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * Class that reads PKCS15-based rules for carrier privileges.
@@ -49,7 +47,7 @@ public class UiccPkcs15 extends Handler {
     private static final boolean DBG = true;
 
     // File handler for PKCS15 files, select file and read binary,
-    // convert to String then send to callback message.
+    // then send the content to callback message.
     private class FileHandler extends Handler {
         // EF path for PKCS15 root, eg. "3F007F50"
         // null if logical channel is used for PKCS15 access.
@@ -121,9 +119,8 @@ public class UiccPkcs15 extends Handler {
 
                 case EVENT_READ_BINARY_DONE:
                     response = (IccIoResult) ar.result;
-                    String result = IccUtils.bytesToHexString(response.payload)
-                            .toUpperCase(Locale.US);
-                    log("IccIoResult: " + response + " payload: " + result);
+                    byte[] result = response.payload;
+                    log("IccIoResult: " + response);
                     AsyncResult.forMessage(mCallback, result, (result == null) ?
                             new IccException("Error: null response for " + mFileId) : null);
                     mCallback.sendToTarget();
@@ -219,7 +216,7 @@ public class UiccPkcs15 extends Handler {
 
             case EVENT_LOAD_ODF_DONE:
                 if (ar.exception == null && ar.result != null) {
-                    String idDodf = parseOdf((String) ar.result);
+                    String idDodf = parseOdf((byte[]) ar.result);
                     if (!mFh.loadFile(idDodf, obtainMessage(EVENT_LOAD_DODF_DONE))) {
                         startFromAcrf();
                     }
@@ -230,7 +227,7 @@ public class UiccPkcs15 extends Handler {
 
             case EVENT_LOAD_DODF_DONE:
                 if (ar.exception == null && ar.result != null) {
-                    String idAcmf = parseDodf((String) ar.result);
+                    String idAcmf = parseDodf((byte[]) ar.result);
                     if (!mFh.loadFile(idAcmf, obtainMessage(EVENT_LOAD_ACMF_DONE))) {
                         startFromAcrf();
                     }
@@ -241,7 +238,7 @@ public class UiccPkcs15 extends Handler {
 
             case EVENT_LOAD_ACMF_DONE:
                 if (ar.exception == null && ar.result != null) {
-                    String idAcrf = parseAcmf((String) ar.result);
+                    String idAcrf = parseAcmf((byte[]) ar.result);
                     if (!mFh.loadFile(idAcrf, obtainMessage(EVENT_LOAD_ACRF_DONE))) {
                         startFromAcrf();
                     }
@@ -253,7 +250,7 @@ public class UiccPkcs15 extends Handler {
             case EVENT_LOAD_ACRF_DONE:
                 if (ar.exception == null && ar.result != null) {
                     mRules = new ArrayList<String>();
-                    String idAccf = parseAcrf((String) ar.result);
+                    String idAccf = parseAcrf((byte[]) ar.result);
                     if (!mFh.loadFile(idAccf, obtainMessage(EVENT_LOAD_ACCF_DONE))) {
                         cleanUp();
                     }
@@ -264,7 +261,7 @@ public class UiccPkcs15 extends Handler {
 
             case EVENT_LOAD_ACCF_DONE:
                 if (ar.exception == null && ar.result != null) {
-                    parseAccf((String) ar.result);
+                    parseAccf((byte[]) ar.result);
                 }
                 // We are done here, no more file to read
                 cleanUp();
@@ -296,35 +293,33 @@ public class UiccPkcs15 extends Handler {
     }
 
     // Constants defined in specs, needed for parsing
-    private static final String CARRIER_RULE_AID = "FFFFFFFFFFFF"; // AID for carrier privilege rule
+    // AID for carrier privilege rule
+    private static final byte[] CARRIER_RULE_AID =
+            new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                    (byte) 0xFF};
     private static final String ACRF_PATH = "4300";
     private static final String EFODF_PATH = "5031";
-    private static final String TAG_ASN_SEQUENCE = "30";
-    private static final String TAG_ASN_OCTET_STRING = "04";
-    private static final String TAG_ASN_OID = "06";
-    private static final String TAG_TARGET_AID = "A0";
-    private static final String TAG_ODF = "A7";
-    private static final String TAG_DODF = "A1";
-    private static final String REFRESH_TAG_LEN = "08";
-    // OID defined by Global Platform for the "Access Control". The hexstring here can be converted
-    // to OID string value 1.2.840.114283.200.1.1
-    public static final String AC_OID = "060A2A864886FC6B81480101";
+    private static final int TAG_ASN_SEQUENCE = 0x30;
+    private static final int TAG_ASN_OCTET_STRING = 0x04;
+    private static final int TAG_ASN_OID = 0x06;
+    private static final int TAG_TARGET_AID = 0xA0;
+    private static final int TAG_ODF = 0xA7;
+    private static final int TAG_DODF = 0xA1;
+    private static final int REFRESH_TAG_LEN = 8;
+    // Value of the OID defined by Global Platform for the "Access Control", without its tag and
+    // length. The hexstring here can be converted to OID string value 1.2.840.114283.200.1.1
+    private static final byte[] AC_OID_VALUE = IccUtils.hexStringToBytes("2A864886FC6B81480101");
 
 
     // parse ODF file to get file id for DODF file
-    // data is hex string, return file id if parse success, null otherwise
-    private String parseOdf(String data) {
+    // return file id if parse success, null otherwise
+    private String parseOdf(byte[] data) {
         // Example:
         // [A7] 06 [30] 04 [04] 02 52 07
         try {
-            TLV tlvRule = new TLV(TAG_ODF); // A7
-            tlvRule.parse(data, false);
-            String ruleString = tlvRule.getValue();
-            TLV tlvAsnPath = new TLV(TAG_ASN_SEQUENCE); // 30
-            TLV tlvPath = new TLV(TAG_ASN_OCTET_STRING);  // 04
-            tlvAsnPath.parse(ruleString, true);
-            tlvPath.parse(tlvAsnPath.getValue(), true);
-            return tlvPath.getValue();
+            BerTlvReader odf = new BerTlvReader(data);
+            odf.next(TAG_ODF, false); // A7
+            return parsePath(odf.getValueReader());
         } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
             log("Error: " + ex);
             return null;
@@ -332,53 +327,37 @@ public class UiccPkcs15 extends Handler {
     }
 
     // parse DODF file to get file id for ACMF file
-    // data is hex string, return file id if parse success, null otherwise
-    private String parseDodf(String data) {
+    // return file id if parse success, null otherwise
+    private String parseDodf(byte[] data) {
         // Example:
         // [A1] 29 [30] 00 [30] 0F 0C 0D 47 50 20 53 45 20 41 63 63 20 43 74 6C [A1] 14 [30] 12
         // [06] 0A 2A 86 48 86 FC 6B 81 48 01 01 [30] 04 04 02 42 00
-        String ret = null;
-        String acRules = data;
-        while (!acRules.isEmpty()) {
-            TLV dodfTag = new TLV(TAG_DODF); // A1
+        BerTlvReader acRules = new BerTlvReader(data);
+        while (acRules.hasNext()) {
             try {
-                acRules = dodfTag.parse(acRules, false);
-                String ruleString = dodfTag.getValue();
+                acRules.next(TAG_DODF, false); // A1
+                BerTlvReader rule = acRules.getValueReader();
                 // Skip the Common Object Attributes
-                TLV commonObjectAttributes = new TLV(TAG_ASN_SEQUENCE); // 30
-                ruleString = commonObjectAttributes.parse(ruleString, false);
+                rule.next(TAG_ASN_SEQUENCE, false); // 30
 
                 // Skip the Common Data Object Attributes
-                TLV commonDataObjectAttributes = new TLV(TAG_ASN_SEQUENCE); // 30
-                ruleString = commonDataObjectAttributes.parse(ruleString, false);
+                rule.next(TAG_ASN_SEQUENCE, false); // 30
 
-                if (ruleString.startsWith(TAG_TARGET_AID)) {
+                if (rule.isNextTag(TAG_TARGET_AID)) {
                     // Skip SubClassAttributes [Optional]
-                    TLV subClassAttributes = new TLV(TAG_TARGET_AID); // A0
-                    ruleString = subClassAttributes.parse(ruleString, false);
+                    rule.next(); // A0
                 }
 
-                if (ruleString.startsWith(TAG_DODF)) {
-                    TLV oidDoTag = new TLV(TAG_DODF); // A1
-                    oidDoTag.parse(ruleString, true);
-                    ruleString = oidDoTag.getValue();
-
-                    TLV oidDo = new TLV(TAG_ASN_SEQUENCE); // 30
-                    oidDo.parse(ruleString, true);
-                    ruleString = oidDo.getValue();
-
-                    TLV oidTag = new TLV(TAG_ASN_OID); // 06
-                    oidTag.parse(ruleString, false);
+                if (rule.isNextTag(TAG_DODF)) {
+                    rule.next(TAG_DODF, true); // A1
+                    BerTlvReader oidDo = rule.getValueReader();
+                    oidDo.next(TAG_ASN_SEQUENCE, true); // 30
+                    BerTlvReader oid = oidDo.getValueReader();
                     // Example : [06] 0A 2A 86 48 86 FC 6B 81 48 01 01
-                    String oid = oidTag.getValue();
-                    if (oid.equals(AC_OID)) {
-                        // Skip OID and get the AC to the ACCM
-                        ruleString = oidTag.parse(ruleString, false);
-                        TLV tlvAsnPath = new TLV(TAG_ASN_SEQUENCE); // 30
-                        TLV tlvPath = new TLV(TAG_ASN_OCTET_STRING);  // 04
-                        tlvAsnPath.parse(ruleString, true);
-                        tlvPath.parse(tlvAsnPath.getValue(), true);
-                        return tlvPath.getValue();
+                    oid.next(TAG_ASN_OID, false); // 06
+                    if (oid.valueEquals(AC_OID_VALUE)) {
+                        // Get the AC to the ACCM following the OID
+                        return parsePath(oid);
                     }
                 }
                 continue; // skip current rule as it doesn't have expected TAG
@@ -387,29 +366,23 @@ public class UiccPkcs15 extends Handler {
                 break; // Bad data, ignore all remaining ACRules
             }
         }
-        return ret;
+        return null;
     }
 
     // parse ACMF file to get file id for ACRF file
-    // data is hex string, return file id if parse success, null otherwise
-    private String parseAcmf(String data) {
+    // return file id if parse success, null otherwise
+    private String parseAcmf(byte[] data) {
         try {
             // [30] 10 [04] 08 01 02 03 04 05 06 07 08 [30] 04 [04] 02 43 00
-            TLV acmfTag = new TLV(TAG_ASN_SEQUENCE); // 30
-            acmfTag.parse(data, false);
-            String ruleString = acmfTag.getValue();
-            TLV refreshTag = new TLV(TAG_ASN_OCTET_STRING); // 04
-            String refreshTagLength = refreshTag.parseLength(ruleString);
-            if (!refreshTagLength.equals(REFRESH_TAG_LEN)) {
+            BerTlvReader acmf = new BerTlvReader(data);
+            acmf.next(TAG_ASN_SEQUENCE, false); // 30
+            BerTlvReader rule = acmf.getValueReader();
+            rule.next(TAG_ASN_OCTET_STRING, false); // 04
+            if (rule.getValueLength() != REFRESH_TAG_LEN) {
                 log("Error: refresh tag in ACMF must be 8.");
                 return null;
             }
-            ruleString = refreshTag.parse(ruleString, false);
-            TLV tlvAsnPath = new TLV(TAG_ASN_SEQUENCE); // 30
-            TLV tlvPath = new TLV(TAG_ASN_OCTET_STRING);  // 04
-            tlvAsnPath.parse(ruleString, true);
-            tlvPath.parse(tlvAsnPath.getValue(), true);
-            return tlvPath.getValue();
+            return parsePath(rule);
         } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
             log("Error: " + ex);
             return null;
@@ -418,36 +391,28 @@ public class UiccPkcs15 extends Handler {
     }
 
     // parse ACRF file to get file id for ACCF file
-    // data is hex string, return file id if parse success, null otherwise
-    private String parseAcrf(String data) {
+    // return file id if parse success, null otherwise
+    private String parseAcrf(byte[] data) {
         String ret = null;
 
-        String acRules = data;
-        while (!acRules.isEmpty()) {
+        BerTlvReader acRules = new BerTlvReader(data);
+        while (acRules.hasNext()) {
             // Example:
             // [30] 10 [A0] 08 04 06 FF FF FF FF FF FF [30] 04 [04] 02 43 10
             // bytes in [] are tags for the data
-            TLV tlvRule = new TLV(TAG_ASN_SEQUENCE);
             try {
-                acRules = tlvRule.parse(acRules, false);
-                String ruleString = tlvRule.getValue();
-                if (ruleString.startsWith(TAG_TARGET_AID)) {
-                    TLV tlvTarget = new TLV(TAG_TARGET_AID); // A0
-                    TLV tlvAid = new TLV(TAG_ASN_OCTET_STRING); // 04
-                    TLV tlvAsnPath = new TLV(TAG_ASN_SEQUENCE); // 30
-                    TLV tlvPath = new TLV(TAG_ASN_OCTET_STRING);  // 04
-
-                    // populate tlvTarget.value with aid data,
-                    // ruleString has remaining data for path
-                    ruleString = tlvTarget.parse(ruleString, false);
-                    // parse tlvTarget.value to get actual strings for AID.
+                acRules.next(TAG_ASN_SEQUENCE, false);
+                BerTlvReader rule = acRules.getValueReader();
+                if (rule.isNextTag(TAG_TARGET_AID)) {
+                    // the value of the A0 tag has the AID,
+                    // the rest of the rule has the path
+                    rule.next(); // A0
+                    BerTlvReader aid = rule.getValueReader();
                     // no other tags expected so shouldConsumeAll is true.
-                    tlvAid.parse(tlvTarget.getValue(), true);
+                    aid.next(TAG_ASN_OCTET_STRING, true); // 04
 
-                    if (CARRIER_RULE_AID.equals(tlvAid.getValue())) {
-                        tlvAsnPath.parse(ruleString, true);
-                        tlvPath.parse(tlvAsnPath.getValue(), true);
-                        ret = tlvPath.getValue();
+                    if (aid.valueEquals(CARRIER_RULE_AID)) {
+                        ret = parsePath(rule);
                     }
                 }
                 continue; // skip current rule as it doesn't have expected TAG
@@ -460,16 +425,15 @@ public class UiccPkcs15 extends Handler {
     }
 
     // parse ACCF and add to mRules
-    private void parseAccf(String data) {
-        String acCondition = data;
-        while (!acCondition.isEmpty()) {
-            TLV tlvCondition = new TLV(TAG_ASN_SEQUENCE);
-            TLV tlvCert = new TLV(TAG_ASN_OCTET_STRING);
+    private void parseAccf(byte[] data) {
+        BerTlvReader acConditions = new BerTlvReader(data);
+        while (acConditions.hasNext()) {
             try {
-                acCondition = tlvCondition.parse(acCondition, false);
-                tlvCert.parse(tlvCondition.getValue(), true);
-                if (!tlvCert.getValue().isEmpty()) {
-                    mRules.add(tlvCert.getValue());
+                acConditions.next(TAG_ASN_SEQUENCE, false);
+                BerTlvReader cert = acConditions.getValueReader();
+                cert.next(TAG_ASN_OCTET_STRING, true);
+                if (cert.getValueLength() > 0) {
+                    mRules.add(cert.getValueHex());
                 }
             } catch (IllegalArgumentException|IndexOutOfBoundsException ex) {
                 log("Error: " + ex);
@@ -478,6 +442,15 @@ public class UiccPkcs15 extends Handler {
         }
     }
 
+    // parse a path, i.e. [30] 04 [04] 02 43 00, which must be the last data object of the reader.
+    // return the file id
+    private static String parsePath(BerTlvReader reader) {
+        reader.next(TAG_ASN_SEQUENCE, true); // 30
+        BerTlvReader path = reader.getValueReader();
+        path.next(TAG_ASN_OCTET_STRING, true); // 04
+        return path.getValueHex();
+    }
+
     public List<String> getRules() {
         return mRules;
     }
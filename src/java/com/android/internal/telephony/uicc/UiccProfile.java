@@ -127,6 +127,7 @@ public class UiccProfile extends IccCard {
     private CatService mCatService;
     private UiccCarrierPrivilegeRules mCarrierPrivilegeRules;
     private UiccCarrierPrivilegeRules mTestOverrideCarrierPrivilegeRules;
+    private CarrierPrivilegeRuleCache mCarrierPrivilegeRuleCache;
     private boolean mDisposed = false;
 
     private RegistrantList mOperatorBrandOverrideRegistrants = new RegistrantList();
@@ -1156,8 +1157,12 @@ public class UiccProfile extends IccCard {
             if (mCarrierPrivilegeRules == null && ics.mCardState == CardState.CARDSTATE_PRESENT && (
                     !Flags.uiccAppCountCheckToCreateChannel()
                             || mLastReportedNumOfUiccApplications > 0)) {
+                if (mCarrierPrivilegeRuleCache == null) {
+                    mCarrierPrivilegeRuleCache = new CarrierPrivilegeRuleCache(mContext);
+                }
                 mCarrierPrivilegeRules = new UiccCarrierPrivilegeRules(this,
-                        mHandler.obtainMessage(EVENT_CARRIER_PRIVILEGES_LOADED));
+                        mHandler.obtainMessage(EVENT_CARRIER_PRIVILEGES_LOADED),
+                        mCarrierPrivilegeRuleCache, ics.iccid);
             } else if (mCarrierPrivilegeRules != null
                     && ics.mCardState != CardState.CARDSTATE_PRESENT) {
                 mCarrierPrivilegeRules = null;
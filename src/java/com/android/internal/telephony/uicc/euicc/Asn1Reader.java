@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc.euicc;
+
+import android.annotation.Nullable;
+
+import com.android.internal.telephony.uicc.BerTlvReader;
+import com.android.internal.telephony.uicc.IccUtils;
+import com.android.internal.telephony.uicc.asn1.Asn1Node;
+import com.android.internal.telephony.uicc.asn1.InvalidAsn1DataException;
+import com.android.internal.telephony.uicc.asn1.TagNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Cursor over the ASN.1 data objects in an eUICC response, used instead of an {@link Asn1Node}
+ * tree when only a few tags of the response are needed. The reader keeps offsets into the
+ * response and only decodes or copies a value when it is asked for.
+ *
+ * The accessors read the current data object, i.e. the one that the last call to {@link #next()}
+ * moved to, and decode its value like the accessors of {@link Asn1Node} with the same name.
+ * Malformed data is reported with {@link InvalidAsn1DataException} when it is reached.
+ */
+final class Asn1Reader {
+    private final BerTlvReader mReader;
+
+    Asn1Reader(byte[] data) {
+        this(new BerTlvReader(data));
+    }
+
+    private Asn1Reader(BerTlvReader reader) {
+        mReader = reader;
+    }
+
+    /** @return {@code true} if there are data objects left to read. */
+    boolean hasNext() {
+        return mReader.hasNext();
+    }
+
+    /**
+     * Moves to the next data object.
+     *
+     * @return the tag of the data object
+     * @throws InvalidAsn1DataException If the data object is malformed or truncated.
+     */
+    int next() throws InvalidAsn1DataException {
+        try {
+            return mReader.next();
+        } catch (IllegalArgumentException e) {
+            throw new InvalidAsn1DataException(0, "Cannot parse data object.", e);
+        }
+    }
+
+    /**
+     * Moves to the next data object with the given tag, skipping the data objects before it.
+     *
+     * @return {@code false} if there is no data object with the tag left
+     */
+    boolean next(int tag) throws InvalidAsn1DataException {
+        while (hasNext()) {
+            if (next() == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the tag of the current data object. */
+    int getTag() {
+        return mReader.getTag();
+    }
+
+    /** @return {@code true} if the current data object is constructed, i.e. has children. */
+    boolean isConstructed() {
+        return (mReader.getData()[mReader.getOffset()] & 0x20) != 0;
+    }
+
+    /**
+     * @return a reader over the children of the current data object, which has nothing to read if
+     *     the current data object is primitive.
+     */
+    Asn1Reader getChildren() {
+        if (!isConstructed()) {
+            return new Asn1Reader(new BerTlvReader(mReader.getData(), 0, 0));
+        }
+        return new Asn1Reader(mReader.getValueReader());
+    }
+
+    /**
+     * Finds the first child of the current data object with {@code tag}, then the first child of
+     * that one with the first of {@code tags}, and so on, like {@link Asn1Node#getChild}.
+     *
+     * @return a reader moved to the data object found. Its {@link #next()} moves to the siblings
+     *     after the data object found.
+     * @throws TagNotFoundException If one of the tags is not found.
+     */
+    Asn1Reader getChild(int tag, int... tags)
+            throws TagNotFoundException, InvalidAsn1DataException {
+        Asn1Reader child = findChild(tag);
+        if (child == null) {
+            throw new TagNotFoundException(tag);
+        }
+        for (int t : tags) {
+            child = child.findChild(t);
+            if (child == null) {
+                throw new TagNotFoundException(t);
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @return a reader moved to the first child of the current data object with {@code tag}, or
+     *     {@code null} if there is no such child.
+     */
+    @Nullable
+    Asn1Reader findChild(int tag) throws InvalidAsn1DataException {
+        Asn1Reader child = getChildren();
+        return child.next(tag) ? child : null;
+    }
+
+    /** @return {@code true} if {@link #getChild} would find a data object. */
+    boolean hasChild(int tag, int... tags) throws InvalidAsn1DataException {
+        try {
+            getChild(tag, tags);
+            return true;
+        } catch (TagNotFoundException e) {
+            return false;
+        }
+    }
+
+    /** @return the value of the current data object as an unsigned integer of up to 4 bytes. */
+    int asInteger() throws InvalidAsn1DataException {
+        try {
+            return IccUtils.bytesToInt(
+                    mReader.getData(), mReader.getValueOffset(), mReader.getValueLength());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidAsn1DataException(getTag(), "Cannot parse data bytes.", e);
+        }
+    }
+
+    /** @return the value of the current data object as the raw bytes of a long. */
+    long asRawLong() throws InvalidAsn1DataException {
+        try {
+            return IccUtils.bytesToRawLong(
+                    mReader.getData(), mReader.getValueOffset(), mReader.getValueLength());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidAsn1DataException(getTag(), "Cannot parse data bytes.", e);
+        }
+    }
+
+    /**
+     * @return the value of the current data object as a bit string, whose first bit is the least
+     *     significant bit of the result.
+     */
+    int asBits() throws InvalidAsn1DataException {
+        int length = mReader.getValueLength();
+        if (length < 1) {
+            throw new InvalidAsn1DataException(getTag(), "Cannot parse data bytes.");
+        }
+        int bits;
+        try {
+            // The first byte is the number of unused bits.
+            bits = IccUtils.bytesToInt(mReader.getData(), mReader.getValueOffset() + 1, length - 1);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidAsn1DataException(getTag(), "Cannot parse data bytes.", e);
+        }
+        for (int i = length - 1; i < 4; i++) {
+            bits <<= 8;
+        }
+        return Integer.reverse(bits);
+    }
+
+    /** @return the value of the current data object as a UTF-8 string. */
+    String asString() {
+        return new String(mReader.getData(), mReader.getValueOffset(), mReader.getValueLength(),
+                StandardCharsets.UTF_8);
+    }
+
+    /** @return a copy of the value of the current data object. */
+    byte[] asBytes() {
+        return mReader.getValue();
+    }
+
+    /** @return the value of the current data object as an upper case hex string. */
+    String asHex() {
+        return mReader.getValueHex();
+    }
+
+    /** @return a copy of the encoding of the current data object, including tag and length. */
+    byte[] toBytes() {
+        return Arrays.copyOfRange(mReader.getData(), mReader.getOffset(),
+                mReader.getValueOffset() + mReader.getValueLength());
+    }
+}
@@ -30,6 +30,7 @@ import android.telephony.euicc.EuiccRulesAuthTable;
 import android.text.TextUtils;
 import android.util.IndentingPrintWriter;
 
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.CommandsInterface;
 import com.android.internal.telephony.Phone;
@@ -56,6 +57,7 @@ import com.android.telephony.Rlog;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -125,6 +127,17 @@ public class EuiccPort extends UiccPort {
 
     private final ApduSender mApduSender;
     private EuiccSpecVersion mSpecVersion;
+
+    // Profiles returned by the last getAllProfiles, which are returned again until a profile
+    // operation is performed through any port of the eUICC or the card status changes.
+    @GuardedBy("mLock")
+    private EuiccProfileInfo[] mCachedProfiles;
+    // Incremented whenever the profiles may change, so that profiles read before the change are
+    // not cached.
+    @GuardedBy("mLock")
+    private int mProfileGeneration;
+    // Card of this port, whose other ports share the profiles of this port.
+    private UiccCard mUiccCard;
     private volatile String mEid;
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PRIVATE)
     public MultipleEnabledProfilesMode mSupportedMepMode;
@@ -164,6 +177,12 @@ public class EuiccPort extends UiccPort {
                 mEid = ics.eid;
             }
             super.update(c, ci, ics, uiccCard);
+            mUiccCard = uiccCard;
+            // The profiles may have been changed by other means than this port, e.g. by another
+            // port of the same eUICC or by their operator, whose updates can change the carrier
+            // privilege rules. Read them again.
+            mCachedProfiles = null;
+            mProfileGeneration++;
         }
     }
 
@@ -174,6 +193,7 @@ public class EuiccPort extends UiccPort {
     public void updateSupportedMepMode(MultipleEnabledProfilesMode supportedMepMode) {
         logd("updateSupportedMepMode");
         mSupportedMepMode = supportedMepMode;
+        clearProfileCache();
     }
 
     /**
@@ -184,6 +204,25 @@ public class EuiccPort extends UiccPort {
      * @since 1.1.0 [GSMA SGP.22]
      */
     public void getAllProfiles(AsyncResultCallback<EuiccProfileInfo[]> callback, Handler handler) {
+        EuiccProfileInfo[] cachedProfiles;
+        int generation;
+        synchronized (mLock) {
+            cachedProfiles = mCachedProfiles;
+            generation = mProfileGeneration;
+        }
+        if (cachedProfiles == null) {
+            readAllProfiles(generation, callback, handler);
+        } else {
+            AsyncResultHelper.returnResult(cachedProfiles.clone(), callback, handler);
+        }
+    }
+
+    /**
+     * Reads the profiles from the eUICC, and caches them if no profile operation was performed
+     * since {@code generation}.
+     */
+    private void readAllProfiles(int generation,
+            AsyncResultCallback<EuiccProfileInfo[]> callback, Handler handler) {
         byte[] profileTags = mSupportedMepMode.isMepMode() ? Tags.EUICC_PROFILE_MEP_TAGS
                 : Tags.EUICC_PROFILE_TAGS;
         sendApdu(
@@ -192,25 +231,22 @@ public class EuiccPort extends UiccPort {
                                 .addChildAsBytes(Tags.TAG_TAG_LIST, profileTags)
                                 .build().toHex())),
                 response -> {
-                    List<Asn1Node> profileNodes = new Asn1Decoder(response).nextNode()
-                            .getChild(Tags.TAG_CTX_COMP_0).getChildren(Tags.TAG_PROFILE_INFO);
-                    int size = profileNodes.size();
-                    EuiccProfileInfo[] profiles = new EuiccProfileInfo[size];
-                    int profileCount = 0;
-                    for (int i = 0; i < size; i++) {
-                        Asn1Node profileNode = profileNodes.get(i);
-                        if (!profileNode.hasChild(Tags.TAG_ICCID)) {
+                    Asn1Reader profileReader = readResponse(response)
+                            .getChild(Tags.TAG_CTX_COMP_0).getChildren();
+                    List<EuiccProfileInfo> profileList = new ArrayList<>();
+                    while (profileReader.next(Tags.TAG_PROFILE_INFO)) {
+                        EuiccProfileInfo profile = buildProfile(profileReader);
+                        if (profile == null) {
                             loge("Profile must have an ICCID.");
                             continue;
                         }
-                        String strippedIccIdString =
-                                stripTrailingFs(profileNode.getChild(Tags.TAG_ICCID).asBytes());
-                        EuiccProfileInfo.Builder profileBuilder =
-                                new EuiccProfileInfo.Builder(strippedIccIdString);
-                        buildProfile(profileNode, profileBuilder);
-
-                        EuiccProfileInfo profile = profileBuilder.build();
-                        profiles[profileCount++] = profile;
+                        profileList.add(profile);
+                    }
+                    EuiccProfileInfo[] profiles = profileList.toArray(new EuiccProfileInfo[0]);
+                    synchronized (mLock) {
+                        if (generation == mProfileGeneration) {
+                            mCachedProfiles = profiles.clone();
+                        }
                     }
                     return profiles;
                 },
@@ -226,6 +262,23 @@ public class EuiccPort extends UiccPort {
      */
     public final void getProfile(String iccid, AsyncResultCallback<EuiccProfileInfo> callback,
             Handler handler) {
+        EuiccProfileInfo[] cachedProfiles;
+        synchronized (mLock) {
+            cachedProfiles = mCachedProfiles;
+        }
+        if (cachedProfiles != null) {
+            // The cache has all profiles, so a profile not in it does not exist.
+            EuiccProfileInfo result = null;
+            String strippedIccId = IccUtils.stripTrailingFs(iccid);
+            for (EuiccProfileInfo profile : cachedProfiles) {
+                if (profile != null && profile.getIccid().equals(strippedIccId)) {
+                    result = profile;
+                    break;
+                }
+            }
+            AsyncResultHelper.returnResult(result, callback, handler);
+            return;
+        }
         byte[] profileTags = mSupportedMepMode.isMepMode() ? Tags.EUICC_PROFILE_MEP_TAGS
                 : Tags.EUICC_PROFILE_TAGS;
         sendApdu(
@@ -238,18 +291,16 @@ public class EuiccPort extends UiccPort {
                                 .addChildAsBytes(Tags.TAG_TAG_LIST, profileTags)
                                 .build().toHex())),
                 response -> {
-                    List<Asn1Node> profileNodes = new Asn1Decoder(response).nextNode()
-                            .getChild(Tags.TAG_CTX_COMP_0).getChildren(Tags.TAG_PROFILE_INFO);
-                    if (profileNodes.isEmpty()) {
+                    Asn1Reader profileReader = readResponse(response)
+                            .getChild(Tags.TAG_CTX_COMP_0).getChildren();
+                    if (!profileReader.next(Tags.TAG_PROFILE_INFO)) {
                         return null;
                     }
-                    Asn1Node profileNode = profileNodes.get(0);
-                    String strippedIccIdString =
-                            stripTrailingFs(profileNode.getChild(Tags.TAG_ICCID).asBytes());
-                    EuiccProfileInfo.Builder profileBuilder =
-                            new EuiccProfileInfo.Builder(strippedIccIdString);
-                    buildProfile(profileNode, profileBuilder);
-                    return profileBuilder.build();
+                    EuiccProfileInfo profile = buildProfile(profileReader);
+                    if (profile == null) {
+                        throw new TagNotFoundException(Tags.TAG_ICCID);
+                    }
+                    return profile;
                 },
                 callback, handler);
     }
@@ -289,7 +340,7 @@ public class EuiccPort extends UiccPort {
                                     EuiccCardErrorException.OPERATION_DISABLE_PROFILE, result);
                     }
                 },
-                callback, handler);
+                invalidateProfileCacheOnResult(callback), handler);
     }
 
     /**
@@ -337,7 +388,7 @@ public class EuiccPort extends UiccPort {
                                     EuiccCardErrorException.OPERATION_SWITCH_TO_PROFILE, result);
                     }
                 },
-                callback, handler);
+                invalidateProfileCacheOnResult(callback), handler);
     }
 
     /**
@@ -366,7 +417,7 @@ public class EuiccPort extends UiccPort {
                                 .addChildAsBytes(Tags.TAG_TAG_LIST, new byte[] {Tags.TAG_EID})
                                 .build().toHex())),
                 response -> {
-                    String eid = IccUtils.bytesToHexString(parseResponse(response)
+                    String eid = IccUtils.bytesToHexString(readResponse(response)
                             .getChild(Tags.TAG_EID).asBytes());
                     synchronized (mLock) {
                         mEid = eid;
@@ -402,7 +453,7 @@ public class EuiccPort extends UiccPort {
                     }
                     return null;
                 },
-                callback, handler);
+                invalidateProfileCacheOnResult(callback), handler);
     }
 
     /**
@@ -429,7 +480,7 @@ public class EuiccPort extends UiccPort {
                     }
                     return null;
                 },
-                callback, handler);
+                invalidateProfileCacheOnResult(callback), handler);
     }
 
     /**
@@ -455,7 +506,7 @@ public class EuiccPort extends UiccPort {
                     }
                     return null;
                 },
-                callback, handler);
+                invalidateProfileCacheOnResult(callback), handler);
     }
 
     /**
@@ -471,7 +522,7 @@ public class EuiccPort extends UiccPort {
                         requestBuilder.addStoreData(
                                 Asn1Node.newBuilder(Tags.TAG_GET_CONFIGURED_ADDRESSES)
                                         .build().toHex())),
-                (byte[] response) -> parseResponse(response).getChild(Tags.TAG_CTX_0).asString(),
+                (byte[] response) -> readResponse(response).getChild(Tags.TAG_CTX_0).asString(),
                 callback, handler);
     }
 
@@ -488,7 +539,7 @@ public class EuiccPort extends UiccPort {
                         requestBuilder.addStoreData(
                                 Asn1Node.newBuilder(Tags.TAG_GET_CONFIGURED_ADDRESSES)
                                         .build().toHex())),
-                (byte[] response) -> parseResponse(response).getChild(Tags.TAG_CTX_1).asString(),
+                (byte[] response) -> readResponse(response).getChild(Tags.TAG_CTX_1).asString(),
                 callback, handler);
     }
 
@@ -533,23 +584,24 @@ public class EuiccPort extends UiccPort {
                         requestBuilder.addStoreData(Asn1Node.newBuilder(Tags.TAG_GET_RAT)
                                 .build().toHex())),
                 response -> {
-                    Asn1Node root = parseResponse(response);
-                    List<Asn1Node> nodes = root.getChildren(Tags.TAG_CTX_COMP_0);
-                    EuiccRulesAuthTable.Builder builder =
-                            new EuiccRulesAuthTable.Builder(nodes.size());
-                    int size = nodes.size();
-                    for (int i = 0; i < size; i++) {
-                        Asn1Node node = nodes.get(i);
-                        List<Asn1Node> opIdNodes =
-                                node.getChild(Tags.TAG_SEQUENCE, Tags.TAG_CTX_COMP_1).getChildren();
-                        int opIdSize = opIdNodes.size();
-                        CarrierIdentifier[] opIds = new CarrierIdentifier[opIdSize];
-                        for (int j = 0; j < opIdSize; j++) {
-                            opIds[j] = buildCarrierIdentifier(opIdNodes.get(j));
+                    Asn1Reader root = readResponse(response);
+                    int size = 0;
+                    Asn1Reader ruleReader = root.getChildren();
+                    while (ruleReader.next(Tags.TAG_CTX_COMP_0)) {
+                        size++;
+                    }
+                    EuiccRulesAuthTable.Builder builder = new EuiccRulesAuthTable.Builder(size);
+                    ruleReader = root.getChildren();
+                    while (ruleReader.next(Tags.TAG_CTX_COMP_0)) {
+                        Asn1Reader rule = ruleReader.getChild(Tags.TAG_SEQUENCE);
+                        List<CarrierIdentifier> opIds = new ArrayList<>();
+                        Asn1Reader opIdReader = rule.getChild(Tags.TAG_CTX_COMP_1).getChildren();
+                        while (opIdReader.hasNext()) {
+                            opIdReader.next();
+                            opIds.add(buildCarrierIdentifier(opIdReader));
                         }
-                        builder.add(node.getChild(Tags.TAG_SEQUENCE, Tags.TAG_CTX_0).asBits(),
-                                Arrays.asList(opIds), node.getChild(Tags.TAG_SEQUENCE,
-                                        Tags.TAG_CTX_2).asBits());
+                        builder.add(rule.getChild(Tags.TAG_CTX_0).asBits(), opIds,
+                                rule.getChild(Tags.TAG_CTX_2).asBits());
                     }
                     return builder.build();
                 },
@@ -569,7 +621,7 @@ public class EuiccPort extends UiccPort {
                         requestBuilder.addStoreData(
                                 Asn1Node.newBuilder(Tags.TAG_GET_EUICC_CHALLENGE)
                                         .build().toHex())),
-                (byte[] response) -> parseResponse(response).getChild(Tags.TAG_CTX_0).asBytes(),
+                (byte[] response) -> readResponse(response).getChild(Tags.TAG_CTX_0).asBytes(),
                 callback, handler);
     }
 
@@ -655,7 +707,7 @@ public class EuiccPort extends UiccPort {
                             .build().toHex());
                 }),
                 response -> {
-                    Asn1Node root = parseResponse(response);
+                    Asn1Reader root = readResponse(response);
                     if (root.hasChild(Tags.TAG_CTX_COMP_1, Tags.TAG_UNI_2)) {
                         throw new EuiccCardErrorException(
                                 EuiccCardErrorException.OPERATION_AUTHENTICATE_SERVER,
@@ -693,7 +745,7 @@ public class EuiccPort extends UiccPort {
                                     .build().toHex());
                 }),
                 response -> {
-                    Asn1Node root = parseResponse(response);
+                    Asn1Reader root = readResponse(response);
                     if (root.hasChild(Tags.TAG_CTX_COMP_1, Tags.TAG_UNI_2)) {
                         throw new EuiccCardErrorException(
                                 EuiccCardErrorException.OPERATION_PREPARE_DOWNLOAD,
@@ -798,15 +850,15 @@ public class EuiccPort extends UiccPort {
                 }),
                 response -> {
                     // SGP.22 v2.0 ErrorResult
-                    Asn1Node root = parseResponse(response);
+                    Asn1Reader root = readResponse(response);
                     if (root.hasChild(Tags.TAG_PROFILE_INSTALLATION_RESULT_DATA,
                             Tags.TAG_CTX_COMP_2, Tags.TAG_CTX_COMP_1, Tags.TAG_CTX_1)) {
-                        Asn1Node errorNode = root.getChild(
+                        Asn1Reader error = root.getChild(
                                 Tags.TAG_PROFILE_INSTALLATION_RESULT_DATA, Tags.TAG_CTX_COMP_2,
                                 Tags.TAG_CTX_COMP_1, Tags.TAG_CTX_1);
                         throw new EuiccCardErrorException(
                                 EuiccCardErrorException.OPERATION_LOAD_BOUND_PROFILE_PACKAGE,
-                                errorNode.asInteger(), errorNode);
+                                error.asInteger(), new Asn1Decoder(error.toBytes()).nextNode());
                     }
                     return root.toBytes();
                 },
@@ -822,7 +874,7 @@ public class EuiccPort extends UiccPort {
                     }
                     return true;
                 },
-                callback, handler);
+                invalidateProfileCacheOnResult(callback), handler);
     }
 
     /**
@@ -843,7 +895,7 @@ public class EuiccPort extends UiccPort {
                                 .addChildAsInteger(Tags.TAG_CTX_1, reason)
                                 .build().toHex())),
                 (byte[] response) ->
-                        parseResponseAndCheckSimpleError(response,
+                        readResponseAndCheckSimpleError(response,
                                 EuiccCardErrorException.OPERATION_CANCEL_SESSION).toBytes(),
                 callback, handler);
     }
@@ -864,14 +916,9 @@ public class EuiccPort extends UiccPort {
                                 .addChildAsBits(Tags.TAG_CTX_1, events)
                                 .build().toHex())),
                 response -> {
-                    Asn1Node root = parseResponseAndCheckSimpleError(response,
+                    Asn1Reader root = readResponseAndCheckSimpleError(response,
                             EuiccCardErrorException.OPERATION_LIST_NOTIFICATIONS);
-                    List<Asn1Node> nodes = root.getChild(Tags.TAG_CTX_COMP_0).getChildren();
-                    EuiccNotification[] notifications = new EuiccNotification[nodes.size()];
-                    for (int i = 0; i < notifications.length; ++i) {
-                        notifications[i] = createNotification(nodes.get(i));
-                    }
-                    return notifications;
+                    return createNotifications(root.getChild(Tags.TAG_CTX_COMP_0));
                 },
                 callback, handler);
     }
@@ -894,7 +941,7 @@ public class EuiccPort extends UiccPort {
                                                 .addChildAsBits(Tags.TAG_CTX_1, events))
                                         .build().toHex())),
                 response -> {
-                    Asn1Node root = parseResponse(response);
+                    Asn1Reader root = readResponse(response);
                     if (root.hasChild(Tags.TAG_CTX_1)) {
                         // SGP.22 v2.0 RetrieveNotificationsListResponse
                         int error = root.getChild(Tags.TAG_CTX_1).asInteger();
@@ -907,12 +954,7 @@ public class EuiccPort extends UiccPort {
                                         error);
                         }
                     }
-                    List<Asn1Node> nodes = root.getChild(Tags.TAG_CTX_COMP_0).getChildren();
-                    EuiccNotification[] notifications = new EuiccNotification[nodes.size()];
-                    for (int i = 0; i < notifications.length; ++i) {
-                        notifications[i] = createNotification(nodes.get(i));
-                    }
-                    return notifications;
+                    return createNotifications(root.getChild(Tags.TAG_CTX_COMP_0));
                 },
                 callback, handler);
     }
@@ -935,11 +977,13 @@ public class EuiccPort extends UiccPort {
                                                 .addChildAsInteger(Tags.TAG_CTX_0, seqNumber))
                                         .build().toHex())),
                 response -> {
-                    Asn1Node root = parseResponseAndCheckSimpleError(response,
+                    Asn1Reader root = readResponseAndCheckSimpleError(response,
                             EuiccCardErrorException.OPERATION_RETRIEVE_NOTIFICATION);
-                    List<Asn1Node> nodes = root.getChild(Tags.TAG_CTX_COMP_0).getChildren();
-                    if (nodes.size() > 0) {
-                        return createNotification(nodes.get(0));
+                    Asn1Reader notificationReader =
+                            root.getChild(Tags.TAG_CTX_COMP_0).getChildren();
+                    if (notificationReader.hasNext()) {
+                        notificationReader.next();
+                        return createNotification(notificationReader);
                     }
                     return null;
                 },
@@ -1116,6 +1160,54 @@ public class EuiccPort extends UiccPort {
         return Resources.getSystem();
     }
 
+    private void clearProfileCache() {
+        synchronized (mLock) {
+            mCachedProfiles = null;
+            mProfileGeneration++;
+        }
+    }
+
+    /**
+     * Clears the profile cache of all ports of the eUICC, since a profile operation through this
+     * port changes the profiles that the other ports read.
+     */
+    private void invalidateProfileCache() {
+        clearProfileCache();
+        UiccCard card;
+        synchronized (mLock) {
+            card = mUiccCard;
+        }
+        UiccPort[] ports = card == null ? null : card.getUiccPortList();
+        if (ports == null) return;
+        for (UiccPort port : ports) {
+            if (port != this && port instanceof EuiccPort) {
+                ((EuiccPort) port).clearProfileCache();
+            }
+        }
+    }
+
+    /**
+     * Invalidates the profile cache now, as a profile operation is about to be performed, and
+     * again once it is done, so that profiles read in the meantime are not cached.
+     */
+    private <T> AsyncResultCallback<T> invalidateProfileCacheOnResult(
+            AsyncResultCallback<T> callback) {
+        invalidateProfileCache();
+        return new AsyncResultCallback<T>() {
+            @Override
+            public void onResult(T result) {
+                invalidateProfileCache();
+                callback.onResult(result);
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                invalidateProfileCache();
+                callback.onException(e);
+            }
+        };
+    }
+
     private RequestProvider newRequestProvider(ApduRequestBuilder builder) {
         return (selectResponse, requestBuilder) -> {
             EuiccSpecVersion ver = getOrExtractSpecVersion(selectResponse);
@@ -1232,162 +1324,193 @@ public class EuiccPort extends UiccPort {
         }, handler);
     }
 
-    private static void buildProfile(Asn1Node profileNode, EuiccProfileInfo.Builder profileBuilder)
+    /**
+     * Builds the profile from the children of the current ProfileInfo of {@code profileInfo}.
+     *
+     * @return the profile, or {@code null} if the ProfileInfo has no ICCID
+     */
+    @Nullable
+    private static EuiccProfileInfo buildProfile(Asn1Reader profileInfo)
             throws TagNotFoundException, InvalidAsn1DataException {
-        if (profileNode.hasChild(Tags.TAG_NICKNAME)) {
-            profileBuilder.setNickname(profileNode.getChild(Tags.TAG_NICKNAME).asString());
+        Asn1Reader iccid = profileInfo.findChild(Tags.TAG_ICCID);
+        if (iccid == null) {
+            return null;
         }
+        EuiccProfileInfo.Builder profileBuilder =
+                new EuiccProfileInfo.Builder(stripTrailingFs(iccid.asBytes()));
 
-        if (profileNode.hasChild(Tags.TAG_SERVICE_PROVIDER_NAME)) {
-            profileBuilder.setServiceProviderName(
-                    profileNode.getChild(Tags.TAG_SERVICE_PROVIDER_NAME).asString());
+        Asn1Reader child = profileInfo.findChild(Tags.TAG_NICKNAME);
+        if (child != null) {
+            profileBuilder.setNickname(child.asString());
         }
 
-        if (profileNode.hasChild(Tags.TAG_PROFILE_NAME)) {
-            profileBuilder.setProfileName(
-                    profileNode.getChild(Tags.TAG_PROFILE_NAME).asString());
+        child = profileInfo.findChild(Tags.TAG_SERVICE_PROVIDER_NAME);
+        if (child != null) {
+            profileBuilder.setServiceProviderName(child.asString());
         }
 
-        if (profileNode.hasChild(Tags.TAG_OPERATOR_ID)) {
-            profileBuilder.setCarrierIdentifier(
-                    buildCarrierIdentifier(profileNode.getChild(Tags.TAG_OPERATOR_ID)));
+        child = profileInfo.findChild(Tags.TAG_PROFILE_NAME);
+        if (child != null) {
+            profileBuilder.setProfileName(child.asString());
         }
 
-        if (profileNode.hasChild(Tags.TAG_PROFILE_STATE)) {
+        child = profileInfo.findChild(Tags.TAG_OPERATOR_ID);
+        if (child != null) {
+            profileBuilder.setCarrierIdentifier(buildCarrierIdentifier(child));
+        }
+
+        child = profileInfo.findChild(Tags.TAG_PROFILE_STATE);
+        if (child != null) {
             // In case of MEP capable eUICC, the profileState value returned SHALL only be Enabled
             // if the Profile is in the Enabled state on the same eSIM Port as where this
             // getProfilesInfo command was sent. So should check for enabledOnEsimPort(TAG_PORT)
             // tag and verify its value is a valid port (means port value is >=0) or not.
-            if (profileNode.hasChild(Tags.TAG_PORT)
-                    && profileNode.getChild(Tags.TAG_PORT).asInteger() >= 0) {
+            Asn1Reader port = profileInfo.findChild(Tags.TAG_PORT);
+            if (port != null && port.asInteger() >= 0) {
                 profileBuilder.setState(EuiccProfileInfo.PROFILE_STATE_ENABLED);
             } else {
                 // noinspection WrongConstant
-                profileBuilder.setState(profileNode.getChild(Tags.TAG_PROFILE_STATE).asInteger());
+                profileBuilder.setState(child.asInteger());
             }
         } else {
             profileBuilder.setState(EuiccProfileInfo.PROFILE_STATE_DISABLED);
         }
 
-        if (profileNode.hasChild(Tags.TAG_PROFILE_CLASS)) {
+        child = profileInfo.findChild(Tags.TAG_PROFILE_CLASS);
+        if (child != null) {
             // noinspection WrongConstant
-            profileBuilder.setProfileClass(
-                    profileNode.getChild(Tags.TAG_PROFILE_CLASS).asInteger());
+            profileBuilder.setProfileClass(child.asInteger());
         } else {
             profileBuilder.setProfileClass(EuiccProfileInfo.PROFILE_CLASS_OPERATIONAL);
         }
 
-        if (profileNode.hasChild(Tags.TAG_PROFILE_POLICY_RULE)) {
+        child = profileInfo.findChild(Tags.TAG_PROFILE_POLICY_RULE);
+        if (child != null) {
             // noinspection WrongConstant
-            profileBuilder.setPolicyRules(
-                    profileNode.getChild(Tags.TAG_PROFILE_POLICY_RULE).asBits());
+            profileBuilder.setPolicyRules(child.asBits());
         }
 
-        if (profileNode.hasChild(Tags.TAG_CARRIER_PRIVILEGE_RULES)) {
-            List<Asn1Node> refArDoNodes = profileNode.getChild(Tags.TAG_CARRIER_PRIVILEGE_RULES)
-                    .getChildren(Tags.TAG_REF_AR_DO);
-            UiccAccessRule[] rules = buildUiccAccessRule(refArDoNodes);
-            List<UiccAccessRule> rulesList = null;
-            if (rules != null) {
-                rulesList = Arrays.asList(rules);
-            }
-            profileBuilder.setUiccAccessRule(rulesList);
+        child = profileInfo.findChild(Tags.TAG_CARRIER_PRIVILEGE_RULES);
+        if (child != null) {
+            profileBuilder.setUiccAccessRule(buildUiccAccessRules(child));
         }
+        return profileBuilder.build();
     }
 
-    private static CarrierIdentifier buildCarrierIdentifier(Asn1Node node)
+    private static CarrierIdentifier buildCarrierIdentifier(Asn1Reader operatorId)
             throws InvalidAsn1DataException, TagNotFoundException {
         String gid1 = null;
-        if (node.hasChild(Tags.TAG_CTX_1)) {
-            gid1 = IccUtils.bytesToHexString(node.getChild(Tags.TAG_CTX_1).asBytes());
+        Asn1Reader child = operatorId.findChild(Tags.TAG_CTX_1);
+        if (child != null) {
+            gid1 = IccUtils.bytesToHexString(child.asBytes());
         }
         String gid2 = null;
-        if (node.hasChild(Tags.TAG_CTX_2)) {
-            gid2 = IccUtils.bytesToHexString(node.getChild(Tags.TAG_CTX_2).asBytes());
+        child = operatorId.findChild(Tags.TAG_CTX_2);
+        if (child != null) {
+            gid2 = IccUtils.bytesToHexString(child.asBytes());
         }
-        return new CarrierIdentifier(node.getChild(Tags.TAG_CTX_0).asBytes(), gid1, gid2);
+        return new CarrierIdentifier(operatorId.getChild(Tags.TAG_CTX_0).asBytes(), gid1, gid2);
     }
 
+    /**
+     * @return the rules of the REF-AR-DOs in the current data object of {@code rules}, or
+     *     {@code null} if there is none.
+     */
     @Nullable
-    private static UiccAccessRule[] buildUiccAccessRule(List<Asn1Node> nodes)
+    private static List<UiccAccessRule> buildUiccAccessRules(Asn1Reader rules)
             throws InvalidAsn1DataException, TagNotFoundException {
-        if (nodes.isEmpty()) {
-            return null;
-        }
-        int count = nodes.size();
-        UiccAccessRule[] rules = new UiccAccessRule[count];
-        for (int i = 0; i < count; i++) {
-            Asn1Node node = nodes.get(i);
-            Asn1Node refDoNode = node.getChild(Tags.TAG_REF_DO);
-            byte[] signature = refDoNode.getChild(Tags.TAG_DEVICE_APP_ID_REF_DO).asBytes();
+        List<UiccAccessRule> rulesList = null;
+        Asn1Reader refArDo = rules.getChildren();
+        while (refArDo.next(Tags.TAG_REF_AR_DO)) {
+            Asn1Reader refDo = refArDo.getChild(Tags.TAG_REF_DO);
+            byte[] signature = refDo.getChild(Tags.TAG_DEVICE_APP_ID_REF_DO).asBytes();
 
             String packageName = null;
-            if (refDoNode.hasChild(Tags.TAG_PKG_REF_DO)) {
-                packageName = refDoNode.getChild(Tags.TAG_PKG_REF_DO).asString();
+            Asn1Reader pkgRefDo = refDo.findChild(Tags.TAG_PKG_REF_DO);
+            if (pkgRefDo != null) {
+                packageName = pkgRefDo.asString();
             }
             long accessType = 0;
-            if (node.hasChild(Tags.TAG_AR_DO, Tags.TAG_PERM_AR_DO)) {
-                Asn1Node permArDoNode = node.getChild(Tags.TAG_AR_DO, Tags.TAG_PERM_AR_DO);
-                accessType = permArDoNode.asRawLong();
+            if (refArDo.hasChild(Tags.TAG_AR_DO, Tags.TAG_PERM_AR_DO)) {
+                accessType = refArDo.getChild(Tags.TAG_AR_DO, Tags.TAG_PERM_AR_DO).asRawLong();
+            }
+            if (rulesList == null) {
+                rulesList = new ArrayList<>();
             }
-            rules[i] = new UiccAccessRule(signature, packageName, accessType);
+            rulesList.add(new UiccAccessRule(signature, packageName, accessType));
         }
-        return rules;
+        return rulesList;
     }
 
     /**
      * Creates an instance from the ASN.1 data.
      *
-     * @param node This should be either {@code NotificationMetadata} or {@code PendingNotification}
-     *     defined by SGP.22 v2.0.
+     * @param notification Moved to either {@code NotificationMetadata} or
+     *     {@code PendingNotification} defined by SGP.22 v2.0.
      * @throws TagNotFoundException If no notification tag is found in the bytes.
      * @throws InvalidAsn1DataException If no valid data is found in the bytes.
      */
-    private static EuiccNotification createNotification(Asn1Node node)
+    private static EuiccNotification createNotification(Asn1Reader notification)
             throws TagNotFoundException, InvalidAsn1DataException {
-        Asn1Node metadataNode;
-        if (node.getTag() == Tags.TAG_NOTIFICATION_METADATA) {
-            metadataNode = node;
-        } else if (node.getTag() == Tags.TAG_PROFILE_INSTALLATION_RESULT) {
-            metadataNode = node.getChild(Tags.TAG_PROFILE_INSTALLATION_RESULT_DATA,
+        Asn1Reader metadata;
+        if (notification.getTag() == Tags.TAG_NOTIFICATION_METADATA) {
+            metadata = notification;
+        } else if (notification.getTag() == Tags.TAG_PROFILE_INSTALLATION_RESULT) {
+            metadata = notification.getChild(Tags.TAG_PROFILE_INSTALLATION_RESULT_DATA,
                     Tags.TAG_NOTIFICATION_METADATA);
         } else {
             // Other signed notification
-            metadataNode = node.getChild(Tags.TAG_NOTIFICATION_METADATA);
+            metadata = notification.getChild(Tags.TAG_NOTIFICATION_METADATA);
         }
         // noinspection WrongConstant
-        return new EuiccNotification(metadataNode.getChild(Tags.TAG_SEQ).asInteger(),
-                metadataNode.getChild(Tags.TAG_TARGET_ADDR).asString(),
-                metadataNode.getChild(Tags.TAG_EVENT).asBits(),
-                node.getTag() == Tags.TAG_NOTIFICATION_METADATA ? null : node.toBytes());
+        return new EuiccNotification(metadata.getChild(Tags.TAG_SEQ).asInteger(),
+                metadata.getChild(Tags.TAG_TARGET_ADDR).asString(),
+                metadata.getChild(Tags.TAG_EVENT).asBits(),
+                notification.getTag() == Tags.TAG_NOTIFICATION_METADATA
+                        ? null : notification.toBytes());
+    }
+
+    /** Creates the notifications from the children of the current data object. */
+    private static EuiccNotification[] createNotifications(Asn1Reader notificationList)
+            throws TagNotFoundException, InvalidAsn1DataException {
+        List<EuiccNotification> notifications = new ArrayList<>();
+        Asn1Reader notification = notificationList.getChildren();
+        while (notification.hasNext()) {
+            notification.next();
+            notifications.add(createNotification(notification));
+        }
+        return notifications.toArray(new EuiccNotification[0]);
     }
 
     /** Returns the first CONTEXT [0] as an integer. */
     private static int parseSimpleResult(byte[] response)
             throws EuiccCardException, TagNotFoundException, InvalidAsn1DataException {
-        return parseResponse(response).getChild(Tags.TAG_CTX_0).asInteger();
+        return readResponse(response).getChild(Tags.TAG_CTX_0).asInteger();
     }
 
-    private static Asn1Node parseResponse(byte[] response)
+    /** Returns a reader moved to the first data object of the response. */
+    private static Asn1Reader readResponse(byte[] response)
             throws EuiccCardException, InvalidAsn1DataException {
-        Asn1Decoder decoder = new Asn1Decoder(response);
-        if (!decoder.hasNextNode()) {
+        Asn1Reader reader = new Asn1Reader(response);
+        if (!reader.hasNext()) {
             throw new EuiccCardException("Empty response", null);
         }
-        return decoder.nextNode();
+        reader.next();
+        return reader;
     }
 
     /**
-     * Parses the bytes into an ASN1 node and check if there is an error code represented at the
-     * context 1 tag. If there is an error code, an {@link EuiccCardErrorException} will be thrown
-     * with the given operation code.
+     * Reads the first data object of the response and check if there is an error code represented
+     * at the context 1 tag. If there is an error code, an {@link EuiccCardErrorException} will be
+     * thrown with the given operation code.
      */
-    private static Asn1Node parseResponseAndCheckSimpleError(byte[] response,
+    private static Asn1Reader readResponseAndCheckSimpleError(byte[] response,
             @EuiccCardErrorException.OperationCode int opCode)
             throws EuiccCardException, InvalidAsn1DataException, TagNotFoundException {
-        Asn1Node root = parseResponse(response);
-        if (root.hasChild(Tags.TAG_CTX_1)) {
-            throw new EuiccCardErrorException(opCode, root.getChild(Tags.TAG_CTX_1).asInteger());
+        Asn1Reader root = readResponse(response);
+        Asn1Reader error = root.findChild(Tags.TAG_CTX_1);
+        if (error != null) {
+            throw new EuiccCardErrorException(opCode, error.asInteger());
         }
         return root;
     }
@@ -1431,6 +1554,10 @@ public class EuiccPort extends UiccPort {
         pw.increaseIndent();
         pw.println("mEid=" + mEid);
         pw.println("mSupportedMepMode=" + mSupportedMepMode);
+        synchronized (mLock) {
+            pw.println("mCachedProfiles=" + (mCachedProfiles == null
+                    ? "null" : mCachedProfiles.length + " profiles"));
+        }
         pw.decreaseIndent();
     }
 }
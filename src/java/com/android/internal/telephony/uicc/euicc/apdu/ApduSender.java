@@ -19,9 +19,13 @@ package com.android.internal.telephony.uicc.euicc.apdu;
 import android.annotation.Nullable;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.telephony.IccOpenLogicalChannelResponse;
 
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telephony.CommandsInterface;
+import com.android.internal.telephony.euicc.EuiccSession;
 import com.android.internal.telephony.uicc.IccIoResult;
 import com.android.internal.telephony.uicc.euicc.async.AsyncResultCallback;
 import com.android.internal.telephony.uicc.euicc.async.AsyncResultHelper;
@@ -38,6 +42,11 @@ import java.util.List;
  * {@link #STATUS_NO_ERROR}) or causing an exception, an {@link ApduException} will be returned
  * immediately without sending the rest of commands. This class is thread-safe.
  *
+ * <p>While a {@link EuiccSession} is ongoing, the logical channel is kept open after a successful
+ * request and reused by the next requests, until the session ends or the channel has been idle for
+ * {@link #IDLE_TIMEOUT_MS}. A request whose first command fails on a reused channel is sent again
+ * once on a newly opened channel, as the UICC may have closed the channel in the meantime.
+ *
  * @hide
  */
 public class ApduSender {
@@ -53,6 +62,10 @@ public class ApduSender {
 
     private static final int WAIT_TIME_MS = 2000;
 
+    // Time after which a channel kept open for a session is closed if no request used it.
+    @VisibleForTesting
+    static final long IDLE_TIMEOUT_MS = 30000;
+
     private static void logv(String msg) {
         Rlog.v(LOG_TAG, msg);
     }
@@ -67,10 +80,33 @@ public class ApduSender {
     private final CloseLogicalChannelInvocation mCloseChannel;
     private final TransmitApduLogicalChannelInvocation mTransmitApdu;
 
-    // Lock for accessing mChannelOpened. We only allow to open a single logical channel at any
-    // time for an AID.
+    // Lock for accessing the channel state below. We only allow to open a single logical channel
+    // at any time for an AID, and a single request to use it at any time.
     private final Object mChannelLock = new Object();
-    private boolean mChannelOpened;
+    @GuardedBy("mChannelLock")
+    private boolean mChannelInUse;
+    @GuardedBy("mChannelLock")
+    private int mOpenedChannel = IccOpenLogicalChannelResponse.INVALID_CHANNEL;
+    @GuardedBy("mChannelLock")
+    private byte[] mOpenedChannelSelectResponse;
+    // Handler the idle timeout of a channel kept open is posted on.
+    @GuardedBy("mChannelLock")
+    private Handler mOpenedChannelHandler;
+    private final Runnable mIdleTimeoutRunnable = this::closeAnyOpenChannel;
+
+    /** Statistics and retry state of a request, passed along from command to command. */
+    private static final class RequestState {
+        final long startTimeMs = SystemClock.elapsedRealtime();
+        final boolean reusedChannel;
+        // Sends the request again on a new channel, or null if the request must not be retried.
+        @Nullable Runnable retry;
+        int apduCount;
+
+        RequestState(boolean reusedChannel, @Nullable Runnable retry) {
+            this.reusedChannel = reusedChannel;
+            this.retry = retry;
+        }
+    }
 
     /**
      * @param aid The AID that will be used to open a logical channel to.
@@ -99,8 +135,21 @@ public class ApduSender {
             RequestProvider requestProvider,
             ApduSenderResultCallback resultCallback,
             Handler handler) {
+        send(requestProvider, resultCallback, handler, true /* mayRetry */);
+    }
+
+    /**
+     * @param mayRetry Whether the request may be sent again if it fails on a reused channel.
+     */
+    private void send(
+            RequestProvider requestProvider,
+            ApduSenderResultCallback resultCallback,
+            Handler handler,
+            boolean mayRetry) {
+        int openedChannel;
+        byte[] selectResponse;
         synchronized (mChannelLock) {
-            if (mChannelOpened) {
+            if (mChannelInUse) {
                 if (!Looper.getMainLooper().equals(Looper.myLooper())) {
                     logd("Logical channel has already been opened. Wait.");
                     try {
@@ -108,7 +157,7 @@ public class ApduSender {
                     } catch (InterruptedException e) {
                         // nothing to do
                     }
-                    if (mChannelOpened) {
+                    if (mChannelInUse) {
                         AsyncResultHelper.throwException(
                                 new ApduException("The logical channel is still in use."),
                                 resultCallback, handler);
@@ -121,7 +170,24 @@ public class ApduSender {
                     return;
                 }
             }
-            mChannelOpened = true;
+            mChannelInUse = true;
+            if (mOpenedChannelHandler != null) {
+                mOpenedChannelHandler.removeCallbacks(mIdleTimeoutRunnable);
+            }
+            openedChannel = mOpenedChannel;
+            selectResponse = mOpenedChannelSelectResponse;
+        }
+        boolean reusedChannel = openedChannel != IccOpenLogicalChannelResponse.INVALID_CHANNEL;
+        RequestState request = new RequestState(reusedChannel, reusedChannel && mayRetry
+                ? () -> send(requestProvider, resultCallback, handler, false /* mayRetry */)
+                : null);
+        EuiccSession.get().noteChannelOpen(this);
+
+        if (reusedChannel) {
+            logd("Reuse logical channel: " + openedChannel);
+            sendRequest(openedChannel, selectResponse, request, requestProvider, resultCallback,
+                    handler);
+            return;
         }
 
         mOpenChannel.invoke(mAid, new AsyncResultCallback<IccOpenLogicalChannelResponse>() {
@@ -131,47 +197,77 @@ public class ApduSender {
                 int status = openChannelResponse.getStatus();
                 if (channel == IccOpenLogicalChannelResponse.INVALID_CHANNEL
                         || status != IccOpenLogicalChannelResponse.STATUS_NO_ERROR) {
-                    synchronized (mChannelLock) {
-                        mChannelOpened = false;
-                        mChannelLock.notify();
-                    }
+                    onChannelClosed();
                     resultCallback.onException(
                             new ApduException("Failed to open logical channel opened for AID: "
                                     + mAid + ", with status: " + status));
                     return;
                 }
-
-                RequestBuilder builder = new RequestBuilder(channel, mSupportExtendedApdu);
-                Throwable requestException = null;
-                try {
-                    requestProvider.buildRequest(openChannelResponse.getSelectResponse(), builder);
-                } catch (Throwable e) {
-                    requestException = e;
-                }
-                if (builder.getCommands().isEmpty() || requestException != null) {
-                    // Just close the channel if we don't have commands to send or an error
-                    // was encountered.
-                    closeAndReturn(channel, null /* response */, requestException, resultCallback,
-                            handler);
-                    return;
+                synchronized (mChannelLock) {
+                    mOpenedChannel = channel;
+                    mOpenedChannelSelectResponse = openChannelResponse.getSelectResponse();
                 }
-                sendCommand(builder.getCommands(), 0 /* index */, resultCallback, handler);
+                sendRequest(channel, openChannelResponse.getSelectResponse(), request,
+                        requestProvider, resultCallback, handler);
             }
         }, handler);
     }
 
+    /**
+     * Builds the request and sends its commands on an opened channel.
+     *
+     * @param selectResponse The response of selecting the AID when the channel was opened.
+     */
+    private void sendRequest(
+            int channel,
+            byte[] selectResponse,
+            RequestState request,
+            RequestProvider requestProvider,
+            ApduSenderResultCallback resultCallback,
+            Handler handler) {
+        RequestBuilder builder = new RequestBuilder(channel, mSupportExtendedApdu);
+        Throwable requestException = null;
+        try {
+            requestProvider.buildRequest(selectResponse, builder);
+        } catch (Throwable e) {
+            requestException = e;
+        }
+        if (builder.getCommands().isEmpty() || requestException != null) {
+            // Just close the channel if we don't have commands to send or an error
+            // was encountered.
+            request.retry = null;
+            closeAndReturn(channel, null /* response */, requestException, request,
+                    resultCallback, handler);
+            return;
+        }
+        sendCommand(builder.getCommands(), 0 /* index */, request, resultCallback, handler);
+    }
+
     /**
      * Closes any open channel.
      *
      * <p>Used by EuiccSession#endSession.
      */
     public void closeAnyOpenChannel() {
-        // TODO: implement this. Different from existing closeExistingChannelIfExists()
-        // which is only used in constructor and don't worry about multi-thread racing.
-        // 1. Acquire channel lock
-        // 2. Check sharedpref for existing open channel
-        // 3. Close any open channel
-        // 4. Release channel lock
+        int channel;
+        Handler handler;
+        synchronized (mChannelLock) {
+            // A channel in use is closed at the end of its request if the session has ended.
+            if (mChannelInUse || mOpenedChannel == IccOpenLogicalChannelResponse.INVALID_CHANNEL) {
+                return;
+            }
+            channel = mOpenedChannel;
+            handler = mOpenedChannelHandler;
+            handler.removeCallbacks(mIdleTimeoutRunnable);
+            mChannelInUse = true;
+        }
+        logd("Close idle logical channel: " + channel);
+        mCloseChannel.invoke(channel, new AsyncResultCallback<Boolean>() {
+            @Override
+            public void onResult(Boolean aBoolean) {
+                onChannelClosed();
+            }
+        }, handler);
     }
 
     /**
@@ -184,15 +280,21 @@ public class ApduSender {
     private void sendCommand(
             List<ApduCommand> commands,
             int index,
+            RequestState request,
             ApduSenderResultCallback resultCallback,
             Handler handler) {
         ApduCommand command = commands.get(index);
+        if (index > 0) {
+            // The previous commands had effect, so the request cannot be sent again from start.
+            request.retry = null;
+        }
+        request.apduCount++;
         mTransmitApdu.invoke(command, new AsyncResultCallback<IccIoResult>() {
             @Override
             public void onResult(IccIoResult response) {
                 // A long response may need to be fetched by multiple following-up APDU
                 // commands. Makes sure that we get the complete response.
-                getCompleteResponse(command.channel, response, null /* responseBuilder */,
+                getCompleteResponse(command.channel, response, null /* responseBuilder */, request,
                         new AsyncResultCallback<IccIoResult>() {
                             @Override
                             public void onResult(IccIoResult fullResponse) {
@@ -200,7 +302,8 @@ public class ApduSender {
                                 int status = (fullResponse.sw1 << 8) | fullResponse.sw2;
                                 if (status != STATUS_NO_ERROR && fullResponse.sw1 != SW1_NO_ERROR) {
                                     closeAndReturn(command.channel, null /* response */,
-                                            new ApduException(status), resultCallback, handler);
+                                            new ApduException(status), request, resultCallback,
+                                            handler);
                                     return;
                                 }
 
@@ -210,11 +313,13 @@ public class ApduSender {
                                                 fullResponse);
                                 if (continueSendCommand) {
                                     // Sends the next command
-                                    sendCommand(commands, index + 1, resultCallback, handler);
+                                    sendCommand(commands, index + 1, request, resultCallback,
+                                            handler);
                                 } else {
                                     // Returns the result of the last command
                                     closeAndReturn(command.channel, fullResponse.payload,
-                                            null /* exception */, resultCallback, handler);
+                                            null /* exception */, request, resultCallback,
+                                            handler);
                                 }
                             }
                         }, handler);
@@ -234,6 +339,7 @@ public class ApduSender {
             int channel,
             IccIoResult lastResponse,
             @Nullable ByteArrayOutputStream responseBuilder,
+            RequestState request,
             AsyncResultCallback<IccIoResult> resultCallback,
             Handler handler) {
         ByteArrayOutputStream resultBuilder =
@@ -251,41 +357,63 @@ public class ApduSender {
             return;
         }
 
+        request.apduCount++;
         mTransmitApdu.invoke(
                 new ApduCommand(channel, 0 /* cls  */, INS_GET_MORE_RESPONSE, 0 /* p1 */,
                         0 /* p2 */, lastResponse.sw2, "" /* cmdHex */),
                 new AsyncResultCallback<IccIoResult>() {
                     @Override
                     public void onResult(IccIoResult response) {
-                        getCompleteResponse(
-                                channel, response, resultBuilder, resultCallback, handler);
+                        getCompleteResponse(channel, response, resultBuilder, request,
+                                resultCallback, handler);
                     }
                 }, handler);
     }
 
     /**
-     * Closes the opened logical channel.
+     * Closes the opened logical channel, or keeps it open for the next request if a session is
+     * ongoing and no error happened.
      *
      * @param response If {@code exception} is null, this will be returned to {@code resultCallback}
      *     after the channel has been closed.
      * @param exception If not null, this will be returned to {@code resultCallback} after the
-     *     channel has been closed.
+     *     channel has been closed, unless the request is sent again on a new channel.
      */
     private void closeAndReturn(
             int channel,
             @Nullable byte[] response,
             @Nullable Throwable exception,
+            RequestState request,
             ApduSenderResultCallback resultCallback,
             Handler handler) {
+        logd("Request done: " + request.apduCount + " APDUs in "
+                + (SystemClock.elapsedRealtime() - request.startTimeMs) + " ms, channel "
+                + (request.reusedChannel ? "reused" : "opened") + ", exception=" + exception);
+        if (exception == null && EuiccSession.get().hasSession()) {
+            synchronized (mChannelLock) {
+                mChannelInUse = false;
+                mOpenedChannelHandler = handler;
+                handler.postDelayed(mIdleTimeoutRunnable, IDLE_TIMEOUT_MS);
+                mChannelLock.notify();
+            }
+            // If the session ended while the channel was in use, closeAnyOpenChannel() left the
+            // channel to this request.
+            if (!EuiccSession.get().hasSession()) {
+                closeAnyOpenChannel();
+            }
+            resultCallback.onResult(response);
+            return;
+        }
+
         mCloseChannel.invoke(channel, new AsyncResultCallback<Boolean>() {
             @Override
             public void onResult(Boolean aBoolean) {
-                synchronized (mChannelLock) {
-                    mChannelOpened = false;
-                    mChannelLock.notify();
-                }
+                onChannelClosed();
 
-                if (exception == null) {
+                if (exception != null && request.retry != null) {
+                    logd("Reused logical channel failed, retry on a new channel.");
+                    request.retry.run();
+                } else if (exception == null) {
                     resultCallback.onResult(response);
                 } else {
                     resultCallback.onException(exception);
@@ -293,4 +421,14 @@ public class ApduSender {
             }
         }, handler);
     }
+
+    private void onChannelClosed() {
+        synchronized (mChannelLock) {
+            mOpenedChannel = IccOpenLogicalChannelResponse.INVALID_CHANNEL;
+            mOpenedChannelSelectResponse = null;
+            mOpenedChannelHandler = null;
+            mChannelInUse = false;
+            mChannelLock.notify();
+        }
+    }
 }
@@ -133,6 +133,46 @@ public class CarrierDisplayNameResolverTest extends TelephonyTest {
         assertThat(data.getSpn()).isEqualTo(SPN_FROM_USIM);
     }
 
+    @Test
+    public void testEfRecordsOrNetworkChanged_shouldResolveAgain() {
+        CarrierDisplayNameData data = mCdnr.getCarrierDisplayNameData();
+        assertThat(data.getSpn()).isEqualTo(SPN_FROM_USIM);
+
+        // Updated ef records are used
+        mConfig.putString(CarrierConfigManager.KEY_CARRIER_NAME_STRING, SPN_FROM_CC);
+        mCdnr.updateEfFromCarrierConfig(mConfig);
+        data = mCdnr.getCarrierDisplayNameData();
+        assertThat(data.getSpn()).isEqualTo(SPN_FROM_CC);
+        assertThat(data.shouldShowSpn()).isTrue();
+
+        // Registered network change is taken into account
+        mSS.setOperatorName("long", "short", NON_HOME_PLMN_NUMERIC);
+        mSS.setRoaming(ROAMING);
+        data = mCdnr.getCarrierDisplayNameData();
+        assertThat(data.getPlmn()).isEqualTo("long");
+    }
+
+    @Test
+    public void testSimRecordsChangedWithoutUpdate_shouldResolveAgain() {
+        SIMRecords usim = Mockito.mock(SIMRecords.class);
+        doReturn(SPN_FROM_USIM).when(usim).getServiceProviderName();
+        doReturn(PNN_HOME_NAME_FROM_USIM).when(usim).getPnnHomeName();
+        doReturn(SPDI_FROM_USIM).when(usim).getServiceProviderDisplayInformation();
+        doReturn(SPN_DISPLAY_CONDITION_FROM_USIM).when(usim).getCarrierNameDisplayCondition();
+        mCdnr.updateEfFromUsim(usim);
+        mSS.setOperatorName("long", "short", SPDI_FROM_USIM[0]);
+        mSS.setRoaming(ROAMING);
+        CarrierDisplayNameData data = mCdnr.getCarrierDisplayNameData();
+        assertThat(data.getPlmn()).isEqualTo(PNN_HOME_NAME_FROM_USIM);
+
+        // The records are reset, e.g. on a SIM refresh, with no ef update.
+        doReturn(null).when(usim).getServiceProviderDisplayInformation();
+        doReturn("").when(usim).getServiceProviderName();
+        data = mCdnr.getCarrierDisplayNameData();
+        assertThat(data.getSpn()).isEmpty();
+        assertThat(data.getPlmn()).isEqualTo("long");
+    }
+
     @Test
     public void testShouldShowSPN_nonRoaming_showSPN() {
         mSS.setRoaming(NON_ROAMING);
@@ -50,6 +50,7 @@ import android.os.Looper;
 import android.os.Message;
 import android.testing.AndroidTestingRunner;
 import android.testing.TestableLooper;
+import android.util.SparseLongArray;
 
 import androidx.test.filters.MediumTest;
 
@@ -63,6 +64,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
@@ -149,10 +152,22 @@ public class DeviceStateMonitorTest extends TelephonyTest {
     UiModeManager mUiModeManager;
 
     private DeviceStateMonitor mDSM;
+    private long mElapsedRealtimeMs;
     private TestSatelliteController mSatelliteControllerUT;
 
     @Mock private FeatureFlags mFeatureFlags;
 
+    private class TestDeviceStateMonitor extends DeviceStateMonitor {
+        TestDeviceStateMonitor(Phone phone, FeatureFlags featureFlags) {
+            super(phone, featureFlags);
+        }
+
+        @Override
+        protected long getElapsedRealtime() {
+            return mElapsedRealtimeMs;
+        }
+    }
+
     // Given a stateType, return the event type that can change the state
     private int state2Event(@StateType int stateType) {
         // As long as we keep the same value, we can directly return the stateType
@@ -184,7 +199,7 @@ public class DeviceStateMonitorTest extends TelephonyTest {
         mContextFixture.setSystemService(Context.UI_MODE_SERVICE, mUiModeManager);
         // We don't even need a mock executor, we just need to not throw.
         doReturn(null).when(mContextFixture.getTestDouble()).getMainExecutor();
-        mDSM = new DeviceStateMonitor(mPhone, mFeatureFlags);
+        mDSM = new TestDeviceStateMonitor(mPhone, mFeatureFlags);
 
         // Initialize with ALL states off
         updateAllStatesToOff();
@@ -252,6 +267,39 @@ public class DeviceStateMonitorTest extends TelephonyTest {
                 nullable(Message.class));
     }
 
+    @Test
+    public void testDumpUnsolResponseFilterAccounting() {
+        // all states have been off since time 0
+        mElapsedRealtimeMs = 1000;
+        updateState(STATE_TYPE_SCREEN, STATE_ON);
+        mElapsedRealtimeMs = 3000;
+        updateState(STATE_TYPE_SCREEN, STATE_OFF);
+        mElapsedRealtimeMs = 3500;
+        updateState(STATE_TYPE_SCREEN, STATE_ON);
+        // changes nothing with the screen on
+        mElapsedRealtimeMs = 4000;
+        updateState(STATE_TYPE_POWER_SAVE_MODE, STATE_ON);
+        mElapsedRealtimeMs = 4200;
+
+        SparseLongArray durations = mDSM.getUnsolResponseFilterDurationMs();
+        assertEquals(1500, durations.get(INDICATION_FILTERS_MINIMUM));
+        assertEquals(2700, durations.get(INDICATION_FILTERS_WHEN_SCREEN_ON));
+
+        StringWriter sw = new StringWriter();
+        mDSM.dump(null, new PrintWriter(sw), null);
+        String dump = sw.toString();
+        assertTrue(dump.contains("Unsolicited response filter updates sent="));
+        assertTrue(dump.contains(INDICATION_FILTERS_MINIMUM + ": 1500"));
+        assertTrue(dump.contains(INDICATION_FILTERS_WHEN_SCREEN_ON + ": 2700"));
+
+        // reading the durations does not add to the totals
+        mElapsedRealtimeMs = 5200;
+        updateState(STATE_TYPE_SCREEN, STATE_OFF);
+        durations = mDSM.getUnsolResponseFilterDurationMs();
+        assertEquals(1500, durations.get(INDICATION_FILTERS_MINIMUM));
+        assertEquals(3700, durations.get(INDICATION_FILTERS_WHEN_SCREEN_ON));
+    }
+
     @Test
     public void testScreenOnOff() {
         // screen was off by default, turn it on now
@@ -78,6 +78,7 @@ import android.telephony.CellIdentityGsm;
 import android.telephony.CellularIdentifierDisclosure;
 import android.telephony.LinkCapacityEstimate;
 import android.telephony.NetworkRegistrationInfo;
+import android.telephony.PhysicalChannelConfig;
 import android.telephony.RadioAccessFamily;
 import android.telephony.SecurityAlgorithmUpdate;
 import android.telephony.ServiceState;
@@ -1734,6 +1735,32 @@ public class GsmCdmaPhoneTest extends TelephonyTest {
         assertEquals(LinkCapacityEstimate.LCE_TYPE_COMBINED, lce3.getType());
     }
 
+    @Test
+    @SmallTest
+    public void testNotifyPhysicalChannelConfig_unchangedListNotRenotified() {
+        List<PhysicalChannelConfig> configs = new ArrayList<>();
+        configs.add(new PhysicalChannelConfig.Builder()
+                .setCellConnectionStatus(PhysicalChannelConfig.CONNECTION_PRIMARY_SERVING)
+                .setCellBandwidthDownlinkKhz(20000)
+                .setNetworkType(TelephonyManager.NETWORK_TYPE_LTE)
+                .setPhysicalCellId(1)
+                .build());
+
+        mPhoneUT.notifyPhysicalChannelConfig(configs);
+        mPhoneUT.notifyPhysicalChannelConfig(new ArrayList<>(configs));
+        verify(mNotifier, times(1)).notifyPhysicalChannelConfig(eq(mPhoneUT), eq(configs));
+
+        List<PhysicalChannelConfig> caConfigs = new ArrayList<>(configs);
+        caConfigs.add(new PhysicalChannelConfig.Builder()
+                .setCellConnectionStatus(PhysicalChannelConfig.CONNECTION_SECONDARY_SERVING)
+                .setCellBandwidthDownlinkKhz(10000)
+                .setNetworkType(TelephonyManager.NETWORK_TYPE_LTE)
+                .setPhysicalCellId(2)
+                .build());
+        mPhoneUT.notifyPhysicalChannelConfig(caConfigs);
+        verify(mNotifier, times(2)).notifyPhysicalChannelConfig(eq(mPhoneUT), any());
+    }
+
     @Test
     @SmallTest
     public void testLoadAllowedNetworksFromSubscriptionDatabase_loadTheNullValue_isLoadedTrue() {
@@ -20,6 +20,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.reset;
@@ -92,10 +95,10 @@ public class LocaleTrackerTest extends TelephonyTest {
                     CellInfo.UNAVAILABLE, CellInfo.UNAVAILABLE,
                     US_MCC, FAKE_MNC, null, null, Collections.emptyList()));
         doAnswer(invocation -> {
-            Message m = invocation.getArgument(1);
+            Message m = invocation.getArgument(2);
             AsyncResult.forMessage(m, Arrays.asList(mCellInfo), null);
             m.sendToTarget();
-            return null; }).when(mPhone).requestCellInfoUpdate(any(), any());
+            return null; }).when(mPhone).requestCellInfoUpdate(any(), anyLong(), any());
 
         doReturn(true).when(mPhone).isRadioOn();
         processAllMessages();
@@ -243,10 +246,10 @@ public class LocaleTrackerTest extends TelephonyTest {
 
         // Override the setUp() function and return an empty list for CellInfo
         doAnswer(invocation -> {
-            Message m = invocation.getArgument(1);
+            Message m = invocation.getArgument(2);
             AsyncResult.forMessage(m, Collections.emptyList(), null);
             m.sendToTarget();
-            return null; }).when(mPhone).requestCellInfoUpdate(any(), any());
+            return null; }).when(mPhone).requestCellInfoUpdate(any(), anyLong(), any());
 
         doReturn(true).when(mPhone).isRadioOn();
         sendServiceState(ServiceState.STATE_OUT_OF_SERVICE);
@@ -282,15 +285,18 @@ public class LocaleTrackerTest extends TelephonyTest {
 
         // Override the setUp() function and return an empty list for CellInfo
         doAnswer(invocation -> {
-            Message m = invocation.getArgument(1);
+            Message m = invocation.getArgument(2);
             AsyncResult.forMessage(m, Collections.emptyList(), null);
             m.sendToTarget();
-            return null; }).when(mPhone).requestCellInfoUpdate(any(), any());
+            return null; }).when(mPhone).requestCellInfoUpdate(any(), anyLong(), any());
 
         sendServiceState(ServiceState.STATE_OUT_OF_SERVICE);
         processAllMessages();
         assertTrue(mLocaleTracker.isTracking());
         assertEquals(COUNTRY_CODE_UNAVAILABLE, mLocaleTracker.getCurrentCountry());
+        // Recently cached cell info is accepted instead of querying the modem
+        verify(mPhone, atLeastOnce()).requestCellInfoUpdate(any(),
+                eq(LocaleTracker.CELL_INFO_MAX_AGE_MS), any());
     }
 
 
@@ -17,6 +17,9 @@
 package com.android.internal.telephony;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import android.content.Context;
 
@@ -60,6 +63,42 @@ public class MccTableTest {
         assertEquals("gu", MccTable.geoCountryCodeForMccMnc(new MccMnc("310", "370")));
     }
 
+    @SmallTest
+    @Test
+    public void testGeoCountryCodeForMccMnc_repeatedLookupIsStable() throws Exception {
+        String[] expected = new String[MccTable.MAX_CACHED_MCC_MNC_COUNT + 1];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = MccTable.geoCountryCodeForMccMnc(new MccMnc("310", "" + (i + 100)));
+        }
+        // Looking the same networks up again, past the cache bound, gives the same answers.
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("gu", MccTable.geoCountryCodeForMccMnc(new MccMnc("310", "370")));
+            assertEquals(expected[i],
+                    MccTable.geoCountryCodeForMccMnc(new MccMnc("310", "" + (i + 100))));
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testEntryForMcc() throws Exception {
+        assertSame(MccTable.entryForMcc(310), MccTable.entryForMcc(310));
+        assertEquals("us", MccTable.entryForMcc(310).mIso);
+        assertNull(MccTable.entryForMcc(-1));
+        assertNull(MccTable.entryForMcc(1000));
+        assertNull(MccTable.entryForMcc(300));
+    }
+
+    @SmallTest
+    @Test
+    public void testPackMccMnc() throws Exception {
+        assertNotEquals(MccTable.packMccMnc("310", "01"), MccTable.packMccMnc("310", "001"));
+        assertNotEquals(MccTable.packMccMnc("310", "370"), MccTable.packMccMnc("311", "370"));
+        assertEquals(-1, MccTable.packMccMnc("310", null));
+        assertEquals(-1, MccTable.packMccMnc("31", "370"));
+        assertEquals(-1, MccTable.packMccMnc("310", "3a0"));
+        assertEquals(-1, MccTable.packMccMnc("310", "3701"));
+    }
+
     @SmallTest
     @Test
     public void testLang() throws Exception {
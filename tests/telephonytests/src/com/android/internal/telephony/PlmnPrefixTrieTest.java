@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+
+public class PlmnPrefixTrieTest {
+
+    @SmallTest
+    @Test
+    public void testMatchesPrefixOf() {
+        PlmnPrefixTrie trie = new PlmnPrefixTrie(
+                new String[] {"302", "21407", "", null, "310260", "31"});
+
+        assertFalse(trie.isEmpty());
+        assertTrue(trie.matchesPrefixOf("302720"));
+        assertTrue(trie.matchesPrefixOf("21407"));
+        assertTrue(trie.matchesPrefixOf("310410"));
+        assertFalse(trie.matchesPrefixOf("21406"));
+        assertFalse(trie.matchesPrefixOf("2140"));
+        assertFalse(trie.matchesPrefixOf("30"));
+        assertFalse(trie.matchesPrefixOf(""));
+        assertFalse(trie.matchesPrefixOf(null));
+    }
+
+    @SmallTest
+    @Test
+    public void testNonDecimalPrefix() {
+        PlmnPrefixTrie trie = new PlmnPrefixTrie(new String[] {"001-", "123"});
+
+        assertTrue(trie.matchesPrefixOf("001-01"));
+        assertFalse(trie.matchesPrefixOf("00101"));
+        assertTrue(trie.matchesPrefixOf("123456"));
+    }
+
+    @SmallTest
+    @Test
+    public void testEmpty() {
+        assertTrue(new PlmnPrefixTrie(null).isEmpty());
+        assertTrue(new PlmnPrefixTrie(new String[] {"", null}).isEmpty());
+        assertFalse(new PlmnPrefixTrie(new String[0]).matchesPrefixOf("310260"));
+    }
+
+    @SmallTest
+    @Test
+    public void testManyPrefixes() {
+        String[] prefixes = new String[200];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = String.valueOf(310000 + i * 3);
+        }
+        PlmnPrefixTrie trie = new PlmnPrefixTrie(prefixes);
+
+        for (int i = 0; i < prefixes.length * 3; i++) {
+            String plmn = String.valueOf(310000 + i);
+            if (i % 3 == 0) {
+                assertTrue(plmn, trie.matchesPrefixOf(plmn));
+            } else {
+                assertFalse(plmn, trie.matchesPrefixOf(plmn));
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.telephony.CellIdentityLte;
+import android.telephony.NetworkRegistrationInfo;
+import android.telephony.ServiceState;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+
+public class RegistrationHistoryLogTest {
+    private static final int CAPACITY = 4;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("registration_history", ".bin");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @SmallTest
+    @Test
+    public void testRecordsSurviveReopen() throws Exception {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(mFile, CAPACITY, true);
+        ServiceState ss = new ServiceState();
+        ss.setStateOutOfService();
+        log.logServiceState(ss);
+        CellIdentityLte cellIdentity = new CellIdentityLte(123, 7, 1, 5000, new int[] {},
+                10000, "310", "260", "", "", Collections.emptyList(), null);
+        log.logRegistrationFailure(new RegistrationFailedEvent(cellIdentity, "310260",
+                NetworkRegistrationInfo.DOMAIN_PS, 11, 0));
+        log.logCellChange(cellIdentity);
+
+        RegistrationHistoryLog reopened = new RegistrationHistoryLog(mFile, CAPACITY, true);
+        assertEquals(3, reopened.getSequence());
+
+        String dump = decode(CAPACITY);
+        assertTrue(dump, dump.contains("SERVICE_STATE voice=OUT_OF_SERVICE"));
+        assertTrue(dump, dump.contains("REGISTRATION_FAILURE domain=2 cause=11"));
+        assertTrue(dump, dump.contains("plmn=310260 cellId=123"));
+        assertTrue(dump, dump.contains("CELL_CHANGE"));
+        assertTrue(dump, dump.contains("channel=5000 area=1 plmn=310260 cellId=123"));
+    }
+
+    @SmallTest
+    @Test
+    public void testPiiRedacted() throws Exception {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(mFile, CAPACITY, false);
+        CellIdentityLte cellIdentity = new CellIdentityLte(123, 7, 1, 5000, new int[] {},
+                10000, "310", "260", "", "", Collections.emptyList(), null);
+        log.logCellChange(cellIdentity);
+        log.logCellChange(cellIdentity);
+
+        // Neither the file nor its dump has the PLMN or cell id in the clear.
+        String dump = decode(CAPACITY, true);
+        assertFalse(dump, dump.contains("310260"));
+        assertFalse(dump, dump.contains("cellId=123"));
+        assertTrue(dump, dump.contains("channel=5000 area=1 plmn=[#"));
+        // The same cell is redacted the same way, so cell changes stay visible.
+        String[] records = dump.trim().split("\n");
+        assertEquals(2, records.length);
+        assertEquals(records[0].substring(records[0].indexOf("CELL_CHANGE")),
+                records[1].substring(records[1].indexOf("CELL_CHANGE")));
+
+        // Records stored in the clear are redacted when printed without PII logging.
+        new RegistrationHistoryLog(mFile, CAPACITY, true).logCellChange(cellIdentity);
+        dump = decode(1, false);
+        assertFalse(dump, dump.contains("310260"));
+        assertFalse(dump, dump.contains("cellId=123"));
+    }
+
+    @SmallTest
+    @Test
+    public void testDistinctValuesRedactedDistinctly() throws Exception {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(mFile, CAPACITY, false);
+        log.logCellChange(new CellIdentityLte(123, 7, 1, 5000, new int[] {},
+                10000, "310", "260", "", "", Collections.emptyList(), null));
+        log.logCellChange(new CellIdentityLte(124, 7, 1, 5000, new int[] {},
+                10000, "310", "410", "", "", Collections.emptyList(), null));
+
+        String[] records = decode(CAPACITY, false).trim().split("\n");
+        assertEquals(2, records.length);
+        assertNotEquals(getField(records[0], "plmn="), getField(records[1], "plmn="));
+        assertNotEquals(getField(records[0], "cellId="), getField(records[1], "cellId="));
+    }
+
+    @SmallTest
+    @Test
+    public void testTimestampInMillis() throws Exception {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(mFile, CAPACITY, true);
+        long before = System.currentTimeMillis();
+        log.logCellChange(null);
+        long after = System.currentTimeMillis();
+
+        long time = ByteBuffer.wrap(Files.readAllBytes(mFile.toPath())).getLong(
+                RegistrationHistoryLog.HEADER_SIZE + RegistrationHistoryLog.RECORD_TIME_OFFSET);
+        assertTrue(time >= before && time <= after);
+    }
+
+    @SmallTest
+    @Test
+    public void testFileOpenedOnFirstUse() throws Exception {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(mFile, CAPACITY, true);
+        assertFalse(mFile.exists());
+
+        log.logCellChange(null);
+        assertTrue(mFile.exists());
+        assertEquals(1, log.getSequence());
+    }
+
+    @SmallTest
+    @Test
+    public void testRingWrapsAround() throws Exception {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(mFile, CAPACITY, true);
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            log.logRegistrationFailure(new RegistrationFailedEvent(
+                    new CellIdentityLte(), "", NetworkRegistrationInfo.DOMAIN_CS, 100 + i, 0));
+        }
+        assertEquals(CAPACITY + 2, log.getSequence());
+        assertEquals(RegistrationHistoryLog.RECORD_SIZE * CAPACITY
+                + RegistrationHistoryLog.HEADER_SIZE, mFile.length());
+
+        String dump = decode(CAPACITY);
+        assertFalse(dump, dump.contains("cause=100 "));
+        assertFalse(dump, dump.contains("cause=101 "));
+        for (int i = 2; i < CAPACITY + 2; i++) {
+            assertTrue(dump, dump.contains("cause=" + (100 + i) + " "));
+        }
+        // Oldest first.
+        assertTrue(dump.indexOf("cause=102 ") < dump.indexOf("cause=105 "));
+
+        String lastTwo = decode(2);
+        assertFalse(lastTwo, lastTwo.contains("cause=103 "));
+        assertTrue(lastTwo, lastTwo.contains("cause=104 "));
+    }
+
+    @SmallTest
+    @Test
+    public void testCapacityChangeResetsLog() throws Exception {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(mFile, CAPACITY, true);
+        log.logCellChange(null);
+        assertEquals(1, log.getSequence());
+
+        RegistrationHistoryLog resized = new RegistrationHistoryLog(mFile, CAPACITY * 2, true);
+        assertEquals(0, resized.getSequence());
+    }
+
+    @SmallTest
+    @Test
+    public void testUnavailableFileDropsRecords() {
+        RegistrationHistoryLog log = new RegistrationHistoryLog(null, CAPACITY, true);
+        log.logCellChange(null);
+        assertEquals(0, log.getSequence());
+
+        StringWriter sw = new StringWriter();
+        log.dump(new PrintWriter(sw));
+        assertTrue(sw.toString().contains("unavailable"));
+    }
+
+    private static String getField(String record, String name) {
+        int start = record.indexOf(name);
+        int end = record.indexOf(' ', start);
+        return end < 0 ? record.substring(start) : record.substring(start, end);
+    }
+
+    private String decode(int maxRecords) throws Exception {
+        return decode(maxRecords, true);
+    }
+
+    private String decode(int maxRecords, boolean logPii) throws Exception {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        RegistrationHistoryLog.decode(ByteBuffer.wrap(Files.readAllBytes(mFile.toPath())),
+                maxRecords, logPii, pw);
+        pw.flush();
+        return sw.toString();
+    }
+}
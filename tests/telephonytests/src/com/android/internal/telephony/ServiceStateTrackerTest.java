@@ -754,6 +754,137 @@ public class ServiceStateTrackerTest extends TelephonyTest {
                 mSimulatedCommands.getGetNetworkSelectionModeCallCount());
     }
 
+    @Test
+    @MediumTest
+    public void testNetworkStateChangedStormCoalescesPolls() {
+        sst.setRadioPower(true);
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        final int getOperatorCallCount = mSimulatedCommands.getGetOperatorCallCount();
+        final int getDataRegistrationStateCallCount =
+                mSimulatedCommands.getGetDataRegistrationStateCallCount();
+
+        // Queue a burst of indications before the first poll round gets any response
+        sst.post(() -> {
+            for (int i = 0; i < 5; i++) {
+                sst.sendMessage(sst.obtainMessage(
+                        ServiceStateTracker.EVENT_NETWORK_STATE_CHANGED, null));
+            }
+        });
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+
+        // One round for the first indication and one more for the rest of the burst
+        assertEquals(getOperatorCallCount + 2, mSimulatedCommands.getGetOperatorCallCount());
+        assertEquals(getDataRegistrationStateCallCount + 2,
+                mSimulatedCommands.getGetDataRegistrationStateCallCount());
+        assertEquals(0, sst.mPollingContext[0]);
+    }
+
+    @Test
+    @MediumTest
+    public void testPollStateNotDeferredByLostResponse() {
+        sst.setRadioPower(true);
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        final int getOperatorCallCount = mSimulatedCommands.getGetOperatorCallCount();
+
+        // A response of the last round never arrived
+        sst.post(() -> {
+            sst.mPollingContext = new int[] {1};
+            sst.setPollRoundStartTimeMs(sst.getPollRoundStartTimeMs()
+                    - ServiceStateTracker.POLL_ROUND_TIMEOUT_MS);
+        });
+        sst.sendMessage(sst.obtainMessage(ServiceStateTracker.EVENT_NETWORK_STATE_CHANGED, null));
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+
+        // The poll is not deferred to the lost round
+        assertEquals(getOperatorCallCount + 1, mSimulatedCommands.getGetOperatorCallCount());
+        assertEquals(0, sst.mPollingContext[0]);
+    }
+
+    @Test
+    @MediumTest
+    public void testPendingPollReissuedOnPollRoundTimeout() {
+        sst.setRadioPower(true);
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        final int getOperatorCallCount = mSimulatedCommands.getGetOperatorCallCount();
+
+        // A response of the last round never arrives, and a poll is requested meanwhile
+        sst.post(() -> sst.mPollingContext = new int[] {1});
+        sst.sendMessage(sst.obtainMessage(ServiceStateTracker.EVENT_NETWORK_STATE_CHANGED, null));
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        assertEquals(getOperatorCallCount, mSimulatedCommands.getGetOperatorCallCount());
+
+        // The pending poll is issued when the round times out
+        sst.sendMessage(sst.obtainMessage(ServiceStateTracker.EVENT_POLL_ROUND_TIMEOUT));
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        assertEquals(getOperatorCallCount + 1, mSimulatedCommands.getGetOperatorCallCount());
+        assertEquals(0, sst.mPollingContext[0]);
+    }
+
+    @Test
+    @MediumTest
+    public void testPollRoundAbandonedOnTimeout() {
+        sst.setRadioPower(true);
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        final int getOperatorCallCount = mSimulatedCommands.getGetOperatorCallCount();
+
+        // A response of the last round never arrives and no poll is pending
+        sst.post(() -> sst.mPollingContext = new int[] {1});
+        sst.sendMessage(sst.obtainMessage(ServiceStateTracker.EVENT_POLL_ROUND_TIMEOUT));
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        assertEquals(getOperatorCallCount, mSimulatedCommands.getGetOperatorCallCount());
+        assertEquals(0, sst.mPollingContext[0]);
+
+        // The next poll is not deferred to the abandoned round
+        sst.sendMessage(sst.obtainMessage(ServiceStateTracker.EVENT_NETWORK_STATE_CHANGED, null));
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        assertEquals(getOperatorCallCount + 1, mSimulatedCommands.getGetOperatorCallCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testFilterOperatorNameByPatternMemoized() {
+        mBundle.putString(CarrierConfigManager.KEY_OPERATOR_NAME_FILTER_PATTERN_STRING,
+                "^(.+)-LTE$");
+        sendCarrierConfigUpdate(PHONE_ID);
+        final int hitCount = sst.getFilteredOperatorNameHitCount();
+
+        assertEquals("Operator", sst.filterOperatorNameByPattern("Operator-LTE"));
+        assertEquals(hitCount, sst.getFilteredOperatorNameHitCount());
+
+        // The same name is served from the memoized result
+        assertEquals("Operator", sst.filterOperatorNameByPattern("Operator-LTE"));
+        assertEquals(hitCount + 1, sst.getFilteredOperatorNameHitCount());
+
+        // Names that do not match the pattern are memoized as well
+        assertEquals("Other", sst.filterOperatorNameByPattern("Other"));
+        assertEquals("Other", sst.filterOperatorNameByPattern("Other"));
+        assertEquals(hitCount + 2, sst.getFilteredOperatorNameHitCount());
+    }
+
+    @Test
+    @SmallTest
+    public void testFilterOperatorNameByPatternInvalidatedOnPatternChange() {
+        mBundle.putString(CarrierConfigManager.KEY_OPERATOR_NAME_FILTER_PATTERN_STRING,
+                "^(.+)-LTE$");
+        sendCarrierConfigUpdate(PHONE_ID);
+        assertEquals("Operator", sst.filterOperatorNameByPattern("Operator-LTE"));
+
+        // The same carrier config does not drop the memoized results
+        sendCarrierConfigUpdate(PHONE_ID);
+        int hitCount = sst.getFilteredOperatorNameHitCount();
+        assertEquals("Operator", sst.filterOperatorNameByPattern("Operator-LTE"));
+        assertEquals(hitCount + 1, sst.getFilteredOperatorNameHitCount());
+
+        // A new pattern filters the name again
+        mBundle.putString(CarrierConfigManager.KEY_OPERATOR_NAME_FILTER_PATTERN_STRING,
+                "^(.+)-L");
+        sendCarrierConfigUpdate(PHONE_ID);
+        hitCount = sst.getFilteredOperatorNameHitCount();
+        assertEquals("Operator", sst.filterOperatorNameByPattern("Operator-LTE"));
+        assertEquals(hitCount, sst.getFilteredOperatorNameHitCount());
+        assertEquals("Op", sst.filterOperatorNameByPattern("Op-Lx"));
+    }
+
     @FlakyTest
     @Ignore
     @Test
@@ -866,6 +997,38 @@ public class ServiceStateTrackerTest extends TelephonyTest {
         assertEquals(getCellInfoGsm(), cih.cellInfoResult.get(0));
     }
 
+    @Test
+    @MediumTest
+    public void testGetCellInfoServedFromCacheWithinMaxAge() throws InterruptedException {
+        ArrayList<CellInfo> list = new ArrayList();
+        list.add(getCellInfoGsm());
+        mSimulatedCommands.setCellInfoList(list);
+        sst.requestAllCellInfo(null, null);
+        waitForLastHandlerAction(mSSTTestHandler.getThreadHandler());
+        assertEquals(list, sst.getAllCellInfo());
+
+        // Remove the modem throttle so that only the max age decides whether to query the modem
+        sst.setCellInfoMinInterval(0);
+        mSimulatedCommands.setCellInfoList(new ArrayList<>());
+
+        CellInfoHandler cih = new CellInfoHandler(mSSTTestHandler.getLooper());
+        Message rsp = cih.obtainMessage(0x7357);
+        sst.requestAllCellInfo(null, 60_000L, rsp);
+        synchronized (rsp) {
+            if (cih.cellInfoResult == null) rsp.wait(5000);
+        }
+        assertEquals(list, cih.cellInfoResult);
+
+        // Without a max age the modem is queried again
+        cih.cellInfoResult = null;
+        rsp = cih.obtainMessage(0x7357);
+        sst.requestAllCellInfo(null, rsp);
+        synchronized (rsp) {
+            if (cih.cellInfoResult == null) rsp.wait(5000);
+        }
+        assertTrue(cih.cellInfoResult.isEmpty());
+    }
+
     @Test
     @MediumTest
     public void testGetCellInfoResponseTimeout() throws InterruptedException {
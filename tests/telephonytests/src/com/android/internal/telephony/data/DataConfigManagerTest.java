@@ -25,6 +25,7 @@ import android.net.NetworkCapabilities;
 import android.os.Looper;
 import android.os.PersistableBundle;
 import android.telephony.CarrierConfigManager;
+import android.telephony.NetworkRegistrationInfo;
 import android.telephony.SignalStrength;
 import android.telephony.TelephonyDisplayInfo;
 import android.telephony.TelephonyManager;
@@ -39,6 +40,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Set;
+
 @RunWith(AndroidTestingRunner.class)
 @TestableLooper.RunWithLooper
 public class DataConfigManagerTest extends TelephonyTest {
@@ -162,4 +165,45 @@ public class DataConfigManagerTest extends TelephonyTest {
                 NetworkCapabilities.NET_CAPABILITY_PRIORITIZE_BANDWIDTH,
                 NetworkCapabilities.NET_CAPABILITY_PRIORITIZE_LATENCY);
     }
+
+    @Test
+    public void testConfigUpdatePublishesNewSnapshot() {
+        mBundle.putStringArray(CarrierConfigManager.KEY_CARRIER_METERED_APN_TYPES_STRINGS,
+                new String[] {ApnSetting.TYPE_MMS_STRING});
+        mBundle.putIntArray(
+                CarrierConfigManager.Ims.KEY_IMS_PDN_ENABLED_IN_NO_VOPS_SUPPORT_INT_ARRAY,
+                new int[] {CarrierConfigManager.Ims.NETWORK_TYPE_HOME});
+        mDataConfigManagerUT.sendEmptyMessage(1/*EVENT_CARRIER_CONFIG_CHANGED*/);
+        processAllMessages();
+
+        Set<Integer> meteredCapabilities =
+                mDataConfigManagerUT.getMeteredNetworkCapabilities(false);
+        assertThat(mDataConfigManagerUT.isMeteredCapability(
+                NetworkCapabilities.NET_CAPABILITY_MMS, false)).isTrue();
+        assertThat(mDataConfigManagerUT.allowBringUpNetworkInNonVops(
+                NetworkRegistrationInfo.REGISTRATION_STATE_HOME)).isTrue();
+
+        mBundle.putStringArray(CarrierConfigManager.KEY_CARRIER_METERED_APN_TYPES_STRINGS,
+                new String[] {ApnSetting.TYPE_DEFAULT_STRING});
+        mBundle.putIntArray(
+                CarrierConfigManager.Ims.KEY_IMS_PDN_ENABLED_IN_NO_VOPS_SUPPORT_INT_ARRAY,
+                new int[] {CarrierConfigManager.Ims.NETWORK_TYPE_ROAMING});
+        mDataConfigManagerUT.sendEmptyMessage(1/*EVENT_CARRIER_CONFIG_CHANGED*/);
+        processAllMessages();
+
+        // The previously returned set is an immutable snapshot and must not change.
+        assertThat(meteredCapabilities).contains(NetworkCapabilities.NET_CAPABILITY_MMS);
+        assertThat(meteredCapabilities).doesNotContain(
+                NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        assertThat(mDataConfigManagerUT.isMeteredCapability(
+                NetworkCapabilities.NET_CAPABILITY_MMS, false)).isFalse();
+        assertThat(mDataConfigManagerUT.isAnyMeteredCapability(new int[] {
+                NetworkCapabilities.NET_CAPABILITY_MMS,
+                NetworkCapabilities.NET_CAPABILITY_INTERNET}, false)).isTrue();
+        // Values from the previous config must not be carried over.
+        assertThat(mDataConfigManagerUT.allowBringUpNetworkInNonVops(
+                NetworkRegistrationInfo.REGISTRATION_STATE_HOME)).isFalse();
+        assertThat(mDataConfigManagerUT.allowBringUpNetworkInNonVops(
+                NetworkRegistrationInfo.REGISTRATION_STATE_ROAMING)).isTrue();
+    }
 }
@@ -37,9 +37,11 @@ import android.telephony.AccessNetworkConstants;
 import android.telephony.AccessNetworkConstants.AccessNetworkType;
 import android.telephony.TelephonyManager;
 import android.telephony.data.ApnSetting;
+import android.telephony.data.DataCallResponse;
 import android.telephony.data.DataProfile;
 import android.telephony.data.DataService;
 import android.telephony.data.DataServiceCallback;
+import android.telephony.data.IDataServiceCallback;
 import android.testing.AndroidTestingRunner;
 import android.testing.TestableLooper;
 
@@ -52,8 +54,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(AndroidTestingRunner.class)
 @TestableLooper.RunWithLooper
@@ -283,4 +287,85 @@ public class DataServiceManagerTest extends TelephonyTest {
         mDataServiceManagerUT.requestNetworkValidation(123, message);
         waitAndVerifyResult(message, DataServiceCallback.RESULT_ERROR_UNSUPPORTED);
     }
+
+    private static DataCallResponse createDataCallResponse(int cid, int linkStatus) {
+        return new DataCallResponse.Builder()
+                .setId(cid)
+                .setLinkStatus(linkStatus)
+                .setInterfaceName("ifname" + cid)
+                .build();
+    }
+
+    @Test
+    public void testIsSameDataCallList() {
+        DataCallResponse response1 = createDataCallResponse(1,
+                DataCallResponse.LINK_STATUS_ACTIVE);
+        DataCallResponse response2 = createDataCallResponse(2,
+                DataCallResponse.LINK_STATUS_ACTIVE);
+
+        assertThat(DataServiceManager.isSameDataCallList(List.of(), List.of())).isTrue();
+        // Order does not matter.
+        assertThat(DataServiceManager.isSameDataCallList(List.of(response1, response2),
+                List.of(response2, response1))).isTrue();
+        // Data call added.
+        assertThat(DataServiceManager.isSameDataCallList(List.of(response1),
+                List.of(response1, response2))).isFalse();
+        // Data call removed.
+        assertThat(DataServiceManager.isSameDataCallList(List.of(response1, response2),
+                List.of(response1))).isFalse();
+        // Data call replaced by a different cid.
+        assertThat(DataServiceManager.isSameDataCallList(List.of(response1),
+                List.of(response2))).isFalse();
+        // Data call content changed.
+        assertThat(DataServiceManager.isSameDataCallList(List.of(response1, response2),
+                List.of(response1, createDataCallResponse(2,
+                        DataCallResponse.LINK_STATUS_DORMANT)))).isFalse();
+    }
+
+    @Test
+    public void testUnchangedDataCallListNotDispatched() throws Exception {
+        createDataServiceManager(true);
+        AtomicInteger dispatchedCount = new AtomicInteger();
+        Handler handler = new Handler(Looper.myLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                dispatchedCount.incrementAndGet();
+            }
+        };
+        mDataServiceManagerUT.registerForDataCallListChanged(handler, 1);
+
+        Class<?> wrapperClass = Class.forName(DataServiceManager.class.getName()
+                + "$DataServiceCallbackWrapper");
+        Constructor<?> constructor = wrapperClass.getDeclaredConstructor(
+                DataServiceManager.class, String.class);
+        constructor.setAccessible(true);
+        IDataServiceCallback callback = (IDataServiceCallback) constructor.newInstance(
+                mDataServiceManagerUT, "dataCallListChanged");
+        List<DataCallResponse> responses = List.of(createDataCallResponse(1,
+                DataCallResponse.LINK_STATUS_ACTIVE));
+
+        callback.onDataCallListChanged(responses);
+        processAllMessages();
+        assertThat(dispatchedCount.get()).isEqualTo(1);
+
+        // Identical list, no data network needs it.
+        callback.onDataCallListChanged(responses);
+        processAllMessages();
+        assertThat(dispatchedCount.get()).isEqualTo(1);
+
+        // A data network asked for the next list.
+        mDataServiceManagerUT.dispatchNextDataCallList();
+        callback.onDataCallListChanged(responses);
+        processAllMessages();
+        assertThat(dispatchedCount.get()).isEqualTo(2);
+
+        callback.onDataCallListChanged(responses);
+        processAllMessages();
+        assertThat(dispatchedCount.get()).isEqualTo(2);
+
+        // Changed list.
+        callback.onDataCallListChanged(List.of());
+        processAllMessages();
+        assertThat(dispatchedCount.get()).isEqualTo(3);
+    }
 }
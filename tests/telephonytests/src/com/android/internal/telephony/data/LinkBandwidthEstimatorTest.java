@@ -21,6 +21,7 @@ import static android.net.NetworkCapabilities.TRANSPORT_CELLULAR;
 import static com.android.internal.telephony.data.LinkBandwidthEstimator.BW_STATS_COUNT_THRESHOLD;
 import static com.android.internal.telephony.data.LinkBandwidthEstimator.LINK_RX;
 import static com.android.internal.telephony.data.LinkBandwidthEstimator.LINK_TX;
+import static com.android.internal.telephony.data.LinkBandwidthEstimator.MAX_PERSISTED_NETWORK_COUNT;
 import static com.android.internal.telephony.data.LinkBandwidthEstimator.MSG_ACTIVE_PHONE_CHANGED;
 import static com.android.internal.telephony.data.LinkBandwidthEstimator.MSG_DEFAULT_NETWORK_CHANGED;
 import static com.android.internal.telephony.data.LinkBandwidthEstimator.MSG_MODEM_ACTIVITY_RETURNED;
@@ -30,6 +31,7 @@ import static com.android.internal.telephony.data.LinkBandwidthEstimator.MSG_SIG
 import static com.android.internal.telephony.data.LinkBandwidthEstimator.UNKNOWN_TAC;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.atLeast;
@@ -41,9 +43,12 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
 import android.net.NetworkCapabilities;
 import android.os.Handler;
 import android.os.Looper;
+import android.preference.PreferenceManager;
 import android.telephony.CellIdentityLte;
 import android.telephony.ModemActivityInfo;
 import android.telephony.NetworkRegistrationInfo;
@@ -61,8 +66,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.util.Set;
+
 @RunWith(AndroidTestingRunner.class)
 @TestableLooper.RunWithLooper
 public class LinkBandwidthEstimatorTest extends TelephonyTest {
@@ -117,6 +125,7 @@ public class LinkBandwidthEstimatorTest extends TelephonyTest {
         when(mPhone.getSubId()).thenReturn(1);
         when(mSignalStrength.getDbm()).thenReturn(-100);
         when(mSignalStrength.getLevel()).thenReturn(1);
+        LinkBandwidthEstimator.clearCachedNetworks();
         mLBE = new LinkBandwidthEstimator(mPhone, Looper.myLooper(), mTelephonyFacade);
         mLBE.obtainMessage(MSG_DEFAULT_NETWORK_CHANGED, mNetworkCapabilities).sendToTarget();
         mLBE.obtainMessage(MSG_SCREEN_STATE_CHANGED, false).sendToTarget();
@@ -147,6 +156,7 @@ public class LinkBandwidthEstimatorTest extends TelephonyTest {
 
     @After
     public void tearDown() throws Exception {
+        LinkBandwidthEstimator.clearCachedNetworks();
         mLBE = null;
         mNri = null;
         mNetworkCapabilities = null;
@@ -298,6 +308,71 @@ public class LinkBandwidthEstimatorTest extends TelephonyTest {
         verify(mTelephonyFacade, times(4)).getMobileTxBytes();
     }
 
+    @Test
+    public void testScreenOnIdleTrafficPollBackOff() throws Exception {
+        mLBE.obtainMessage(MSG_SCREEN_STATE_CHANGED, true).sendToTarget();
+        processAllMessages();
+        // Polls at 0, 1, 2, 3, 4 sec, then back off to 2 sec and 4 sec intervals
+        for (int i = 0; i < 20; i++) {
+            addElapsedTime(1_000);
+            moveTimeForward(1_000);
+            processAllMessages();
+        }
+        verify(mTelephonyFacade, times(9)).getMobileTxBytes();
+
+        // Traffic at the next poll (22 sec) brings the interval back to 1 sec
+        addTxBytes(10_000L);
+        addRxBytes(10_000L);
+        for (int i = 0; i < 4; i++) {
+            addElapsedTime(1_000);
+            moveTimeForward(1_000);
+            processAllMessages();
+        }
+        verify(mTelephonyFacade, times(12)).getMobileTxBytes();
+    }
+
+    @Test
+    public void testScreenOnLightTrafficPollNotBackedOff() throws Exception {
+        mLBE.obtainMessage(MSG_SCREEN_STATE_CHANGED, true).sendToTarget();
+        processAllMessages();
+        // A few bytes every second keep the poll interval at 1 sec
+        for (int i = 0; i < 10; i++) {
+            addTxBytes(100L);
+            addElapsedTime(1_000);
+            moveTimeForward(1_000);
+            processAllMessages();
+        }
+        verify(mTelephonyFacade, times(11)).getMobileTxBytes();
+    }
+
+    @Test
+    public void testDefaultNetworkActiveResetsPollBackOff() throws Exception {
+        ArgumentCaptor<ConnectivityManager.OnNetworkActiveListener> listenerCaptor =
+                ArgumentCaptor.forClass(ConnectivityManager.OnNetworkActiveListener.class);
+        verify(mConnectivityManager).addDefaultNetworkActiveListener(listenerCaptor.capture());
+        mLBE.obtainMessage(MSG_SCREEN_STATE_CHANGED, true).sendToTarget();
+        processAllMessages();
+        // Polls at 0, 1, 2, 3, 4, 6, 10 sec, the next one is at 14 sec
+        for (int i = 0; i < 11; i++) {
+            addElapsedTime(1_000);
+            moveTimeForward(1_000);
+            processAllMessages();
+        }
+        verify(mTelephonyFacade, times(7)).getMobileTxBytes();
+
+        // The radio became active at 11 sec, poll right away and every second after that
+        addTxBytes(10_000L);
+        listenerCaptor.getValue().onNetworkActive();
+        processAllMessages();
+        verify(mTelephonyFacade, times(8)).getMobileTxBytes();
+        for (int i = 0; i < 2; i++) {
+            addElapsedTime(1_000);
+            moveTimeForward(1_000);
+            processAllMessages();
+        }
+        verify(mTelephonyFacade, times(10)).getMobileTxBytes();
+    }
+
     @Test
     public void testRatChangeTriggerBandwidthUpdate() throws Exception {
         mLBE.obtainMessage(MSG_SCREEN_STATE_CHANGED, true).sendToTarget();
@@ -719,6 +794,79 @@ public class LinkBandwidthEstimatorTest extends TelephonyTest {
         assertEquals(0, network.getValue(LINK_RX, 1));
     }
 
+    @Test
+    public void testPersistedNetworkStatsBounded() throws Exception {
+        for (int tac = 0; tac <= MAX_PERSISTED_NETWORK_COUNT; tac++) {
+            mLBE.lookupNetwork("310260", tac, "LTE").update(1_000L, LINK_RX, 1);
+        }
+
+        // The least recently updated network is dropped
+        LinkBandwidthEstimator.NetworkBandwidth network = mLBE.lookupNetwork("310260", 0, "LTE");
+        assertEquals(0, network.getCount(LINK_RX, 1));
+        assertEquals(0, network.getValue(LINK_RX, 1));
+
+        // Networks evicted from the in-memory cache are loaded again from shared preferences
+        network = mLBE.lookupNetwork("310260", 1, "LTE");
+        assertEquals(1, network.getCount(LINK_RX, 1));
+        assertEquals(1_000L, network.getValue(LINK_RX, 1));
+        network = mLBE.lookupNetwork("310260", MAX_PERSISTED_NETWORK_COUNT, "LTE");
+        assertEquals(1, network.getCount(LINK_RX, 1));
+    }
+
+    @Test
+    public void testDroppedNetworkStatsNotWrittenBack() throws Exception {
+        LinkBandwidthEstimator.NetworkBandwidth heldNetwork =
+                mLBE.lookupNetwork("310260", 0, "LTE");
+        heldNetwork.update(1_000L, LINK_RX, 1);
+        for (int tac = 1; tac <= MAX_PERSISTED_NETWORK_COUNT; tac++) {
+            mLBE.lookupNetwork("310260", tac, "LTE").update(1_000L, LINK_RX, 1);
+        }
+
+        // The held network was dropped, its old stats must not come back with the next update
+        heldNetwork.update(2_000L, LINK_RX, 1);
+        LinkBandwidthEstimator.clearCachedNetworks();
+        LinkBandwidthEstimator.NetworkBandwidth network = mLBE.lookupNetwork("310260", 0, "LTE");
+        assertEquals(1, network.getCount(LINK_RX, 1));
+        assertEquals(2_000L, network.getValue(LINK_RX, 1));
+    }
+
+    @Test
+    public void testNetworkStatsSharedByPhones() throws Exception {
+        LinkBandwidthEstimator otherLBE =
+                new LinkBandwidthEstimator(mPhone, Looper.myLooper(), mTelephonyFacade);
+        mLBE.lookupNetwork("310260", 366, "LTE").update(1_000L, LINK_RX, 1);
+        otherLBE.lookupNetwork("310260", 366, "LTE").update(2_000L, LINK_RX, 1);
+
+        LinkBandwidthEstimator.NetworkBandwidth network = mLBE.lookupNetwork("310260", 366, "LTE");
+        assertEquals(2, network.getCount(LINK_RX, 1));
+        assertEquals(3_000L, network.getValue(LINK_RX, 1));
+    }
+
+    @Test
+    public void testNetworksPersistedWithoutIndexAreBounded() throws Exception {
+        // Stats persisted before the persisted networks were recorded
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        for (int tac = 0; tac < MAX_PERSISTED_NETWORK_COUNT; tac++) {
+            editor.putLong("Plmn310260RatLTETac" + tac + "Link1Level1Data", 1_000L);
+            editor.putInt("Plmn310260RatLTETac" + tac + "Link1Level1Count", 1);
+        }
+        editor.commit();
+
+        mLBE.lookupNetwork("310260", MAX_PERSISTED_NETWORK_COUNT, "LTE")
+                .update(1_000L, LINK_RX, 1);
+
+        Set<String> networkKeys = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getStringSet("LinkBandwidthEstimatorNetworks", null);
+        assertEquals(MAX_PERSISTED_NETWORK_COUNT, networkKeys.size());
+        assertTrue(networkKeys.contains("Plmn310260RatLTETac" + MAX_PERSISTED_NETWORK_COUNT));
+        int count = 0;
+        for (int tac = 0; tac <= MAX_PERSISTED_NETWORK_COUNT; tac++) {
+            count += mLBE.lookupNetwork("310260", tac, "LTE").getCount(LINK_RX, 1);
+        }
+        assertEquals(MAX_PERSISTED_NETWORK_COUNT, count);
+    }
+
     @Test
     public void testDataActivity() {
         LinkBandwidthEstimatorCallback callback = Mockito.mock(
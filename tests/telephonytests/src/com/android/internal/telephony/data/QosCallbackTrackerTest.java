@@ -16,6 +16,7 @@
 
 package com.android.internal.telephony.data;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.doReturn;
@@ -660,5 +661,52 @@ public class QosCallbackTrackerTest extends TelephonyTest {
         verify(mRcsStats, times(1))
                 .onImsDedicatedBearerListenerRemoved(callbackId);
     }
+
+    @Test
+    public void testUnchangedSessionNotMatchedAgain() throws Exception {
+        int[] matchCount = new int[1];
+        Filter filter = new Filter(new InetSocketAddress(
+                InetAddresses.parseNumericAddress("122.22.22.22"), 2222),
+                new InetSocketAddress(InetAddresses.parseNumericAddress("144.44.44.44"), 2223)) {
+            @Override
+            public boolean matchesLocalAddress(final @NonNull InetAddress address,
+                    final int startPort, final int endPort) {
+                matchCount[0]++;
+                return super.matchesLocalAddress(address, startPort, endPort);
+            }
+        };
+        mQosCallbackTracker.addFilter(1, filter);
+
+        ArrayList<QosBearerFilter> qosFilters = new ArrayList<>();
+        qosFilters.add(createIpv4QosFilter("122.22.22.22", "144.44.44.44",
+                new QosBearerFilter.PortRange(2222, 2222),
+                new QosBearerFilter.PortRange(2223, 2223), 45));
+        ArrayList<QosBearerSession> qosSessions = new ArrayList<>();
+        qosSessions.add(new QosBearerSession(1234, createEpsQos(5, 6, 7, 8), qosFilters));
+        mQosCallbackTracker.updateSessions(qosSessions);
+        processAllMessages();
+
+        verify(mINetworkAgentRegistry, times(1)).sendEpsQosSessionAvailable(eq(1),
+                any(QosSession.class), any(EpsBearerQosSessionAttributes.class));
+        int matchCountAfterFirstUpdate = matchCount[0];
+
+        // The same session is reported again. The previous match result should be reused.
+        ArrayList<QosBearerSession> sameQosSessions = new ArrayList<>();
+        sameQosSessions.add(new QosBearerSession(1234, createEpsQos(5, 6, 7, 8),
+                new ArrayList<>(qosFilters)));
+        mQosCallbackTracker.updateSessions(sameQosSessions);
+        processAllMessages();
+
+        assertEquals(matchCountAfterFirstUpdate, matchCount[0]);
+        verify(mINetworkAgentRegistry, times(1)).sendEpsQosSessionAvailable(eq(1),
+                any(QosSession.class), any(EpsBearerQosSessionAttributes.class));
+
+        // The session is lost, which should still be reported from the cached match result.
+        mQosCallbackTracker.updateSessions(new ArrayList<>());
+        processAllMessages();
+
+        assertEquals(matchCountAfterFirstUpdate, matchCount[0]);
+        verify(mINetworkAgentRegistry, times(1)).sendQosSessionLost(eq(1), any(QosSession.class));
+    }
 }
 
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.gsm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.AsyncResult;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.telephony.uicc.AdnRecord;
+import com.android.internal.telephony.uicc.AdnRecordCache;
+import com.android.internal.telephony.uicc.IccConstants;
+import com.android.internal.telephony.uicc.IccFileHandler;
+import com.android.internal.telephony.uicc.IccUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class UsimPhoneBookManagerTest {
+    private static final int EF_ADN_USIM = 0x4F3A;
+    private static final int EF_EMAIL_USIM = 0x4F50;
+    private static final int EF_IAP_USIM = 0x4F25;
+    private static final int ADN_COUNT = 250;
+    private static final int EMAIL_RECORD_SIZE = 22;
+
+    private IccFileHandler mFh;
+    private AdnRecordCache mAdnCache;
+    private HandlerThread mHandlerThread;
+    private UsimPhoneBookManager mUsimPhoneBookManager;
+
+    @Before
+    public void setUp() throws Exception {
+        mFh = mock(IccFileHandler.class);
+        mAdnCache = mock(AdnRecordCache.class);
+        mHandlerThread = new HandlerThread("UsimPhoneBookManagerTest");
+        mHandlerThread.start();
+        // The manager blocks the calling thread while its handler collects the responses.
+        CountDownLatch latch = new CountDownLatch(1);
+        new Handler(mHandlerThread.getLooper()).post(() -> {
+            mUsimPhoneBookManager = new UsimPhoneBookManager(mFh, mAdnCache);
+            latch.countDown();
+        });
+        latch.await(5, TimeUnit.SECONDS);
+
+        // Type 1 PBR record with EF_ADN 4F3A (SFI 1) and EF_EMAIL 4F50 (SFI 2)
+        ArrayList<byte[]> pbr = new ArrayList<>();
+        pbr.add(IccUtils.hexStringToBytes("A80AC0034F3A01CA034F5002"));
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(1), pbr);
+            return null;
+        }).when(mFh).loadEFLinearFixedAll(eq(IccConstants.EF_PBR), any(Message.class));
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(1),
+                    new int[] {EMAIL_RECORD_SIZE, EMAIL_RECORD_SIZE * ADN_COUNT, ADN_COUNT});
+            return null;
+        }).when(mFh).getEFLinearRecordSize(anyInt(), any(Message.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mHandlerThread.quit();
+        mUsimPhoneBookManager = null;
+    }
+
+    @SmallTest
+    @Test
+    public void testOnlyEmailRecordsOfContactsRead() {
+        ArrayList<AdnRecord> adns = new ArrayList<>();
+        for (int i = 1; i <= ADN_COUNT; i++) {
+            adns.add(i == 2 || i == 200
+                    ? new AdnRecord(EF_ADN_USIM, i, "Contact " + i, "123" + i)
+                    : new AdnRecord(EF_ADN_USIM, i, "", ""));
+        }
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(2), new ArrayList<>(adns));
+            return null;
+        }).when(mAdnCache).requestLoadAllAdnLike(eq(EF_ADN_USIM), anyInt(), any(Message.class));
+        doAnswer(invocation -> {
+            int recNum = invocation.getArgument(1);
+            sendResponse(invocation.getArgument(2),
+                    emailRecord(recNum == 2 ? "two@example.com" : "", recNum));
+            return null;
+        }).when(mFh).loadEFLinearFixed(eq(EF_EMAIL_USIM), anyInt(), any(Message.class));
+
+        ArrayList<AdnRecord> records = mUsimPhoneBookManager.loadEfFilesFromUsim();
+
+        assertEquals(ADN_COUNT, records.size());
+        assertArrayEquals(new String[] {"two@example.com"}, records.get(1).getEmails());
+        assertNull(records.get(199).getEmails());
+        // The record size is read once, before the records.
+        InOrder inOrder = inOrder(mFh);
+        inOrder.verify(mFh).getEFLinearRecordSize(eq(EF_EMAIL_USIM), any(Message.class));
+        inOrder.verify(mFh, times(2)).loadEFLinearFixed(eq(EF_EMAIL_USIM), anyInt(),
+                any(Message.class));
+        verify(mFh).getEFLinearRecordSize(anyInt(), any(Message.class));
+        verify(mFh).loadEFLinearFixed(eq(EF_EMAIL_USIM), eq(2), any(Message.class));
+        verify(mFh).loadEFLinearFixed(eq(EF_EMAIL_USIM), eq(200), any(Message.class));
+        verify(mFh, never()).loadEFLinearFixedAll(eq(EF_EMAIL_USIM), any(Message.class));
+    }
+
+    @SmallTest
+    @Test
+    public void testNoRecordReadsWithoutRecordSize() {
+        ArrayList<AdnRecord> adns = new ArrayList<>();
+        for (int i = 1; i <= ADN_COUNT; i++) {
+            adns.add(i == 2 || i == 200
+                    ? new AdnRecord(EF_ADN_USIM, i, "Contact " + i, "123" + i)
+                    : new AdnRecord(EF_ADN_USIM, i, "", ""));
+        }
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(2), new ArrayList<>(adns));
+            return null;
+        }).when(mAdnCache).requestLoadAllAdnLike(eq(EF_ADN_USIM), anyInt(), any(Message.class));
+        doAnswer(invocation -> {
+            Message response = invocation.getArgument(1);
+            AsyncResult.forMessage(response, null, new RuntimeException("no EF_EMAIL"));
+            response.sendToTarget();
+            return null;
+        }).when(mFh).getEFLinearRecordSize(eq(EF_EMAIL_USIM), any(Message.class));
+
+        ArrayList<AdnRecord> records = mUsimPhoneBookManager.loadEfFilesFromUsim();
+
+        assertEquals(ADN_COUNT, records.size());
+        assertNull(records.get(1).getEmails());
+        verify(mFh, never()).loadEFLinearFixed(eq(EF_EMAIL_USIM), anyInt(), any(Message.class));
+    }
+
+    @SmallTest
+    @Test
+    public void testOnlyType2EmailRecordsOfContactsRead() {
+        // Type 1 EF_ADN 4F3A and EF_IAP 4F25, type 2 EF_EMAIL 4F50, first in its IAP records
+        ArrayList<byte[]> pbr = new ArrayList<>();
+        pbr.add(IccUtils.hexStringToBytes("A80AC0034F3A01C1034F2503A905CA034F5002"));
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(1), pbr);
+            return null;
+        }).when(mFh).loadEFLinearFixedAll(eq(IccConstants.EF_PBR), any(Message.class));
+        ArrayList<AdnRecord> adns = new ArrayList<>();
+        for (int i = 1; i <= ADN_COUNT; i++) {
+            adns.add(i == 2 || i == 200
+                    ? new AdnRecord(EF_ADN_USIM, i, "Contact " + i, "123" + i)
+                    : new AdnRecord(EF_ADN_USIM, i, "", ""));
+        }
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(2), new ArrayList<>(adns));
+            return null;
+        }).when(mAdnCache).requestLoadAllAdnLike(eq(EF_ADN_USIM), anyInt(), any(Message.class));
+        // The second contact points to email record 5, the 200th contact has no email.
+        doAnswer(invocation -> {
+            int recNum = invocation.getArgument(1);
+            sendResponse(invocation.getArgument(2),
+                    new byte[] {(byte) (recNum == 2 ? 5 : 0xFF)});
+            return null;
+        }).when(mFh).loadEFLinearFixed(eq(EF_IAP_USIM), anyInt(), any(Message.class));
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(2), emailRecord("two@example.com", 2));
+            return null;
+        }).when(mFh).loadEFLinearFixed(eq(EF_EMAIL_USIM), anyInt(), any(Message.class));
+
+        ArrayList<AdnRecord> records = mUsimPhoneBookManager.loadEfFilesFromUsim();
+
+        assertEquals(ADN_COUNT, records.size());
+        assertArrayEquals(new String[] {"two@example.com"}, records.get(1).getEmails());
+        assertNull(records.get(199).getEmails());
+        verify(mFh, times(2)).loadEFLinearFixed(eq(EF_IAP_USIM), anyInt(), any(Message.class));
+        // A single record is read without getting the record size first.
+        verify(mFh).getEFLinearRecordSize(eq(EF_IAP_USIM), any(Message.class));
+        verify(mFh, never()).getEFLinearRecordSize(eq(EF_EMAIL_USIM), any(Message.class));
+        verify(mFh).loadEFLinearFixed(eq(EF_IAP_USIM), eq(2), any(Message.class));
+        verify(mFh).loadEFLinearFixed(eq(EF_IAP_USIM), eq(200), any(Message.class));
+        verify(mFh).loadEFLinearFixed(eq(EF_EMAIL_USIM), anyInt(), any(Message.class));
+        verify(mFh).loadEFLinearFixed(eq(EF_EMAIL_USIM), eq(5), any(Message.class));
+        verify(mFh, never()).loadEFLinearFixedAll(eq(EF_IAP_USIM), any(Message.class));
+        verify(mFh, never()).loadEFLinearFixedAll(eq(EF_EMAIL_USIM), any(Message.class));
+    }
+
+    @SmallTest
+    @Test
+    public void testNoEmailReadsWithoutContacts() {
+        ArrayList<AdnRecord> adns = new ArrayList<>();
+        for (int i = 1; i <= ADN_COUNT; i++) {
+            adns.add(new AdnRecord(EF_ADN_USIM, i, "", ""));
+        }
+        doAnswer(invocation -> {
+            sendResponse(invocation.getArgument(2), new ArrayList<>(adns));
+            return null;
+        }).when(mAdnCache).requestLoadAllAdnLike(eq(EF_ADN_USIM), anyInt(), any(Message.class));
+
+        ArrayList<AdnRecord> records = mUsimPhoneBookManager.loadEfFilesFromUsim();
+
+        assertEquals(ADN_COUNT, records.size());
+        verify(mFh, never()).loadEFLinearFixed(eq(EF_EMAIL_USIM), anyInt(), any(Message.class));
+        verify(mFh, never()).loadEFLinearFixedAll(eq(EF_EMAIL_USIM), any(Message.class));
+    }
+
+    private static void sendResponse(Message response, Object result) {
+        AsyncResult.forMessage(response, result, null);
+        response.sendToTarget();
+    }
+
+    // Type 1 EF_EMAIL record: the address padded with 0xFF, then the ADN SFI and record number.
+    private static byte[] emailRecord(String email, int adnRecNum) {
+        byte[] record = new byte[EMAIL_RECORD_SIZE];
+        Arrays.fill(record, (byte) 0xFF);
+        byte[] address = email.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(address, 0, record, 0, address.length);
+        record[EMAIL_RECORD_SIZE - 2] = (byte) 0xFF;
+        record[EMAIL_RECORD_SIZE - 1] = (byte) adnRecNum;
+        return record;
+    }
+}
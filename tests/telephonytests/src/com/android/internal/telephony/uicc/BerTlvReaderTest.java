@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+public class BerTlvReaderTest {
+    private static final int[] FUZZ_TAGS = {0x30, 0x04, 0xA0, 0xE2, 0xFF40};
+
+    @SmallTest
+    @Test
+    public void testNestedDataObjects() {
+        // FF40 0D
+        //   E2 0B
+        //      E1 05
+        //         C1 03 ABCDEF
+        //      E3 02
+        //         DB 00
+        BerTlvReader reader = new BerTlvReader(
+                IccUtils.hexStringToBytes("FF400DE20BE105C103ABCDEFE302DB00"));
+        assertEquals(0xFF40, reader.peekTag());
+        assertEquals(16, reader.peekEncodedLength());
+        reader.next(0xFF40, true);
+        assertFalse(reader.hasNext());
+
+        BerTlvReader rules = reader.getValueReader();
+        assertEquals(0xE2, rules.next());
+        BerTlvReader rule = rules.getValueReader();
+        assertTrue(rule.isNextTag(0xE1));
+        rule.next();
+        BerTlvReader refDo = rule.getValueReader();
+        refDo.next(0xC1, true);
+        assertEquals(7, refDo.getOffset());
+        assertEquals("ABCDEF", refDo.getValueHex());
+        assertArrayEquals(new byte[] {(byte) 0xAB, (byte) 0xCD, (byte) 0xEF}, refDo.getValue());
+        assertTrue(refDo.valueEquals(new byte[] {(byte) 0xAB, (byte) 0xCD, (byte) 0xEF}));
+
+        rule.next(0xE3, true);
+        BerTlvReader arDo = rule.getValueReader();
+        arDo.next(0xDB, true);
+        assertEquals(0, arDo.getValueLength());
+        assertFalse(rules.hasNext());
+    }
+
+    @SmallTest
+    @Test
+    public void testMultiByteLength() {
+        byte[] data = new byte[4 + 0x100];
+        data[0] = 0x04;
+        data[1] = (byte) 0x82;
+        data[2] = 0x01;
+        data[3] = 0x00;
+        BerTlvReader reader = new BerTlvReader(data);
+        reader.next(0x04, true);
+        assertEquals(4, reader.getValueOffset());
+        assertEquals(0x100, reader.getValueLength());
+
+        // Only the header is needed to know the size of a data object.
+        BerTlvReader partial = new BerTlvReader(data, 0, 10);
+        assertEquals(data.length, partial.peekEncodedLength());
+        try {
+            partial.next();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testLengthTooLarge() {
+        // The length fits in an int, but the data object with its header would not.
+        BerTlvReader reader = new BerTlvReader(IccUtils.hexStringToBytes("FF40847FFFFFFFE2"));
+        try {
+            reader.peekEncodedLength();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            reader.next();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // The largest length that still fits is accepted.
+        reader = new BerTlvReader(IccUtils.hexStringToBytes("FF40847FFFFFF8E2"));
+        assertEquals(Integer.MAX_VALUE, reader.peekEncodedLength());
+    }
+
+    @SmallTest
+    @Test
+    public void testMalformedData() {
+        for (String hex : new String[] {"", "30", "3002", "3080", "308201", "30020100",
+                "9F", "FF40"}) {
+            BerTlvReader reader = new BerTlvReader(IccUtils.hexStringToBytes(hex));
+            try {
+                reader.next(0x30, true);
+                fail(hex);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Check that the reader agrees with {@link UiccCarrierPrivilegeRules.TLV}, which parses hex
+     * strings, on well-formed, truncated and corrupted data.
+     */
+    @SmallTest
+    @Test
+    public void testMatchesStringParser() {
+        Random random = new Random(0x7e1);
+        for (int i = 0; i < 5000; i++) {
+            byte[] data = randomDataObjects(random);
+            int mutation = random.nextInt(4);
+            if (mutation == 1 && data.length > 0) {
+                data = Arrays.copyOf(data, random.nextInt(data.length));
+            } else if (mutation == 2 && data.length > 0) {
+                data[random.nextInt(data.length)] = (byte) random.nextInt(0x84);
+            }
+            int tag = FUZZ_TAGS[random.nextInt(FUZZ_TAGS.length)];
+            boolean shouldConsumeAll = random.nextBoolean();
+            String hex = data.length == 0
+                    ? "" : IccUtils.bytesToHexString(data).toUpperCase(Locale.ROOT);
+
+            String expectedValue;
+            String expectedRemain;
+            try {
+                UiccCarrierPrivilegeRules.TLV tlv =
+                        new UiccCarrierPrivilegeRules.TLV(toHex(tag));
+                expectedRemain = tlv.parse(hex, shouldConsumeAll);
+                expectedValue = tlv.getValue();
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                expectedValue = null;
+                expectedRemain = null;
+            }
+
+            BerTlvReader reader = new BerTlvReader(data);
+            try {
+                reader.next(tag, shouldConsumeAll);
+            } catch (IllegalArgumentException e) {
+                assertEquals(hex, null, expectedValue);
+                continue;
+            }
+            assertEquals(hex, expectedValue, reader.getValueHex());
+            int end = reader.getValueOffset() + reader.getValueLength();
+            assertEquals(hex, expectedRemain, hex.substring(end * 2));
+        }
+    }
+
+    private static byte[] randomDataObjects(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            int tag = FUZZ_TAGS[random.nextInt(FUZZ_TAGS.length)];
+            int length = random.nextInt(4) == 0 ? 0x80 + random.nextInt(0x80) : random.nextInt(8);
+            sb.append(toHex(tag));
+            if (length < 0x80) {
+                sb.append(String.format("%02X", length));
+            } else if (random.nextBoolean()) {
+                sb.append(String.format("81%02X", length));
+            } else {
+                sb.append(String.format("8200%02X", length));
+            }
+            for (int j = 0; j < length; j++) {
+                sb.append(String.format("%02X", random.nextInt(0x100)));
+            }
+        }
+        return IccUtils.hexStringToBytes(sb.toString());
+    }
+
+    private static String toHex(int tag) {
+        return String.format(tag > 0xFF ? "%04X" : "%02X", tag);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.UiccAccessRule;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.telephony.TelephonyTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CarrierPrivilegeRuleCacheTest extends TelephonyTest {
+    private static final String ICCID = "89010000000000000001";
+    private static final List<UiccAccessRule> RULES = Arrays.asList(
+            new UiccAccessRule(IccUtils.hexStringToBytes("ABCD"), "com.example.one", 0),
+            new UiccAccessRule(IccUtils.hexStringToBytes("B61B"), null, 0));
+
+    private CarrierPrivilegeRuleCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(getClass().getSimpleName());
+        mCache = new CarrierPrivilegeRuleCache(mContext);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (int i = 0; i <= CarrierPrivilegeRuleCache.MAX_CACHED_ICCIDS; i++) {
+            mCache.remove(iccid(i));
+        }
+        mCache.remove(ICCID);
+        mCache = null;
+        super.tearDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testPutGetRemove() {
+        assertNull(mCache.get(ICCID));
+
+        mCache.put(ICCID, RULES);
+        mCache.put(iccid(0), new ArrayList<>());
+        assertEquals(RULES, new CarrierPrivilegeRuleCache(mContext).get(ICCID));
+        assertTrue(mCache.get(iccid(0)).isEmpty());
+
+        mCache.put(ICCID, RULES.subList(0, 1));
+        assertEquals(RULES.subList(0, 1), mCache.get(ICCID));
+
+        mCache.remove(ICCID);
+        assertNull(mCache.get(ICCID));
+    }
+
+    @SmallTest
+    @Test
+    public void testCorruptedEntryIgnored() {
+        mCache.put(ICCID, RULES);
+        SharedPreferences prefs = mContext.getSharedPreferences("carrier_privilege_rule_cache",
+                Context.MODE_PRIVATE);
+        String key = "carrier_privilege_rule_cache_" + ICCID;
+        String value = prefs.getString(key, null);
+        // Change the last digit of the encoded rules.
+        char last = value.charAt(value.length() - 1);
+        value = value.substring(0, value.length() - 1) + (last == '0' ? '1' : '0');
+        prefs.edit().putString(key, value).commit();
+
+        assertNull(mCache.get(ICCID));
+    }
+
+    @SmallTest
+    @Test
+    public void testLeastRecentlyUsedSimEvicted() {
+        for (int i = 0; i < CarrierPrivilegeRuleCache.MAX_CACHED_ICCIDS; i++) {
+            mCache.put(iccid(i), RULES);
+        }
+        // Use the first SIM again so that the second one is the least recently used.
+        mCache.put(iccid(0), RULES);
+        mCache.put(iccid(CarrierPrivilegeRuleCache.MAX_CACHED_ICCIDS), RULES);
+
+        assertNull(mCache.get(iccid(1)));
+        assertEquals(RULES, mCache.get(iccid(0)));
+        assertEquals(RULES, mCache.get(iccid(CarrierPrivilegeRuleCache.MAX_CACHED_ICCIDS)));
+    }
+
+    @SmallTest
+    @Test
+    public void testTouchedSimNotEvicted() {
+        for (int i = 0; i < CarrierPrivilegeRuleCache.MAX_CACHED_ICCIDS; i++) {
+            mCache.put(iccid(i), RULES);
+        }
+        // Confirming the rules of the first SIM makes the second one the least recently used.
+        mCache.touch(iccid(0));
+        mCache.put(iccid(CarrierPrivilegeRuleCache.MAX_CACHED_ICCIDS), RULES);
+
+        assertNull(mCache.get(iccid(1)));
+        assertEquals(RULES, mCache.get(iccid(0)));
+    }
+
+    private static String iccid(int i) {
+        return "8901000000000000010" + i;
+    }
+}
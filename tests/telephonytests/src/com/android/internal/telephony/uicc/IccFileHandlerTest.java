@@ -16,6 +16,7 @@
 
 package com.android.internal.telephony.uicc;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -24,9 +25,11 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -42,6 +45,7 @@ import com.android.internal.telephony.CommandsInterface;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
@@ -534,4 +538,115 @@ public class IccFileHandlerTest {
         verify(mCi, times(1)).iccIOForApp(anyInt(), anyInt(), anyString(),
                 anyInt(), anyInt(), anyInt(), anyString(), isNull(), isNull(), any(Message.class));
     }
+
+    @Test
+    public void readsSentByPriority() {
+        int efSpn = 0x6F46;
+        mIccFileHandler.loadEFLinearFixedAll(IccConstants.EF_SMS, Message.obtain(mTestHandler));
+        mIccFileHandler.loadEFLinearFixedAll(0x4f3a, Message.obtain(mTestHandler));
+        mIccFileHandler.loadEFTransparent(efSpn, Message.obtain(mTestHandler));
+        mIccFileHandler.loadEFTransparent(IccConstants.EF_ICCID, Message.obtain(mTestHandler));
+
+        // Only the first reads are sent, the others wait for a response.
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(mCi, times(IccFileHandler.MAX_READS_IN_FLIGHT)).iccIOForApp(anyInt(), anyInt(),
+                anyString(), anyInt(), anyInt(), anyInt(), isNull(), isNull(), isNull(),
+                captor.capture());
+
+        Message response = captor.getAllValues().get(0);
+        AsyncResult.forMessage(response, null,
+                new CommandException(CommandException.Error.GENERIC_FAILURE));
+        response.sendToTarget();
+        mTestLooper.dispatchAll();
+
+        // The freed slot goes to the highest priority read rather than the oldest one.
+        verify(mCi).iccIOForApp(anyInt(), eq(IccConstants.EF_ICCID), anyString(), anyInt(),
+                anyInt(), anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+        verify(mCi, never()).iccIOForApp(anyInt(), eq(efSpn), anyString(), anyInt(), anyInt(),
+                anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+    }
+
+    @Test
+    public void readsNotHeldUpByLostResponse() {
+        mIccFileHandler.loadEFTransparent(IccConstants.EF_AD, Message.obtain(mTestHandler));
+        mIccFileHandler.loadEFTransparent(IccConstants.EF_SST, Message.obtain(mTestHandler));
+        mIccFileHandler.loadEFTransparent(IccConstants.EF_ICCID, Message.obtain(mTestHandler));
+        mTestLooper.dispatchAll();
+        verify(mCi, never()).iccIOForApp(anyInt(), eq(IccConstants.EF_ICCID), anyString(),
+                anyInt(), anyInt(), anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+
+        // Nothing else happens, but the unanswered reads time out.
+        mTestLooper.moveTimeForward(IccFileHandler.READ_STALL_TIMEOUT_MS);
+        mTestLooper.dispatchAll();
+
+        verify(mCi).iccIOForApp(anyInt(), eq(IccConstants.EF_ICCID), anyString(), anyInt(),
+                anyInt(), anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+    }
+
+    @Test
+    public void getEFLinearRecordSize_SizeCached() {
+        doAnswer(
+                invocation -> {
+                    Message response = invocation.getArgument(9);
+                    IccIoResult iir = new IccIoResult(0x90, 0x00,
+                            IccUtils.hexStringToBytes("000000454F30040000FFFF01020145"));
+                    AsyncResult.forMessage(response, iir, null);
+                    response.sendToTarget();
+                    return null;
+                }).when(mCi).iccIOForApp(anyInt(), anyInt(), anyString(), anyInt(), anyInt(),
+                anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+
+        ArrayList<AsyncResult> results = new ArrayList<>();
+        Handler handler = new Handler(mTestLooper.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                results.add((AsyncResult) msg.obj);
+            }
+        };
+        mIccFileHandler.getEFLinearRecordSize(0x4f30, handler.obtainMessage());
+        mTestLooper.dispatchAll();
+        mIccFileHandler.getEFLinearRecordSize(0x4f30, handler.obtainMessage());
+        mTestLooper.dispatchAll();
+
+        int[] expected = new int[] {0x45, 0x45, 1};
+        assertEquals(2, results.size());
+        assertArrayEquals(expected, (int[]) results.get(0).result);
+        assertArrayEquals(expected, (int[]) results.get(1).result);
+        verify(mCi, times(1)).iccIOForApp(anyInt(), anyInt(), anyString(), anyInt(), anyInt(),
+                anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+    }
+
+    @Test
+    public void getEFLinearRecordSize_SizeCacheClearedOnRefresh() {
+        doAnswer(
+                invocation -> {
+                    Message response = invocation.getArgument(9);
+                    IccIoResult iir = new IccIoResult(0x90, 0x00,
+                            IccUtils.hexStringToBytes("000000454F30040000FFFF01020145"));
+                    AsyncResult.forMessage(response, iir, null);
+                    response.sendToTarget();
+                    return null;
+                }).when(mCi).iccIOForApp(anyInt(), anyInt(), anyString(), anyInt(), anyInt(),
+                anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+        ArgumentCaptor<Integer> what = ArgumentCaptor.forClass(Integer.class);
+        verify(mCi).registerForIccRefresh(eq(mIccFileHandler), what.capture(), isNull());
+
+        Handler handler = new Handler(mTestLooper.getLooper());
+        mIccFileHandler.getEFLinearRecordSize(0x4f30, handler.obtainMessage());
+        mTestLooper.dispatchAll();
+
+        IccRefreshResponse refresh = new IccRefreshResponse();
+        refresh.refreshResult = IccRefreshResponse.REFRESH_RESULT_FILE_UPDATE;
+        refresh.efId = 0x4f30;
+        Message msg = mIccFileHandler.obtainMessage(what.getValue());
+        AsyncResult.forMessage(msg, refresh, null);
+        msg.sendToTarget();
+        mTestLooper.dispatchAll();
+
+        // The file is selected again after the refresh.
+        mIccFileHandler.getEFLinearRecordSize(0x4f30, handler.obtainMessage());
+        mTestLooper.dispatchAll();
+        verify(mCi, times(2)).iccIOForApp(anyInt(), anyInt(), anyString(), anyInt(), anyInt(),
+                anyInt(), isNull(), isNull(), isNull(), any(Message.class));
+    }
 }
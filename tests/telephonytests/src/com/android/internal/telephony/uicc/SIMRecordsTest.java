@@ -25,6 +25,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -50,6 +51,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -954,6 +956,61 @@ public class SIMRecordsTest extends TelephonyTest {
         Object actual();
     }
 
+    @Test
+    public void testCachedEfServedAndVerified() {
+        String iccid = "89010000000000000001";
+        SimEfCache cache = new SimEfCache(mContext);
+        cache.put(iccid, IccConstants.EF_GID1, new byte[] {0x11, 0x22});
+        doReturn(iccid).when(mUiccPort).getIccId();
+
+        mSIMRecordsUT.fetchSimRecords();
+        mTestLooper.dispatchAll();
+
+        // The cached content is handed over before the SIM answers.
+        assertEquals("1122", mSIMRecordsUT.getGid1());
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(mFhMock).loadEFTransparent(eq(IccConstants.EF_GID1), captor.capture());
+
+        Message response = captor.getValue();
+        AsyncResult.forMessage(response, new byte[] {0x11, 0x33}, null);
+        response.sendToTarget();
+        mTestLooper.dispatchAll();
+
+        assertEquals("1133", mSIMRecordsUT.getGid1());
+        assertTrue(Arrays.equals(new byte[] {0x11, 0x33},
+                cache.get(iccid, IccConstants.EF_GID1)));
+
+        // A refresh of the file drops it from the cache.
+        mSIMRecordsUT.handleFileUpdate(IccConstants.EF_GID1);
+        assertNull(cache.get(iccid, IccConstants.EF_GID1));
+        cache.clear(iccid);
+    }
+
+    @Test
+    public void testCachedEfDroppedWhenNotConfirmed() {
+        String iccid = "89010000000000000001";
+        SimEfCache cache = new SimEfCache(mContext);
+        cache.put(iccid, IccConstants.EF_SST, new byte[] {0x01});
+        doReturn(iccid).when(mUiccPort).getIccId();
+
+        mSIMRecordsUT.fetchSimRecords();
+        mTestLooper.dispatchAll();
+        assertTrue(mSIMRecordsUT.getUsimServiceTable() != null);
+
+        ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(mFhMock).loadEFTransparent(eq(IccConstants.EF_SST), captor.capture());
+        Message response = captor.getValue();
+        AsyncResult.forMessage(response, null,
+                new CommandException(CommandException.Error.GENERIC_FAILURE));
+        response.sendToTarget();
+        mTestLooper.dispatchAll();
+
+        // The SIM could not confirm the cached content, so it is no longer used.
+        assertNull(mSIMRecordsUT.getUsimServiceTable());
+        assertNull(cache.get(iccid, IccConstants.EF_SST));
+        cache.clear(iccid);
+    }
+
     protected void sleep(long ms) {
         try {
             Thread.sleep(ms);
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.telephony.TelephonyTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimEfCacheTest extends TelephonyTest {
+    private static final String ICCID = "89010000000000000001";
+    private static final byte[] DATA = new byte[] {0x01, (byte) 0xff};
+
+    private SimEfCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp(getClass().getSimpleName());
+        mCache = new SimEfCache(mContext);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (int i = 0; i <= SimEfCache.MAX_CACHED_ICCIDS; i++) {
+            mCache.clear(iccid(i));
+        }
+        mCache.clear(ICCID);
+        mCache = null;
+        super.tearDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testPutGetRemove() {
+        assertNull(mCache.get(ICCID, IccConstants.EF_GID1));
+
+        mCache.put(ICCID, IccConstants.EF_GID1, DATA);
+        mCache.put(ICCID, IccConstants.EF_SPDI, new byte[] {0x02});
+        assertArrayEquals(DATA, new SimEfCache(mContext).get(ICCID, IccConstants.EF_GID1));
+        assertNull(mCache.get(iccid(0), IccConstants.EF_GID1));
+
+        mCache.remove(ICCID, IccConstants.EF_GID1);
+        assertNull(mCache.get(ICCID, IccConstants.EF_GID1));
+        assertArrayEquals(new byte[] {0x02}, mCache.get(ICCID, IccConstants.EF_SPDI));
+
+        mCache.clear(ICCID);
+        assertNull(mCache.get(ICCID, IccConstants.EF_SPDI));
+    }
+
+    @SmallTest
+    @Test
+    public void testLeastRecentlyUsedSimEvicted() {
+        for (int i = 0; i < SimEfCache.MAX_CACHED_ICCIDS; i++) {
+            mCache.put(iccid(i), IccConstants.EF_GID1, DATA);
+        }
+        // Use the first SIM again so that the second one is the least recently used.
+        mCache.put(iccid(0), IccConstants.EF_GID2, DATA);
+        mCache.put(iccid(SimEfCache.MAX_CACHED_ICCIDS), IccConstants.EF_GID1, DATA);
+
+        assertNull(mCache.get(iccid(1), IccConstants.EF_GID1));
+        assertArrayEquals(DATA, mCache.get(iccid(0), IccConstants.EF_GID1));
+        assertArrayEquals(DATA, mCache.get(iccid(0), IccConstants.EF_GID2));
+        assertArrayEquals(DATA, mCache.get(iccid(SimEfCache.MAX_CACHED_ICCIDS),
+                IccConstants.EF_GID1));
+    }
+
+    @SmallTest
+    @Test
+    public void testTouchedSimNotEvicted() {
+        for (int i = 0; i < SimEfCache.MAX_CACHED_ICCIDS; i++) {
+            mCache.put(iccid(i), IccConstants.EF_GID1, DATA);
+        }
+        // The files of the first SIM are confirmed, which makes the second SIM the least
+        // recently used.
+        mCache.touch(iccid(0));
+        mCache.put(iccid(SimEfCache.MAX_CACHED_ICCIDS), IccConstants.EF_GID1, DATA);
+
+        assertArrayEquals(DATA, mCache.get(iccid(0), IccConstants.EF_GID1));
+        assertNull(mCache.get(iccid(1), IccConstants.EF_GID1));
+    }
+
+    private static String iccid(int i) {
+        return "8901000000000000010" + i;
+    }
+}
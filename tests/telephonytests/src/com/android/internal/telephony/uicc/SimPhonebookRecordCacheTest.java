@@ -18,7 +18,9 @@ package com.android.internal.telephony.uicc;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import android.os.AsyncResult;
@@ -162,4 +164,46 @@ public class SimPhonebookRecordCacheTest extends TelephonyTest {
             assertEquals(adnRecords.size(), 0);
         }
     }
+
+    @Test
+    public void testReloadOnlyReplacesChangedRecords() {
+        mSimulatedCommands.notifySimPhonebookChanged();
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+        AdnRecord newAdn = new AdnRecord(IccConstants.EF_ADN, 1, "AB", "123", null, null);
+        mSimPhonebookRecordCacheUt.updateSimPbAdnBySearch(null, newAdn, null);
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+
+        long generation = mSimPhonebookRecordCacheUt.getGeneration();
+        List<AdnRecord> adnRecords = mSimPhonebookRecordCacheUt.getAdnRecords();
+        assertSame(adnRecords, mSimPhonebookRecordCacheUt.getAdnRecords());
+        assertEquals("AB", adnRecords.get(0).getAlphaTag());
+
+        // The modem no longer reports record 1, e.g. it was deleted by another device.
+        mSimulatedCommands.notifySimPhonebookChanged();
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+
+        assertFalse(mSimPhonebookRecordCacheUt.isLoading());
+        assertNotEquals(generation, mSimPhonebookRecordCacheUt.getGeneration());
+        List<AdnRecord> reloaded = mSimPhonebookRecordCacheUt.getAdnRecords();
+        if (mSimPhonebookRecordCacheUt.ENABLE_INFLATE_WITH_EMPTY_RECORDS) {
+            assertEquals(1, reloaded.size());
+            assertTrue(reloaded.get(0).isEmpty());
+        } else {
+            assertEquals(0, reloaded.size());
+        }
+        // Lists handed out earlier are left untouched.
+        assertEquals("AB", adnRecords.get(0).getAlphaTag());
+
+        // A reload that brings nothing new leaves the generation alone.
+        generation = mSimPhonebookRecordCacheUt.getGeneration();
+        mSimulatedCommands.notifySimPhonebookChanged();
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+        waitForLastHandlerAction(mSimPhonebookRecordCacheUt);
+        assertEquals(generation, mSimPhonebookRecordCacheUt.getGeneration());
+        assertSame(reloaded, mSimPhonebookRecordCacheUt.getAdnRecords());
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+import android.telephony.TelephonyManager;
+import android.telephony.UiccAccessRule;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class UiccAccessRuleIndexTest {
+    private static final String CERT_1 = "11223344";
+    private static final String CERT_2 = "55667788";
+    private static final String PACKAGE_1 = "com.example.one";
+    private static final String PACKAGE_2 = "com.example.two";
+
+    @SmallTest
+    @Test
+    public void testMatches() throws Exception {
+        List<UiccAccessRule> rules = new ArrayList<>();
+        rules.add(new UiccAccessRule(getHash(CERT_1, "SHA-256"), null, 0));
+        rules.add(new UiccAccessRule(getHash(CERT_2, "SHA-1"), PACKAGE_2, 0));
+        UiccAccessRuleIndex index = new UiccAccessRuleIndex(rules);
+
+        assertTrue(index.matches(new Signature(CERT_1), PACKAGE_1));
+        assertTrue(index.matches(new Signature(CERT_1), PACKAGE_2));
+        assertFalse(index.matches(new Signature(CERT_2), PACKAGE_1));
+        assertTrue(index.matches(new Signature(CERT_2), PACKAGE_2));
+        assertTrue(index.matches(
+                IccUtils.bytesToHexString(getHash(CERT_2, "SHA-1")).toUpperCase(Locale.ROOT),
+                PACKAGE_2));
+        assertFalse(index.matches(new Signature("99"), PACKAGE_1));
+        assertFalse(index.matches((String) null, PACKAGE_1));
+
+        assertTrue(UiccAccessRuleIndex.EMPTY.isEmpty());
+        assertFalse(UiccAccessRuleIndex.EMPTY.matches(new Signature(CERT_1), PACKAGE_1));
+    }
+
+    /** Check the index against matching every rule, with many rules and packages. */
+    @SmallTest
+    @Test
+    public void testMatchesSameAsRules() throws Exception {
+        final int numRules = 100;
+        final int numPackages = 500;
+        List<UiccAccessRule> rules = new ArrayList<>();
+        for (int i = 0; i < numRules; i++) {
+            // Every 5th package is privileged, with or without package name constraint, and
+            // with either hash.
+            int pkg = i * 5;
+            rules.add(new UiccAccessRule(getHash(getCert(pkg), i % 2 == 0 ? "SHA-1" : "SHA-256"),
+                    i % 3 == 0 ? getPackageName(pkg) : null, 0));
+        }
+        // A rule for another package, which must not match.
+        rules.add(new UiccAccessRule(getHash(getCert(1), "SHA-256"), getPackageName(2), 0));
+        UiccAccessRuleIndex index = new UiccAccessRuleIndex(rules);
+
+        int privileged = 0;
+        for (int i = 0; i < numPackages; i++) {
+            PackageInfo packageInfo = new PackageInfo();
+            packageInfo.packageName = getPackageName(i);
+            packageInfo.signatures = new Signature[] {new Signature(getCert(i))};
+
+            boolean expected = false;
+            for (UiccAccessRule rule : rules) {
+                if (rule.getCarrierPrivilegeStatus(packageInfo)
+                        == TelephonyManager.CARRIER_PRIVILEGE_STATUS_HAS_ACCESS) {
+                    expected = true;
+                }
+            }
+            assertEquals(packageInfo.packageName, expected, index.matches(packageInfo));
+            if (expected) privileged++;
+        }
+        assertEquals(numRules, privileged);
+    }
+
+    private static String getCert(int i) {
+        return String.format("%08X", i);
+    }
+
+    private static String getPackageName(int i) {
+        return "com.example.pkg" + i;
+    }
+
+    private static byte[] getHash(String cert, String algo) throws Exception {
+        return MessageDigest.getInstance(algo).digest(IccUtils.hexStringToBytes(cert));
+    }
+}
@@ -16,6 +16,7 @@
 package com.android.internal.telephony.uicc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -26,7 +27,9 @@ import static org.mockito.Mockito.mock;
 
 import android.content.pm.Signature;
 import android.os.AsyncResult;
+import android.os.Handler;
 import android.os.Message;
+import android.telephony.TelephonyManager;
 import android.telephony.UiccAccessRule;
 import android.testing.AndroidTestingRunner;
 import android.testing.TestableLooper;
@@ -43,6 +46,8 @@ import org.junit.runner.RunWith;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
@@ -55,6 +60,7 @@ public class UiccCarrierPrivilegeRulesTest extends TelephonyTest {
     private static final String ARAM = "A00000015141434C00";
     private static final String ARAD = "A00000015144414300";
     private static final String PKCS15_AID = "A000000063504B43532D3135";
+    private static final String ICCID = "89010000000000000001";
 
     // Mocked classes
     private UiccProfile mUiccProfile;
@@ -72,6 +78,12 @@ public class UiccCarrierPrivilegeRulesTest extends TelephonyTest {
     }
 
     private void testHelper(String hexString) {
+        mockRulesResponse(hexString);
+        mUiccCarrierPrivilegeRules = new UiccCarrierPrivilegeRules(mUiccProfile, null);
+        processAllMessages();
+    }
+
+    private void mockRulesResponse(String hexString) {
         doAnswer(new Answer<Void>() {
             @Override
             public Void answer(InvocationOnMock invocation) throws Throwable {
@@ -104,9 +116,6 @@ public class UiccCarrierPrivilegeRulesTest extends TelephonyTest {
                 return null;
             }
         }).when(mUiccProfile).iccCloseLogicalChannel(anyInt(), eq(false), any(Message.class));
-
-        mUiccCarrierPrivilegeRules = new UiccCarrierPrivilegeRules(mUiccProfile, null);
-        processAllMessages();
     }
 
     @Test
@@ -224,6 +233,39 @@ public class UiccCarrierPrivilegeRulesTest extends TelephonyTest {
                 mUiccCarrierPrivilegeRules.getPackageNames().get(0)));
     }
 
+    @Test
+    @SmallTest
+    public void testParseRule_ManyRules() {
+        // FF40 82 xxxx followed by numRules times:
+        //   E2 2E
+        //      E1 26
+        //         C1 14 <20 bytes certificate hash>
+        //         CA 0E 636F6D2E6578616D706C652E <2 digits>
+        //      E3 04
+        //         DB 02 0001
+        final int numRules = 300;
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < numRules; i++) {
+            rules.append("E22EE126C114")
+                    .append(String.format("%040X", i))
+                    .append("CA0E636F6D2E6578616D706C652E")
+                    .append(String.format("%02X%02X", '0' + (i / 10) % 10, '0' + i % 10))
+                    .append("E304DB020001");
+        }
+        final String hexString =
+                String.format("FF4082%04X", rules.length() / 2) + rules.toString();
+
+        testHelper(hexString);
+
+        assertTrue(mUiccCarrierPrivilegeRules.hasCarrierPrivilegeRules());
+        // The same rules are returned by both ARA-D and ARA-M.
+        List<UiccAccessRule> accessRules = mUiccCarrierPrivilegeRules.getAccessRules();
+        assertEquals(numRules * 2, accessRules.size());
+        assertEquals("com.example.42", accessRules.get(42).getPackageName());
+        assertTrue(String.format("%040X", 299).equalsIgnoreCase(
+                accessRules.get(numRules - 1).getCertificateHexString()));
+    }
+
     @Test
     @SmallTest
     public void testParseRule_InvalidRulesWith4F00() {
@@ -732,6 +774,89 @@ public class UiccCarrierPrivilegeRulesTest extends TelephonyTest {
         assertTrue(accessRules.contains(accessRule2));
     }
 
+    @Test
+    @SmallTest
+    public void testAID_ARFFollowsDodfToAcmf() {
+        // The DODF holds the Access Control OID, whose ACMF points to an ACRF other than the
+        // default 4300.
+        List<String> selectedFileIds = mockArfFiles(Map.of(
+                // ODF
+                "5031", "A706300404025207",
+                // DODF
+                "5207", "A1293000300F0C0D4750205345204163632043746CA1143012060A2A864886FC6B"
+                        + "81480101300404024200",
+                // ACMF
+                "4200", "301004080102030405060708300404024301",
+                // ACRF
+                "4301", "3010A0080406FFFFFFFFFFFF300404024310",
+                // ACCF
+                "4310", "30220420B9CFCE1C47A6AC713442718F15EF55B00B3A6D1A6D48CB46249FA8EB51"
+                        + "465350"));
+
+        mUiccCarrierPrivilegeRules = new UiccCarrierPrivilegeRules(mUiccProfile, null);
+        processAllMessages();
+
+        assertEquals(Arrays.asList("5031", "5207", "4200", "4301", "4310"), selectedFileIds);
+        assertEquals(1, mUiccCarrierPrivilegeRules.getAccessRules().size());
+        assertTrue(mUiccCarrierPrivilegeRules.getAccessRules().contains(new UiccAccessRule(
+                IccUtils.hexStringToBytes(
+                        "B9CFCE1C47A6AC713442718F15EF55B00B3A6D1A6D48CB46249FA8EB51465350"),
+                "",
+                0x00)));
+    }
+
+    /**
+     * Makes ARA-M and ARA-D unavailable and serves the PKCS#15 files from {@code binaryContent}.
+     *
+     * @return the ids of the files selected, in order
+     */
+    private List<String> mockArfFiles(Map<String, String> binaryContent) {
+        doAnswer(invocation -> {
+            String aid = (String) invocation.getArguments()[0];
+            Message message = (Message) invocation.getArguments()[2];
+            AsyncResult ar = new AsyncResult(null, null, null);
+            if (aid.equals(ARAM)) {
+                message.arg2 = 1;
+            } else if (aid.equals(ARAD)) {
+                message.arg2 = 0;
+            } else {
+                // PKCS15
+                ar = new AsyncResult(null, new int[]{2}, null);
+            }
+            message.obj = ar;
+            message.sendToTarget();
+            return null;
+        }).when(mUiccProfile).iccOpenLogicalChannel(anyString(), anyInt(), any(Message.class));
+
+        List<String> selectedFileIds = new ArrayList<>();
+        doAnswer(invocation -> {
+            selectedFileIds.add((String) invocation.getArguments()[6]);
+            Message message = (Message) invocation.getArguments()[8];
+            message.obj = new AsyncResult(null, new IccIoResult(0x90, 0x00, ""), null);
+            message.sendToTarget();
+            return null;
+        }).when(mUiccProfile).iccTransmitApduLogicalChannel(anyInt(), eq(0x00), eq(0xA4), eq(0x00),
+                eq(0x04), eq(0x02), anyString(), eq(false /*isEs10Command*/), any(Message.class));
+
+        doAnswer(invocation -> {
+            Message message = (Message) invocation.getArguments()[8];
+            String fileId = selectedFileIds.get(selectedFileIds.size() - 1);
+            IccIoResult iir = new IccIoResult(0x90, 0x00,
+                    IccUtils.hexStringToBytes(binaryContent.get(fileId)));
+            message.obj = new AsyncResult(null, iir, null);
+            message.sendToTarget();
+            return null;
+        }).when(mUiccProfile).iccTransmitApduLogicalChannel(anyInt(), eq(0x00), eq(0xB0), eq(0x00),
+                eq(0x00), eq(0x00), eq(""), eq(false /*isEs10Command*/), any(Message.class));
+
+        doAnswer(invocation -> {
+            Message message = (Message) invocation.getArguments()[2];
+            message.sendToTarget();
+            return null;
+        }).when(mUiccProfile).iccCloseLogicalChannel(anyInt(), eq(false), any(Message.class));
+        return selectedFileIds;
+    }
+
     private static final int P2 = 0x40;
     private static final int P2_EXTENDED_DATA = 0x60;
 
@@ -812,4 +937,86 @@ public class UiccCarrierPrivilegeRulesTest extends TelephonyTest {
         assertEquals(0, mUiccCarrierPrivilegeRules.getCarrierPrivilegeStatus(signature,
                 mUiccCarrierPrivilegeRules.getPackageNames().get(0)));
     }
+
+    @Test
+    @SmallTest
+    public void testCachedRules_ReplacedByUiccRules() {
+        // Same rule as testParseRule_Normal.
+        final String hexString =
+                "FF4045E243E135C114ABCD92CBB156B280FA4E1429A6ECEEB6E5C1BFE4CA1D636F6D2E676F6F676"
+                        + "C652E616E64726F69642E617070732E6D79617070E30ADB080000000000000001";
+        mockRulesResponse(hexString);
+        CarrierPrivilegeRuleCache cache = new CarrierPrivilegeRuleCache(mContext);
+        cache.put(ICCID, Arrays.asList(new UiccAccessRule(
+                IccUtils.hexStringToBytes("B61B"), "com.example.cached", 0)));
+        int[] loadedCount = new int[1];
+        Handler handler = new Handler(mTestableLooper.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                loadedCount[0]++;
+            }
+        };
+
+        mUiccCarrierPrivilegeRules = new UiccCarrierPrivilegeRules(mUiccProfile,
+                handler.obtainMessage(), cache, ICCID);
+
+        // The cached rules apply until the rules are read from the UICC.
+        assertTrue(mUiccCarrierPrivilegeRules.areCarrierPriviligeRulesLoaded());
+        assertEquals(Arrays.asList("com.example.cached"),
+                mUiccCarrierPrivilegeRules.getPackageNames());
+        assertEquals(0, mUiccCarrierPrivilegeRules.getCarrierPrivilegeStatus(
+                new Signature("b61b"), "com.example.cached"));
+
+        processAllMessages();
+
+        // Loaded is only notified once, with the rules of the UICC.
+        assertEquals(1, loadedCount[0]);
+        assertEquals(2, mUiccCarrierPrivilegeRules.getPackageNames().size());
+        assertEquals("com.google.android.apps.myapp",
+                mUiccCarrierPrivilegeRules.getPackageNames().get(0));
+        assertEquals(TelephonyManager.CARRIER_PRIVILEGE_STATUS_NO_ACCESS,
+                mUiccCarrierPrivilegeRules.getCarrierPrivilegeStatus(
+                        new Signature("b61b"), "com.example.cached"));
+        assertEquals(mUiccCarrierPrivilegeRules.getAccessRules(), cache.get(ICCID));
+        cache.remove(ICCID);
+    }
+
+    @Test
+    @SmallTest
+    public void testCachedRules_VerifiedByUiccRules() {
+        final String hexString =
+                "FF4045E243E135C114ABCD92CBB156B280FA4E1429A6ECEEB6E5C1BFE4CA1D636F6D2E676F6F676"
+                        + "C652E616E64726F69642E617070732E6D79617070E30ADB080000000000000001";
+        mockRulesResponse(hexString);
+        CarrierPrivilegeRuleCache cache = new CarrierPrivilegeRuleCache(mContext);
+        cache.remove(ICCID);
+        int[] loadedCount = new int[1];
+        Handler handler = new Handler(mTestableLooper.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                loadedCount[0]++;
+            }
+        };
+
+        // Nothing cached yet: the rules are read from the UICC, then cached.
+        mUiccCarrierPrivilegeRules = new UiccCarrierPrivilegeRules(mUiccProfile,
+                handler.obtainMessage(), cache, ICCID);
+        assertFalse(mUiccCarrierPrivilegeRules.areCarrierPriviligeRulesLoaded());
+        processAllMessages();
+        assertEquals(1, loadedCount[0]);
+        List<UiccAccessRule> rules = mUiccCarrierPrivilegeRules.getAccessRules();
+        assertEquals(rules, cache.get(ICCID));
+
+        // The cached rules apply right away. Loaded is notified once the UICC returns the same
+        // rules.
+        loadedCount[0] = 0;
+        mUiccCarrierPrivilegeRules = new UiccCarrierPrivilegeRules(mUiccProfile,
+                handler.obtainMessage(), cache, ICCID);
+        assertTrue(mUiccCarrierPrivilegeRules.areCarrierPriviligeRulesLoaded());
+        assertEquals(rules, mUiccCarrierPrivilegeRules.getAccessRules());
+        processAllMessages();
+        assertEquals(1, loadedCount[0]);
+        assertEquals(rules, mUiccCarrierPrivilegeRules.getAccessRules());
+        cache.remove(ICCID);
+    }
 }
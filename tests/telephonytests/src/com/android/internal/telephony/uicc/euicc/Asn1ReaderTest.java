@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.telephony.uicc.euicc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.telephony.uicc.IccUtils;
+import com.android.internal.telephony.uicc.asn1.Asn1Decoder;
+import com.android.internal.telephony.uicc.asn1.Asn1Node;
+import com.android.internal.telephony.uicc.asn1.InvalidAsn1DataException;
+import com.android.internal.telephony.uicc.asn1.TagNotFoundException;
+
+import org.junit.Test;
+
+public class Asn1ReaderTest {
+    private static final String PROFILE_INFO = "E37F"
+            + "5A0A89670000000000452301" // ICCID
+            + "90046E69636B" // Nickname
+            + "9103746D6F" // Service provider name
+            + "92027031" // Profile name
+            + "B70F800312F34581030102038203040506" // Operator id
+            + "9F700101" // Profile state
+            + "950101" // Profile class
+            + "990206C0" // Policy rules
+            + "BF7645E243E135C114ABCD92CBB156B280FA4E1429A6ECEEB6E5C1BFE4"
+            + "CA1D636F6D2E676F6F676C652E616E64726F69642E617070732E6D79617070"
+            + "E30ADB080000000000000001"; // Carrier privilege rules
+
+    // Responses of the eUICC, as sent by EuiccPortTest.
+    private static final String[] RESPONSES = {
+            // ProfileInfoListResponse
+            "BF2D8184A08181" + PROFILE_INFO,
+            "BF2D18A016E3145A0A896700000000004523019F7001009F240101",
+            "BF2D02A000",
+            // GetEuiccDataResponse
+            "BF3E065A041A2B3C4D",
+            // EuiccConfiguredAddressesResponse
+            "BF3C148008534D44502E434F4D8108736D64732E636F6D",
+            // RulesAuthorisationTable
+            "BF434B"
+                    + "A0233021800206C0A118B70A800312F3458103010203B70A800312F3458203040506"
+                    + "820108"
+                    + "A024302280020780A118B70A800312E3458103010203B70A8003EEEE458203040506"
+                    + "82020780",
+            // ListNotificationResponse
+            "BF282BA029BF2F118001010C08736D64702E636F6D81020410"
+                    + "BF2F128001020C09736D6470322E636F6D81020420",
+            // RetrieveNotificationsListResponse
+            "BF2B2FA02D3014BF2F118001010C08736D64702E636F6D81020410"
+                    + "3015BF2F128001020C09736D6470322E636F6D81020420",
+            // ProfileInstallationResult with an error
+            "BF370ABF2707A205A103810103",
+            // AuthenticateServerResponse with an error
+            "BF3805A103020103",
+    };
+
+    @SmallTest
+    @Test
+    public void testMatchesTreeDecoder() throws Exception {
+        for (String hex : RESPONSES) {
+            assertSameTree(hex);
+        }
+    }
+
+    /** A long list of profiles, like the one of an eUICC with many profiles downloaded. */
+    @SmallTest
+    @Test
+    public void testMatchesTreeDecoder_ManyProfiles() throws Exception {
+        StringBuilder profiles = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            profiles.append(PROFILE_INFO);
+        }
+        int length = profiles.length() / 2;
+        assertSameTree(String.format("BF2D82%04XA082%04X", length + 4, length) + profiles);
+    }
+
+    @SmallTest
+    @Test
+    public void testValuesMatchTreeDecoder() throws Exception {
+        for (String hex : new String[] {"800100", "8001FF", "80027FFF", "8104FFFFFFFF",
+                "81050102030405", "800206C0", "81020410", "82020780", "820108",
+                "DB080000000000000001", "DB09010000000000000001", "0C08736D64702E636F6D",
+                "90046E69636B", "9000"}) {
+            Asn1Node node = new Asn1Decoder(hex).nextNode();
+            Asn1Reader reader = new Asn1Reader(IccUtils.hexStringToBytes(hex));
+            reader.next();
+            assertEquals(hex, valueOf(node::asInteger), valueOf(reader::asInteger));
+            assertEquals(hex, valueOf(node::asRawLong), valueOf(reader::asRawLong));
+            assertEquals(hex, valueOf(node::asString), valueOf(reader::asString));
+            if (node.getDataLength() > 0) {
+                assertEquals(hex, valueOf(node::asBits), valueOf(reader::asBits));
+            }
+            assertArrayEquals(hex, node.asBytes(), reader.asBytes());
+            assertEquals(hex, IccUtils.bytesToHexString(node.asBytes()).toUpperCase(),
+                    reader.asHex());
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testGetChild() throws Exception {
+        Asn1Reader root = new Asn1Reader(IccUtils.hexStringToBytes(RESPONSES[1]));
+        assertEquals(Tags.TAG_GET_PROFILES, root.next());
+        assertFalse(root.hasNext());
+
+        Asn1Reader profile = root.getChild(Tags.TAG_CTX_COMP_0, Tags.TAG_PROFILE_INFO);
+        assertEquals("89670000000000452301", profile.getChild(Tags.TAG_ICCID).asHex());
+        assertEquals(1, profile.getChild(Tags.TAG_PORT).asInteger());
+        assertTrue(root.hasChild(Tags.TAG_CTX_COMP_0, Tags.TAG_PROFILE_INFO, Tags.TAG_ICCID));
+        assertFalse(root.hasChild(Tags.TAG_CTX_COMP_0, Tags.TAG_PROFILE_INFO, Tags.TAG_NICKNAME));
+        assertNull(profile.findChild(Tags.TAG_NICKNAME));
+        try {
+            profile.getChild(Tags.TAG_NICKNAME);
+            fail();
+        } catch (TagNotFoundException expected) {
+        }
+
+        // The reader returned moves on to the siblings of the data object found.
+        Asn1Reader child = profile.getChild(Tags.TAG_PROFILE_STATE);
+        assertEquals(0, child.asInteger());
+        assertTrue(child.hasNext());
+        assertEquals(Tags.TAG_PORT, child.next());
+        assertFalse(child.hasNext());
+        assertFalse(child.next(Tags.TAG_ICCID));
+
+        // A primitive data object has no children, whatever its value.
+        assertFalse(child.isConstructed());
+        assertFalse(child.getChildren().hasNext());
+    }
+
+    @SmallTest
+    @Test
+    public void testMalformedData() throws Exception {
+        Asn1Reader root = new Asn1Reader(IccUtils.hexStringToBytes("BF2D04A002E301"));
+        root.next();
+        Asn1Reader profiles = root.getChild(Tags.TAG_CTX_COMP_0).getChildren();
+        try {
+            profiles.next();
+            fail();
+        } catch (InvalidAsn1DataException expected) {
+        }
+
+        try {
+            new Asn1Reader(IccUtils.hexStringToBytes("BF2D05A003E3")).next();
+            fail();
+        } catch (InvalidAsn1DataException expected) {
+        }
+    }
+
+    private static void assertSameTree(String hex) throws Exception {
+        Asn1Decoder decoder = new Asn1Decoder(hex);
+        Asn1Reader reader = new Asn1Reader(IccUtils.hexStringToBytes(hex));
+        while (decoder.hasNextNode()) {
+            assertTrue(hex, reader.hasNext());
+            reader.next();
+            assertSameTree(decoder.nextNode(), reader);
+        }
+        assertFalse(hex, reader.hasNext());
+    }
+
+    private static void assertSameTree(Asn1Node node, Asn1Reader reader) throws Exception {
+        String hex = node.toHex();
+        assertEquals(hex, node.getTag(), reader.getTag());
+        assertEquals(hex, node.isConstructed(), reader.isConstructed());
+        assertArrayEquals(hex, node.toBytes(), reader.toBytes());
+        if (!node.isConstructed()) {
+            assertArrayEquals(hex, node.asBytes(), reader.asBytes());
+            return;
+        }
+        Asn1Reader children = reader.getChildren();
+        for (Asn1Node child : node.getChildren()) {
+            assertTrue(hex, children.hasNext());
+            children.next();
+            assertSameTree(child, children);
+        }
+        assertFalse(hex, children.hasNext());
+    }
+
+    private interface Accessor {
+        Object get() throws InvalidAsn1DataException;
+    }
+
+    /** Returns the value, or the class of the exception thrown to get it. */
+    private static Object valueOf(Accessor accessor) {
+        try {
+            return accessor.get();
+        } catch (InvalidAsn1DataException | RuntimeException e) {
+            return e.getClass();
+        }
+    }
+}
@@ -19,11 +19,13 @@ package com.android.internal.telephony.uicc.euicc;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -53,6 +55,7 @@ import com.android.internal.telephony.uicc.IccSlotPortMapping;
 import com.android.internal.telephony.uicc.IccSlotStatus;
 import com.android.internal.telephony.uicc.IccSlotStatus.MultipleEnabledProfilesMode;
 import com.android.internal.telephony.uicc.IccUtils;
+import com.android.internal.telephony.uicc.UiccPort;
 import com.android.internal.telephony.uicc.asn1.Asn1Node;
 import com.android.internal.telephony.uicc.asn1.InvalidAsn1DataException;
 import com.android.internal.telephony.uicc.asn1.TagNotFoundException;
@@ -306,6 +309,139 @@ public class EuiccPortTest extends TelephonyTest {
                 "BF2D1BA00C5A0A896700000000004523015C0B5A909192B79F709599BF76");
     }
 
+    @Test
+    public void testGetAllProfiles_Cached() {
+        int channel = mockLogicalChannelResponses(
+                "BF2D14A012E3105A0A896700000000004523019F7001019000");
+
+        ResultCaptor<EuiccProfileInfo[]> resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+        ResultCaptor<EuiccProfileInfo[]> cachedResultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(cachedResultCaptor, mHandler);
+        processAllMessages();
+        ResultCaptor<EuiccProfileInfo> profileCaptor = new ResultCaptor<>();
+        mEuiccPort.getProfile("98760000000000543210", profileCaptor, mHandler);
+        processAllMessages();
+        ResultCaptor<EuiccProfileInfo> missingProfileCaptor = new ResultCaptor<>();
+        mEuiccPort.getProfile("98760000000000543211", missingProfileCaptor, mHandler);
+        processAllMessages();
+
+        assertUnexpectedException(cachedResultCaptor.exception);
+        assertArrayEquals(resultCaptor.result, cachedResultCaptor.result);
+        assertEquals(resultCaptor.result[0], profileCaptor.result);
+        assertNull(missingProfileCaptor.result);
+        verify(mMockCi, times(1)).iccTransmitApduLogicalChannel(eq(channel), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyString(), anyBoolean(), any());
+    }
+
+    @Test
+    public void testGetAllProfiles_CacheInvalidatedByProfileOperation() {
+        int channel = mockLogicalChannelResponses(
+                "BF2D14A012E3105A0A896700000000004523019F7001019000",
+                "BF33038001009000",
+                "BF2D02A0009000");
+
+        ResultCaptor<EuiccProfileInfo[]> resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+        ResultCaptor<Void> deleteCaptor = new ResultCaptor<>();
+        mEuiccPort.deleteProfile("98760000000000543210", deleteCaptor, mHandler);
+        processAllMessages();
+        resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+
+        assertUnexpectedException(resultCaptor.exception);
+        assertEquals(0, resultCaptor.result.length);
+        verify(mMockCi, times(2)).iccTransmitApduLogicalChannel(eq(channel), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), eq("BF2D0D5C0B5A909192B79F709599BF76"),
+                anyBoolean(), any());
+    }
+
+    @Test
+    public void testGetAllProfiles_AccessRulesReadAgainAfterUpdate() {
+        // The operator of the profile updated its carrier privilege rules.
+        int channel = mockLogicalChannelResponses(
+                "BF2D14A012E3105A0A896700000000004523019F7001019000",
+                "BF2D5CA05AE3585A0A896700000000004523019F700101"
+                        + "BF7645E243E135C114ABCD92CBB156B280FA4E1429A6ECEEB6E5C1BFE4"
+                        + "CA1D636F6D2E676F6F676C652E616E64726F69642E617070732E6D79617070"
+                        + "E30ADB080000000000000001" // Carrier privilege rules
+                        + "9000");
+
+        ResultCaptor<EuiccProfileInfo[]> resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+        mEuiccPort.update(mContext, mMockCi, mMockIccCardStatus, mEuiccCard);
+        resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+
+        assertUnexpectedException(resultCaptor.exception);
+        assertArrayEquals(
+                new UiccAccessRule[] {
+                        new UiccAccessRule(
+                                IccUtils.hexStringToBytes(
+                                        "ABCD92CBB156B280FA4E1429A6ECEEB6E5C1BFE4"),
+                                "com.google.android.apps.myapp", 1)
+                },
+                resultCaptor.result[0].getUiccAccessRules().toArray());
+        verify(mMockCi, times(2)).iccTransmitApduLogicalChannel(eq(channel), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), eq("BF2D0D5C0B5A909192B79F709599BF76"),
+                anyBoolean(), any());
+    }
+
+    @Test
+    public void testGetAllProfiles_ChangedAfterUpdate() {
+        int channel = mockLogicalChannelResponses(
+                "BF2D14A012E3105A0A896700000000004523019F7001019000",
+                "BF2D14A012E3105A0A896700000000004523019F7001009000");
+
+        ResultCaptor<EuiccProfileInfo[]> resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+        mEuiccPort.update(mContext, mMockCi, mMockIccCardStatus, mEuiccCard);
+        resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+
+        assertUnexpectedException(resultCaptor.exception);
+        assertEquals(1, resultCaptor.result.length);
+        assertEquals(EuiccProfileInfo.PROFILE_STATE_DISABLED, resultCaptor.result[0].getState());
+        verify(mMockCi, times(2)).iccTransmitApduLogicalChannel(eq(channel), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), eq("BF2D0D5C0B5A909192B79F709599BF76"),
+                anyBoolean(), any());
+    }
+
+    @Test
+    public void testGetAllProfiles_CacheInvalidatedByOtherPort() {
+        int channel = mockLogicalChannelResponses(
+                "BF2D14A012E3105A0A896700000000004523019F7001019000",
+                "BF33038001009000",
+                "BF2D02A0009000");
+        EuiccPort otherPort = new EuiccPort(mContext, mMockCi, mMockIccCardStatus,
+                0 /* phoneId */, new Object(), mEuiccCard,
+                IccSlotStatus.MultipleEnabledProfilesMode.NONE);
+        when(mEuiccCard.getUiccPortList()).thenReturn(new UiccPort[] {mEuiccPort, otherPort});
+
+        ResultCaptor<EuiccProfileInfo[]> resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+        ResultCaptor<Void> deleteCaptor = new ResultCaptor<>();
+        otherPort.deleteProfile("98760000000000543210", deleteCaptor, mHandler);
+        processAllMessages();
+        resultCaptor = new ResultCaptor<>();
+        mEuiccPort.getAllProfiles(resultCaptor, mHandler);
+        processAllMessages();
+
+        assertUnexpectedException(resultCaptor.exception);
+        assertEquals(0, resultCaptor.result.length);
+        verify(mMockCi, times(2)).iccTransmitApduLogicalChannel(eq(channel), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), eq("BF2D0D5C0B5A909192B79F709599BF76"),
+                anyBoolean(), any());
+    }
+
     @Test
     public void testDisableProfile() {
         int channel = mockLogicalChannelResponses("BF32038001009000");
@@ -30,22 +30,29 @@ import static org.mockito.Mockito.verify;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.platform.test.annotations.EnableFlags;
+import android.platform.test.flag.junit.SetFlagsRule;
 import android.testing.AndroidTestingRunner;
 import android.testing.TestableLooper;
 
 import com.android.internal.telephony.CommandException;
 import com.android.internal.telephony.CommandsInterface;
+import com.android.internal.telephony.euicc.EuiccSession;
+import com.android.internal.telephony.flags.Flags;
 import com.android.internal.telephony.uicc.IccIoResult;
 import com.android.internal.telephony.uicc.IccUtils;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 @RunWith(AndroidTestingRunner.class)
 @TestableLooper.RunWithLooper
 public class ApduSenderTest {
+    @Rule
+    public final SetFlagsRule mSetFlagsRule = new SetFlagsRule();
 
     private static class ResponseCaptor extends ApduSenderResultCallback {
         public byte[] response;
@@ -83,6 +90,7 @@ public class ApduSenderTest {
     private ResponseCaptor mResponseCaptor;
     private byte[] mSelectResponse;
     private static final String AID = "B2C3D4";
+    private static final String SESSION_ID = "TEST_SESSION";
     private ApduSender mSender;
 
     @Before
@@ -99,6 +107,7 @@ public class ApduSenderTest {
 
     @After
     public void tearDown() {
+        EuiccSession.get().endSession(SESSION_ID);
         mHandler.removeCallbacksAndMessages(null);
         mHandler = null;
         mLooper = null;
@@ -341,4 +350,130 @@ public class ApduSenderTest {
         assertTrue(mResponseCaptor.exception instanceof ApduException);
         verify(mMockCi, times(1)).iccOpenLogicalChannel(eq(AID), anyInt(), any());
     }
+
+    @Test
+    @EnableFlags(Flags.FLAG_OPTIMIZATION_APDU_SENDER)
+    public void testSendInSession_reuseChannel() throws InterruptedException {
+        int channel = LogicalChannelMocker.mockOpenLogicalChannelResponse(mMockCi, "A1A1A19000");
+        LogicalChannelMocker.mockSendToLogicalChannel(mMockCi, channel, "A19000", "A29000");
+        LogicalChannelMocker.mockCloseLogicalChannel(mMockCi, channel, /* error= */ null);
+        EuiccSession.get().startSession(SESSION_ID);
+
+        mSender.send((selectResponse, requestBuilder) -> requestBuilder.addApdu(
+                10, 1, 2, 3, 0, "a"), mResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+        assertEquals("A1", IccUtils.bytesToHexString(mResponseCaptor.response));
+
+        ResponseCaptor secondResponseCaptor = new ResponseCaptor();
+        mSender.send((selectResponse, requestBuilder) -> {
+            mSelectResponse = selectResponse;
+            requestBuilder.addApdu(10, 1, 2, 3, 0, "b");
+        }, secondResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+
+        assertEquals("A2", IccUtils.bytesToHexString(secondResponseCaptor.response));
+        assertEquals("A1A1A19000", IccUtils.bytesToHexString(mSelectResponse));
+        verify(mMockCi, times(1)).iccOpenLogicalChannel(eq(AID), anyInt(), any());
+        verify(mMockCi, never()).iccCloseLogicalChannel(anyInt(), anyBoolean(), any());
+
+        EuiccSession.get().endSession(SESSION_ID);
+        mLooper.processAllMessages();
+
+        verify(mMockCi).iccCloseLogicalChannel(eq(channel), eq(true /*isEs10*/), any());
+    }
+
+    @Test
+    @EnableFlags(Flags.FLAG_OPTIMIZATION_APDU_SENDER)
+    public void testSendInSession_closeIdleChannel() throws InterruptedException {
+        int channel = LogicalChannelMocker.mockOpenLogicalChannelResponse(mMockCi, "9000");
+        LogicalChannelMocker.mockSendToLogicalChannel(mMockCi, channel, "A19000", "A29000");
+        LogicalChannelMocker.mockCloseLogicalChannel(mMockCi, channel, /* error= */ null);
+        EuiccSession.get().startSession(SESSION_ID);
+
+        mSender.send((selectResponse, requestBuilder) -> requestBuilder.addApdu(
+                10, 1, 2, 3, 0, "a"), mResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+        verify(mMockCi, never()).iccCloseLogicalChannel(anyInt(), anyBoolean(), any());
+
+        mLooper.moveTimeForward(ApduSender.IDLE_TIMEOUT_MS);
+        mLooper.processAllMessages();
+        verify(mMockCi).iccCloseLogicalChannel(eq(channel), eq(true /*isEs10*/), any());
+
+        // The next request of the session opens a new channel.
+        ResponseCaptor secondResponseCaptor = new ResponseCaptor();
+        mSender.send((selectResponse, requestBuilder) -> requestBuilder.addApdu(
+                10, 1, 2, 3, 0, "b"), secondResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+
+        assertEquals("A2", IccUtils.bytesToHexString(secondResponseCaptor.response));
+        verify(mMockCi, times(2)).iccOpenLogicalChannel(eq(AID), anyInt(), any());
+    }
+
+    @Test
+    @EnableFlags(Flags.FLAG_OPTIMIZATION_APDU_SENDER)
+    public void testSendInSession_closeChannelOnError() throws InterruptedException {
+        int channel = LogicalChannelMocker.mockOpenLogicalChannelResponse(mMockCi, "9000");
+        LogicalChannelMocker.mockSendToLogicalChannel(mMockCi, channel, "A16A82");
+        LogicalChannelMocker.mockCloseLogicalChannel(mMockCi, channel, /* error= */ null);
+        EuiccSession.get().startSession(SESSION_ID);
+
+        mSender.send((selectResponse, requestBuilder) -> requestBuilder.addApdu(
+                10, 1, 2, 3, 0, "a"), mResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+
+        assertEquals(0x6A82, ((ApduException) mResponseCaptor.exception).getApduStatus());
+        verify(mMockCi).iccCloseLogicalChannel(eq(channel), eq(true /*isEs10*/), any());
+    }
+
+    @Test
+    @EnableFlags(Flags.FLAG_OPTIMIZATION_APDU_SENDER)
+    public void testSendInSession_retryOnNewChannelIfReusedChannelFails()
+            throws InterruptedException {
+        int channel = LogicalChannelMocker.mockOpenLogicalChannelResponse(mMockCi, "9000");
+        LogicalChannelMocker.mockSendToLogicalChannel(mMockCi, channel, "A19000", "6881",
+                "A29000");
+        LogicalChannelMocker.mockCloseLogicalChannel(mMockCi, channel, /* error= */ null);
+        EuiccSession.get().startSession(SESSION_ID);
+
+        mSender.send((selectResponse, requestBuilder) -> requestBuilder.addApdu(
+                10, 1, 2, 3, 0, "a"), mResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+
+        // The UICC closed the channel kept open: the request is sent again on a new channel.
+        ResponseCaptor secondResponseCaptor = new ResponseCaptor();
+        mSender.send((selectResponse, requestBuilder) -> requestBuilder.addApdu(
+                10, 1, 2, 3, 0, "b"), secondResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+
+        assertEquals("A2", IccUtils.bytesToHexString(secondResponseCaptor.response));
+        assertNull(secondResponseCaptor.exception);
+        verify(mMockCi, times(2)).iccOpenLogicalChannel(eq(AID), anyInt(), any());
+        verify(mMockCi, times(1)).iccCloseLogicalChannel(eq(channel), eq(true /*isEs10*/), any());
+    }
+
+    @Test
+    @EnableFlags(Flags.FLAG_OPTIMIZATION_APDU_SENDER)
+    public void testSendInSession_noRetryAfterFirstCommand() throws InterruptedException {
+        int channel = LogicalChannelMocker.mockOpenLogicalChannelResponse(mMockCi, "9000");
+        LogicalChannelMocker.mockSendToLogicalChannel(mMockCi, channel, "A19000", "B19000",
+                "6A82");
+        LogicalChannelMocker.mockCloseLogicalChannel(mMockCi, channel, /* error= */ null);
+        EuiccSession.get().startSession(SESSION_ID);
+
+        mSender.send((selectResponse, requestBuilder) -> requestBuilder.addApdu(
+                10, 1, 2, 3, 0, "a"), mResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+
+        // The first command had effect, so the request is not sent again.
+        ResponseCaptor secondResponseCaptor = new ResponseCaptor();
+        mSender.send((selectResponse, requestBuilder) -> {
+            requestBuilder.addApdu(10, 1, 2, 3, 0, "b");
+            requestBuilder.addApdu(10, 1, 2, 3, 0, "c");
+        }, secondResponseCaptor, mHandler);
+        mLooper.processAllMessages();
+
+        assertEquals(0x6A82, ((ApduException) secondResponseCaptor.exception).getApduStatus());
+        verify(mMockCi, times(1)).iccOpenLogicalChannel(eq(AID), anyInt(), any());
+        verify(mMockCi).iccCloseLogicalChannel(eq(channel), eq(true /*isEs10*/), any());
+    }
 }